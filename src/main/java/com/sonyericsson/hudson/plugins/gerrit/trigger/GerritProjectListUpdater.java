@@ -36,11 +36,17 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.SortedSet;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.TreeSet;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -50,6 +56,11 @@ import org.slf4j.LoggerFactory;
  * available Gerrit projects. Executed periodically on a timely basis
  * and every time the connection to the Gerrit server has been restored.
  *
+ * Between the full listings the list is kept current by {@link ProjectCreated} events,
+ * so the periodic check only lists all projects again when events may have been missed
+ * since the last listing, or when the reconciliation interval has passed.
+ * Deleted projects are removed from the list by that reconciliation.
+ *
  * @author Gustaf Lundh &lt;Gustaf.Lundh@sonyericsson.com&gt;
  */
 public class GerritProjectListUpdater implements ConnectionListener, NamedGerritEventListener {
@@ -64,6 +75,18 @@ public class GerritProjectListUpdater implements ConnectionListener, NamedGerrit
      */
     private static final int DEFAULT_TIMER_PERIOD = 5;
 
+    /**
+     * The system property with the minutes between full listings of the projects
+     * when no events have been missed.
+     */
+    public static final String RECONCILE_INTERVAL_PROPERTY =
+            GerritProjectListUpdater.class.getName() + ".reconcileInterval";
+
+    /**
+     * Default minutes between full listings of the projects when no events have been missed.
+     */
+    public static final long DEFAULT_RECONCILE_INTERVAL = TimeUnit.DAYS.toMinutes(1);
+
     /**
      * Holds the period to update the project list, in minutes.
      */
@@ -73,8 +96,25 @@ public class GerritProjectListUpdater implements ConnectionListener, NamedGerrit
 
     private AtomicBoolean connected = new AtomicBoolean(false);
     private boolean shutdown = false;
+    /**
+     * The number of times the connection was lost, during which ProjectCreated events were missed.
+     */
+    private final AtomicInteger connectionsLost = new AtomicInteger(0);
+    /**
+     * The number of times the connection was lost before the last full listing started, -1 before the first one.
+     */
+    private volatile int lostBeforeReconciled = -1;
+    /**
+     * The {@link System#nanoTime()} when the last full listing started.
+     */
+    private volatile long lastReconciled = 0;
     private static final Logger logger = LoggerFactory.getLogger(GerritProjectListUpdater.class);
-    private List<String> gerritProjects;
+    /**
+     * The projects, an immutable sorted list of interned names that is replaced as a whole,
+     * so readers never need a lock.
+     */
+    private final AtomicReference<List<String>> gerritProjects =
+            new AtomicReference<List<String>>(Collections.<String>emptyList());
     private String serverName;
 
     /**
@@ -154,6 +194,7 @@ public class GerritProjectListUpdater implements ConnectionListener, NamedGerrit
     @Override
     public synchronized void connectionDown() {
         setConnected(false);
+        connectionsLost.incrementAndGet();
     }
 
     @Override
@@ -162,11 +203,14 @@ public class GerritProjectListUpdater implements ConnectionListener, NamedGerrit
 
     /**
      * OverLoaded gerritEvent(GerritEvent gerritEvent).
+     * Keeps the project list up to date between the periodic reconciliations with the server.
      * @param gerritEvent the event.
      */
     public void gerritEvent(ProjectCreated gerritEvent) {
-        addGerritProject(gerritEvent.getProjectName());
-        logger.debug("Added project {} to project lists", gerritEvent.getProjectName());
+        if (gerritEvent.getProjectName() != null) {
+            addGerritProject(gerritEvent.getProjectName());
+            logger.debug("Added project {} to project lists", gerritEvent.getProjectName());
+        }
     }
 
     /**
@@ -216,7 +260,11 @@ public class GerritProjectListUpdater implements ConnectionListener, NamedGerrit
             timer.scheduleAtFixedRate(new TimerTask() {
                 @Override
                 public void run() {
-                    tryLoadProjectList();
+                    if (isReconcileDue(System.nanoTime())) {
+                        tryLoadProjectList();
+                    } else {
+                        logger.debug("Project list of {} is kept up to date by events", serverName);
+                    }
                 }
             }, TimeUnit.SECONDS.toMillis(initDelay), TimeUnit.MINUTES.toMillis(timerUpdatePeriod));
         } else {
@@ -246,6 +294,31 @@ public class GerritProjectListUpdater implements ConnectionListener, NamedGerrit
         }
     }
 
+    /**
+     * If the projects should be listed again, since events may have been missed
+     * or the reconciliation interval has passed since the last listing.
+     * The interval is set with the system property {@link #RECONCILE_INTERVAL_PROPERTY}.
+     * @param now the {@link System#nanoTime()}.
+     * @return true if so.
+     */
+    boolean isReconcileDue(long now) {
+        if (lostBeforeReconciled != connectionsLost.get()) {
+            return true;
+        }
+        long interval = Math.max(0, Long.getLong(RECONCILE_INTERVAL_PROPERTY, DEFAULT_RECONCILE_INTERVAL));
+        return now - lastReconciled >= TimeUnit.MINUTES.toNanos(interval);
+    }
+
+    /**
+     * Records a full listing of the projects.
+     * @param lost the number of times the connection was lost before the listing started.
+     * @param started the {@link System#nanoTime()} when the listing started.
+     */
+    void reconciled(int lost, long started) {
+        lastReconciled = started;
+        lostBeforeReconciled = lost;
+    }
+
     /**
      * Try to load entire project list from Gerrit server.
      */
@@ -261,6 +334,9 @@ public class GerritProjectListUpdater implements ConnectionListener, NamedGerrit
         try {
             if (isConnected()) {
                 logger.info("Trying to load project list.");
+                // taken before listing, so a connection lost while listing makes the next check list again
+                int lost = connectionsLost.get();
+                long started = System.nanoTime();
                 IGerritHudsonTriggerConfig activeConfig = getConfig();
                 SshConnection sshConnection = SshConnectionFactory.getConnection(
                         activeConfig.getGerritHostName(),
@@ -268,10 +344,10 @@ public class GerritProjectListUpdater implements ConnectionListener, NamedGerrit
                         activeConfig.getGerritProxy(),
                         activeConfig.getGerritAuthentication()
                 );
-                List<String> projects = readProjects(sshConnection.executeCommandReader(GERRIT_LS_PROJECTS));
-                if (projects.size() > 0) {
-                    setGerritProjects(projects);
-                    logger.info("Project list from {} contains {} entries", serverName, projects.size());
+                String[] projects = readSortedProjects(sshConnection.executeCommandReader(GERRIT_LS_PROJECTS));
+                if (projects.length > 0) {
+                    reconcile(projects);
+                    reconciled(lost, started);
                 } else {
                     logger.warn("Project list from {} contains 0 projects", serverName);
                 }
@@ -327,6 +403,81 @@ public class GerritProjectListUpdater implements ConnectionListener, NamedGerrit
         return projects;
     }
 
+    /**
+     * Reads the distinct Gerrit projects from a Reader, one project per line, sorted and interned.
+     * @param commandReader the Reader.
+     * @return the projects.
+     * @throws IOException if something unfortunate happens.
+     */
+    private static String[] readSortedProjects(Reader commandReader) throws IOException {
+        SortedSet<String> projects = new TreeSet<String>();
+        BufferedReader br = new BufferedReader(commandReader);
+        String line = br.readLine();
+
+        while (line != null) {
+            projects.add(line.intern());
+            line = br.readLine();
+        }
+        return projects.toArray(new String[projects.size()]);
+    }
+
+    /**
+     * Replaces the project list with the one read from the server, unless they are the same.
+     * Projects created while the list was being read are kept, they will be listed by the server next time.
+     * @param projects the sorted projects read from the server.
+     */
+    private void reconcile(String[] projects) {
+        List<String> latest = Collections.unmodifiableList(Arrays.asList(projects));
+        List<String> before = gerritProjects.get();
+        if (latest.equals(before)) {
+            logger.debug("Project list from {} is unchanged, {} entries", serverName, projects.length);
+            return;
+        }
+        int added = 0;
+        for (String project : projects) {
+            if (Collections.binarySearch(before, project) < 0) {
+                added++;
+            }
+        }
+        List<String> current = before;
+        List<String> merged = latest;
+        while (!gerritProjects.compareAndSet(current, merged)) {
+            // projects were created meanwhile, keep them
+            current = gerritProjects.get();
+            merged = latest;
+            for (String project : current) {
+                if (Collections.binarySearch(before, project) < 0) {
+                    merged = insert(merged, project);
+                }
+            }
+        }
+        logger.info("Project list from {} contains {} entries, {} added and {} removed", serverName,
+                projects.length, added, before.size() + added - projects.length);
+    }
+
+    /**
+     * Creates a copy of a sorted project list with one more project in it.
+     * @param projects the sorted projects.
+     * @param project the project to add.
+     * @return the new list, or the same list if the project is already in it.
+     */
+    private static List<String> insert(List<String> projects, String project) {
+        int index = Collections.binarySearch(projects, project);
+        if (index >= 0) {
+            return projects;
+        }
+        int insertAt = -index - 1;
+        String[] result = new String[projects.size() + 1];
+        for (int i = 0; i < insertAt; i++) {
+            result[i] = projects.get(i);
+        }
+        result[insertAt] = project;
+        for (int i = insertAt; i < projects.size(); i++) {
+            result[i + 1] = projects.get(i);
+        }
+        return Collections.unmodifiableList(Arrays.asList(result));
+    }
+
     /**
      * @return if connected to Gerrit.
      */
@@ -345,27 +496,34 @@ public class GerritProjectListUpdater implements ConnectionListener, NamedGerrit
      * Adds a Gerrit project to this.gerritProjects.
      * @param gerritProject the Gerrit project to add.
      */
-    public synchronized void addGerritProject(String gerritProject) {
-        gerritProjects.add(gerritProject);
+    public void addGerritProject(String gerritProject) {
+        String project = gerritProject.intern();
+        List<String> current = gerritProjects.get();
+        List<String> updated = insert(current, project);
+        while (updated != current && !gerritProjects.compareAndSet(current, updated)) {
+            current = gerritProjects.get();
+            updated = insert(current, project);
+        }
     }
 
     /**
      * Sets the internal Gerrit project list.
      * @param projects The list of projects
      */
-    public synchronized void setGerritProjects(List<String> projects) {
-        gerritProjects = projects;
+    public void setGerritProjects(List<String> projects) {
+        SortedSet<String> sorted = new TreeSet<String>();
+        for (String project : projects) {
+            sorted.add(project.intern());
+        }
+        gerritProjects.set(Collections.unmodifiableList(Arrays.asList(sorted.toArray(new String[sorted.size()]))));
     }
 
     /**
-     * Returns a string list of Gerrit projects.
+     * Returns a string list of Gerrit projects, sorted and unmodifiable.
      * @return list of gerrit projects
      */
-    public synchronized List<String> getGerritProjects() {
-        if (gerritProjects == null) {
-            gerritProjects = new ArrayList<String>();
-        }
-        return gerritProjects;
+    public List<String> getGerritProjects() {
+        return gerritProjects.get();
     }
 
     @Override
@@ -67,6 +67,7 @@ import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import javax.servlet.ServletException;
 
 import jenkins.model.Jenkins;
@@ -117,6 +118,10 @@ import com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.GerritConnec
 import com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.GerritTrigger;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.data.GerritSlave;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.playback.GerritMissedEventsPlaybackManager;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.playback.PlaybackProgress;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.job.rest.RestNotifier;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.job.ssh.SshSessionPool;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.utils.GerritHttpClient;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.version.GerritVersionChecker;
 
 /**
@@ -159,6 +164,9 @@ public class GerritServer implements Describable<GerritServer>, Action {
     private transient GerritConnectionListener gerritConnectionListener;
     private transient GerritMissedEventsPlaybackManager missedEventsPlaybackManager;
     private transient GerritQueryHandler gerritQueryHnadler;
+    private transient GerritHttpClient httpClient;
+    private transient RestNotifier restNotifier;
+    private transient SshSessionPool sshSessionPool;
 
     @Override
     public DescriptorImpl getDescriptor() {
@@ -254,6 +262,83 @@ public class GerritServer implements Describable<GerritServer>, Action {
         checkPermission();
         this.config = config;
         gerritQueryHnadler = new GerritQueryHandler(config);
+        closeHttpClient();
+        closeSshSessionPool();
+    }
+
+    /**
+     * Gets the pooled HTTP client for the REST API of this server and counts a use of it.
+     * It is created from the config the first time it is needed after a config change.
+     * The caller must call {@link GerritHttpClient#release()} when it has sent its request,
+     * a replaced client is not closed before that.
+     *
+     * @return the HTTP client.
+     */
+    public synchronized GerritHttpClient acquireHttpClient() {
+        if (httpClient == null) {
+            httpClient = new GerritHttpClient(config);
+        }
+        httpClient.acquire();
+        return httpClient;
+    }
+
+    /**
+     * Gets the notifier that posts reviews to the REST API of this server.
+     *
+     * @return the REST notifier.
+     */
+    public synchronized RestNotifier getRestNotifier() {
+        if (restNotifier == null) {
+            restNotifier = new RestNotifier(this);
+        }
+        return restNotifier;
+    }
+
+    /**
+     * Closes the REST notifier, the next call to {@link #getRestNotifier()} creates a new one.
+     */
+    private synchronized void closeRestNotifier() {
+        if (restNotifier != null) {
+            restNotifier.close();
+            restNotifier = null;
+        }
+    }
+
+    /**
+     * Gets the pooled SSH sessions for the review commands to this server.
+     * It is created from the config the first time it is needed after a config change.
+     *
+     * @return the session pool.
+     */
+    public synchronized SshSessionPool getSshSessionPool() {
+        if (sshSessionPool == null) {
+            sshSessionPool = new SshSessionPool(name, config);
+        }
+        return sshSessionPool;
+    }
+
+    /**
+     * Closes the pooled SSH sessions, the next call to {@link #getSshSessionPool()} creates a new pool.
+     */
+    private synchronized void closeSshSessionPool() {
+        if (sshSessionPool != null) {
+            sshSessionPool.close();
+            sshSessionPool = null;
+        }
+    }
+
+    /**
+     * Replaces the pooled HTTP client, the next call to {@link #acquireHttpClient()} creates a new one.
+     * The old client is closed once its uses are released and the requests in progress on it have finished.
+     *
+     * @see GerritHttpClient#closeWhenIdle()
+     */
+    private synchronized void closeHttpClient() {
+        if (httpClient != null) {
+            GerritHttpClient old = httpClient;
+            httpClient = null;
+            old.closeWhenIdle();
+        }
     }
 
     /**
@@ -526,6 +611,10 @@ public class GerritServer implements Describable<GerritServer>, Action {
             gerritConnection = null;
         }
 
+        closeRestNotifier();
+        closeHttpClient();
+        closeSshSessionPool();
+
         logger.info(name + " stopped");
         started = false;
     }
@@ -956,6 +1045,8 @@ public class GerritServer implements Describable<GerritServer>, Action {
         }
         noConnectionOnStartup = form.getBoolean("noConnectionOnStartup");
         config.setValues(form);
+        closeHttpClient();
+        closeSshSessionPool();
 
         PluginImpl.save_();
 
@@ -1226,6 +1317,19 @@ public class GerritServer implements Describable<GerritServer>, Action {
         return false;
     }
 
+    /**
+     * The progress of the playback of missed events, if one is in progress.
+     *
+     * @return the progress, or null if no playback is in progress.
+     */
+    @CheckForNull
+    public PlaybackProgress getMissedEventsPlaybackProgress() {
+        if (missedEventsPlaybackManager == null) {
+            return null;
+        }
+        return missedEventsPlaybackManager.getPlaybackProgress();
+    }
+
     /**
      * If server with features disabled due to old Gerrit version.
      *
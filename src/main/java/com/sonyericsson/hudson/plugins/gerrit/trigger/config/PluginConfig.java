@@ -38,6 +38,7 @@ import org.slf4j.LoggerFactory;
 import com.sonymobile.tools.gerrit.gerritevents.dto.GerritEventType;
 import com.sonymobile.tools.gerrit.gerritevents.workers.GerritWorkersConfig;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.PluginImpl;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.model.BuildMemory;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.replication.ReplicationCache;
 
 /**
@@ -68,6 +69,8 @@ public class PluginConfig implements GerritWorkersConfig {
     private int numberOfReceivingWorkerThreads;
     private int numberOfSendingWorkerThreads;
     private int replicationCacheExpirationInMinutes;
+    private int buildMemoryMaxImprints;
+    private int buildMemoryMaxAgeInHours;
     private List<String> filterIn;
 
     /**
@@ -96,6 +99,8 @@ public class PluginConfig implements GerritWorkersConfig {
         numberOfReceivingWorkerThreads = pluginConfig.getNumberOfReceivingWorkerThreads();
         numberOfSendingWorkerThreads = pluginConfig.getNumberOfSendingWorkerThreads();
         replicationCacheExpirationInMinutes = pluginConfig.getReplicationCacheExpirationInMinutes();
+        buildMemoryMaxImprints = pluginConfig.getBuildMemoryMaxImprints();
+        buildMemoryMaxAgeInHours = pluginConfig.getBuildMemoryMaxAgeInHours();
         filterIn = pluginConfig.getFilterIn();
     }
 
@@ -135,6 +140,16 @@ public class PluginConfig implements GerritWorkersConfig {
             replicationCacheExpirationInMinutes = ReplicationCache.DEFAULT_EXPIRATION_IN_MINUTES;
         }
 
+        buildMemoryMaxImprints = formData.optInt("buildMemoryMaxImprints", BuildMemory.DEFAULT_MAX_IMPRINTS);
+        if (buildMemoryMaxImprints <= 0) {
+            buildMemoryMaxImprints = BuildMemory.DEFAULT_MAX_IMPRINTS;
+        }
+
+        buildMemoryMaxAgeInHours = formData.optInt("buildMemoryMaxAgeInHours", BuildMemory.DEFAULT_MAX_AGE_IN_HOURS);
+        if (buildMemoryMaxAgeInHours <= 0) {
+            buildMemoryMaxAgeInHours = BuildMemory.DEFAULT_MAX_AGE_IN_HOURS;
+        }
+
         setInterestingEvents(getFilterInFromFormData(formData));
         updateEventFilter();
     }
@@ -204,6 +219,44 @@ public class PluginConfig implements GerritWorkersConfig {
         this.replicationCacheExpirationInMinutes = replicationCacheExpirationInMinutes;
     }
 
+    /**
+     * The maximum number of events that the build coordination remembers.
+     * @return the buildMemoryMaxImprints
+     */
+    public int getBuildMemoryMaxImprints() {
+        if (buildMemoryMaxImprints <= 0) {
+            return BuildMemory.DEFAULT_MAX_IMPRINTS;
+        }
+        return buildMemoryMaxImprints;
+    }
+
+    /**
+     * The maximum number of events that the build coordination remembers.
+     * @param buildMemoryMaxImprints the number of events to set
+     */
+    public void setBuildMemoryMaxImprints(int buildMemoryMaxImprints) {
+        this.buildMemoryMaxImprints = buildMemoryMaxImprints;
+    }
+
+    /**
+     * The maximum number of hours that the build coordination remembers an event.
+     * @return the buildMemoryMaxAgeInHours
+     */
+    public int getBuildMemoryMaxAgeInHours() {
+        if (buildMemoryMaxAgeInHours <= 0) {
+            return BuildMemory.DEFAULT_MAX_AGE_IN_HOURS;
+        }
+        return buildMemoryMaxAgeInHours;
+    }
+
+    /**
+     * The maximum number of hours that the build coordination remembers an event.
+     * @param buildMemoryMaxAgeInHours the number of hours to set
+     */
+    public void setBuildMemoryMaxAgeInHours(int buildMemoryMaxAgeInHours) {
+        this.buildMemoryMaxAgeInHours = buildMemoryMaxAgeInHours;
+    }
+
     /**
      * Get the number of events that are supported.
      *
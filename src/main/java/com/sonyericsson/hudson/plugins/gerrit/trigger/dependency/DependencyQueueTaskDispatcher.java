@@ -33,6 +33,7 @@ import hudson.model.Run;
 import hudson.model.queue.QueueTaskDispatcher;
 import hudson.model.queue.CauseOfBlockage;
 import jenkins.model.Jenkins;
+import jenkins.util.Timer;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -40,8 +41,11 @@ import java.util.Set;
 import java.util.Collections;
 import java.util.StringTokenizer;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -72,6 +76,10 @@ public final class DependencyQueueTaskDispatcher extends QueueTaskDispatcher
 
     private static final Logger logger = LoggerFactory.getLogger(DependencyQueueTaskDispatcher.class);
     private Set<GerritTriggeredEvent> currentlyTriggeringEvents;
+    private final Cache<GerritTrigger, Dependencies> dependencies = Caffeine.newBuilder().weakKeys().build();
+    private final ConcurrentMap<GerritTriggeredEvent, ConcurrentMap<Long, Decision>> decisions =
+            new ConcurrentHashMap<GerritTriggeredEvent, ConcurrentMap<Long, Decision>>();
+    private final Set<Long> wakeUps = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
 
     /**
      * Default constructor.
@@ -152,7 +160,7 @@ public final class DependencyQueueTaskDispatcher extends QueueTaskDispatcher
             return null;
         }
         //Dependency projects in the build queue
-        List<Job> dependencies = getProjectsFromString(trigger.getDependencyJobsNames(), p);
+        List<Job> dependencies = getDependencies(trigger, p);
         if (dependencies == null || dependencies.isEmpty()) {
             logger.debug("No dependencies on project: {} for event {}", p, event);
             return null;
@@ -162,9 +170,11 @@ public final class DependencyQueueTaskDispatcher extends QueueTaskDispatcher
         // We ensure that we wait until other jobs have been put into queue.
         // We use the default Gerrit Build Schedule Delay value
         long inQueueSince = item.getInQueueSince();
-        if (System.currentTimeMillis() - inQueueSince < TimeUnit.SECONDS
-                .toMillis(GerritDefaultValues.DEFAULT_BUILD_SCHEDULE_DELAY)) {
+        long waited = System.currentTimeMillis() - inQueueSince;
+        long delay = TimeUnit.SECONDS.toMillis(GerritDefaultValues.DEFAULT_BUILD_SCHEDULE_DELAY);
+        if (waited < delay) {
             logger.debug("We need to wait to ensure dependent jobs {} are in queue for {}", event, p);
+            scheduleWakeUp(item.getId(), delay - waited);
             return new BecauseWaitingToEnsureOtherJobsAreInQueue();
         }
 
@@ -181,7 +191,30 @@ public final class DependencyQueueTaskDispatcher extends QueueTaskDispatcher
             return new BecauseWaitingForOtherProjectsToTrigger();
         }
 
+        //The rule evaluation below only changes outcome when a build of the event changes state,
+        //so it is done once per item and event and kept until onBuildStateChanged.
+        ConcurrentMap<Long, Decision> eventDecisions = getDecisions(event);
+        Decision decision = eventDecisions.get(item.getId());
+        if (decision == null) {
+            decision = new Decision(decide(item, p, dependencies, event));
+            if (decisions.get(event) == eventDecisions) {
+                eventDecisions.put(item.getId(), decision);
+            }
+        }
+        return decision.cause;
+    }
 
+    /**
+     * Evaluates whether the item has to wait for its dependencies to build the event,
+     * and records the dependency builds on the item once it does not.
+     *
+     * @param item the queue item.
+     * @param p the project of the item.
+     * @param dependencies the projects the item depends on.
+     * @param event the event the item was triggered by.
+     * @return the cause of blockage, or null if the item can run.
+     */
+    private CauseOfBlockage decide(Queue.Item item, Job p, List<Job> dependencies, GerritTriggeredEvent event) {
         CauseOfBlockage causeOfBlockage = getCauseOfBlockage(dependencies, event);
 
         if (causeOfBlockage != null) {
@@ -215,9 +248,8 @@ public final class DependencyQueueTaskDispatcher extends QueueTaskDispatcher
                     return null;
                 }
 
-                // TODO: returning `null` from a QueueTaskDispatcher does not mean the build will start immediately.
-                // So, this line can be called multiple times. In case of performance/stability issues it makes sense to
-                // mode to TransientActionFactory or maybe a QueueListener would be better.
+                // Returning `null` from a QueueTaskDispatcher does not mean the build will start immediately,
+                // but the decision is remembered so this is only done again after a build state change.
                 item.replaceAction(new GerritDependencyAction(actualDependencies));
             }
 
@@ -226,7 +258,6 @@ public final class DependencyQueueTaskDispatcher extends QueueTaskDispatcher
         }
     }
 
-
     /**
      * Gets the cause of blockage if one of dependant project was not triggered or was not finished yet.
      * @param dependencies The list of projects which need to be checked
@@ -252,6 +283,153 @@ public final class DependencyQueueTaskDispatcher extends QueueTaskDispatcher
         return null;
     }
 
+    /**
+     * Gets the remembered decisions of the event, keyed by queue item id.
+     *
+     * @param event the event.
+     * @return the decisions.
+     */
+    private ConcurrentMap<Long, Decision> getDecisions(GerritTriggeredEvent event) {
+        ConcurrentMap<Long, Decision> eventDecisions = decisions.get(event);
+        if (eventDecisions == null) {
+            eventDecisions = new ConcurrentHashMap<Long, Decision>();
+            ConcurrentMap<Long, Decision> existing = decisions.putIfAbsent(event, eventDecisions);
+            if (existing != null) {
+                eventDecisions = existing;
+            }
+        }
+        return eventDecisions;
+    }
+
+    /**
+     * Gets the projects the trigger depends on, resolving its dependency string only when it changed
+     * since the last time or when items were created, renamed or deleted.
+     *
+     * @param trigger the trigger.
+     * @param context the project of the trigger.
+     * @return the dependency projects, or null if there are none.
+     */
+    private List<Job> getDependencies(GerritTrigger trigger, Job context) {
+        String names = trigger.getDependencyJobsNames();
+        Dependencies resolved = dependencies.getIfPresent(trigger);
+        if (resolved == null || !StringUtils.equals(resolved.names, names) || resolved.context != context) {
+            resolved = new Dependencies(names, context, getProjectsFromString(names, context));
+            dependencies.put(trigger, resolved);
+        }
+        return resolved.jobs;
+    }
+
+    /**
+     * Forgets the decisions made for the items of the event, and schedules a queue maintenance
+     * if any of them was blocked, or was being decided, so it can start without waiting for the periodic one.
+     * Called whenever a build of the event is triggered, started, completed or leaves the queue,
+     * after the {@link ToGerritRunListener} memory has been updated, so that no decision made on the old state
+     * is remembered after this.
+     *
+     * @param event the event.
+     */
+    public void onBuildStateChanged(GerritTriggeredEvent event) {
+        if (event != null) {
+            ConcurrentMap<Long, Decision> forgotten = decisions.remove(event);
+            if (forgotten != null) {
+                if (forgotten.isEmpty()) {
+                    //A decision was being made on the old state and won't be remembered, check again soon.
+                    scheduleMaintenance();
+                    return;
+                }
+                for (Decision decision : forgotten.values()) {
+                    if (decision.cause != null) {
+                        //Items were blocked for this event, let them be checked now rather than
+                        //at the next periodic queue maintenance.
+                        scheduleMaintenance();
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Schedules a queue maintenance once the item is done waiting for other jobs to be put into the queue,
+     * unless one is already scheduled for it.
+     *
+     * @param id the id of the queue item.
+     * @param delayMillis the time left to wait.
+     */
+    private void scheduleWakeUp(final long id, long delayMillis) {
+        if (wakeUps.add(id)) {
+            Timer.get().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    wakeUps.remove(id);
+                    scheduleMaintenance();
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Asks the queue to check its items again, when Jenkins is running.
+     */
+    private static void scheduleMaintenance() {
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        if (jenkins != null) {
+            jenkins.getQueue().scheduleMaintenance();
+        }
+    }
+
+    /**
+     * Forgets the resolved dependency projects, since names may now resolve to other items.
+     * Called when items are created, renamed or deleted.
+     */
+    public void onItemsChanged() {
+        dependencies.invalidateAll();
+    }
+
+    /**
+     * Signals the registered instance, if any, that a build of the event changed state.
+     *
+     * @param event the event.
+     * @see #onBuildStateChanged(GerritTriggeredEvent)
+     */
+    public static void buildStateChanged(GerritTriggeredEvent event) {
+        DependencyQueueTaskDispatcher dispatcher = lookup();
+        if (dispatcher != null) {
+            dispatcher.onBuildStateChanged(event);
+        }
+    }
+
+    /**
+     * Signals the registered instance, if any, that items were created, renamed or deleted.
+     *
+     * @see #onItemsChanged()
+     */
+    public static void itemsChanged() {
+        DependencyQueueTaskDispatcher dispatcher = lookup();
+        if (dispatcher != null) {
+            dispatcher.onItemsChanged();
+        }
+    }
+
+    /**
+     * Returns the registered instance like {@link #getInstance()}, but quietly,
+     * since there is none while Jenkins is starting up or in unit tests.
+     *
+     * @return the instance, or null.
+     */
+    private static DependencyQueueTaskDispatcher lookup() {
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        if (jenkins == null) {
+            return null;
+        }
+        ExtensionList<DependencyQueueTaskDispatcher> dispatchers =
+                jenkins.getExtensionList(DependencyQueueTaskDispatcher.class);
+        if (dispatchers == null || dispatchers.isEmpty()) {
+            return null;
+        }
+        return dispatchers.get(0);
+    }
+
     /**
      * Return the GerritCause of the specific item if any, otherwise return null.
      * @param item The item
@@ -300,6 +478,7 @@ public final class DependencyQueueTaskDispatcher extends QueueTaskDispatcher
      */
     public void onTriggeringAll(GerritTriggeredEvent event) {
         currentlyTriggeringEvents.add(event);
+        onBuildStateChanged(event);
         logger.debug("Triggering all projects for {}", event);
     }
 
@@ -309,7 +488,11 @@ public final class DependencyQueueTaskDispatcher extends QueueTaskDispatcher
      * @param event the event done triggering
      */
     public void onDoneTriggeringAll(GerritTriggeredEvent event) {
-        currentlyTriggeringEvents.remove(event);
+        if (currentlyTriggeringEvents.remove(event)) {
+            //Items of the event were held back while it was triggering, without remembering a decision.
+            scheduleMaintenance();
+        }
+        onBuildStateChanged(event);
         logger.debug("Done triggering all projects for {}", event);
     }
 
@@ -384,4 +567,42 @@ public final class DependencyQueueTaskDispatcher extends QueueTaskDispatcher
     @Override
     public void allBuildsCompleted(GerritEvent event) {
     }
+
+    /**
+     * The outcome of {@link #canRun(Queue.Item)} for an item and event.
+     */
+    private static final class Decision {
+        private final CauseOfBlockage cause;
+
+        /**
+         * Constructor.
+         *
+         * @param cause the cause of blockage, or null if the item can run.
+         */
+        private Decision(CauseOfBlockage cause) {
+            this.cause = cause;
+        }
+    }
+
+    /**
+     * The projects resolved from the dependency string of a trigger.
+     */
+    private static final class Dependencies {
+        private final String names;
+        private final Job context;
+        private final List<Job> jobs;
+
+        /**
+         * Constructor.
+         *
+         * @param names the dependency string.
+         * @param context the project of the trigger.
+         * @param jobs the resolved projects.
+         */
+        private Dependencies(String names, Job context, List<Job> jobs) {
+            this.names = names;
+            this.context = context;
+            this.jobs = jobs;
+        }
+    }
 }
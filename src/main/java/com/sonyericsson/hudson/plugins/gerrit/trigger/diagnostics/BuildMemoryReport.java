@@ -29,6 +29,7 @@ import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.model.Build
 import com.sonymobile.tools.gerrit.gerritevents.dto.events.ChangeBasedEvent;
 import com.sonymobile.tools.gerrit.gerritevents.dto.events.GerritTriggeredEvent;
 import com.sonymobile.tools.gerrit.gerritevents.dto.events.RefUpdated;
+import hudson.Util;
 import hudson.model.ModelObject;
 
 import edu.umd.cs.findbugs.annotations.NonNull;
@@ -38,11 +39,14 @@ import java.text.SimpleDateFormat;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Contains a snapshot clone of a {@link BuildMemory}.
@@ -53,7 +57,19 @@ import java.util.TreeMap;
  */
 public class BuildMemoryReport implements Map<GerritTriggeredEvent, List<BuildMemory.MemoryImprint.Entry>>, ModelObject {
 
+    /**
+     * The number of oldest events shown by {@link #getOldest()}.
+     */
+    public static final int OLDEST_COUNT = 10;
+    /**
+     * The upper bounds in hours of the buckets in {@link #getAgeHistogram()}.
+     */
+    private static final long[] AGE_BUCKETS_IN_HOURS = {1, 6, 24, 48, 168};
+
     private final Map<GerritTriggeredEvent, List<BuildMemory.MemoryImprint.Entry>> internal;
+    private final Map<GerritTriggeredEvent, Long> createdTimestamps = new HashMap<GerritTriggeredEvent, Long>();
+    private long evictionCount = 0;
+    private final long timestamp = System.currentTimeMillis();
 
     /**
      * The format used to display timestamps.
@@ -105,6 +121,97 @@ public class BuildMemoryReport implements Map<GerritTriggeredEvent, List<BuildMe
         return entries;
     }
 
+    /**
+     * Sets when the event was first remembered.
+     *
+     * @param event            the event.
+     * @param createdTimestamp the timestamp.
+     * @see BuildMemory.MemoryImprint#getCreatedTimestamp()
+     */
+    public void setCreatedTimestamp(GerritTriggeredEvent event, long createdTimestamp) {
+        createdTimestamps.put(event, createdTimestamp);
+    }
+
+    /**
+     * How long the event has been remembered when this report was made.
+     *
+     * @param event the event.
+     * @return the age in milliseconds, 0 if not known.
+     */
+    public long getAge(GerritTriggeredEvent event) {
+        Long created = createdTimestamps.get(event);
+        if (created == null) {
+            return 0;
+        }
+        return timestamp - created;
+    }
+
+    /**
+     * The number of events that have been evicted from the memory, because they were too old or too many.
+     *
+     * @return the number of evicted events.
+     * @see BuildMemory#evict(int, long)
+     */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * The number of events that have been evicted from the memory.
+     *
+     * @param evictionCount the number of evicted events.
+     */
+    public void setEvictionCount(long evictionCount) {
+        this.evictionCount = evictionCount;
+    }
+
+    /**
+     * Counts the events by how long they have been remembered.
+     * The keys are the upper bounds of each bucket, the last key is the lower bound of the last bucket.
+     *
+     * @return the number of events in each bucket, in order of age.
+     */
+    public Map<String, Integer> getAgeHistogram() {
+        int[] counts = new int[AGE_BUCKETS_IN_HOURS.length + 1];
+        for (GerritTriggeredEvent event : internal.keySet()) {
+            long age = getAge(event);
+            int bucket = 0;
+            while (bucket < AGE_BUCKETS_IN_HOURS.length
+                    && age >= TimeUnit.HOURS.toMillis(AGE_BUCKETS_IN_HOURS[bucket])) {
+                bucket++;
+            }
+            counts[bucket]++;
+        }
+        Map<String, Integer> histogram = new LinkedHashMap<String, Integer>();
+        for (int i = 0; i < AGE_BUCKETS_IN_HOURS.length; i++) {
+            histogram.put("< " + Util.getTimeSpanString(TimeUnit.HOURS.toMillis(AGE_BUCKETS_IN_HOURS[i])),
+                    counts[i]);
+        }
+        histogram.put(">= " + Util.getTimeSpanString(
+                TimeUnit.HOURS.toMillis(AGE_BUCKETS_IN_HOURS[AGE_BUCKETS_IN_HOURS.length - 1])),
+                counts[AGE_BUCKETS_IN_HOURS.length]);
+        return histogram;
+    }
+
+    /**
+     * The events that have been remembered the longest, the oldest first.
+     *
+     * @return at most {@link #OLDEST_COUNT} events.
+     */
+    public List<GerritTriggeredEvent> getOldest() {
+        List<GerritTriggeredEvent> events = new LinkedList<GerritTriggeredEvent>(internal.keySet());
+        Collections.sort(events, new Comparator<GerritTriggeredEvent>() {
+            @Override
+            public int compare(GerritTriggeredEvent a, GerritTriggeredEvent b) {
+                return Long.compare(getAge(b), getAge(a));
+            }
+        });
+        if (events.size() > OLDEST_COUNT) {
+            return events.subList(0, OLDEST_COUNT);
+        }
+        return events;
+    }
+
     /**
      * Generates a one liner display name for the event.
      *
@@ -87,6 +87,16 @@ public class Diagnostics implements ModelObjectWithChildren, ModelObjectWithCont
                          .withUrl(url)
                          .withStockIcon("clipboard.png")
                          .withDisplayName(Messages.EventListenersReport_DisplayName()));
+        url = makeRelativeUrl(context, "notifications");
+        menu.add(new MenuItem()
+                         .withUrl(url)
+                         .withStockIcon("clipboard.png")
+                         .withDisplayName(Messages.NotificationsReport_DisplayName()));
+        url = makeRelativeUrl(context, "replication");
+        menu.add(new MenuItem()
+                         .withUrl(url)
+                         .withStockIcon("clipboard.png")
+                         .withDisplayName(Messages.ReplicationReport_DisplayName()));
         if (isDebugMode()) {
             menu.add("triggerDebugEvent", "warning.png", "Trigger Debug", false, true);
         }
@@ -153,6 +163,29 @@ public class Diagnostics implements ModelObjectWithChildren, ModelObjectWithCont
         return EventListenersReport.report();
     }
 
+    /**
+     * A report of how the notifications to the Gerrit servers are sent.
+     *
+     * Intended to be accessed via Stapler URL mapping.
+     *
+     * @return the notifications report.
+     */
+    public NotificationsReport getNotifications() {
+        return NotificationsReport.report();
+    }
+
+    /**
+     * A report of the builds waiting for replication and the replication cache.
+     *
+     * Intended to be accessed via Stapler URL mapping.
+     *
+     * @return the replication report.
+     */
+    @CheckForNull
+    public ReplicationReport getReplication() {
+        return ReplicationReport.report();
+    }
+
     @Override
     public ContextMenu doContextMenu(StaplerRequest request, StaplerResponse response) throws Exception {
         return getContextMenu(null);
@@ -0,0 +1,119 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2026 the Gerrit Trigger plugin authors.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.sonyericsson.hudson.plugins.gerrit.trigger.diagnostics;
+
+import com.sonyericsson.hudson.plugins.gerrit.trigger.GerritServer;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.Messages;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.PluginImpl;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.GerritMessageProviders;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.NotificationFactory;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.Supersession;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.job.rest.RestNotifier;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.job.ssh.SshSessionPool;
+import hudson.model.ModelObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link Diagnostics} page showing how the notifications to the Gerrit servers are sent.
+ */
+public class NotificationsReport implements ModelObject {
+
+    private List<RestNotifier> restNotifiers;
+    private List<SshSessionPool> sshSessionPools;
+
+    /**
+     * The constructor.
+     *
+     * @param restNotifiers the REST notifiers of the servers using the REST API.
+     * @param sshSessionPools the SSH session pools of the servers.
+     */
+    /*package*/ NotificationsReport(List<RestNotifier> restNotifiers, List<SshSessionPool> sshSessionPools) {
+        this.restNotifiers = restNotifiers;
+        this.sshSessionPools = sshSessionPools;
+    }
+
+    /**
+     * The REST notifiers of the servers using the REST API.
+     *
+     * @return the notifiers.
+     */
+    public List<RestNotifier> getRestNotifiers() {
+        return restNotifiers;
+    }
+
+    /**
+     * The SSH session pools of the servers.
+     *
+     * @return the pools.
+     */
+    public List<SshSessionPool> getSshSessionPools() {
+        return sshSessionPools;
+    }
+
+    /**
+     * The queued notifications per change.
+     *
+     * @return the supersession.
+     */
+    public Supersession getSupersession() {
+        return NotificationFactory.getInstance().getSupersession();
+    }
+
+    /**
+     * How long the calls to the message providers took.
+     *
+     * @return the timings of the providers.
+     */
+    public List<GerritMessageProviders.Timing> getMessageProviderTimings() {
+        return GerritMessageProviders.getTimings();
+    }
+
+    /**
+     * Produces a report from the configured servers.
+     *
+     * @return the report.
+     * @see PluginImpl#getServers_()
+     */
+    public static NotificationsReport report() {
+        List<RestNotifier> restNotifiers = new ArrayList<RestNotifier>();
+        List<SshSessionPool> sshSessionPools = new ArrayList<SshSessionPool>();
+        for (GerritServer server : PluginImpl.getServers_()) {
+            if (RestNotifier.isEnabled() && server.getConfig().isUseRestApi()) {
+                restNotifiers.add(server.getRestNotifier());
+            }
+            if (SshSessionPool.isEnabled()) {
+                sshSessionPools.add(server.getSshSessionPool());
+            }
+        }
+        return new NotificationsReport(restNotifiers, sshSessionPools);
+    }
+
+    @Override
+    public String getDisplayName() {
+        return Messages.NotificationsReport_DisplayName();
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2026 the Gerrit Trigger plugin authors.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.trigger.diagnostics;
+
+import com.sonyericsson.hudson.plugins.gerrit.trigger.Messages;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.replication.ReplicationCache;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.replication.ReplicationQueueTaskDispatcher;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import hudson.model.ModelObject;
+
+/**
+ * A {@link Diagnostics} page showing the builds waiting for replication and the cache of replication events.
+ */
+public class ReplicationReport implements ModelObject {
+
+    private ReplicationQueueTaskDispatcher dispatcher;
+
+    /**
+     * The constructor.
+     *
+     * @param dispatcher the dispatcher blocking builds until replication is done.
+     */
+    /*package*/ ReplicationReport(ReplicationQueueTaskDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+
+    /**
+     * The cache of the replication events received.
+     *
+     * @return the cache.
+     */
+    public ReplicationCache getCache() {
+        return dispatcher.getReplicationCache();
+    }
+
+    /**
+     * The number of builds waiting for replication.
+     *
+     * @return the count.
+     */
+    public int getBlockedItemCount() {
+        return dispatcher.getBlockedItemCount();
+    }
+
+    /**
+     * Produces a report from the registered dispatcher.
+     *
+     * @return the report, or null if there is no dispatcher.
+     */
+    @CheckForNull
+    public static ReplicationReport report() {
+        ReplicationQueueTaskDispatcher dispatcher = ReplicationQueueTaskDispatcher.getInstance();
+        if (dispatcher == null) {
+            return null;
+        }
+        return new ReplicationReport(dispatcher);
+    }
+
+    @Override
+    public String getDisplayName() {
+        return Messages.ReplicationReport_DisplayName();
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2026 the Gerrit Trigger plugin authors.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier;
+
+import com.sonyericsson.hudson.plugins.gerrit.trigger.PluginImpl;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.config.PluginConfig;
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Periodically evicts events from the build memory that are too old or too many.
+ *
+ * @see ToGerritRunListener#evict(int, long)
+ * @see PluginConfig#getBuildMemoryMaxImprints()
+ * @see PluginConfig#getBuildMemoryMaxAgeInHours()
+ */
+@Extension
+public class BuildMemoryCleaner extends AsyncPeriodicWork {
+
+    private static final long DEFAULT_RECURRENCE_PERIOD = TimeUnit.MINUTES.toMillis(5);
+    private final long recurrencePeriod;
+
+    /**
+     * Default constructor.
+     */
+    public BuildMemoryCleaner() {
+        super("Gerrit Trigger build memory cleaner");
+        recurrencePeriod = Long.getLong(BuildMemoryCleaner.class.getName() + ".recurrencePeriod",
+                DEFAULT_RECURRENCE_PERIOD);
+    }
+
+    /**
+     * No spam in log file.
+     * @return FINEST level for logging.
+     */
+    @Override
+    protected Level getNormalLoggingLevel() {
+        return Level.FINEST;
+    }
+
+    @Override
+    protected void execute(TaskListener listener) throws IOException, InterruptedException {
+        PluginConfig config = PluginImpl.getPluginConfig_();
+        ToGerritRunListener runListener = ToGerritRunListener.getInstance();
+        if (config == null || runListener == null) {
+            return;
+        }
+        runListener.evict(config.getBuildMemoryMaxImprints(),
+                TimeUnit.HOURS.toMillis(config.getBuildMemoryMaxAgeInHours()));
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return recurrencePeriod;
+    }
+}
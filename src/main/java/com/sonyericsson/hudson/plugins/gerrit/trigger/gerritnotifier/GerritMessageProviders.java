@@ -0,0 +1,542 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2026 the Gerrit Trigger plugin authors.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.sonymobile.tools.gerrit.gerritevents.dto.rest.CommentedFile;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.model.Jenkins;
+import org.acegisecurity.Authentication;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * Collects the messages and file comments of the {@link GerritMessageProvider}s for builds.
+ *
+ * The providers are called concurrently, and each call gets the same time budget from when it starts,
+ * so a slow provider delays a notification by about that budget at most.
+ * A provider that fails or runs out of time adds nothing to the notification,
+ * which is noted in the log of the build.
+ * What the providers returned is kept per build once all of them answered, so notifications that are sent again,
+ * or that are built for both the command and the REST review, don't call the providers again.
+ */
+public final class GerritMessageProviders {
+
+    /**
+     * Set this system property to true to call the providers one at a time on the notifying thread,
+     * without a time budget.
+     */
+    public static final String DISABLED_PROPERTY = GerritMessageProviders.class.getName() + ".disabled";
+
+    private static final Logger logger = LoggerFactory.getLogger(GerritMessageProviders.class);
+    private static final String PROPERTY_PREFIX = GerritMessageProviders.class.getName() + ".";
+    private static final int DEFAULT_THREADS = 4;
+    private static final long DEFAULT_TIMEOUT = TimeUnit.SECONDS.toMillis(10);
+    private static final int CACHE_SIZE = 1000;
+    private static final long CACHE_EXPIRY = 1;
+
+    private static final long TIMEOUT = Math.max(0, Long.getLong(PROPERTY_PREFIX + "timeout", DEFAULT_TIMEOUT));
+    private static final int THREADS = Math.max(1, Integer.getInteger(PROPERTY_PREFIX + "threads", DEFAULT_THREADS));
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(THREADS,
+            new NamingThreadFactory(new DaemonThreadFactory(), "Gerrit message providers"));
+    private static final Cache<Run, Map<Kind, List<Object>>> CACHE = Caffeine.newBuilder()
+            .weakKeys().maximumSize(CACHE_SIZE).expireAfterAccess(CACHE_EXPIRY, TimeUnit.HOURS).build();
+    private static final Function<Run, Map<Kind, List<Object>>> NEW_RESULTS =
+            new Function<Run, Map<Kind, List<Object>>>() {
+                @Override
+                public Map<Kind, List<Object>> apply(Run build) {
+                    return Collections.synchronizedMap(new EnumMap<Kind, List<Object>>(Kind.class));
+                }
+            };
+    private static final ConcurrentMap<String, Timing> TIMINGS = new ConcurrentHashMap<String, Timing>();
+    private static final Object NO_ANSWER = new Object();
+
+    /**
+     * What is asked of the providers.
+     */
+    private enum Kind {
+        /**
+         * {@link GerritMessageProvider#getBuildStartedMessage(Run)}.
+         */
+        STARTED {
+            @Override
+            Object call(GerritMessageProvider provider, Run build) {
+                return provider.getBuildStartedMessage(build);
+            }
+        },
+        /**
+         * {@link GerritMessageProvider#getBuildCompletedMessage(Run)}.
+         */
+        COMPLETED {
+            @Override
+            Object call(GerritMessageProvider provider, Run build) {
+                return provider.getBuildCompletedMessage(build);
+            }
+        },
+        /**
+         * {@link GerritMessageProvider#getFileComments(Run)}.
+         */
+        FILE_COMMENTS {
+            @Override
+            Object call(GerritMessageProvider provider, Run build) {
+                return provider.getFileComments(build);
+            }
+        };
+
+        /**
+         * Asks the provider.
+         *
+         * @param provider the provider.
+         * @param build the build.
+         * @return what the provider returned.
+         */
+        abstract Object call(GerritMessageProvider provider, Run build);
+    }
+
+    /**
+     * Utility class.
+     */
+    private GerritMessageProviders() {
+    }
+
+    /**
+     * The build started messages of the providers for a build.
+     *
+     * @param build the build.
+     * @param listener where to tell about providers that didn't answer, or null.
+     * @return the messages in the order of the providers, without the providers that had none.
+     */
+    public static List<String> getBuildStartedMessages(Run build, TaskListener listener) {
+        return getMessages(collect(Kind.STARTED, Collections.singletonList(build), listener).get(build));
+    }
+
+    /**
+     * The build completed messages of the providers for some builds.
+     * The providers are asked for all the builds at once.
+     *
+     * @param builds the builds.
+     * @param listener where to tell about providers that didn't answer, or null.
+     * @return the messages of each build in the order of the providers,
+     * without the providers that had none.
+     */
+    public static Map<Run, List<String>> getBuildCompletedMessages(Collection<Run> builds, TaskListener listener) {
+        Map<Run, List<String>> messages = new IdentityHashMap<Run, List<String>>();
+        for (Map.Entry<Run, List<Object>> entry : collect(Kind.COMPLETED, builds, listener).entrySet()) {
+            messages.put(entry.getKey(), getMessages(entry.getValue()));
+        }
+        return messages;
+    }
+
+    /**
+     * The file comments of the providers for some builds.
+     * The providers are asked for all the builds at once.
+     *
+     * @param builds the builds.
+     * @param listener where to tell about providers that didn't answer, or null.
+     * @return the comments of each provider in turn, for each of the builds.
+     */
+    public static List<CommentedFile> getFileComments(Collection<Run> builds, TaskListener listener) {
+        Map<Run, List<Object>> results = collect(Kind.FILE_COMMENTS, builds, listener);
+        List<CommentedFile> comments = new ArrayList<CommentedFile>();
+        int providers = 0;
+        for (List<Object> values : results.values()) {
+            providers = Math.max(providers, values.size());
+        }
+        for (int i = 0; i < providers; i++) {
+            for (Run build : builds) {
+                List<Object> values = results.get(build);
+                if (values != null && i < values.size() && values.get(i) != null) {
+                    @SuppressWarnings("unchecked")
+                    Collection<CommentedFile> files = (Collection<CommentedFile>)values.get(i);
+                    comments.addAll(files);
+                }
+            }
+        }
+        return comments;
+    }
+
+    /**
+     * The timings of the providers that have been asked since Jenkins started.
+     *
+     * @return the timings sorted by provider.
+     */
+    public static List<Timing> getTimings() {
+        return new ArrayList<Timing>(new TreeMap<String, Timing>(TIMINGS).values());
+    }
+
+    /**
+     * The messages that the providers returned.
+     *
+     * @param values what the providers returned, or null if nothing.
+     * @return the messages that are not null.
+     */
+    private static List<String> getMessages(List<Object> values) {
+        if (values == null) {
+            return Collections.emptyList();
+        }
+        List<String> messages = new ArrayList<String>(values.size());
+        for (Object value : values) {
+            if (value != null) {
+                messages.add((String)value);
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * Asks all providers about all builds concurrently, unless it has been done before,
+     * and waits for the answers within the time budget.
+     * The answers for a build are only kept if every provider answered.
+     *
+     * @param kind what to ask.
+     * @param builds the builds, nulls are skipped.
+     * @param listener where to tell about providers that didn't answer, or null.
+     * @return what each provider returned for each build, in the order of the providers.
+     */
+    private static Map<Run, List<Object>> collect(Kind kind, Collection<Run> builds, TaskListener listener) {
+        Map<Run, List<Object>> results = new IdentityHashMap<Run, List<Object>>();
+        List<GerritMessageProvider> providers = GerritMessageProvider.all();
+        if (providers == null || providers.isEmpty()) {
+            return results;
+        }
+        Authentication authentication = Jenkins.getAuthentication();
+        Map<Run, List<Call>> pending = new IdentityHashMap<Run, List<Call>>();
+        int calls = 0;
+        for (Run build : builds) {
+            if (build == null || results.containsKey(build) || pending.containsKey(build)) {
+                continue;
+            }
+            List<Object> cached = CACHE.get(build, NEW_RESULTS).get(kind);
+            if (cached != null) {
+                results.put(build, cached);
+            } else {
+                List<Call> futures = new ArrayList<Call>(providers.size());
+                for (GerritMessageProvider provider : providers) {
+                    futures.add(submit(kind, provider, build, authentication));
+                }
+                pending.put(build, futures);
+                calls += futures.size();
+            }
+        }
+
+        // Calls wait in the queue while all threads are busy, but not longer than it takes
+        // to work through the queue with every call running out of time.
+        long budget = TimeUnit.MILLISECONDS.toNanos(TIMEOUT);
+        long deadline = System.nanoTime() + budget * ((calls + THREADS - 1) / THREADS);
+        for (Map.Entry<Run, List<Call>> entry : pending.entrySet()) {
+            Run build = entry.getKey();
+            List<Call> futures = entry.getValue();
+            List<Object> values = new ArrayList<Object>(futures.size());
+            boolean answered = true;
+            for (int i = 0; i < futures.size(); i++) {
+                Object value = await(futures.get(i), providers.get(i), build, budget, deadline, listener);
+                if (value == NO_ANSWER) {
+                    answered = false;
+                    value = null;
+                }
+                values.add(value);
+            }
+            values = Collections.unmodifiableList(values);
+            if (answered && !Thread.currentThread().isInterrupted()) {
+                CACHE.get(build, NEW_RESULTS).put(kind, values);
+            }
+            results.put(build, values);
+        }
+        return results;
+    }
+
+    /**
+     * Starts asking a provider about a build.
+     *
+     * @param kind what to ask.
+     * @param provider the provider.
+     * @param build the build.
+     * @param authentication who to ask as.
+     * @return the answer to come.
+     */
+    private static Call submit(final Kind kind, final GerritMessageProvider provider, final Run build,
+                                         final Authentication authentication) {
+        Callable<Object> call = new Callable<Object>() {
+            @Override
+            public Object call() {
+                try (ACLContext ctx = ACL.as(authentication)) {
+                    return ask(kind, provider, build);
+                }
+            }
+        };
+        Call task = new Call(call);
+        if (Boolean.getBoolean(DISABLED_PROPERTY)) {
+            task.run();
+        } else {
+            EXECUTOR.execute(task);
+        }
+        return task;
+    }
+
+    /**
+     * Asks a provider about a build and records the time it took.
+     *
+     * @param kind what to ask.
+     * @param provider the provider.
+     * @param build the build.
+     * @return what the provider returned.
+     */
+    private static Object ask(Kind kind, GerritMessageProvider provider, Run build) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Object value = kind.call(provider, build);
+            failed = false;
+            return value;
+        } finally {
+            getTiming(provider).record(System.nanoTime() - start, failed);
+        }
+    }
+
+    /**
+     * Waits for the answer of a provider until its time budget is spent,
+     * or until the deadline if it doesn't start before that.
+     *
+     * @param future the answer to come.
+     * @param provider the provider.
+     * @param build the build.
+     * @param budget the nanoseconds the call may take.
+     * @param deadline the {@link System#nanoTime()} to wait until at most.
+     * @param listener where to tell if the provider didn't answer, or null.
+     * @return what the provider returned, or {@link #NO_ANSWER} if it failed or didn't answer in time.
+     */
+    private static Object await(Call future, GerritMessageProvider provider, Run build, long budget,
+                                long deadline, TaskListener listener) {
+        try {
+            while (true) {
+                long now = System.nanoTime();
+                long until = Math.min(deadline, now + budget);
+                if (future.started) {
+                    until = Math.min(deadline, future.startedAt + budget);
+                }
+                try {
+                    return future.get(Math.max(0, until - now), TimeUnit.NANOSECONDS);
+                } catch (TimeoutException e) {
+                    now = System.nanoTime();
+                    if (now - deadline >= 0 || (future.started && now - (future.startedAt + budget) >= 0)) {
+                        future.cancel(true);
+                        getTiming(provider).timedOut();
+                        logger.warn("{} did not answer for {} within {} ms.",
+                                provider.getClass().getName(), build, TIMEOUT);
+                        tell(listener, provider.getClass().getName() + " did not answer within " + TIMEOUT
+                                + " ms, its message is left out.");
+                        return NO_ANSWER;
+                    }
+                }
+            }
+        } catch (ExecutionException e) {
+            logger.warn(provider.getClass().getName() + " failed for " + build, e.getCause());
+            tell(listener, provider.getClass().getName() + " failed, its message is left out: " + e.getCause());
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+        }
+        return NO_ANSWER;
+    }
+
+    /**
+     * Tells the build log about a provider.
+     *
+     * @param listener the listener of the build, or null.
+     * @param message what to tell.
+     */
+    private static void tell(TaskListener listener, String message) {
+        if (listener != null) {
+            listener.getLogger().println(message);
+        }
+    }
+
+    /**
+     * A call to a provider that knows when it started running.
+     */
+    private static final class Call extends FutureTask<Object> {
+
+        private volatile boolean started = false;
+        private volatile long startedAt = 0;
+
+        /**
+         * Constructor.
+         *
+         * @param callable the call.
+         */
+        private Call(Callable<Object> callable) {
+            super(callable);
+        }
+
+        @Override
+        public void run() {
+            startedAt = System.nanoTime();
+            started = true;
+            super.run();
+        }
+    }
+
+    /**
+     * The timing of a provider.
+     *
+     * @param provider the provider.
+     * @return the timing.
+     */
+    private static Timing getTiming(GerritMessageProvider provider) {
+        String name = provider.getClass().getName();
+        Timing timing = TIMINGS.get(name);
+        if (timing == null) {
+            TIMINGS.putIfAbsent(name, new Timing(name));
+            timing = TIMINGS.get(name);
+        }
+        return timing;
+    }
+
+    /**
+     * How long the calls to a provider took.
+     */
+    public static final class Timing {
+
+        private final String name;
+        private long calls = 0;
+        private long failures = 0;
+        private long timeouts = 0;
+        private long totalTime = 0;
+        private long maxTime = 0;
+
+        /**
+         * Constructor.
+         *
+         * @param name the class name of the provider.
+         */
+        private Timing(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Records a call.
+         *
+         * @param nanos the nanoseconds the call took.
+         * @param failed if the call threw an exception.
+         */
+        private synchronized void record(long nanos, boolean failed) {
+            long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+            calls++;
+            totalTime += millis;
+            maxTime = Math.max(maxTime, millis);
+            if (failed) {
+                failures++;
+            }
+        }
+
+        /**
+         * Records that a call was not waited for.
+         */
+        private synchronized void timedOut() {
+            timeouts++;
+        }
+
+        /**
+         * The class name of the provider.
+         *
+         * @return the name.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * The number of calls that have finished.
+         *
+         * @return the count.
+         */
+        public synchronized long getCalls() {
+            return calls;
+        }
+
+        /**
+         * The number of calls that threw an exception.
+         *
+         * @return the count.
+         */
+        public synchronized long getFailures() {
+            return failures;
+        }
+
+        /**
+         * The number of calls that were not waited for since they took longer than the time budget.
+         *
+         * @return the count.
+         */
+        public synchronized long getTimeouts() {
+            return timeouts;
+        }
+
+        /**
+         * The average milliseconds of the finished calls.
+         *
+         * @return the average time.
+         */
+        public synchronized long getAverageTime() {
+            if (calls == 0) {
+                return 0;
+            }
+            return totalTime / calls;
+        }
+
+        /**
+         * The milliseconds of the slowest call.
+         *
+         * @return the max time.
+         */
+        public synchronized long getMaxTime() {
+            return maxTime;
+        }
+    }
+}
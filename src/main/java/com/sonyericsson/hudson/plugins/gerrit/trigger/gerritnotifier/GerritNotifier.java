@@ -37,6 +37,9 @@ import jenkins.model.Jenkins;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Start position that notifies Gerrit of events.
  * @author Robert Sandell &lt;robert.sandell@sonyericsson.com&gt;
@@ -77,11 +80,24 @@ public class GerritNotifier {
      */
     public void buildStarted(Run build, TaskListener taskListener,
             GerritTriggeredEvent event, BuildsStartedStats stats) {
+        buildStarted(Collections.singletonList(build), taskListener, event, stats);
+    }
+
+    /**
+     * Generates one build-started command for several builds and sends it to Gerrit.
+     * @param builds the builds, the last one started last.
+     * @param taskListener the taskListener.
+     * @param event the event.
+     * @param stats the stats.
+     * @see ParameterExpander#getBuildStartedCommand(List, TaskListener, ChangeBasedEvent, BuildsStartedStats)
+     */
+    public void buildStarted(List<Run> builds, TaskListener taskListener,
+            GerritTriggeredEvent event, BuildsStartedStats stats) {
         try {
             /* Without a change, it doesn't make sense to notify gerrit */
             if (event instanceof ChangeBasedEvent) {
                 String command =
-                        parameterExpander.getBuildStartedCommand(build, taskListener, (ChangeBasedEvent)event, stats);
+                        parameterExpander.getBuildStartedCommand(builds, taskListener, (ChangeBasedEvent)event, stats);
                 if (command != null) {
                     if (!command.isEmpty()) {
                         logger.debug("Notifying BuildStarted to gerrit: {}", command);
@@ -0,0 +1,350 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2026 the Gerrit Trigger plugin authors.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * A command or message template parsed into tokens, so that it can be expanded in one pass.
+ *
+ * The template can contain &lt;PARAMETERS&gt; and $ENV_VARS or ${ENV_VARS}, where $$ is a literal $.
+ * Variables are expanded the same way as {@link hudson.EnvVars#expand(String)}
+ * and unknown parameters and variables are left as they are.
+ * A <code>--code-review</code> or <code>--verified</code> option with the value <code>null</code>
+ * or {@link Integer#MAX_VALUE} is left out, since that means that there is nothing to vote.
+ *
+ * @see ParameterExpander
+ */
+final class MessageTemplate {
+
+    /**
+     * The maximum number of compiled templates to keep.
+     */
+    static final int CACHE_SIZE = 1000;
+
+    private static final Cache<String, MessageTemplate> CACHE = Caffeine.newBuilder().maximumSize(CACHE_SIZE).build();
+    private static final String[] VOTE_OPTIONS = {"--code-review ", "--verified "};
+    private static final String NO_VOTE = String.valueOf(Integer.MAX_VALUE);
+    private static final int INITIAL_CAPACITY = 256;
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+    private static final ThreadLocal<StringBuilder> BUILDER = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(INITIAL_CAPACITY);
+        }
+    };
+
+    /**
+     * The kinds of tokens in a template.
+     */
+    private enum Kind {
+        /**
+         * Text as it is.
+         */
+        LITERAL,
+        /**
+         * A &lt;PARAMETER&gt;.
+         */
+        PARAMETER,
+        /**
+         * A vote option followed by a &lt;PARAMETER&gt;.
+         */
+        VOTE,
+        /**
+         * A $VARIABLE or ${VARIABLE}.
+         */
+        VARIABLE,
+        /**
+         * A $$.
+         */
+        ESCAPE
+    }
+
+    private final String template;
+    private final List<Token> tokens = new ArrayList<Token>();
+    private boolean variables = false;
+
+    /**
+     * Parses the template.
+     *
+     * @param template the template.
+     */
+    private MessageTemplate(String template) {
+        this.template = template;
+        StringBuilder literal = new StringBuilder();
+        int length = template.length();
+        int i = 0;
+        while (i < length) {
+            char c = template.charAt(i);
+            int end = -1;
+            if (c == '<') {
+                end = findEnd(template, i + 1, '>', false);
+                if (end >= 0) {
+                    String key = template.substring(i + 1, end);
+                    String option = endingVoteOption(literal);
+                    if (option != null) {
+                        literal.setLength(literal.length() - option.length());
+                        addLiteral(literal);
+                        tokens.add(new Token(Kind.VOTE, option + template.substring(i, end + 1), key, option));
+                    } else {
+                        addLiteral(literal);
+                        tokens.add(new Token(Kind.PARAMETER, template.substring(i, end + 1), key, null));
+                    }
+                    i = end + 1;
+                    continue;
+                }
+            } else if (c == '$' && i + 1 < length) {
+                char next = template.charAt(i + 1);
+                String name = null;
+                if (next == '$') {
+                    end = i + 1;
+                } else if (next == '{') {
+                    end = findEnd(template, i + 2, '}', true);
+                    if (end >= 0) {
+                        name = template.substring(i + 2, end);
+                    }
+                } else if (isNameChar(next, false)) {
+                    end = i + 1;
+                    while (end + 1 < length && isNameChar(template.charAt(end + 1), false)) {
+                        end++;
+                    }
+                    name = template.substring(i + 1, end + 1);
+                }
+                if (end >= 0) {
+                    addLiteral(literal);
+                    if (name == null) {
+                        tokens.add(new Token(Kind.ESCAPE, "$$", null, null));
+                    } else {
+                        tokens.add(new Token(Kind.VARIABLE, template.substring(i, end + 1), name, null));
+                    }
+                    variables = true;
+                    i = end + 1;
+                    continue;
+                }
+            }
+            literal.append(c);
+            i++;
+        }
+        addLiteral(literal);
+    }
+
+    /**
+     * Gets the compiled template, parsing it the first time it is seen.
+     *
+     * @param template the template.
+     * @return the compiled template.
+     */
+    static MessageTemplate compile(String template) {
+        return CACHE.get(template, new Function<String, MessageTemplate>() {
+            @Override
+            public MessageTemplate apply(String t) {
+                return new MessageTemplate(t);
+            }
+        });
+    }
+
+    /**
+     * Expands the template.
+     *
+     * @param parameters the &lt;parameters&gt;.
+     * @param env        the environment variables, or null to leave the variables as they are.
+     * @return the expanded string.
+     */
+    String expand(Map<String, String> parameters, Map<String, String> env) {
+        StringBuilder out = BUILDER.get();
+        out.setLength(0);
+        appendTo(out, parameters, env);
+        String result = out.toString();
+        if (out.capacity() > MAX_RETAINED_CAPACITY) {
+            BUILDER.remove();
+        }
+        return result;
+    }
+
+    /**
+     * Expands the template to the end of a builder.
+     *
+     * @param out        the builder.
+     * @param parameters the &lt;parameters&gt;.
+     * @param env        the environment variables, or null to leave the variables as they are.
+     */
+    void appendTo(StringBuilder out, Map<String, String> parameters, Map<String, String> env) {
+        for (Token token : tokens) {
+            String value;
+            switch (token.kind) {
+                case PARAMETER:
+                    value = parameters.get(token.key);
+                    if (value != null) {
+                        out.append(value);
+                    } else {
+                        out.append(token.text);
+                    }
+                    break;
+                case VOTE:
+                    value = parameters.get(token.key);
+                    if (value == null) {
+                        out.append(token.text);
+                    } else if (!"null".equals(value) && !NO_VOTE.equals(value)) {
+                        out.append(token.option).append(value);
+                    }
+                    break;
+                case VARIABLE:
+                    if (env != null) {
+                        value = env.get(token.key);
+                    } else {
+                        value = null;
+                    }
+                    if (value != null) {
+                        out.append(value);
+                    } else {
+                        out.append(token.text);
+                    }
+                    break;
+                case ESCAPE:
+                    if (env != null) {
+                        out.append('$');
+                    } else {
+                        out.append(token.text);
+                    }
+                    break;
+                default:
+                    out.append(token.text);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * If the template refers to any environment variables.
+     *
+     * @return true if so.
+     */
+    boolean hasVariables() {
+        return variables;
+    }
+
+    /**
+     * The template as it was written.
+     *
+     * @return the template.
+     */
+    String getTemplate() {
+        return template;
+    }
+
+    /**
+     * Adds the collected literal text as a token, without any votes with nothing to vote.
+     *
+     * @param literal the text, it is emptied.
+     */
+    private void addLiteral(StringBuilder literal) {
+        if (literal.length() > 0) {
+            String text = literal.toString();
+            for (String option : VOTE_OPTIONS) {
+                text = text.replace(option + "null", "").replace(option + NO_VOTE, "");
+            }
+            tokens.add(new Token(Kind.LITERAL, text, null, null));
+            literal.setLength(0);
+        }
+    }
+
+    /**
+     * The vote option that the text ends with.
+     *
+     * @param text the text.
+     * @return the option, or null if none.
+     */
+    private static String endingVoteOption(CharSequence text) {
+        for (String option : VOTE_OPTIONS) {
+            int start = text.length() - option.length();
+            if (start >= 0 && option.contentEquals(text.subSequence(start, text.length()))) {
+                return option;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds the end of a parameter or variable name.
+     *
+     * @param template the template.
+     * @param start    the index of the first character of the name.
+     * @param close    the character that ends the name.
+     * @param dots     if the name may contain dots.
+     * @return the index of the closing character, or -1 if there is no valid name.
+     */
+    private static int findEnd(String template, int start, char close, boolean dots) {
+        int i = start;
+        while (i < template.length() && isNameChar(template.charAt(i), dots)) {
+            i++;
+        }
+        if (i > start && i < template.length() && template.charAt(i) == close) {
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * If the character can be part of a parameter or variable name.
+     *
+     * @param c    the character.
+     * @param dots if dots are allowed.
+     * @return true if so.
+     */
+    private static boolean isNameChar(char c, boolean dots) {
+        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '_'
+                || (dots && c == '.');
+    }
+
+    /**
+     * A part of a template.
+     */
+    private static final class Token {
+        private final Kind kind;
+        private final String text;
+        private final String key;
+        private final String option;
+
+        /**
+         * Constructor.
+         *
+         * @param kind   the kind.
+         * @param text   the text as it was written.
+         * @param key    the name of the parameter or variable, if any.
+         * @param option the vote option, if any.
+         */
+        private Token(Kind kind, String text, String key, String option) {
+            this.kind = kind;
+            this.text = text;
+            this.key = key;
+            this.option = option;
+        }
+    }
+}
@@ -36,14 +36,25 @@ import com.sonyericsson.hudson.plugins.gerrit.trigger.config.IGerritHudsonTrigge
 import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.job.ssh.BuildCompletedCommandJob;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.job.rest.BuildCompletedRestCommandJob;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.job.ssh.BuildStartedCommandJob;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.job.ssh.SshSessionPool;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.job.rest.BuildStartedRestCommandJob;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.job.rest.RestNotifier;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.model.BuildMemory;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.model.BuildsStartedStats;
 import hudson.model.Run;
 import hudson.model.TaskListener;
+import jenkins.util.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
 /**
  * A factory for creating notification entities.
  * This factory is mainly created and used to ease unit testing.
@@ -51,8 +62,30 @@ import org.slf4j.LoggerFactory;
  * @author Robert Sandell &lt;robert.sandell@sonyericsson.com&gt;
  */
 public class NotificationFactory {
+    /**
+     * Default number of milliseconds to wait for more builds of the same event to start
+     * before sending one build started notification for all of them.
+     */
+    public static final long DEFAULT_BUILD_STARTED_WINDOW = 2000;
+    /**
+     * System property to set the build started window with, 0 sends a notification for every started build.
+     *
+     * @see #DEFAULT_BUILD_STARTED_WINDOW
+     */
+    public static final String BUILD_STARTED_WINDOW_PROPERTY = NotificationFactory.class.getName()
+            + ".buildStartedWindow";
+    /**
+     * System property that sends every notification when set to true,
+     * also those that are superseded while they are queued.
+     *
+     * @see Supersession
+     */
+    public static final String KEEP_SUPERSEDED_PROPERTY = NotificationFactory.class.getName() + ".keepSuperseded";
     private static final Logger logger = LoggerFactory.getLogger(NotificationFactory.class);
     private static NotificationFactory instance;
+    private final Supersession supersession = new Supersession();
+    private final Map<GerritTriggeredEvent, PendingBuildStarted> pendingBuildStarted =
+            new IdentityHashMap<GerritTriggeredEvent, PendingBuildStarted>();
 
     /**
      * Gets the singleton instance of the NotificationFactory.
@@ -82,6 +115,67 @@ public class NotificationFactory {
         return null;
     }
 
+    /**
+     * The queued notifications per change, to drop those that are superseded before they are sent.
+     *
+     * @return the supersession.
+     */
+    public Supersession getSupersession() {
+        return supersession;
+    }
+
+    /**
+     * Registers a notification that is about to be queued, so that it can be dropped if it is superseded.
+     *
+     * @param serverName the name of the server.
+     * @param event the event of the notification.
+     * @param completed true for a build completed notification.
+     * @return the ticket, or null if the notification should be sent regardless.
+     * @see #KEEP_SUPERSEDED_PROPERTY
+     */
+    private Supersession.Ticket getTicket(String serverName, GerritTriggeredEvent event, boolean completed) {
+        if (Boolean.getBoolean(KEEP_SUPERSEDED_PROPERTY)) {
+            return null;
+        }
+        return supersession.queued(serverName, event, completed);
+    }
+
+    /**
+     * Gets the notifier to post REST reviews to the server with.
+     *
+     * @param serverName the name of the server.
+     * @return the notifier, or null if the reviews should be queued on the send command queue.
+     * @see RestNotifier#isEnabled()
+     */
+    private RestNotifier getRestNotifier(String serverName) {
+        if (!RestNotifier.isEnabled()) {
+            return null;
+        }
+        GerritServer server = PluginImpl.getServer_(serverName);
+        if (server != null) {
+            return server.getRestNotifier();
+        }
+        return null;
+    }
+
+    /**
+     * Gets the pooled SSH sessions to send review commands to the server with.
+     *
+     * @param serverName the name of the server.
+     * @return the pool, or null if every command should open a new session.
+     * @see SshSessionPool#isEnabled()
+     */
+    private SshSessionPool getSshSessionPool(String serverName) {
+        if (!SshSessionPool.isEnabled()) {
+            return null;
+        }
+        GerritServer server = PluginImpl.getServer_(serverName);
+        if (server != null) {
+            return server.getSshSessionPool();
+        }
+        return null;
+    }
+
     /**
      * Factory method for creating a GerritNotifier.
      *
@@ -108,7 +202,7 @@ public class NotificationFactory {
     //CS IGNORE LineLength FOR NEXT 8 LINES. REASON: Javadoc
 
     /**
-     * Queues a build completed command on the send-command queue.
+     * Queues a build completed command on the send-command queue, or the REST notifier of the server.
      *
      * @param memoryImprint the memory of the builds.
      * @param listener      a listener.
@@ -116,15 +210,39 @@ public class NotificationFactory {
      * @see BuildCompletedCommandJob
      */
     public void queueBuildCompleted(BuildMemory.MemoryImprint memoryImprint, TaskListener listener) {
+        if (memoryImprint != null) {
+            PendingBuildStarted pending;
+            synchronized (pendingBuildStarted) {
+                pending = pendingBuildStarted.remove(memoryImprint.getEvent());
+            }
+            if (pending != null) {
+                pending.future.cancel(false);
+                logger.debug("Skipping build started notification of {} builds, the builds are completed: {}",
+                        pending.builds.size(), memoryImprint.getEvent());
+            }
+        }
         String serverName = getServerName(memoryImprint);
         if (serverName != null) {
             IGerritHudsonTriggerConfig config = getConfig(serverName);
             if (config != null) {
+                Supersession.Ticket ticket = getTicket(serverName, memoryImprint.getEvent(), true);
                 if (config.isUseRestApi()
                         && memoryImprint.getEvent() instanceof ChangeBasedEvent) {
-                    GerritSendCommandQueue.queue(new BuildCompletedRestCommandJob(config, memoryImprint, listener));
+                    RestNotifier notifier = getRestNotifier(serverName);
+                    if (notifier != null) {
+                        notifier.queue((ChangeBasedEvent)memoryImprint.getEvent(),
+                                new BuildCompletedRestCommandJob(config, memoryImprint, listener), ticket);
+                    } else {
+                        BuildCompletedRestCommandJob job =
+                                new BuildCompletedRestCommandJob(config, memoryImprint, listener);
+                        job.setTicket(ticket);
+                        GerritSendCommandQueue.queue(job);
+                    }
                 } else {
-                    GerritSendCommandQueue.queue(new BuildCompletedCommandJob(config, memoryImprint, listener));
+                    BuildCompletedCommandJob job = new BuildCompletedCommandJob(config, memoryImprint, listener,
+                            getSshSessionPool(serverName));
+                    job.setTicket(ticket);
+                    GerritSendCommandQueue.queue(job);
                 }
             } else {
                 logger.warn("Nothing queued since there is no configuration for serverName: {}", serverName);
@@ -178,10 +296,13 @@ public class NotificationFactory {
     }
 
 
-    //CS IGNORE LineLength FOR NEXT 10 LINES. REASON: Javadoc
+    //CS IGNORE LineLength FOR NEXT 14 LINES. REASON: Javadoc
 
     /**
      * Queues a build started command on the send-command queue.
+     * Builds of the same event that start within {@link #DEFAULT_BUILD_STARTED_WINDOW} milliseconds of the first
+     * are coalesced into one notification about all of them, with the stats of the last of them.
+     * Nothing is sent if the builds complete before that.
      *
      * @param build    the build.
      * @param listener a listener.
@@ -189,18 +310,88 @@ public class NotificationFactory {
      * @param stats    the started stats.
      * @see GerritSendCommandQueue#queue(com.sonymobile.tools.gerrit.gerritevents.workers.cmd.AbstractSendCommandJob)
      * @see BuildStartedCommandJob
+     * @see #BUILD_STARTED_WINDOW_PROPERTY
      */
     public void queueBuildStarted(Run build, TaskListener listener,
+                                  final GerritTriggeredEvent event, BuildsStartedStats stats) {
+        long window = Long.getLong(BUILD_STARTED_WINDOW_PROPERTY, DEFAULT_BUILD_STARTED_WINDOW);
+        if (window <= 0 || event == null) {
+            sendBuildStarted(Collections.singletonList(build), listener, event, stats);
+            return;
+        }
+        synchronized (pendingBuildStarted) {
+            PendingBuildStarted pending = pendingBuildStarted.get(event);
+            if (pending == null) {
+                pending = new PendingBuildStarted();
+                pendingBuildStarted.put(event, pending);
+                pending.future = Timer.get().schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        flushBuildStarted(event);
+                    }
+                }, window, TimeUnit.MILLISECONDS);
+            }
+            pending.builds.add(build);
+            pending.listener = listener;
+            pending.stats = stats;
+        }
+    }
+
+    /**
+     * Sends the coalesced build started notification for the event, if there is one.
+     *
+     * @param event the event.
+     */
+    void flushBuildStarted(GerritTriggeredEvent event) {
+        PendingBuildStarted pending;
+        synchronized (pendingBuildStarted) {
+            pending = pendingBuildStarted.remove(event);
+        }
+        if (pending != null) {
+            logger.debug("Sending one build started notification for {} builds of {}", pending.builds.size(), event);
+            sendBuildStarted(pending.builds, pending.listener, event, pending.stats);
+        }
+    }
+
+    //CS IGNORE LineLength FOR NEXT 10 LINES. REASON: Javadoc
+
+    /**
+     * Queues a build started command on the send-command queue, or the REST notifier of the server, right away.
+     *
+     * @param builds   the builds, the last one started last.
+     * @param listener a listener.
+     * @param event    the event.
+     * @param stats    the started stats.
+     * @see GerritSendCommandQueue#queue(com.sonymobile.tools.gerrit.gerritevents.workers.cmd.AbstractSendCommandJob)
+     */
+    private void sendBuildStarted(List<Run> builds, TaskListener listener,
                                   GerritTriggeredEvent event, BuildsStartedStats stats) {
+        Run build = builds.get(builds.size() - 1);
         String serverName = getServerName(event);
         if (serverName != null) {
             IGerritHudsonTriggerConfig config = getConfig(serverName);
             if (config != null) {
+                Supersession.Ticket ticket = getTicket(serverName, event, false);
                 if (config.isUseRestApi() && event instanceof ChangeBasedEvent) {
-                    GerritSendCommandQueue.queue(new BuildStartedRestCommandJob(config, build, listener,
-                            (ChangeBasedEvent)event, stats));
+                    RestNotifier notifier = getRestNotifier(serverName);
+                    if (notifier != null) {
+                        BuildStartedRestCommandJob job = new BuildStartedRestCommandJob(config, build,
+                                listener, (ChangeBasedEvent)event, stats);
+                        job.setBuilds(builds);
+                        notifier.queue((ChangeBasedEvent)event, job, ticket);
+                    } else {
+                        BuildStartedRestCommandJob job = new BuildStartedRestCommandJob(config, build, listener,
+                                (ChangeBasedEvent)event, stats);
+                        job.setBuilds(builds);
+                        job.setTicket(ticket);
+                        GerritSendCommandQueue.queue(job);
+                    }
                 } else {
-                    GerritSendCommandQueue.queue(new BuildStartedCommandJob(config, build, listener, event, stats));
+                    BuildStartedCommandJob job = new BuildStartedCommandJob(config, build, listener, event, stats,
+                            getSshSessionPool(serverName));
+                    job.setBuilds(builds);
+                    job.setTicket(ticket);
+                    GerritSendCommandQueue.queue(job);
                 }
             } else {
                 logger.warn("Nothing queued since there is no configuration for serverName: {}", serverName);
@@ -209,4 +400,14 @@ public class NotificationFactory {
             logger.warn("Nothing queued since the event contained no serverName: {}", event);
         }
     }
+
+    /**
+     * The build started notification of an event that waits for more builds to start.
+     */
+    private static class PendingBuildStarted {
+        private final List<Run> builds = new ArrayList<Run>();
+        private TaskListener listener;
+        private BuildsStartedStats stats;
+        private ScheduledFuture<?> future;
+    }
 }
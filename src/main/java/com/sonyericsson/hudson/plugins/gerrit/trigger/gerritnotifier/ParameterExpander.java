@@ -37,14 +37,19 @@ import com.sonymobile.tools.gerrit.gerritevents.dto.events.GerritTriggeredEvent;
 import com.sonymobile.tools.gerrit.gerritevents.dto.rest.Notify;
 
 import edu.umd.cs.findbugs.annotations.CheckForNull;
+import hudson.EnvVars;
 import hudson.model.Result;
 import hudson.model.Run;
 import hudson.model.TaskListener;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
 
 import jenkins.model.Jenkins;
@@ -104,49 +109,63 @@ public class ParameterExpander {
      */
     public String getBuildStartedCommand(Run r, TaskListener taskListener,
             ChangeBasedEvent event, BuildsStartedStats stats) {
+        return getBuildStartedCommand(Collections.singletonList(r), taskListener, event, stats);
+    }
 
-        GerritTrigger trigger = GerritTrigger.getTrigger(r.getParent());
+    /**
+     * Gets the expanded string to send to Gerrit for one build-started notification about several builds.
+     * The last build is the one the command is expanded for, <strong>BUILDURL</strong> lists the URLs of all
+     * the builds, and the start messages of all the builds are added to <strong>STARTED_STATS</strong>.
+     * The votes are the lowest started votes of the builds.
+     * @param builds the builds, the last one started last.
+     * @param taskListener the taskListener.
+     * @param event the event.
+     * @param stats the statistics.
+     * @return the "expanded" command string.
+     */
+    public String getBuildStartedCommand(List<Run> builds, TaskListener taskListener,
+            ChangeBasedEvent event, BuildsStartedStats stats) {
+
+        Run r = builds.get(builds.size() - 1);
         String gerritCmd = config.getGerritCmdBuildStarted();
+        Environments environments = new Environments(taskListener);
         Map<String, String> parameters = createStandardParameters(r, event,
-                getBuildStartedCodeReviewValue(r),
-                getBuildStartedVerifiedValue(r),
+                getBuildStartedCodeReviewValue(builds),
+                getBuildStartedVerifiedValue(builds),
                 Notify.ALL.name());
         StringBuilder startedStats = new StringBuilder();
         if (stats.getTotalBuildsToStart() > 1) {
             startedStats.append(stats.toString());
         }
-        String buildStartMessage = trigger.getBuildStartMessage();
-        if (buildStartMessage != null && !buildStartMessage.isEmpty()) {
-            startedStats.append("\n\n").append(expandParameters(buildStartMessage, r, taskListener, parameters));
-        }
-
-        if (config.isEnablePluginMessages()) {
-            for (GerritMessageProvider messageProvider : emptyIfNull(GerritMessageProvider.all())) {
-                String extensionMessage = messageProvider.getBuildStartedMessage(r);
-                if (extensionMessage != null) {
+        StringBuilder buildUrls = new StringBuilder();
+        for (Run build : builds) {
+            Map<String, String> buildParameters = parameters;
+            if (build != r) {
+                buildParameters = new HashMap<String, String>(parameters);
+                buildParameters.put("BUILDURL", jenkins.getRootUrl() + build.getUrl());
+            }
+            if (buildUrls.length() > 0) {
+                buildUrls.append(' ');
+            }
+            buildUrls.append(buildParameters.get("BUILDURL"));
+            GerritTrigger trigger = GerritTrigger.getTrigger(build.getParent());
+            String buildStartMessage = trigger.getBuildStartMessage();
+            if (buildStartMessage != null && !buildStartMessage.isEmpty()) {
+                startedStats.append("\n\n")
+                        .append(expandParameters(buildStartMessage, build, environments, buildParameters));
+            }
+
+            if (config.isEnablePluginMessages()) {
+                for (String extensionMessage : GerritMessageProviders.getBuildStartedMessages(build, taskListener)) {
                     startedStats.append("\n\n").append(extensionMessage);
                 }
             }
         }
 
+        parameters.put("BUILDURL", buildUrls.toString());
         parameters.put("STARTED_STATS", startedStats.toString());
 
-        return expandParameters(gerritCmd, r, taskListener, parameters);
-    }
-
-    /**
-     * Helper for ensuring no NPEs when iterating iterables.
-     *
-     * @param <T> type
-     * @param iterable the iterable
-     * @return empty if null or the iterable
-     */
-    private static <T> Iterable<T> emptyIfNull(Iterable<T> iterable) {
-        if (iterable == null) {
-            return Collections.<T>emptyList();
-        } else {
-            return iterable;
-        }
+        return expandParameters(gerritCmd, r, environments, parameters);
     }
 
     /**
@@ -173,6 +192,24 @@ public class ParameterExpander {
         }
     }
 
+    /**
+     * Finds the lowest verified vote for build started of the builds.
+     * @param builds the builds.
+     * @return the value, or null if none of the builds has one.
+     * @see #getBuildStartedVerifiedValue(Run)
+     */
+    @CheckForNull
+    public Integer getBuildStartedVerifiedValue(List<Run> builds) {
+        Integer lowest = null;
+        for (Run build : builds) {
+            Integer value = getBuildStartedVerifiedValue(build);
+            if (value != null && (lowest == null || value < lowest)) {
+                lowest = value;
+            }
+        }
+        return lowest;
+    }
+
     /**
      * Finds the code review vote for build started of the specified build.
      * If there is a {@link GerritTrigger} and it has a {@link GerritTrigger#getGerritBuildStartedCodeReviewValue()}
@@ -197,6 +234,24 @@ public class ParameterExpander {
         }
     }
 
+    /**
+     * Finds the lowest code review vote for build started of the builds.
+     * @param builds the builds.
+     * @return the value, or null if none of the builds has one.
+     * @see #getBuildStartedCodeReviewValue(Run)
+     */
+    @CheckForNull
+    public Integer getBuildStartedCodeReviewValue(List<Run> builds) {
+        Integer lowest = null;
+        for (Run build : builds) {
+            Integer value = getBuildStartedCodeReviewValue(build);
+            if (value != null && (lowest == null || value < lowest)) {
+                lowest = value;
+            }
+        }
+        return lowest;
+    }
+
     /**
      * Creates a list of the "standard" trigger parameters.
      * They are present both for build started and completed.
@@ -254,34 +309,30 @@ public class ParameterExpander {
     /**
      * Expands all types of parameters in the string and returns the "replaced" string.
      * Both types means both $ENV_VARS and &lt;PLUGIN_VARS&gt;
+     * The environment of the build is only computed if the template refers to it.
      * @param gerritCommand the command "template"
      * @param r the build containing the environment vars.
-     * @param taskListener the taskListener
+     * @param environments the environments of the builds in this notification.
      * @param parameters the &lt;parameters&gt; from the trigger.
      * @return the expanded string.
+     * @see MessageTemplate
      */
-    private String expandParameters(String gerritCommand, Run r, TaskListener taskListener,
+    private String expandParameters(String gerritCommand, Run r, Environments environments,
             Map<String, String> parameters) {
-        String command = gerritCommand;
-        if (r != null && taskListener != null) {
+        if (gerritCommand == null) {
+            return null;
+        }
+        MessageTemplate template = MessageTemplate.compile(gerritCommand);
+        EnvVars env = null;
+        if (r != null && environments.listener != null && template.hasVariables()) {
             try {
-                command = r.getEnvironment(taskListener).expand(command);
+                env = environments.get(r);
             } catch (Exception ex) {
                 logger.error("Failed to expand env vars into gerrit cmd. Gerrit won't be notified!!", ex);
                 return null;
             }
         }
-
-        for (Map.Entry<String, String> param : parameters.entrySet()) {
-            command = command.replace("<" + param.getKey() + ">", param.getValue());
-        }
-        //replace null and Integer.MAX_VALUE code review value
-        command = command.replace("--code-review null", "");
-        command = command.replace("--code-review " + Integer.MAX_VALUE, "");
-        command = command.replace("--verified null", "");
-        command = command.replace("--verified " + Integer.MAX_VALUE, "");
-
-        return command;
+        return template.expand(parameters, env);
     }
 
     /**
@@ -548,11 +599,12 @@ public class ParameterExpander {
 
         Map<String, String> parameters = createStandardParameters(null, memoryImprint.getEvent(),
                 codeReview, verified, notifyLevel.name());
+        Environments environments = new Environments(listener);
         // escapes ' as '"'"' in order to avoid breaking command line param
         // Details: http://stackoverflow.com/a/26165123/99834
         parameters.put("BUILDS_STATS", createBuildsStats(memoryImprint,
-                                                         listener,
-                                                         parameters).replaceAll("'", "'\"'\"'"));
+                                                         environments,
+                                                         parameters).replace("'", "'\"'\"'"));
 
         Run build = null;
         Entry[] entries = memoryImprint.getEntries();
@@ -560,18 +612,18 @@ public class ParameterExpander {
             build = entries[0].getBuild();
         }
 
-        return expandParameters(command, build, listener, parameters);
+        return expandParameters(command, build, environments, parameters);
     }
 
     /**
      * Creates the BUILD_STATS string to send in a message,
      * it contains the status of every build with its URL.
      * @param memoryImprint the memory of all the builds.
-     * @param listener the taskListener
+     * @param environments the environments of the builds.
      * @param parameters the &lt;parameters&gt; from the trigger.
      * @return the string.
      */
-    private String createBuildsStats(MemoryImprint memoryImprint, TaskListener listener,
+    private String createBuildsStats(MemoryImprint memoryImprint, Environments environments,
             Map<String, String> parameters) {
         StringBuilder str = new StringBuilder("");
         final String rootUrl = jenkins.getRootUrl();
@@ -585,6 +637,17 @@ public class ParameterExpander {
          */
         Arrays.sort(entries, EntryByBuildResultComparator.DESCENDING);
 
+        Map<Run, List<String>> extensionMessages = Collections.emptyMap();
+        if (config.isEnablePluginMessages()) {
+            List<Run> builds = new ArrayList<Run>(entries.length);
+            for (Entry entry : entries) {
+                if (entry != null) {
+                    builds.add(entry.getBuild());
+                }
+            }
+            extensionMessages = GerritMessageProviders.getBuildCompletedMessages(builds, environments.listener);
+        }
+
         // In Gerrit, all lines before the first empty line are used as the summary.
         // For the summary all single linefeeds will be removed (only in Gerrit, not sent mails).
         // Hence, for the multi-builds, we will add a double linefeed before actually listing
@@ -609,9 +672,9 @@ public class ParameterExpander {
                     str.append("\n\n");
 
                     if (entry.getCustomUrl() != null && !entry.getCustomUrl().isEmpty()) {
-                        str.append(expandParameters(entry.getCustomUrl(), build, listener, parameters));
+                        str.append(expandParameters(entry.getCustomUrl(), build, environments, parameters));
                     } else if (trigger.getCustomUrl() != null && !trigger.getCustomUrl().isEmpty()) {
-                        str.append(expandParameters(trigger.getCustomUrl(), build, listener, parameters));
+                        str.append(expandParameters(trigger.getCustomUrl(), build, environments, parameters));
                     } else {
                         str.append(rootUrl).append(build.getUrl());
                     }
@@ -640,7 +703,7 @@ public class ParameterExpander {
                             str.append(" (skipped)");
                         }
                     } else {
-                        str.append(expandParameters(customMessage, build, listener, parameters));
+                        str.append(expandParameters(customMessage, build, environments, parameters));
                     }
 
                     if (res.isWorseThan(Result.SUCCESS)) {
@@ -654,12 +717,10 @@ public class ParameterExpander {
                         }
                     }
 
-                    if (config.isEnablePluginMessages()) {
-                        for (GerritMessageProvider messageProvider : emptyIfNull(GerritMessageProvider.all())) {
-                            String extensionMessage = messageProvider.getBuildCompletedMessage(build);
-                            if (extensionMessage != null) {
-                                str.append("\n\n").append(extensionMessage);
-                            }
+                    List<String> buildMessages = extensionMessages.get(build);
+                    if (buildMessages != null) {
+                        for (String extensionMessage : buildMessages) {
+                            str.append("\n\n").append(extensionMessage);
                         }
                     }
                 }
@@ -694,7 +755,22 @@ public class ParameterExpander {
      */
     public String getBuildStartedMessage(Run build, TaskListener listener, ChangeBasedEvent event,
                                          BuildsStartedStats stats) {
-        String startedCommand = getBuildStartedCommand(build, listener, event, stats);
+        return getBuildStartedMessage(Collections.singletonList(build), listener, event, stats);
+    }
+
+    /**
+     * Returns cover message to be send after several builds have been started.
+     *
+     * @param builds builds, the last one started last
+     * @param listener listener
+     * @param event event
+     * @param stats stats
+     * @return the message for the build started command.
+     * @see #getBuildStartedCommand(List, TaskListener, ChangeBasedEvent, BuildsStartedStats)
+     */
+    public String getBuildStartedMessage(List<Run> builds, TaskListener listener, ChangeBasedEvent event,
+                                         BuildsStartedStats stats) {
+        String startedCommand = getBuildStartedCommand(builds, listener, event, stats);
         return findMessage(startedCommand);
     }
 
@@ -716,6 +792,42 @@ public class ParameterExpander {
         return message;
     }
 
+    /**
+     * The environments of the builds in one notification, each computed at most once.
+     */
+    private static final class Environments {
+        private final TaskListener listener;
+        private final Map<Run, EnvVars> cache = new IdentityHashMap<Run, EnvVars>();
+
+        /**
+         * Constructor.
+         *
+         * @param listener the listener to compute the environments with.
+         */
+        private Environments(TaskListener listener) {
+            this.listener = listener;
+        }
+
+        /**
+         * Gets the environment of the build.
+         *
+         * @param r the build.
+         * @return the environment.
+         * @throws IOException if so.
+         * @throws InterruptedException if so.
+         */
+        private EnvVars get(Run r) throws IOException, InterruptedException {
+            EnvVars env = cache.get(r);
+            if (env == null) {
+                env = r.getEnvironment(listener);
+                if (env != null) {
+                    cache.put(r, env);
+                }
+            }
+            return env;
+        }
+    }
+
     /**
      * Sorts build entries along their results.
      */
@@ -0,0 +1,237 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2026 the Gerrit Trigger plugin authors.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier;
+
+import com.sonymobile.tools.gerrit.gerritevents.dto.events.ChangeBasedEvent;
+import com.sonymobile.tools.gerrit.gerritevents.dto.events.GerritTriggeredEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Keeps track of the queued notifications per change, so that notifications that are superseded
+ * before they are sent can be dropped instead of taking up Gerrit capacity.
+ *
+ * A notification is superseded when a notification for a newer patchset of the same change
+ * was queued after it, or, for a build started notification, when the build completed notification
+ * of the same event was queued after it.
+ * A notification for an old patchset that is queued after the newer ones, like a manual retrigger,
+ * is not superseded by them.
+ *
+ * @see NotificationFactory
+ */
+public class Supersession {
+
+    private static final Logger logger = LoggerFactory.getLogger(Supersession.class);
+
+    private final Map<String, Change> changes = new HashMap<String, Change>();
+    private long sequence = 0;
+    private long droppedCount = 0;
+
+    /**
+     * Registers a notification that is about to be queued.
+     *
+     * @param serverName the name of the server the notification is sent to.
+     * @param event the event of the notification.
+     * @param completed true for a build completed notification, false for a build started notification.
+     * @return the ticket of the notification, or null if the event is not about a patchset.
+     */
+    public synchronized Ticket queued(String serverName, GerritTriggeredEvent event, boolean completed) {
+        if (!(event instanceof ChangeBasedEvent)) {
+            return null;
+        }
+        ChangeBasedEvent changeEvent = (ChangeBasedEvent)event;
+        if (changeEvent.getChange() == null || changeEvent.getPatchSet() == null) {
+            return null;
+        }
+        int patchset;
+        try {
+            patchset = Integer.parseInt(changeEvent.getPatchSet().getNumber());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        String key = serverName + " " + changeEvent.getChange().getNumber();
+        Change change = changes.get(key);
+        if (change == null) {
+            change = new Change();
+            changes.put(key, change);
+        }
+        long seq = ++sequence;
+        if (patchset >= change.newestPatchset) {
+            change.newestPatchset = patchset;
+            change.newestSeq = seq;
+        }
+        if (completed) {
+            change.completed.put(event, seq);
+        }
+        change.pending++;
+        return new Ticket(key, event, patchset, seq, completed);
+    }
+
+    /**
+     * The number of notifications that were dropped since they were superseded.
+     *
+     * @return the count.
+     */
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * The number of changes with queued notifications.
+     *
+     * @return the count.
+     */
+    public synchronized int getChangeCount() {
+        return changes.size();
+    }
+
+    /**
+     * If the notification of the ticket is superseded.
+     *
+     * @param ticket the ticket.
+     * @return true if so.
+     */
+    private synchronized boolean isSuperseded(Ticket ticket) {
+        Change change = changes.get(ticket.key);
+        if (ticket.done || change == null) {
+            return false;
+        }
+        if (change.newestPatchset > ticket.patchset && change.newestSeq > ticket.seq) {
+            return true;
+        }
+        if (!ticket.completed) {
+            Long completedSeq = change.completed.get(ticket.event);
+            return completedSeq != null && completedSeq > ticket.seq;
+        }
+        return false;
+    }
+
+    /**
+     * Forgets the notification of the ticket, and the change when it has no more queued notifications.
+     *
+     * @param ticket the ticket.
+     */
+    private synchronized void done(Ticket ticket) {
+        if (ticket.done) {
+            return;
+        }
+        ticket.done = true;
+        Change change = changes.get(ticket.key);
+        if (change != null) {
+            change.pending--;
+            if (change.pending <= 0) {
+                changes.remove(ticket.key);
+            }
+        }
+    }
+
+    /**
+     * The state of the queued notifications of one change.
+     */
+    private static final class Change {
+        private int newestPatchset = 0;
+        private long newestSeq = 0;
+        private int pending = 0;
+        private final Map<GerritTriggeredEvent, Long> completed = new IdentityHashMap<GerritTriggeredEvent, Long>();
+    }
+
+    /**
+     * A queued notification.
+     */
+    public final class Ticket {
+        private final String key;
+        private final GerritTriggeredEvent event;
+        private final int patchset;
+        private final long seq;
+        private final boolean completed;
+        private boolean done = false;
+
+        /**
+         * Constructor.
+         *
+         * @param key the change.
+         * @param event the event.
+         * @param patchset the patchset number.
+         * @param seq the order the notification was queued in.
+         * @param completed if it is a build completed notification.
+         */
+        private Ticket(String key, GerritTriggeredEvent event, int patchset, long seq, boolean completed) {
+            this.key = key;
+            this.event = event;
+            this.patchset = patchset;
+            this.seq = seq;
+            this.completed = completed;
+        }
+
+        /**
+         * If this is a build completed notification.
+         *
+         * @return true if so.
+         */
+        public boolean isCompleted() {
+            return completed;
+        }
+
+        /**
+         * Drops the notification if it is superseded, which is done before it is sent.
+         *
+         * @return true if the notification is superseded and should not be sent.
+         */
+        public boolean dropIfSuperseded() {
+            synchronized (Supersession.this) {
+                if (!isSuperseded(this)) {
+                    return false;
+                }
+                droppedCount++;
+                done(this);
+            }
+            logger.debug("Dropping the superseded build {} notification of {}",
+                    getKind(), event);
+            return true;
+        }
+
+        /**
+         * Forgets the notification, when it has been sent or given up on.
+         */
+        public void done() {
+            Supersession.this.done(this);
+        }
+
+        /**
+         * What kind of notification this is, for logging.
+         *
+         * @return completed or started.
+         */
+        private String getKind() {
+            if (completed) {
+                return "completed";
+            }
+            return "started";
+        }
+    }
+}
@@ -23,18 +23,25 @@
  */
 package com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier;
 
+import com.sonyericsson.hudson.plugins.gerrit.trigger.dependency.DependencyQueueTaskDispatcher;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.diagnostics.BuildMemoryReport;
 import com.sonymobile.tools.gerrit.gerritevents.dto.events.GerritTriggeredEvent;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.events.lifecycle.GerritEventLifecycle;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.model.BuildMemory;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.model.BuildMemoryJournal;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.model.BuildsStartedStats;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.GerritCause;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.TriggeredBuildRegistry;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.GerritTrigger;
 
 import hudson.EnvVars;
 import hudson.Extension;
 import hudson.ExtensionList;
 import hudson.FilePath;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.init.TermMilestone;
+import hudson.init.Terminator;
 import hudson.model.AbstractBuild;
 import hudson.model.Cause;
 import hudson.model.CauseAction;
@@ -47,10 +54,13 @@ import hudson.model.listeners.RunListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.List;
 
 import jenkins.model.Jenkins;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.DoNotUse;
 
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
@@ -92,6 +102,65 @@ public final class ToGerritRunListener extends RunListener<Run> {
         return listeners.get(0);
     }
 
+    /**
+     * Restores the build memory from its journal and starts journaling.
+     * Events whose builds all completed while Jenkins was down are reported right away.
+     * Journaling can be turned off with the system property
+     * <code>com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.model.BuildMemoryJournal.disabled</code>.
+     */
+    @Initializer(after = InitMilestone.COMPLETED)
+    @Restricted(DoNotUse.class)
+    public static void restoreMemory() {
+        if (Boolean.getBoolean(BuildMemoryJournal.class.getName() + ".disabled")) {
+            logger.info("The build memory journal is disabled.");
+            return;
+        }
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        ToGerritRunListener instance = getInstance();
+        if (jenkins == null || instance == null) {
+            return;
+        }
+        instance.startJournal(new File(jenkins.getRootDir(), BuildMemoryJournal.JOURNAL_FOLDER));
+    }
+
+    /**
+     * Writes what is left of the build memory journal at shutdown.
+     */
+    @Terminator(after = TermMilestone.COMPLETED)
+    @Restricted(DoNotUse.class)
+    public static void closeMemory() {
+        ToGerritRunListener instance = getInstance();
+        if (instance != null) {
+            instance.stopJournal();
+        }
+    }
+
+    /**
+     * Replays the journal in the directory into the memory, reports the events that are done and keeps journaling.
+     *
+     * @param directory the directory of the journal.
+     */
+    synchronized void startJournal(File directory) {
+        BuildMemoryJournal journal = new BuildMemoryJournal(directory, memory);
+        journal.replay();
+        memory.setJournal(journal);
+        for (GerritTriggeredEvent event : memory.reconcileRestored()) {
+            allBuildsCompleted(event, null, TaskListener.NULL);
+        }
+        journal.start();
+    }
+
+    /**
+     * Stops journaling and flushes the journal to disk.
+     */
+    synchronized void stopJournal() {
+        BuildMemoryJournal journal = memory.getJournal();
+        if (journal != null) {
+            memory.setJournal(null);
+            journal.close();
+        }
+    }
+
     /**
      * Records a custom URL for the given build.
      *
@@ -126,6 +195,7 @@ public final class ToGerritRunListener extends RunListener<Run> {
         logger.debug("Completed. Build: {} Cause: {}", r, cause);
         if (cause != null) {
             cleanUpGerritCauses(cause, r);
+            TriggeredBuildRegistry.getInstance().completed(r);
             GerritTriggeredEvent event = cause.getEvent();
             GerritTrigger trigger = GerritTrigger.getTrigger(r.getParent());
             if (trigger != null) {
@@ -161,6 +231,8 @@ public final class ToGerritRunListener extends RunListener<Run> {
                 updateTriggerContexts(r);
                 allBuildsCompleted(event, cause, listener);
             }
+            //Only once the memory has the build as completed, or dependent items would be blocked on it again.
+            DependencyQueueTaskDispatcher.buildStateChanged(event);
         }
     }
 
@@ -200,6 +272,29 @@ public final class ToGerritRunListener extends RunListener<Run> {
         }
     }
 
+    /**
+     * Forgets the events that have been remembered too long, or the oldest ones if there are too many.
+     * Events with builds that are still queued or running are kept.
+     * A vote is sent for the evicted events that have completed builds, the others are only logged.
+     *
+     * @param maxImprints  the maximum number of events to remember.
+     * @param maxAgeMillis the maximum time in milliseconds to remember an event.
+     * @see BuildMemory#evict(int, long)
+     */
+    public synchronized void evict(int maxImprints, long maxAgeMillis) {
+        for (BuildMemory.MemoryImprint imprint : memory.evict(maxImprints, maxAgeMillis)) {
+            GerritTriggeredEvent event = imprint.getEvent();
+            if (imprint.isAllBuildsCompleted() && imprint.getCompletedCount() > imprint.getCancelledCount()) {
+                logger.warn("Evicting {} from the build memory, sending a vote for the completed builds:\n{}",
+                        event, imprint.getStatusReport());
+                NotificationFactory.getInstance().queueBuildCompleted(imprint, TaskListener.NULL);
+            } else {
+                logger.warn("Evicting {} from the build memory, none of its builds completed:\n{}",
+                        event, imprint.getStatusReport());
+            }
+        }
+    }
+
     /**
      * Checks whether a project has triggered for an event but hasn't yet finished building.
      *
@@ -226,6 +321,7 @@ public final class ToGerritRunListener extends RunListener<Run> {
         logger.debug("Started. Build: {} Cause: {}", r, cause);
         if (cause != null) {
             cleanUpGerritCauses(cause, r);
+            TriggeredBuildRegistry.getInstance().started(r);
             setThisBuild(r);
             if (cause.getEvent() != null) {
                 if (cause.getEvent() instanceof GerritEventLifecycle) {
@@ -245,6 +341,7 @@ public final class ToGerritRunListener extends RunListener<Run> {
                     NotificationFactory.getInstance().queueBuildStarted(r, listener, cause.getEvent(), stats);
                 }
             }
+            DependencyQueueTaskDispatcher.buildStateChanged(cause.getEvent());
             logger.info("Gerrit build [{}] Started for cause: [{}].", r, cause);
             logger.info("MemoryStatus:\n{}", memory.getStatusReport(cause.getEvent()));
         }
@@ -331,6 +428,7 @@ public final class ToGerritRunListener extends RunListener<Run> {
     public synchronized void onTriggered(Job project, GerritTriggeredEvent event) {
         //TODO stop builds for earlier patch-sets on same change.
         memory.triggered(event, project);
+        DependencyQueueTaskDispatcher.buildStateChanged(event);
         if (event instanceof GerritEventLifecycle) {
             ((GerritEventLifecycle)event).fireProjectTriggered(project);
         }
@@ -353,6 +451,7 @@ public final class ToGerritRunListener extends RunListener<Run> {
                                            GerritTriggeredEvent event,
                                            List<Run> otherBuilds) {
         memory.retriggered(event, project, otherBuilds);
+        DependencyQueueTaskDispatcher.buildStateChanged(event);
         if (event instanceof GerritEventLifecycle) {
             ((GerritEventLifecycle)event).fireProjectTriggered(project);
         }
@@ -423,6 +522,7 @@ public final class ToGerritRunListener extends RunListener<Run> {
             return;
         } else {
             memory.cancelled(event, project);
+            DependencyQueueTaskDispatcher.buildStateChanged(event);
         }
     }
 
@@ -28,14 +28,16 @@ import com.sonymobile.tools.gerrit.gerritevents.dto.events.ChangeBasedEvent;
 import com.sonymobile.tools.gerrit.gerritevents.workers.rest.AbstractRestCommandJob;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.config.Constants;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.config.IGerritHudsonTriggerConfig;
-import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.GerritMessageProvider;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.GerritMessageProviders;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.ParameterExpander;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.Supersession;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.model.BuildMemory;
 import com.sonymobile.tools.gerrit.gerritevents.dto.rest.CommentedFile;
 import com.sonymobile.tools.gerrit.gerritevents.dto.rest.Notify;
 import com.sonymobile.tools.gerrit.gerritevents.dto.rest.ReviewInput;
 import com.sonymobile.tools.gerrit.gerritevents.dto.rest.ReviewLabel;
 
+import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.security.ACL;
 import hudson.security.ACLContext;
@@ -45,10 +47,11 @@ import java.util.Collection;
 import java.util.List;
 
 /**
-* A job for the {@link com.sonymobile.tools.gerrit.gerritevents.GerritSendCommandQueue} that
+* A job for the {@link com.sonymobile.tools.gerrit.gerritevents.GerritSendCommandQueue}
+* or the {@link RestNotifier} that
 * sends a build completed message.
 */
-public class BuildCompletedRestCommandJob extends AbstractRestCommandJob {
+public class BuildCompletedRestCommandJob extends AbstractRestCommandJob implements RestReviewJob {
 
     private static final String LABEL_CODEREVIEW = "Code-Review";
     private static final String LABEL_VERIFIED   = "Verified";
@@ -57,6 +60,7 @@ public class BuildCompletedRestCommandJob extends AbstractRestCommandJob {
     private final TaskListener listener;
     private final ParameterExpander parameterExpander;
     private final IGerritHudsonTriggerConfig config;
+    private Supersession.Ticket ticket;
 
     /**
      * Constructor.
@@ -75,8 +79,31 @@ public class BuildCompletedRestCommandJob extends AbstractRestCommandJob {
         this.config = config;
     }
 
+    /**
+     * Sets the ticket of the notification, so that it isn't sent if it is superseded before it runs.
+     *
+     * @param ticket the ticket, or null if the notification can't be superseded.
+     */
+    public void setTicket(Supersession.Ticket ticket) {
+        this.ticket = ticket;
+    }
+
+    @Override
+    public void run() {
+        if (ticket != null && ticket.dropIfSuperseded()) {
+            return;
+        }
+        try {
+            super.run();
+        } finally {
+            if (ticket != null) {
+                ticket.done();
+            }
+        }
+    }
+
     @Override
-    protected ReviewInput createReview() {
+    public ReviewInput createReview() {
         try (ACLContext ctx = ACL.as(ACL.SYSTEM)) {
             String message = parameterExpander.getBuildCompletedMessage(memoryImprint, listener);
             Collection<ReviewLabel> scoredLabels = new ArrayList<ReviewLabel>();
@@ -99,20 +126,11 @@ public class BuildCompletedRestCommandJob extends AbstractRestCommandJob {
                 }
             }
             Notify notificationLevel = parameterExpander.getHighestNotificationLevel(memoryImprint, true);
-            List<GerritMessageProvider> gerritMessageProviders = GerritMessageProvider.all();
-            Collection<CommentedFile> commentedFiles = new ArrayList<CommentedFile>();
-            if (gerritMessageProviders != null) {
-                for (GerritMessageProvider gerritMessageProvider : gerritMessageProviders) {
-                    for (BuildMemory.MemoryImprint.Entry e : memoryImprint.getEntries()) {
-                        try {
-                            commentedFiles.addAll(gerritMessageProvider.getFileComments(e.getBuild()));
-                        } catch (Exception ef) {
-                            listener.error(ef.getMessage());
-
-                        }
-                    }
-                }
+            List<Run> builds = new ArrayList<Run>();
+            for (BuildMemory.MemoryImprint.Entry e : memoryImprint.getEntries()) {
+                builds.add(e.getBuild());
             }
+            Collection<CommentedFile> commentedFiles = GerritMessageProviders.getFileComments(builds, listener);
 
             return new ReviewInput(message, scoredLabels, commentedFiles).setNotify(notificationLevel)
                 .setTag(Constants.TAG_VALUE);
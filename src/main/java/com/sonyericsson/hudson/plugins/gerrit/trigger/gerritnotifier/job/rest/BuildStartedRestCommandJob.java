@@ -29,6 +29,7 @@ import com.sonymobile.tools.gerrit.gerritevents.workers.rest.AbstractRestCommand
 import com.sonyericsson.hudson.plugins.gerrit.trigger.config.Constants;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.config.IGerritHudsonTriggerConfig;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.ParameterExpander;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.Supersession;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.model.BuildsStartedStats;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.GerritTrigger;
 import com.sonymobile.tools.gerrit.gerritevents.dto.rest.Notify;
@@ -39,22 +40,27 @@ import hudson.model.TaskListener;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 
 /**
- * A job for the {@link com.sonymobile.tools.gerrit.gerritevents.GerritSendCommandQueue} that
+ * A job for the {@link com.sonymobile.tools.gerrit.gerritevents.GerritSendCommandQueue}
+ * or the {@link RestNotifier} that
  * sends a build started message.
  */
-public class BuildStartedRestCommandJob extends AbstractRestCommandJob {
+public class BuildStartedRestCommandJob extends AbstractRestCommandJob implements RestReviewJob {
 
 
     private static final String LABEL_CODEREVIEW = "Code-Review";
     private static final String LABEL_VERIFIED   = "Verified";
 
     private final Run build;
+    private List<Run> builds;
     private final BuildsStartedStats stats;
     private final TaskListener listener;
     private final ParameterExpander parameterExpander;
     private final IGerritHudsonTriggerConfig config;
+    private Supersession.Ticket ticket;
 
     /**
      * Constructor.
@@ -70,26 +76,60 @@ public class BuildStartedRestCommandJob extends AbstractRestCommandJob {
         //CS IGNORE AvoidInlineConditionals FOR NEXT 1 LINES. REASON: Only more hard to read alternatives apply.
         super(config, (listener != null ? listener.getLogger() : null), event);
         this.build = build;
+        this.builds = Collections.singletonList(build);
         this.stats = stats;
         this.listener = listener;
         this.parameterExpander = new ParameterExpander(config);
         this.config = config;
     }
 
+    /**
+     * Sets the ticket of the notification, so that it isn't sent if it is superseded before it runs.
+     *
+     * @param ticket the ticket, or null if the notification can't be superseded.
+     */
+    public void setTicket(Supersession.Ticket ticket) {
+        this.ticket = ticket;
+    }
+
+    @Override
+    public void run() {
+        if (ticket != null && ticket.dropIfSuperseded()) {
+            return;
+        }
+        try {
+            super.run();
+        } finally {
+            if (ticket != null) {
+                ticket.done();
+            }
+        }
+    }
+
+    /**
+     * Sets all the builds that the notification is about, when several builds are sent as one.
+     * The build given to the constructor should be the last of them.
+     *
+     * @param coalescedBuilds the builds, the last one started last.
+     */
+    public void setBuilds(List<Run> coalescedBuilds) {
+        this.builds = coalescedBuilds;
+    }
+
     /**
      * Review input message.
      *
      * @return ReviewInput
      */
     @Override
-    protected ReviewInput createReview() {
-        String message = parameterExpander.getBuildStartedMessage(build, listener, event, stats);
+    public ReviewInput createReview() {
+        String message = parameterExpander.getBuildStartedMessage(builds, listener, event, stats);
 
         Collection<ReviewLabel> scoredLabels = new ArrayList<ReviewLabel>();
 
         if (event.isScorable()) {
             if (config.isRestCodeReview()) {
-                Integer crValue = parameterExpander.getBuildStartedCodeReviewValue(build);
+                Integer crValue = parameterExpander.getBuildStartedCodeReviewValue(builds);
                 if (crValue != null && crValue != Integer.MAX_VALUE) {
                     scoredLabels.add(new ReviewLabel(
                             LABEL_CODEREVIEW,
@@ -97,7 +137,7 @@ public class BuildStartedRestCommandJob extends AbstractRestCommandJob {
                 }
             }
             if (config.isRestVerified()) {
-                Integer verValue = parameterExpander.getBuildStartedVerifiedValue(build);
+                Integer verValue = parameterExpander.getBuildStartedVerifiedValue(builds);
                 if (verValue != null && verValue != Integer.MAX_VALUE) {
                     scoredLabels.add(new ReviewLabel(
                             LABEL_VERIFIED,
@@ -0,0 +1,718 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2026 the Gerrit Trigger plugin authors.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.job.rest;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.GerritServer;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.Supersession;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.utils.GerritHttpClient;
+import com.sonymobile.tools.gerrit.gerritevents.dto.attr.Change;
+import com.sonymobile.tools.gerrit.gerritevents.dto.events.ChangeBasedEvent;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.util.Timer;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Posts the reviews of {@link RestReviewJob}s to the REST API of one Gerrit server without blocking the caller.
+ *
+ * Reviews are queued and sent by at most <code>maxInFlight</code> concurrent requests,
+ * started no faster than <code>requestsPerSecond</code>.
+ * Posting a review to a revision is idempotent, so requests that fail with a connection error,
+ * a server error or a request to slow down are retried with a jittered exponential backoff.
+ * Build completed reviews are sent before build started reviews, and reviews that are superseded
+ * while they are queued are dropped.
+ * When <code>failureThreshold</code> requests in a row have failed the circuit opens and nothing is sent
+ * for <code>openTime</code> milliseconds, after which one request probes if Gerrit is healthy again.
+ * When the notifier is closed the queued reviews are still sent for up to <code>closeTimeout</code> milliseconds.
+ *
+ * The limits are tuned with the system properties <code>maxInFlight</code>, <code>requestsPerSecond</code>,
+ * <code>maxRetries</code>, <code>retryDelay</code>, <code>maxRetryDelay</code>, <code>failureThreshold</code>,
+ * <code>openTime</code> and <code>closeTimeout</code>, prefixed with the name of this class.
+ * Times are in milliseconds.
+ *
+ * @see GerritServer#getRestNotifier()
+ */
+public class RestNotifier {
+
+    /**
+     * Default maximum number of concurrent requests to the server.
+     */
+    public static final int DEFAULT_MAX_IN_FLIGHT = 4;
+    /**
+     * Default maximum number of requests started per second, 0 or less is unlimited.
+     */
+    public static final int DEFAULT_REQUESTS_PER_SECOND = 10;
+    /**
+     * Default number of times to retry a failed request.
+     */
+    public static final int DEFAULT_MAX_RETRIES = 5;
+    /**
+     * Default milliseconds to wait before the first retry, doubled for every following retry.
+     */
+    public static final long DEFAULT_RETRY_DELAY = TimeUnit.SECONDS.toMillis(1);
+    /**
+     * Default maximum milliseconds to wait before a retry.
+     */
+    public static final long DEFAULT_MAX_RETRY_DELAY = TimeUnit.MINUTES.toMillis(1);
+    /**
+     * Default number of failed requests in a row that opens the circuit.
+     */
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    /**
+     * Default milliseconds to keep the circuit open.
+     */
+    public static final long DEFAULT_OPEN_TIME = TimeUnit.SECONDS.toMillis(30);
+    /**
+     * Default milliseconds to go on sending the queued reviews after the notifier is closed.
+     */
+    public static final long DEFAULT_CLOSE_TIMEOUT = TimeUnit.MINUTES.toMillis(1);
+    /**
+     * System property that sends the REST reviews on the send command queue instead, when set to true.
+     */
+    public static final String DISABLED_PROPERTY = RestNotifier.class.getName() + ".disabled";
+
+    private static final Logger logger = LoggerFactory.getLogger(RestNotifier.class);
+    private static final String PROPERTY_PREFIX = RestNotifier.class.getName() + ".";
+    private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().create();
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+    private static final int MAX_BACKOFF_SHIFT = 20;
+
+    /**
+     * The states of the circuit breaker.
+     */
+    public enum CircuitState {
+        /**
+         * Gerrit is healthy, requests are sent.
+         */
+        CLOSED,
+        /**
+         * Gerrit is unhealthy, nothing is sent.
+         */
+        OPEN,
+        /**
+         * One request is sent to find out if Gerrit is healthy again.
+         */
+        HALF_OPEN
+    }
+
+    private final String name;
+    private final GerritServer server;
+    private final int maxInFlight;
+    private final long permitInterval;
+    private final int maxRetries;
+    private final long retryDelay;
+    private final long maxRetryDelay;
+    private final int failureThreshold;
+    private final long openTime;
+    private final long closeTimeout;
+    private final ExecutorService executor;
+
+    private final Deque<Request> completedQueue = new ArrayDeque<Request>();
+    private final Deque<Request> startedQueue = new ArrayDeque<Request>();
+    private int inFlight = 0;
+    private int waiting = 0;
+    private long nextPermit = System.nanoTime();
+    private boolean dispatchScheduled = false;
+    private CircuitState state = CircuitState.CLOSED;
+    private int consecutiveFailures = 0;
+    private long openUntil = 0;
+    private boolean closed = false;
+    private boolean dropped = false;
+
+    private long sentCount = 0;
+    private long retryCount = 0;
+    private long failedCount = 0;
+    private long latencyCount = 0;
+    private long totalLatency = 0;
+    private long maxLatency = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param server the server to post the reviews to,
+     *               its config and HTTP client are looked up for every request.
+     */
+    public RestNotifier(GerritServer server) {
+        this.server = server;
+        this.name = server.getName();
+        this.maxInFlight = Math.max(1, Integer.getInteger(PROPERTY_PREFIX + "maxInFlight", DEFAULT_MAX_IN_FLIGHT));
+        int requestsPerSecond = Integer.getInteger(PROPERTY_PREFIX + "requestsPerSecond",
+                DEFAULT_REQUESTS_PER_SECOND);
+        if (requestsPerSecond > 0) {
+            this.permitInterval = TimeUnit.SECONDS.toNanos(1) / requestsPerSecond;
+        } else {
+            this.permitInterval = 0;
+        }
+        this.maxRetries = Integer.getInteger(PROPERTY_PREFIX + "maxRetries", DEFAULT_MAX_RETRIES);
+        this.retryDelay = Math.max(1, Long.getLong(PROPERTY_PREFIX + "retryDelay", DEFAULT_RETRY_DELAY));
+        this.maxRetryDelay = Long.getLong(PROPERTY_PREFIX + "maxRetryDelay", DEFAULT_MAX_RETRY_DELAY);
+        this.failureThreshold = Math.max(1, Integer.getInteger(PROPERTY_PREFIX + "failureThreshold",
+                DEFAULT_FAILURE_THRESHOLD));
+        this.openTime = Long.getLong(PROPERTY_PREFIX + "openTime", DEFAULT_OPEN_TIME);
+        this.closeTimeout = Long.getLong(PROPERTY_PREFIX + "closeTimeout", DEFAULT_CLOSE_TIMEOUT);
+        this.executor = Executors.newFixedThreadPool(maxInFlight,
+                new NamingThreadFactory(new DaemonThreadFactory(), "Gerrit REST notifier " + name));
+    }
+
+    /**
+     * If the REST reviews should be sent through a {@link RestNotifier}.
+     *
+     * @return true unless disabled with {@link #DISABLED_PROPERTY}.
+     */
+    public static boolean isEnabled() {
+        return !Boolean.getBoolean(DISABLED_PROPERTY);
+    }
+
+    /**
+     * Queues the review of the job, it is created and posted to the current revision of the event later.
+     *
+     * @param event the event with the revision to review.
+     * @param job   the job creating the review.
+     */
+    public void queue(ChangeBasedEvent event, RestReviewJob job) {
+        queue(event, job, null);
+    }
+
+    /**
+     * Queues the review of the job, it is created and posted to the current revision of the event later,
+     * unless it is superseded before that.
+     * Queued reviews that are superseded by this one are dropped.
+     *
+     * @param event  the event with the revision to review.
+     * @param job    the job creating the review.
+     * @param ticket the ticket of the notification, or null if it can't be superseded.
+     */
+    public void queue(ChangeBasedEvent event, RestReviewJob job, Supersession.Ticket ticket) {
+        synchronized (this) {
+            if (closed) {
+                logger.warn("The REST notifier of {} is closed, dropping the review of {}", name, event);
+                if (ticket != null) {
+                    ticket.done();
+                }
+                return;
+            }
+            Request request = new Request(event, job, ticket);
+            getQueue(request).add(request);
+            if (ticket != null) {
+                dropSuperseded(completedQueue);
+                dropSuperseded(startedQueue);
+            }
+        }
+        dispatch();
+    }
+
+    /**
+     * The queue of a request, build completed reviews have their own queue that is sent first.
+     *
+     * @param request the request.
+     * @return the queue.
+     */
+    private Deque<Request> getQueue(Request request) {
+        if (request.job instanceof BuildCompletedRestCommandJob) {
+            return completedQueue;
+        }
+        return startedQueue;
+    }
+
+    /**
+     * Takes the next request to send, build completed reviews first.
+     *
+     * @return the request, or null if the queues are empty.
+     */
+    private Request poll() {
+        Request request = completedQueue.poll();
+        if (request == null) {
+            request = startedQueue.poll();
+        }
+        return request;
+    }
+
+    /**
+     * Removes the superseded requests from a queue.
+     *
+     * @param requests the queue.
+     */
+    private void dropSuperseded(Deque<Request> requests) {
+        Iterator<Request> iterator = requests.iterator();
+        while (iterator.hasNext()) {
+            Request request = iterator.next();
+            if (request.ticket != null && request.ticket.dropIfSuperseded()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Starts as many queued requests as the in-flight limit, the rate limit and the circuit allows.
+     * Schedules itself to run again when it is held back by time.
+     */
+    private synchronized void dispatch() {
+        while (!dropped && getQueued() > 0 && inFlight < maxInFlight) {
+            long now = System.nanoTime();
+            if (state == CircuitState.OPEN) {
+                if (now - openUntil < 0) {
+                    scheduleDispatch(openUntil - now);
+                    return;
+                }
+                logger.info("Probing if {} is healthy again", name);
+                state = CircuitState.HALF_OPEN;
+            }
+            if (state == CircuitState.HALF_OPEN && inFlight > 0) {
+                return;
+            }
+            if (now - nextPermit < 0) {
+                scheduleDispatch(nextPermit - now);
+                return;
+            }
+            final Request request = poll();
+            if (request.ticket != null && request.ticket.dropIfSuperseded()) {
+                continue;
+            }
+            nextPermit = now + permitInterval;
+            request.attempts++;
+            inFlight++;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    send(request);
+                }
+            });
+        }
+    }
+
+    /**
+     * Runs {@link #dispatch()} later, unless it is already scheduled.
+     *
+     * @param delay nanoseconds to wait.
+     */
+    private synchronized void scheduleDispatch(long delay) {
+        if (dispatchScheduled) {
+            return;
+        }
+        dispatchScheduled = true;
+        Timer.get().schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (RestNotifier.this) {
+                    dispatchScheduled = false;
+                }
+                dispatch();
+            }
+        }, delay, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Posts the review of the request, on one of the sending threads.
+     *
+     * @param request the request.
+     */
+    private void send(Request request) {
+        long start = System.currentTimeMillis();
+        HttpPost post = createPost(request);
+        if (post == null) {
+            completed(request, System.currentTimeMillis() - start, false, false);
+            return;
+        }
+        boolean success = false;
+        boolean retry = false;
+        try {
+            GerritHttpClient client = server.acquireHttpClient();
+            CloseableHttpResponse response;
+            try {
+                response = client.execute(post);
+            } finally {
+                client.release();
+            }
+            try {
+                int status = response.getStatusLine().getStatusCode();
+                if (status < HttpStatus.SC_MULTIPLE_CHOICES) {
+                    success = true;
+                } else if (status >= HttpStatus.SC_INTERNAL_SERVER_ERROR
+                        || status == HttpStatus.SC_REQUEST_TIMEOUT || status == SC_TOO_MANY_REQUESTS) {
+                    retry = true;
+                    logger.warn("{} answered {} to the review of {}", name, response.getStatusLine(), request.event);
+                } else {
+                    logger.error("{} rejected the review of {}: {} {}", name, request.event,
+                            response.getStatusLine(), EntityUtils.toString(response.getEntity()));
+                }
+                EntityUtils.consume(response.getEntity());
+            } finally {
+                response.close();
+            }
+        } catch (IOException e) {
+            retry = true;
+            logger.warn("Could not post the review of {} to {}", request.event, name, e);
+        } catch (RuntimeException e) {
+            retry = true;
+            logger.warn("Could not post the review of {} to {}", request.event, name, e);
+        } finally {
+            completed(request, System.currentTimeMillis() - start, success, retry);
+        }
+    }
+
+    /**
+     * Creates the review of the request the first time it is sent, and the request to post it.
+     * A review that can't be created won't be any better on a retry, so the failure is logged and given up on.
+     *
+     * @param request the request.
+     * @return the post, or null if the review could not be created.
+     */
+    private HttpPost createPost(Request request) {
+        try {
+            if (request.body == null) {
+                request.url = getReviewUrl(server.getConfig().getGerritFrontEndUrl(), request.event);
+                request.body = GSON.toJson(request.job.createReview());
+            }
+            HttpPost post = new HttpPost(request.url);
+            post.setEntity(new StringEntity(request.body, ContentType.APPLICATION_JSON));
+            return post;
+        } catch (UnsupportedEncodingException e) {
+            logger.error("Could not create the review of {}", request.event, e);
+        } catch (RuntimeException e) {
+            logger.error("Could not create the review of {}", request.event, e);
+        }
+        return null;
+    }
+
+    /**
+     * Records the outcome of a request, updates the circuit and retries or starts more requests.
+     *
+     * @param request the request.
+     * @param latency milliseconds the request took.
+     * @param success if Gerrit accepted the review.
+     * @param retry   if the request should be retried.
+     */
+    private synchronized void completed(final Request request, long latency, boolean success, boolean retry) {
+        inFlight--;
+        latencyCount++;
+        totalLatency += latency;
+        maxLatency = Math.max(maxLatency, latency);
+        if (success) {
+            request.done();
+            sentCount++;
+            consecutiveFailures = 0;
+            if (state != CircuitState.CLOSED) {
+                logger.info("{} is healthy again", name);
+                state = CircuitState.CLOSED;
+            }
+        } else if (retry) {
+            consecutiveFailures++;
+            if (state == CircuitState.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+                logger.warn("{} requests to {} failed in a row, pausing for {} ms",
+                        consecutiveFailures, name, openTime);
+                state = CircuitState.OPEN;
+                openUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(openTime);
+            }
+            if (request.attempts <= maxRetries && !dropped) {
+                retryCount++;
+                waiting++;
+                Timer.get().schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        synchronized (RestNotifier.this) {
+                            waiting--;
+                            if (!dropped) {
+                                getQueue(request).addFirst(request);
+                            } else {
+                                request.done();
+                            }
+                        }
+                        dispatch();
+                        shutdownIfDone();
+                    }
+                }, getRetryDelay(request.attempts), TimeUnit.MILLISECONDS);
+            } else {
+                request.done();
+                failedCount++;
+                logger.error("Giving up posting the review of {} to {} after {} attempts",
+                        request.event, name, request.attempts);
+            }
+        } else {
+            request.done();
+            failedCount++;
+        }
+        dispatch();
+        shutdownIfDone();
+    }
+
+    /**
+     * The jittered exponential backoff before the next attempt,
+     * somewhere between half and all of the doubled delay.
+     *
+     * @param attempts the number of attempts so far.
+     * @return milliseconds to wait.
+     */
+    long getRetryDelay(int attempts) {
+        long delay = Math.min(maxRetryDelay, retryDelay << Math.min(attempts - 1, MAX_BACKOFF_SHIFT));
+        long half = Math.max(1, delay / 2);
+        return half + ThreadLocalRandom.current().nextLong(half);
+    }
+
+    /**
+     * The URL to post a review of the current revision of the event to.
+     *
+     * @param frontEndUrl the front end URL of the server.
+     * @param event       the event.
+     * @return the review endpoint.
+     * @throws UnsupportedEncodingException if so.
+     */
+    static String getReviewUrl(String frontEndUrl, ChangeBasedEvent event) throws UnsupportedEncodingException {
+        Change change = event.getChange();
+        StringBuilder url = new StringBuilder(frontEndUrl);
+        if (!frontEndUrl.endsWith("/")) {
+            url.append('/');
+        }
+        url.append("a/changes/").append(encode(change.getProject()))
+                .append('~').append(encode(change.getBranch()))
+                .append('~').append(change.getId())
+                .append("/revisions/").append(event.getPatchSet().getRevision())
+                .append("/review");
+        return url.toString();
+    }
+
+    /**
+     * URL encodes a part of the change id.
+     *
+     * @param part the part.
+     * @return the encoded part.
+     * @throws UnsupportedEncodingException if so.
+     */
+    private static String encode(String part) throws UnsupportedEncodingException {
+        return URLEncoder.encode(part, "UTF-8").replace("+", "%20");
+    }
+
+    /**
+     * Stops taking new reviews. The queued reviews, including those waiting to be retried,
+     * are still sent until the close timeout has passed, after which the rest are dropped.
+     */
+    public void close() {
+        int pending;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            pending = getQueued() + waiting;
+        }
+        if (pending > 0) {
+            logger.info("Sending {} queued reviews to {} before closing", pending, name);
+            Timer.get().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    drop();
+                }
+            }, closeTimeout, TimeUnit.MILLISECONDS);
+        }
+        dispatch();
+        shutdownIfDone();
+    }
+
+    /**
+     * Drops the reviews that are still queued when the close timeout has passed.
+     */
+    private void drop() {
+        int count;
+        synchronized (this) {
+            dropped = true;
+            count = getQueued() + waiting;
+            for (Request request : completedQueue) {
+                request.done();
+            }
+            for (Request request : startedQueue) {
+                request.done();
+            }
+            completedQueue.clear();
+            startedQueue.clear();
+        }
+        if (count > 0) {
+            logger.warn("Dropping {} queued reviews to {}", count, name);
+        }
+        shutdownIfDone();
+    }
+
+    /**
+     * Shuts the sending threads down once the notifier is closed and nothing is left to send.
+     */
+    private synchronized void shutdownIfDone() {
+        if (closed && getQueued() == 0 && waiting == 0 && inFlight == 0 && !executor.isShutdown()) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * The number of reviews waiting to be sent, including those waiting to be retried.
+     *
+     * @return the queue depth.
+     */
+    public synchronized int getQueueDepth() {
+        return getQueued() + waiting;
+    }
+
+    /**
+     * The number of reviews in the queues.
+     *
+     * @return the count.
+     */
+    private int getQueued() {
+        return completedQueue.size() + startedQueue.size();
+    }
+
+    /**
+     * The number of requests currently being sent.
+     *
+     * @return the number of requests in flight.
+     */
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * The number of reviews Gerrit has accepted.
+     *
+     * @return the count.
+     */
+    public synchronized long getSentCount() {
+        return sentCount;
+    }
+
+    /**
+     * The number of retried requests.
+     *
+     * @return the count.
+     */
+    public synchronized long getRetryCount() {
+        return retryCount;
+    }
+
+    /**
+     * The number of reviews that were given up on.
+     *
+     * @return the count.
+     */
+    public synchronized long getFailedCount() {
+        return failedCount;
+    }
+
+    /**
+     * The average number of milliseconds a request has taken.
+     *
+     * @return the average latency.
+     */
+    public synchronized long getAverageLatency() {
+        if (latencyCount == 0) {
+            return 0;
+        }
+        return totalLatency / latencyCount;
+    }
+
+    /**
+     * The longest number of milliseconds a request has taken.
+     *
+     * @return the max latency.
+     */
+    public synchronized long getMaxLatency() {
+        return maxLatency;
+    }
+
+    /**
+     * The state of the circuit breaker.
+     *
+     * @return the state.
+     */
+    public synchronized CircuitState getCircuitState() {
+        return state;
+    }
+
+    /**
+     * The number of requests in a row that have failed.
+     *
+     * @return the count.
+     */
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    /**
+     * The name of the server.
+     *
+     * @return the name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * A review to post.
+     */
+    private static final class Request {
+        private final ChangeBasedEvent event;
+        private final RestReviewJob job;
+        private final Supersession.Ticket ticket;
+        private String url;
+        private String body;
+        private int attempts = 0;
+
+        /**
+         * Constructor.
+         *
+         * @param event the event.
+         * @param job   the job.
+         * @param ticket the ticket of the notification, or null.
+         */
+        private Request(ChangeBasedEvent event, RestReviewJob job, Supersession.Ticket ticket) {
+            this.event = event;
+            this.job = job;
+            this.ticket = ticket;
+        }
+
+        /**
+         * Forgets the ticket, when the review has been sent or given up on.
+         */
+        private void done() {
+            if (ticket != null) {
+                ticket.done();
+            }
+        }
+    }
+}
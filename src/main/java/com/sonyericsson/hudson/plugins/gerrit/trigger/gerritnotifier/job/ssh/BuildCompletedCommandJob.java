@@ -29,6 +29,7 @@ import com.sonymobile.tools.gerrit.gerritevents.workers.cmd.AbstractSendCommandJ
 import com.sonyericsson.hudson.plugins.gerrit.trigger.config.IGerritHudsonTriggerConfig;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.GerritNotifier;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.NotificationFactory;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.Supersession;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.model.BuildMemory;
 
 import hudson.model.TaskListener;
@@ -44,6 +45,8 @@ public class BuildCompletedCommandJob extends AbstractSendCommandJob {
 
     private BuildMemory.MemoryImprint memoryImprint;
     private TaskListener listener;
+    private SshSessionPool sessionPool;
+    private Supersession.Ticket ticket;
 
     /**
      * Standard constructor with all the needed data for the job to perform.
@@ -55,17 +58,62 @@ public class BuildCompletedCommandJob extends AbstractSendCommandJob {
     public BuildCompletedCommandJob(IGerritHudsonTriggerConfig config,
                                     BuildMemory.MemoryImprint memoryImprint,
                                     TaskListener listener) {
+        this(config, memoryImprint, listener, null);
+    }
+
+    /**
+     * Constructor that sends the command on a pooled session.
+     * @param config the config.
+     * @param memoryImprint the memory of the builds.
+     * @param listener a listener.
+     * @param sessionPool the sessions to send the command on, or null to open a new one.
+     */
+    public BuildCompletedCommandJob(IGerritHudsonTriggerConfig config,
+                                    BuildMemory.MemoryImprint memoryImprint,
+                                    TaskListener listener,
+                                    SshSessionPool sessionPool) {
         super(config);
         this.memoryImprint = memoryImprint;
         this.listener = listener;
+        this.sessionPool = sessionPool;
+    }
+
+    /**
+     * Sets the ticket of the notification, so that it isn't sent if it is superseded before it runs.
+     *
+     * @param ticket the ticket, or null if the notification can't be superseded.
+     */
+    public void setTicket(Supersession.Ticket ticket) {
+        this.ticket = ticket;
     }
 
     @Override
     public void run() {
+        if (ticket != null && ticket.dropIfSuperseded()) {
+            return;
+        }
         try (ACLContext ctx = ACL.as(ACL.SYSTEM)) {
             GerritNotifier notifier = NotificationFactory.getInstance()
                 .createGerritNotifier((IGerritHudsonTriggerConfig)getConfig(), this);
             notifier.buildCompleted(memoryImprint, listener);
+        } finally {
+            if (ticket != null) {
+                ticket.done();
+            }
+        }
+    }
+
+    /**
+     * Sends the command on a session from the pool, if there is one.
+     *
+     * @param command the command.
+     * @return true if the command was sent.
+     */
+    @Override
+    public boolean sendCommand(String command) {
+        if (sessionPool != null) {
+            return sessionPool.sendCommand(command);
         }
+        return super.sendCommand(command);
     }
 }
@@ -32,12 +32,16 @@ import com.sonymobile.tools.gerrit.gerritevents.workers.cmd.AbstractSendCommandJ
 import com.sonyericsson.hudson.plugins.gerrit.trigger.config.IGerritHudsonTriggerConfig;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.GerritNotifier;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.NotificationFactory;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.Supersession;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.model.BuildsStartedStats;
 
 import hudson.model.TaskListener;
 import hudson.security.ACL;
 import hudson.security.ACLContext;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * A send-command-job that calculates and sends the build started command.
  *
@@ -45,10 +49,12 @@ import hudson.security.ACLContext;
  */
 public class BuildStartedCommandJob extends AbstractSendCommandJob {
 
-    private Run build;
+    private List<Run> builds;
     private TaskListener taskListener;
     private GerritTriggeredEvent event;
     private BuildsStartedStats stats;
+    private SshSessionPool sessionPool;
+    private Supersession.Ticket ticket;
 
     /**
      * Standard constructor with all the required data for the job.
@@ -63,19 +69,76 @@ public class BuildStartedCommandJob extends AbstractSendCommandJob {
     public BuildStartedCommandJob(IGerritHudsonTriggerConfig config, Run build,
                                   TaskListener taskListener, GerritTriggeredEvent event,
                                   BuildsStartedStats stats) {
+        this(config, build, taskListener, event, stats, null);
+    }
+
+    /**
+     * Constructor that sends the command on a pooled session.
+     *
+     * @param config       the config.
+     * @param build        a build.
+     * @param taskListener a listener.
+     * @param event        the event.
+     * @param stats        the stats.
+     * @param sessionPool  the sessions to send the command on, or null to open a new one.
+     */
+    public BuildStartedCommandJob(IGerritHudsonTriggerConfig config, Run build,
+                                  TaskListener taskListener, GerritTriggeredEvent event,
+                                  BuildsStartedStats stats, SshSessionPool sessionPool) {
         super(config);
-        this.build = build;
+        this.builds = Collections.singletonList(build);
         this.taskListener = taskListener;
         this.event = event;
         this.stats = stats;
+        this.sessionPool = sessionPool;
+    }
+
+    /**
+     * Sets the ticket of the notification, so that it isn't sent if it is superseded before it runs.
+     *
+     * @param ticket the ticket, or null if the notification can't be superseded.
+     */
+    public void setTicket(Supersession.Ticket ticket) {
+        this.ticket = ticket;
     }
 
     @Override
     public void run() {
+        if (ticket != null && ticket.dropIfSuperseded()) {
+            return;
+        }
         try (ACLContext ctx = ACL.as(ACL.SYSTEM)) {
             GerritNotifier notifier = NotificationFactory.getInstance()
                 .createGerritNotifier((IGerritHudsonTriggerConfig)getConfig(), this);
-            notifier.buildStarted(build, taskListener, event, stats);
+            notifier.buildStarted(builds, taskListener, event, stats);
+        } finally {
+            if (ticket != null) {
+                ticket.done();
+            }
+        }
+    }
+
+    /**
+     * Sets all the builds that the notification is about, when several builds are sent as one.
+     * The build given to the constructor should be the last of them.
+     *
+     * @param coalescedBuilds the builds, the last one started last.
+     */
+    public void setBuilds(List<Run> coalescedBuilds) {
+        this.builds = coalescedBuilds;
+    }
+
+    /**
+     * Sends the command on a session from the pool, if there is one.
+     *
+     * @param command the command.
+     * @return true if the command was sent.
+     */
+    @Override
+    public boolean sendCommand(String command) {
+        if (sessionPool != null) {
+            return sessionPool.sendCommand(command);
         }
+        return super.sendCommand(command);
     }
 }
@@ -0,0 +1,465 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2026 the Gerrit Trigger plugin authors.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.job.ssh;
+
+import com.jcraft.jsch.JSchException;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.config.IGerritHudsonTriggerConfig;
+import com.sonymobile.tools.gerrit.gerritevents.ssh.SshConnection;
+import com.sonymobile.tools.gerrit.gerritevents.ssh.SshConnectionFactory;
+import jenkins.util.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A small pool of long lived SSH sessions to one Gerrit server, reused by the review commands.
+ *
+ * At most <code>maxSessions</code> commands run at the same time, others wait up to <code>borrowTimeout</code>
+ * milliseconds for a session. A session is checked to still be connected before it is reused,
+ * and sessions that have been idle for more than <code>idleTimeout</code> milliseconds are disconnected,
+ * before the server or something in between drops them. If a reused session turns out to be dropped
+ * before the command could be sent, the command is sent on a new session instead.
+ * A command that fails after it was sent is not sent again, since Gerrit may already have applied it.
+ *
+ * The pool is tuned with the system properties <code>maxSessions</code>, <code>idleTimeout</code>
+ * and <code>borrowTimeout</code>, prefixed with the name of this class.
+ *
+ * @see com.sonyericsson.hudson.plugins.gerrit.trigger.GerritServer#getSshSessionPool()
+ */
+public class SshSessionPool {
+
+    /**
+     * Default maximum number of sessions to the server.
+     */
+    public static final int DEFAULT_MAX_SESSIONS = 2;
+    /**
+     * Default milliseconds a session may be idle before it is disconnected.
+     */
+    public static final long DEFAULT_IDLE_TIMEOUT = TimeUnit.MINUTES.toMillis(1);
+    /**
+     * Default milliseconds to wait for a free session.
+     */
+    public static final long DEFAULT_BORROW_TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+    /**
+     * System property that opens a new session for every command instead, when set to true.
+     */
+    public static final String DISABLED_PROPERTY = SshSessionPool.class.getName() + ".disabled";
+
+    private static final Logger logger = LoggerFactory.getLogger(SshSessionPool.class);
+    private static final String PROPERTY_PREFIX = SshSessionPool.class.getName() + ".";
+    private static final long MIN_SWEEP_PERIOD = TimeUnit.SECONDS.toMillis(1);
+    private static final int PERCENT = 100;
+    private static final String SESSION_DOWN = "session is down";
+    private static final String CHANNEL_NOT_OPENED = "channel is not opened";
+
+    private final String name;
+    private final IGerritHudsonTriggerConfig config;
+    private final int maxSessions;
+    private final long idleTimeout;
+    private final long borrowTimeout;
+    private final Semaphore permits;
+    private final ScheduledFuture<?> sweeper;
+
+    private final Deque<Session> idle = new ArrayDeque<Session>();
+    private boolean closed = false;
+    private long createdCount = 0;
+    private long reusedCount = 0;
+    private long discardedCount = 0;
+    private long waitCount = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param name   the name of the server.
+     * @param config the config to connect with.
+     */
+    public SshSessionPool(String name, IGerritHudsonTriggerConfig config) {
+        this.name = name;
+        this.config = config;
+        this.maxSessions = Math.max(1, Integer.getInteger(PROPERTY_PREFIX + "maxSessions", DEFAULT_MAX_SESSIONS));
+        this.idleTimeout = Long.getLong(PROPERTY_PREFIX + "idleTimeout", DEFAULT_IDLE_TIMEOUT);
+        this.borrowTimeout = Long.getLong(PROPERTY_PREFIX + "borrowTimeout", DEFAULT_BORROW_TIMEOUT);
+        this.permits = new Semaphore(maxSessions, true);
+        long period = Math.max(MIN_SWEEP_PERIOD, idleTimeout / 2);
+        this.sweeper = Timer.get().scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                sweep();
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * If the review commands should be sent through a {@link SshSessionPool}.
+     *
+     * @return true unless disabled with {@link #DISABLED_PROPERTY}.
+     */
+    public static boolean isEnabled() {
+        return !Boolean.getBoolean(DISABLED_PROPERTY);
+    }
+
+    /**
+     * Sends a command on a pooled session.
+     *
+     * @param command the command.
+     * @return true if the command was sent.
+     * @see com.sonymobile.tools.gerrit.gerritevents.GerritCmdRunner#sendCommand(String)
+     */
+    public boolean sendCommand(String command) {
+        try {
+            String result = executeCommand(command);
+            if (result != null && !result.trim().isEmpty()) {
+                logger.info("Gerrit {} answered: {}", name, result);
+            }
+            return true;
+        } catch (IOException e) {
+            logger.error("Could not run command on {}: {}", name, command, e);
+            return false;
+        } catch (InterruptedException e) {
+            logger.warn("Interrupted while waiting for an SSH session to {}", name);
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Runs a command on a pooled session, waiting for a free one if needed.
+     *
+     * @param command the command.
+     * @return the output of the command.
+     * @throws IOException if the command could not be run.
+     * @throws InterruptedException if interrupted while waiting for a session.
+     */
+    public String executeCommand(String command) throws IOException, InterruptedException {
+        if (!permits.tryAcquire()) {
+            synchronized (this) {
+                waitCount++;
+            }
+            if (!permits.tryAcquire(borrowTimeout, TimeUnit.MILLISECONDS)) {
+                throw new IOException("Timed out waiting for an SSH session to " + name);
+            }
+        }
+        try {
+            Session session = borrow();
+            try {
+                String result = session.connection.executeCommand(command);
+                giveBack(session);
+                return result;
+            } catch (IOException e) {
+                discard(session);
+                if (session.uses == 1 || !isBeforeCommand(e)) {
+                    throw e;
+                }
+                logger.debug("Reused SSH session to {} was dropped, sending on a new session", name, e);
+            } catch (IllegalStateException e) {
+                discard(session);
+                if (session.uses == 1) {
+                    throw e;
+                }
+                logger.debug("Reused SSH session to {} was dropped, sending on a new session", name, e);
+            }
+            session = open();
+            try {
+                String result = session.connection.executeCommand(command);
+                giveBack(session);
+                return result;
+            } catch (IOException e) {
+                discard(session);
+                throw e;
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Tells if a command failed while the channel for it was opened, before the command itself was written.
+     * That is when the session turns out to be down or the server doesn't open the channel.
+     * Any later failure may have happened after Gerrit ran the command.
+     *
+     * @param e the failure.
+     * @return true if the command was not sent.
+     */
+    static boolean isBeforeCommand(IOException e) {
+        Throwable cause = e;
+        while (cause != null) {
+            if (cause instanceof JSchException && cause.getMessage() != null) {
+                String message = cause.getMessage();
+                return message.startsWith(SESSION_DOWN) || message.startsWith(CHANNEL_NOT_OPENED);
+            }
+            cause = cause.getCause();
+        }
+        return false;
+    }
+
+    /**
+     * Takes the most recently used healthy idle session, or opens a new one.
+     *
+     * @return the session.
+     * @throws IOException if a session could not be opened.
+     */
+    private Session borrow() throws IOException {
+        List<Session> stale = new ArrayList<Session>();
+        Session session = null;
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            while (session == null && !idle.isEmpty()) {
+                Session candidate = idle.pollFirst();
+                if (now - candidate.lastUsed < idleTimeout && candidate.connection.isConnected()) {
+                    session = candidate;
+                    reusedCount++;
+                } else {
+                    stale.add(candidate);
+                }
+            }
+        }
+        for (Session s : stale) {
+            discard(s);
+        }
+        if (session == null) {
+            return open();
+        }
+        session.uses++;
+        return session;
+    }
+
+    /**
+     * Opens a new session.
+     *
+     * @return the session.
+     * @throws IOException if it could not be opened.
+     */
+    private Session open() throws IOException {
+        Session session = new Session(connect());
+        session.uses++;
+        synchronized (this) {
+            createdCount++;
+        }
+        logger.debug("Opened SSH session to {}", name);
+        return session;
+    }
+
+    /**
+     * Connects to the server.
+     *
+     * @return the connection.
+     * @throws IOException if so.
+     */
+    protected SshConnection connect() throws IOException {
+        return SshConnectionFactory.getConnection(
+                config.getGerritHostName(),
+                config.getGerritSshPort(),
+                config.getGerritProxy(),
+                config.getGerritAuthentication());
+    }
+
+    /**
+     * Puts a session back in the pool, or disconnects it if the pool is closed.
+     *
+     * @param session the session.
+     */
+    private void giveBack(Session session) {
+        synchronized (this) {
+            if (!closed) {
+                session.lastUsed = System.currentTimeMillis();
+                idle.addFirst(session);
+                return;
+            }
+        }
+        discard(session);
+    }
+
+    /**
+     * Disconnects a session that is not in the pool.
+     *
+     * @param session the session.
+     */
+    private void discard(Session session) {
+        synchronized (this) {
+            discardedCount++;
+        }
+        try {
+            session.connection.disconnect();
+        } catch (RuntimeException e) {
+            logger.debug("Could not disconnect SSH session to {}", name, e);
+        }
+    }
+
+    /**
+     * Disconnects the sessions that have been idle for too long or are no longer connected.
+     */
+    void sweep() {
+        List<Session> stale = new ArrayList<Session>();
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            Iterator<Session> it = idle.iterator();
+            while (it.hasNext()) {
+                Session session = it.next();
+                if (now - session.lastUsed >= idleTimeout || !session.connection.isConnected()) {
+                    it.remove();
+                    stale.add(session);
+                }
+            }
+        }
+        if (!stale.isEmpty()) {
+            logger.debug("Disconnecting {} idle SSH sessions to {}", stale.size(), name);
+        }
+        for (Session session : stale) {
+            discard(session);
+        }
+    }
+
+    /**
+     * Disconnects the idle sessions, sessions in use are disconnected when they are given back.
+     */
+    public void close() {
+        sweeper.cancel(false);
+        List<Session> sessions;
+        synchronized (this) {
+            closed = true;
+            sessions = new ArrayList<Session>(idle);
+            idle.clear();
+        }
+        for (Session session : sessions) {
+            discard(session);
+        }
+    }
+
+    /**
+     * The name of the server.
+     *
+     * @return the name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * The maximum number of sessions.
+     *
+     * @return the pool size.
+     */
+    public int getMaxSessions() {
+        return maxSessions;
+    }
+
+    /**
+     * The number of sessions running a command.
+     *
+     * @return the active count.
+     */
+    public int getActiveCount() {
+        return maxSessions - permits.availablePermits();
+    }
+
+    /**
+     * The number of connected sessions waiting for a command.
+     *
+     * @return the idle count.
+     */
+    public synchronized int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * The number of commands waiting for a session.
+     *
+     * @return the queue length.
+     */
+    public int getWaitingCount() {
+        return permits.getQueueLength();
+    }
+
+    /**
+     * The percentage of the sessions running a command.
+     *
+     * @return the utilization.
+     */
+    public int getUtilization() {
+        return getActiveCount() * PERCENT / maxSessions;
+    }
+
+    /**
+     * The number of sessions opened.
+     *
+     * @return the count.
+     */
+    public synchronized long getCreatedCount() {
+        return createdCount;
+    }
+
+    /**
+     * The number of times an idle session was reused.
+     *
+     * @return the count.
+     */
+    public synchronized long getReusedCount() {
+        return reusedCount;
+    }
+
+    /**
+     * The number of sessions disconnected.
+     *
+     * @return the count.
+     */
+    public synchronized long getDiscardedCount() {
+        return discardedCount;
+    }
+
+    /**
+     * The number of commands that had to wait for a session.
+     *
+     * @return the count.
+     */
+    public synchronized long getWaitCount() {
+        return waitCount;
+    }
+
+    /**
+     * A pooled connection.
+     */
+    private static final class Session {
+        private final SshConnection connection;
+        private long lastUsed;
+        private int uses = 0;
+
+        /**
+         * Constructor.
+         *
+         * @param connection the connection.
+         */
+        private Session(SshConnection connection) {
+            this.connection = connection;
+        }
+    }
+}
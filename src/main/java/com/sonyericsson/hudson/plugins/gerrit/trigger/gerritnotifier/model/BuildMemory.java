@@ -27,13 +27,18 @@ package com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.model;
 import com.infradna.tool.bridge_method_injector.WithBridgeMethods;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.diagnostics.BuildMemoryReport;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.model.BuildMemory.MemoryImprint.Entry;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.model.BuildMemoryJournal.Operation;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.model.BuildMemoryJournal.Record;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.GerritCause;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.GerritTrigger;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.data.TriggerContext;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.utils.StringUtil;
 import com.sonymobile.tools.gerrit.gerritevents.dto.events.GerritTriggeredEvent;
 import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
+import hudson.model.Cause;
 import hudson.model.Job;
+import hudson.model.Queue;
 import hudson.model.Result;
 import hudson.model.Run;
 import jenkins.model.Jenkins;
@@ -44,11 +49,15 @@ import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
-import java.util.Iterator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
 
 import static com.sonyericsson.hudson.plugins.gerrit.trigger.utils.Logic.shouldSkip;
@@ -82,10 +91,27 @@ public class BuildMemory {
         }
     }
 
+    /**
+     * Default maximum number of events to remember.
+     */
+    public static final int DEFAULT_MAX_IMPRINTS = 10000;
+    /**
+     * Default maximum number of hours to remember an event.
+     */
+    public static final int DEFAULT_MAX_AGE_IN_HOURS = 48;
+    private static final char SEPARATOR = '\t';
     private TreeMap<GerritTriggeredEvent, MemoryImprint> memory =
             new TreeMap<GerritTriggeredEvent, MemoryImprint>(
                     new GerritTriggeredEventComparator());
     private static final Logger logger = LoggerFactory.getLogger(BuildMemory.class);
+    /**
+     * Imprints restored from the journal, by {@link StringUtil#getEventIdentity(GerritTriggeredEvent)}.
+     * Builds that are resumed or taken from the queue after a restart carry their own deserialized copy of the event,
+     * so the first time such a copy is seen the imprint is moved over to it.
+     */
+    private final Map<String, MemoryImprint> restored = new HashMap<String, MemoryImprint>();
+    private BuildMemoryJournal journal;
+    private long evictionCount = 0;
 
     /**
      * Gets the memory of a specific event.
@@ -94,7 +120,105 @@ public class BuildMemory {
      * @return the memory.
      */
     public synchronized MemoryImprint getMemoryImprint(GerritTriggeredEvent event) {
-        return memory.get(event);
+        return lookup(event);
+    }
+
+    /**
+     * Sets the journal to record all transitions in.
+     *
+     * @param journal the journal, or null to stop journaling.
+     */
+    public synchronized void setJournal(@CheckForNull BuildMemoryJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * The journal that transitions are recorded in.
+     *
+     * @return the journal, or null if there is none.
+     */
+    @CheckForNull
+    public synchronized BuildMemoryJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Finds the imprint of the event, including imprints restored from the journal for an equal event.
+     *
+     * @param event the event.
+     * @return the imprint or null if there is none.
+     */
+    private MemoryImprint lookup(GerritTriggeredEvent event) {
+        MemoryImprint pb = memory.get(event);
+        if (pb == null && event != null && !restored.isEmpty()) {
+            pb = restored.remove(StringUtil.getEventIdentity(event));
+            if (pb != null) {
+                logger.debug("Moving restored memory of {} to a new copy of the event", event);
+                memory.remove(pb.getEvent());
+                pb.event = event;
+                memory.put(event, pb);
+            }
+        }
+        return pb;
+    }
+
+    /**
+     * Finds the imprint of the event or creates a new one.
+     *
+     * @param event the event.
+     * @return the imprint.
+     */
+    private MemoryImprint remember(GerritTriggeredEvent event) {
+        MemoryImprint pb = lookup(event);
+        if (pb == null) {
+            pb = new MemoryImprint(event);
+            memory.put(event, pb);
+        }
+        return pb;
+    }
+
+    /**
+     * Records a transition in the journal, if there is one.
+     *
+     * @param operation the transition.
+     * @param pb        the imprint.
+     * @param project   the full name of the project.
+     * @param value     the build id, URL or message.
+     */
+    private void journal(Operation operation, MemoryImprint pb, String project, String value) {
+        if (journal != null) {
+            journal.record(new Record(operation, getJournalId(pb), project, value, null));
+        }
+    }
+
+    /**
+     * Records in the journal that a build has completed, followed by its result if it has one.
+     *
+     * @param pb      the imprint.
+     * @param project the full name of the project.
+     * @param build   the build id.
+     * @param result  the result of the build.
+     */
+    private void journalCompleted(MemoryImprint pb, String project, String build, @CheckForNull Result result) {
+        journal(Operation.COMPLETED, pb, project, build);
+        if (result != null) {
+            journal(Operation.RESULT, pb, project, result.toString());
+        }
+    }
+
+    /**
+     * Gets the id that the imprint has in the journal. Imprints without one are given a new id
+     * and their event is recorded.
+     *
+     * @param pb the imprint.
+     * @return the id.
+     */
+    private long getJournalId(MemoryImprint pb) {
+        if (pb.journalId == 0 && journal != null) {
+            pb.journalId = journal.nextId();
+            journal.record(new Record(Operation.EVENT, pb.journalId, null, null, pb.getEvent()));
+        }
+        return pb.journalId;
     }
 
     /**
@@ -104,7 +228,7 @@ public class BuildMemory {
      * @return true if it is so.
      */
     public synchronized boolean isAllBuildsCompleted(GerritTriggeredEvent event) {
-        MemoryImprint pb = memory.get(event);
+        MemoryImprint pb = lookup(event);
         if (pb != null) {
             return pb.isAllBuildsCompleted();
         } else {
@@ -119,7 +243,7 @@ public class BuildMemory {
      * @return the statistics.
      */
     public synchronized BuildsStartedStats getBuildsStartedStats(GerritTriggeredEvent event) {
-        MemoryImprint pb = memory.get(event);
+        MemoryImprint pb = lookup(event);
         if (pb != null) {
             return pb.getBuildsStartedStats();
         } else {
@@ -136,7 +260,7 @@ public class BuildMemory {
      * @see MemoryImprint#getStatusReport()
      */
     public synchronized String getStatusReport(GerritTriggeredEvent event) {
-        MemoryImprint pb = memory.get(event);
+        MemoryImprint pb = lookup(event);
         if (pb != null) {
             return pb.getStatusReport();
         } else {
@@ -151,7 +275,7 @@ public class BuildMemory {
      * @return true if it is so.
      */
     public synchronized boolean isAllBuildsStarted(GerritTriggeredEvent event) {
-        MemoryImprint pb = memory.get(event);
+        MemoryImprint pb = lookup(event);
         if (pb != null) {
             return pb.isAllBuildsSet();
         } else {
@@ -166,13 +290,10 @@ public class BuildMemory {
      * @param build the build.
      */
     public synchronized void completed(GerritTriggeredEvent event, Run build) {
-        MemoryImprint pb = memory.get(event);
-        if (pb == null) {
-            //Shoudn't happen but just in case, keep the memory.
-            pb = new MemoryImprint(event);
-            memory.put(event, pb);
-        }
+        //Shoudn't be new but just in case, keep the memory.
+        MemoryImprint pb = remember(event);
         pb.set(build.getParent(), build, true);
+        journalCompleted(pb, build.getParent().getFullName(), build.getId(), build.getResult());
     }
 
     /**
@@ -182,14 +303,14 @@ public class BuildMemory {
      * @param build the build.
      */
     public synchronized void started(GerritTriggeredEvent event, Run build) {
-        MemoryImprint pb = memory.get(event);
+        MemoryImprint pb = lookup(event);
         if (pb == null) {
             //A build should not start for a job that hasn't been registered. Keep the memory anyway.
-            pb = new MemoryImprint(event);
             logger.warn("Build started without being registered first.");
-            memory.put(event, pb);
+            pb = remember(event);
         }
         pb.set(build.getParent(), build);
+        journal(Operation.STARTED, pb, build.getParent().getFullName(), build.getId());
     }
 
     /**
@@ -199,12 +320,9 @@ public class BuildMemory {
      * @param project the project that was triggered.
      */
     public synchronized void triggered(GerritTriggeredEvent event, Job project) {
-        MemoryImprint pb = memory.get(event);
-        if (pb == null) {
-            pb = new MemoryImprint(event);
-            memory.put(event, pb);
-        }
+        MemoryImprint pb = remember(event);
         pb.set(project);
+        journal(Operation.TRIGGERED, pb, project.getFullName(), null);
     }
 
     /**
@@ -220,18 +338,24 @@ public class BuildMemory {
             GerritTriggeredEvent event,
             Job project,
             List<Run> otherBuilds) {
-        MemoryImprint pb = memory.get(event);
+        MemoryImprint pb = lookup(event);
         if (pb == null) {
-            pb = new MemoryImprint(event);
-            memory.put(event, pb);
+            pb = remember(event);
             if (otherBuilds != null) {
                 //It is a new memory so it wasn't building, let's populate with old build info
                 for (Run build : otherBuilds) {
-                    pb.set(build.getParent(), build, !build.isBuilding());
+                    boolean completed = !build.isBuilding();
+                    pb.set(build.getParent(), build, completed);
+                    if (completed) {
+                        journalCompleted(pb, build.getParent().getFullName(), build.getId(), build.getResult());
+                    } else {
+                        journal(Operation.STARTED, pb, build.getParent().getFullName(), build.getId());
+                    }
                 }
             }
         }
         pb.reset(project);
+        journal(Operation.RETRIGGERED, pb, project.getFullName(), null);
     }
 
     /**
@@ -241,16 +365,11 @@ public class BuildMemory {
      * @param project     the project that has been retriggered.
      */
     public synchronized void cancelled(GerritTriggeredEvent event, Job project) {
-        MemoryImprint pb = memory.get(event);
-        if (pb == null) {
-            //Shoudn't happen but just in case, keep the memory.
-            pb = new MemoryImprint(event);
-            memory.put(event, pb);
-        }
+        //Shoudn't be new but just in case, keep the memory.
+        MemoryImprint pb = remember(event);
         pb.set(project);
-        Entry entry = pb.getEntry(project);
-        entry.setCancelled(true);
-        entry.setBuildCompleted(true);
+        pb.cancel(pb.getEntry(project));
+        journal(Operation.CANCELLED, pb, project.getFullName(), null);
     }
 
 
@@ -260,7 +379,13 @@ public class BuildMemory {
      * @param event the event.
      */
     public synchronized void forget(GerritTriggeredEvent event) {
-        memory.remove(event);
+        MemoryImprint pb = memory.remove(event);
+        if (pb != null) {
+            restored.values().remove(pb);
+            if (pb.journalId != 0) {
+                journal(Operation.FORGET, pb, null, null);
+            }
+        }
     }
 
     /**
@@ -275,7 +400,7 @@ public class BuildMemory {
         MemoryImprint imprint = getMemoryImprint(cause.getEvent());
         TriggerContext context = cause.getContext();
         context.setThisBuild(r);
-        for (MemoryImprint.Entry entry : imprint.getEntries()) {
+        for (MemoryImprint.Entry entry : imprint.entries.values()) {
             Run build = entry.getBuild();
             if (build != null && !build.equals(r)) {
                 context.addOtherBuild(build);
@@ -308,7 +433,7 @@ public class BuildMemory {
             GerritCause cause = (GerritCause)build.getCause(GerritCause.class);
             if (cause != null) {
                 TriggerContext context = cause.getContext();
-                for (MemoryImprint.Entry ent : imprint.getEntries()) {
+                for (MemoryImprint.Entry ent : imprint.entries.values()) {
                     Run entBuild = ent.getBuild();
                     if (entBuild != null && !entBuild.equals(build)) {
                         context.addOtherBuild(entBuild);
@@ -338,17 +463,11 @@ public class BuildMemory {
      * @return true if so.
      */
     public synchronized boolean isTriggered(@NonNull GerritTriggeredEvent event, @NonNull Job project) {
-        MemoryImprint pb = memory.get(event);
+        MemoryImprint pb = lookup(event);
         if (pb == null) {
             return false;
         } else {
-            String fullName = project.getFullName();
-            for (Entry entry : pb.getEntries()) {
-                if (entry.isProject(fullName)) {
-                    return true;
-                }
-            }
-            return false;
+            return pb.getEntry(project.getFullName()) != null;
         }
     }
 
@@ -360,21 +479,18 @@ public class BuildMemory {
      * @return true if so.
      */
     public synchronized boolean isBuilding(GerritTriggeredEvent event, @NonNull Job project) {
-        MemoryImprint pb = memory.get(event);
+        MemoryImprint pb = lookup(event);
         if (pb == null) {
             return false;
         } else {
-            String fullName = project.getFullName();
-            for (Entry entry : pb.getEntries()) {
-                if (entry.isProject(fullName)) {
-                    if (entry.getBuild() != null) {
-                        return !entry.isBuildCompleted();
-                    } else {
-                        return !entry.isCancelled();
-                    }
-                }
+            Entry entry = pb.getEntry(project.getFullName());
+            if (entry == null) {
+                return false;
+            } else if (entry.getBuild() != null) {
+                return !entry.isBuildCompleted();
+            } else {
+                return !entry.isCancelled();
             }
-            return false;
         }
     }
 
@@ -385,7 +501,7 @@ public class BuildMemory {
      * @return true if so.
      */
     public synchronized boolean isBuilding(GerritTriggeredEvent event) {
-        MemoryImprint pb = memory.get(event);
+        MemoryImprint pb = lookup(event);
         return pb != null;
     }
 
@@ -396,12 +512,13 @@ public class BuildMemory {
      * @return the list of builds, or null if there is no memory.
      */
     public synchronized List<Run> getBuilds(GerritTriggeredEvent event) {
-        MemoryImprint pb = memory.get(event);
+        MemoryImprint pb = lookup(event);
         if (pb != null) {
             List<Run> list = new LinkedList<Run>();
-            for (Entry entry : pb.getEntries()) {
-                if (entry.getBuild() != null) {
-                    list.add(entry.getBuild());
+            for (Entry entry : pb.entries.values()) {
+                Run build = entry.getBuild();
+                if (build != null) {
+                    list.add(build);
                 }
             }
             return list;
@@ -417,7 +534,7 @@ public class BuildMemory {
      * @param r         the build that caused the failure.
      * @param customUrl the URL.
      */
-    public void setEntryCustomUrl(GerritTriggeredEvent event, Run r, String customUrl) {
+    public synchronized void setEntryCustomUrl(GerritTriggeredEvent event, Run r, String customUrl) {
         MemoryImprint pb = getMemoryImprint(event);
 
         if (pb != null) {
@@ -426,6 +543,7 @@ public class BuildMemory {
             if (entry != null) {
                 logger.trace("Recording custom URL for {}: {}", event, customUrl);
                 entry.setCustomUrl(customUrl);
+                journal(Operation.CUSTOM_URL, pb, entry.project, customUrl);
             }
         }
     }
@@ -437,7 +555,8 @@ public class BuildMemory {
      * @param r                   the build that caused the failure.
      * @param unsuccessfulMessage the unsuccessful message
      */
-    public void setEntryUnsuccessfulMessage(GerritTriggeredEvent event, Run r, String unsuccessfulMessage) {
+    public synchronized void setEntryUnsuccessfulMessage(GerritTriggeredEvent event, Run r,
+                                                         String unsuccessfulMessage) {
         MemoryImprint pb = getMemoryImprint(event);
 
         if (pb != null) {
@@ -446,6 +565,7 @@ public class BuildMemory {
             if (entry != null) {
                 logger.trace("Recording unsuccessful message for {}: {}", event, unsuccessfulMessage);
                 entry.setUnsuccessfulMessage(unsuccessfulMessage);
+                journal(Operation.UNSUCCESSFUL_MESSAGE, pb, entry.project, unsuccessfulMessage);
             }
         }
     }
@@ -473,6 +593,285 @@ public class BuildMemory {
         for (MemoryImprint memoryImprint : memory.values()) {
             memoryImprint.removeProject(projectFullName);
         }
+        if (journal != null) {
+            journal.record(new Record(Operation.REMOVED, 0, projectFullName, null, null));
+        }
+    }
+
+    /**
+     * Applies a record read from the journal.
+     *
+     * @param record the record.
+     * @param event  the event the record is about, null for {@link Operation#REMOVED}.
+     * @see BuildMemoryJournal#replay()
+     */
+    synchronized void restore(@NonNull Record record, @CheckForNull GerritTriggeredEvent event) {
+        if (record.getOperation() == Operation.REMOVED) {
+            for (MemoryImprint memoryImprint : memory.values()) {
+                memoryImprint.removeProject(record.getProject());
+            }
+            return;
+        } else if (record.getOperation() == Operation.FORGET) {
+            MemoryImprint pb = memory.remove(event);
+            if (pb != null) {
+                restored.values().remove(pb);
+            }
+            return;
+        }
+        MemoryImprint pb = memory.get(event);
+        if (pb == null) {
+            pb = new MemoryImprint(event);
+            pb.journalId = record.getId();
+            memory.put(event, pb);
+            restored.put(StringUtil.getEventIdentity(event), pb);
+        }
+        if (record.getOperation() == Operation.EVENT || record.getProject() == null) {
+            return;
+        }
+        Entry entry = pb.getEntry(record.getProject());
+        if (entry == null) {
+            entry = new Entry(record.getProject());
+            pb.add(entry);
+        }
+        pb.count(entry, -1);
+        switch (record.getOperation()) {
+            case RETRIGGERED:
+                entry.build = null;
+                entry.result = null;
+                entry.setBuildCompleted(false);
+                break;
+            case STARTED:
+                entry.build = record.getValue();
+                entry.startedTimestamp = System.currentTimeMillis();
+                break;
+            case COMPLETED:
+                if (entry.build == null) {
+                    entry.build = record.getValue();
+                }
+                entry.setBuildCompleted(true);
+                break;
+            case RESULT:
+                entry.result = Result.fromString(record.getValue());
+                break;
+            case CANCELLED:
+                entry.setCancelled(true);
+                entry.setBuildCompleted(true);
+                break;
+            case CUSTOM_URL:
+                entry.setCustomUrl(record.getValue());
+                break;
+            case UNSUCCESSFUL_MESSAGE:
+                entry.setUnsuccessfulMessage(record.getValue());
+                break;
+            default:
+                break;
+        }
+        pb.count(entry, 1);
+    }
+
+    /**
+     * Creates the records that rebuild the current memory, for a compacted journal.
+     *
+     * @param toJournal the journal to give ids to imprints that don't have one yet.
+     * @return the records.
+     */
+    synchronized List<Record> snapshot(@NonNull BuildMemoryJournal toJournal) {
+        List<Record> records = new ArrayList<Record>();
+        for (MemoryImprint pb : memory.values()) {
+            if (pb.journalId == 0) {
+                pb.journalId = toJournal.nextId();
+            }
+            long id = pb.journalId;
+            records.add(new Record(Operation.EVENT, id, null, null, pb.getEvent()));
+            for (Entry entry : pb.entries.values()) {
+                records.add(new Record(Operation.TRIGGERED, id, entry.project, null, null));
+                if (entry.build != null) {
+                    records.add(new Record(Operation.STARTED, id, entry.project, entry.build, null));
+                }
+                if (entry.isCancelled()) {
+                    records.add(new Record(Operation.CANCELLED, id, entry.project, null, null));
+                } else if (entry.isBuildCompleted()) {
+                    records.add(new Record(Operation.COMPLETED, id, entry.project, entry.build, null));
+                    if (entry.result != null) {
+                        records.add(new Record(Operation.RESULT, id, entry.project, entry.result.toString(), null));
+                    }
+                }
+                if (entry.getCustomUrl() != null) {
+                    records.add(new Record(Operation.CUSTOM_URL, id, entry.project, entry.getCustomUrl(), null));
+                }
+                if (entry.getUnsuccessfulMessage() != null) {
+                    records.add(new Record(Operation.UNSUCCESSFUL_MESSAGE, id, entry.project,
+                            entry.getUnsuccessfulMessage(), null));
+                }
+            }
+        }
+        return records;
+    }
+
+    /**
+     * The projects that are in the Jenkins queue for a Gerrit event,
+     * as the event identity and the full name of the project separated by {@link #SEPARATOR}.
+     *
+     * @return the queued projects.
+     */
+    @NonNull
+    private static Set<String> getQueuedEntries() {
+        Set<String> queued = new HashSet<String>();
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        if (jenkins == null || jenkins.getQueue() == null) {
+            return queued;
+        }
+        for (Queue.Item item : jenkins.getQueue().getItems()) {
+            if (item.task instanceof Job) {
+                for (Cause cause : item.getCauses()) {
+                    if (cause instanceof GerritCause) {
+                        queued.add(StringUtil.getEventIdentity(((GerritCause)cause).getEvent())
+                                + SEPARATOR + ((Job)item.task).getFullName());
+                    }
+                }
+            }
+        }
+        return queued;
+    }
+
+    /**
+     * Checks if any project of the imprint is still in the queue or building.
+     *
+     * @param pb     the imprint.
+     * @param queued the queued projects, from {@link #getQueuedEntries()}.
+     * @return true if so.
+     */
+    private static boolean isActive(MemoryImprint pb, Set<String> queued) {
+        String identity = StringUtil.getEventIdentity(pb.getEvent());
+        for (Entry entry : pb.entries.values()) {
+            if (entry.isBuildCompleted()) {
+                continue;
+            }
+            if (entry.build != null) {
+                Run build = entry.getBuild();
+                if (build != null && build.isBuilding()) {
+                    return true;
+                }
+            } else if (!entry.isCancelled() && queued.contains(identity + SEPARATOR + entry.project)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Brings a memory restored from the journal up to date with what happened while Jenkins was down.
+     * Builds that are no longer building are completed, and projects whose builds or queue items are gone are
+     * cancelled, so that the vote for those events can be sent.
+     *
+     * @return the events that have all their builds completed.
+     */
+    @NonNull
+    public synchronized List<GerritTriggeredEvent> reconcileRestored() {
+        Set<String> queued = getQueuedEntries();
+        List<GerritTriggeredEvent> done = new LinkedList<GerritTriggeredEvent>();
+        for (MemoryImprint pb : memory.values()) {
+            String identity = StringUtil.getEventIdentity(pb.getEvent());
+            for (Entry entry : pb.entries.values()) {
+                if (entry.isBuildCompleted()) {
+                    continue;
+                }
+                if (entry.build != null) {
+                    Run build = entry.getBuild();
+                    if (build == null) {
+                        logger.warn("Build {} of {} is gone, cancelling it for {}",
+                                entry.build, entry.project, pb.getEvent());
+                        pb.cancel(entry);
+                        journal(Operation.CANCELLED, pb, entry.project, null);
+                    } else if (!build.isBuilding()) {
+                        pb.complete(entry, build.getResult());
+                        journalCompleted(pb, entry.project, entry.build, entry.result);
+                    }
+                } else if (!entry.isCancelled() && !queued.contains(identity + SEPARATOR + entry.project)) {
+                    logger.warn("{} is no longer queued, cancelling it for {}", entry.project, pb.getEvent());
+                    pb.cancel(entry);
+                    journal(Operation.CANCELLED, pb, entry.project, null);
+                }
+            }
+            if (pb.isAllBuildsCompleted()) {
+                done.add(pb.getEvent());
+            }
+        }
+        return done;
+    }
+
+    /**
+     * Removes the imprints that are older than the maximum age, and then the oldest ones
+     * until no more than the maximum number remain.
+     * Imprints with builds that are still in the queue or running are never removed, however old they are,
+     * since a build completing after its imprint is gone would be voted on without the other builds of the event.
+     * So there can be more imprints left than the maximum number.
+     * Entries of evicted imprints are completed as far as Jenkins knows: builds that are done are completed
+     * and projects whose builds or queue items are gone are cancelled.
+     *
+     * @param maxImprints  the maximum number of imprints to keep.
+     * @param maxAgeMillis the maximum time in milliseconds to keep an imprint.
+     * @return the evicted imprints.
+     */
+    @NonNull
+    public synchronized List<MemoryImprint> evict(int maxImprints, long maxAgeMillis) {
+        List<MemoryImprint> evicted = new LinkedList<MemoryImprint>();
+        if (memory.isEmpty()) {
+            return evicted;
+        }
+        List<MemoryImprint> byAge = new ArrayList<MemoryImprint>(memory.values());
+        Collections.sort(byAge, new Comparator<MemoryImprint>() {
+            @Override
+            public int compare(MemoryImprint a, MemoryImprint b) {
+                return Long.compare(a.getCreatedTimestamp(), b.getCreatedTimestamp());
+            }
+        });
+        Set<String> queued = getQueuedEntries();
+        long oldest = System.currentTimeMillis() - maxAgeMillis;
+        int remaining = byAge.size();
+        for (MemoryImprint pb : byAge) {
+            if (remaining <= maxImprints && pb.getCreatedTimestamp() >= oldest) {
+                break;
+            }
+            if (isActive(pb, queued)) {
+                continue;
+            }
+            String identity = StringUtil.getEventIdentity(pb.getEvent());
+            for (Entry entry : pb.entries.values()) {
+                if (entry.isBuildCompleted()) {
+                    continue;
+                }
+                if (entry.build != null) {
+                    Run build = entry.getBuild();
+                    if (build == null) {
+                        pb.cancel(entry);
+                    } else if (!build.isBuilding()) {
+                        pb.complete(entry, build.getResult());
+                    }
+                } else if (!entry.isCancelled() && !queued.contains(identity + SEPARATOR + entry.project)) {
+                    pb.cancel(entry);
+                }
+            }
+            memory.remove(pb.getEvent());
+            restored.values().remove(pb);
+            if (pb.journalId != 0) {
+                journal(Operation.FORGET, pb, null, null);
+            }
+            evictionCount++;
+            remaining--;
+            evicted.add(pb);
+        }
+        return evicted;
+    }
+
+    /**
+     * The number of imprints that have been evicted since Jenkins started.
+     *
+     * @return the number of evictions.
+     * @see #evict(int, long)
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
     }
 
     /**
@@ -485,11 +884,13 @@ public class BuildMemory {
         BuildMemoryReport report = new BuildMemoryReport();
         for (Map.Entry<GerritTriggeredEvent, MemoryImprint> entry : memory.entrySet()) {
             List<Entry> triggered = new LinkedList<Entry>();
-            for (Entry tr : entry.getValue().list) {
+            for (Entry tr : entry.getValue().entries.values()) {
                 triggered.add(tr.clone());
             }
             report.put(entry.getKey(), triggered);
+            report.setCreatedTimestamp(entry.getKey(), entry.getValue().getCreatedTimestamp());
         }
+        report.setEvictionCount(evictionCount);
         return report;
     }
 
@@ -499,7 +900,16 @@ public class BuildMemory {
     public static class MemoryImprint {
 
         private GerritTriggeredEvent event;
-        private List<Entry> list = new ArrayList<Entry>();
+        /**
+         * The entries by project full name, in the order they were triggered.
+         */
+        private Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+        private int started = 0;
+        private int completed = 0;
+        private int cancelled = 0;
+        private Map<Result, Integer> results = new HashMap<Result, Integer>();
+        private long journalId = 0;
+        private final long createdTimestamp = System.currentTimeMillis();
 
         /**
          * Constructor.
@@ -530,13 +940,120 @@ public class BuildMemory {
             return event;
         }
 
+        /**
+         * The timestamp when this imprint was created, i.e. when the event was first triggered.
+         *
+         * @return the timestamp.
+         */
+        public long getCreatedTimestamp() {
+            return createdTimestamp;
+        }
+
         /**
          * A list of Project-Build tuple entries.
          *
          * @return the memory entries.
          */
         public synchronized Entry[] getEntries() {
-            return list.toArray(new Entry[list.size()]);
+            return entries.values().toArray(new Entry[entries.size()]);
+        }
+
+        /**
+         * The number of entries that have a build.
+         *
+         * @return the number of started builds.
+         */
+        public synchronized int getStartedCount() {
+            return started;
+        }
+
+        /**
+         * The number of entries that are completed, including cancelled ones.
+         *
+         * @return the number of completed entries.
+         */
+        public synchronized int getCompletedCount() {
+            return completed;
+        }
+
+        /**
+         * The number of entries that were cancelled before they started.
+         *
+         * @return the number of cancelled entries.
+         */
+        public synchronized int getCancelledCount() {
+            return cancelled;
+        }
+
+        /**
+         * The number of completed builds that had the given result when they completed.
+         *
+         * @param result the result.
+         * @return the number of builds.
+         */
+        public synchronized int getResultCount(Result result) {
+            Integer count = results.get(result);
+            if (count == null) {
+                return 0;
+            }
+            return count;
+        }
+
+        /**
+         * Adds a new entry and counts it.
+         *
+         * @param entry the entry.
+         */
+        private void add(Entry entry) {
+            entries.put(entry.project, entry);
+            count(entry, 1);
+        }
+
+        /**
+         * Adds or removes what the entry contributes to the counters.
+         * Call with -1 before an entry is changed and with 1 after it.
+         *
+         * @param entry the entry.
+         * @param delta 1 to add the entry, -1 to remove it.
+         */
+        private void count(Entry entry, int delta) {
+            if (entry.build != null) {
+                started += delta;
+            }
+            if (entry.cancelled) {
+                cancelled += delta;
+            }
+            if (entry.buildCompleted) {
+                completed += delta;
+                if (entry.result != null) {
+                    results.put(entry.result, getResultCount(entry.result) + delta);
+                }
+            }
+        }
+
+        /**
+         * Marks the entry as cancelled and completed.
+         *
+         * @param entry the entry.
+         */
+        private synchronized void cancel(Entry entry) {
+            count(entry, -1);
+            entry.setCancelled(true);
+            entry.setBuildCompleted(true);
+            count(entry, 1);
+        }
+
+        /**
+         * Marks the entry as completed.
+         *
+         * @param entry  the entry.
+         * @param result the result of the build.
+         */
+        private synchronized void complete(Entry entry, Result result) {
+            count(entry, -1);
+            entry.setBuildCompleted(true);
+            entry.result = result;
+            count(entry, 1);
         }
 
         /**
@@ -548,10 +1065,11 @@ public class BuildMemory {
         protected synchronized void set(Job project, Run build) {
             Entry entry = getEntry(project);
             if (entry == null) {
-                entry = new Entry(project, build);
-                list.add(entry);
+                add(new Entry(project, build));
             } else {
+                count(entry, -1);
                 entry.setBuild(build);
+                count(entry, 1);
             }
         }
 
@@ -561,10 +1079,8 @@ public class BuildMemory {
          * @param project the project.
          */
         protected synchronized void set(Job project) {
-            Entry entry = getEntry(project);
-            if (entry == null) {
-                entry = new Entry(project);
-                list.add(entry);
+            if (getEntry(project) == null) {
+                add(new Entry(project));
             }
         }
 
@@ -577,11 +1093,13 @@ public class BuildMemory {
         protected synchronized void reset(Job project) {
             Entry entry = getEntry(project);
             if (entry == null) {
-                entry = new Entry(project);
-                list.add(entry);
+                add(new Entry(project));
             } else {
+                count(entry, -1);
                 entry.setBuild(null);
                 entry.setBuildCompleted(false);
+                entry.result = null;
+                count(entry, 1);
             }
         }
 
@@ -590,12 +1108,9 @@ public class BuildMemory {
          * @param project the project to removeProject.
          */
         private synchronized void removeProject(String project) {
-            Iterator<Entry> iterator = list.iterator();
-            while (iterator.hasNext()) {
-                Entry entry = iterator.next();
-                if (entry.isProject(project)) {
-                    iterator.remove();
-                }
+            Entry entry = entries.remove(project);
+            if (entry != null) {
+                count(entry, -1);
             }
         }
 
@@ -610,13 +1125,22 @@ public class BuildMemory {
             Entry entry = getEntry(project);
             if (entry == null) {
                 entry = new Entry(project, build);
-                entry.setBuildCompleted(buildCompleted);
-                list.add(entry);
             } else {
-                if (entry.getBuild() == null) {
+                count(entry, -1);
+                if (entry.build == null) {
                     entry.setBuild(build);
                 }
-                entry.setBuildCompleted(buildCompleted);
+            }
+            entry.setBuildCompleted(buildCompleted);
+            if (buildCompleted) {
+                entry.result = build.getResult();
+            } else {
+                entry.result = null;
+            }
+            if (entries.containsKey(entry.project)) {
+                count(entry, 1);
+            } else {
+                add(entry);
             }
         }
 
@@ -626,12 +1150,7 @@ public class BuildMemory {
          * @return true if it is so.
          */
         public synchronized boolean isAllBuildsSet() {
-            for (Entry entry : list) {
-                if (entry.getBuild() == null) {
-                    return false;
-                }
-            }
-            return true;
+            return started == entries.size();
         }
 
         /**
@@ -640,12 +1159,7 @@ public class BuildMemory {
          * @return true if it is so.
          */
         public synchronized boolean isAllBuildsCompleted() {
-            for (Entry entry : list) {
-                if (!entry.isBuildCompleted()) {
-                    return false;
-                }
-            }
-            return true;
+            return completed == entries.size();
         }
 
         /**
@@ -655,7 +1169,7 @@ public class BuildMemory {
          */
         public synchronized String getStatusReport() {
             StringBuilder str = new StringBuilder("");
-            for (Entry entry : list) {
+            for (Entry entry : entries.values()) {
                 if (entry == null) {
                     continue;
                 }
@@ -680,18 +1194,23 @@ public class BuildMemory {
         }
 
         /**
-         * Searches the internal list for an entry with the specified project.
+         * Finds the entry of the specified project.
          *
          * @param project the project.
          * @return the entry or null if nothing is found.
          */
         private Entry getEntry(@NonNull Job project) {
-            for (Entry entry : list) {
-                if (entry != null && project.equals(entry.getProject())) {
-                    return entry;
-                }
-            }
-            return null;
+            return entries.get(project.getFullName());
+        }
+
+        /**
+         * Finds the entry with the specified project name.
+         *
+         * @param projectFullName the full name of the project.
+         * @return the entry or null if nothing is found.
+         */
+        private Entry getEntry(@NonNull String projectFullName) {
+            return entries.get(projectFullName);
         }
 
         /**
@@ -700,13 +1219,7 @@ public class BuildMemory {
          * @return the stats.
          */
         public synchronized BuildsStartedStats getBuildsStartedStats() {
-            int started = 0;
-            for (Entry entry : list) {
-                if (entry.getBuild() != null) {
-                    started++;
-                }
-            }
-            return new BuildsStartedStats(event, list.size(), started);
+            return new BuildsStartedStats(event, entries.size(), started);
         }
 
         /**
@@ -716,7 +1229,7 @@ public class BuildMemory {
          * @see #wereAllBuildsSuccessful()
          */
         public synchronized boolean areAllBuildResultsSkipped() {
-            for (Entry entry : list) {
+            for (Entry entry : entries.values()) {
                 if (entry == null) {
                     continue;
                 }
@@ -743,7 +1256,7 @@ public class BuildMemory {
          */
         public synchronized boolean wereAllBuildsSuccessful() {
             if (areAllBuildResultsSkipped()) {
-                for (Entry entry : list) {
+                for (Entry entry : entries.values()) {
                     if (entry == null) {
                         continue;
                     }
@@ -759,7 +1272,7 @@ public class BuildMemory {
                     }
                 }
             } else {
-                for (Entry entry : list) {
+                for (Entry entry : entries.values()) {
                     if (entry == null) {
                         continue;
                     }
@@ -787,7 +1300,7 @@ public class BuildMemory {
          * @return true if it is so.
          */
         public synchronized boolean wereAnyBuildsFailed() {
-            for (Entry entry : list) {
+            for (Entry entry : entries.values()) {
                 if (entry == null) {
                     continue;
                 }
@@ -806,7 +1319,7 @@ public class BuildMemory {
          * @return true if it is so.
          */
         public synchronized boolean wereAnyBuildsUnstable() {
-            for (Entry entry : list) {
+            for (Entry entry : entries.values()) {
                 if (entry == null) {
                     continue;
                 }
@@ -826,7 +1339,7 @@ public class BuildMemory {
          *         than {@link Result#NOT_BUILT}.
          */
         public synchronized boolean wereAllBuildsNotBuilt() {
-            for (Entry entry : list) {
+            for (Entry entry : entries.values()) {
                 if (entry == null) {
                     continue;
                 }
@@ -853,7 +1366,7 @@ public class BuildMemory {
          * @return true if it is so.
          */
         public synchronized boolean wereAnyBuildsAborted() {
-            for (Entry entry : list) {
+            for (Entry entry : entries.values()) {
                 if (entry == null) {
                     continue;
                 }
@@ -879,6 +1392,7 @@ public class BuildMemory {
             private boolean cancelled;
             private String customUrl;
             private String unsuccessfulMessage;
+            private Result result;
             private final long triggeredTimestamp;
             private Long completedTimestamp = null;
             private Long startedTimestamp = null;
@@ -909,6 +1423,18 @@ public class BuildMemory {
                 this.triggeredTimestamp = System.currentTimeMillis();
             }
 
+            /**
+             * Constructor for an entry restored from the journal.
+             *
+             * @param projectFullName the full name of the project.
+             */
+            private Entry(String projectFullName) {
+                this.project = projectFullName;
+                buildCompleted = false;
+                cancelled = false;
+                this.triggeredTimestamp = System.currentTimeMillis();
+            }
+
             /**
              * Constructor to create a copy of with the contents of an existing Entry.
              *
@@ -925,6 +1451,7 @@ public class BuildMemory {
                 this.startedTimestamp = copy.startedTimestamp;
                 this.customUrl = copy.customUrl;
                 this.cancelled = copy.cancelled;
+                this.result = copy.result;
             }
 
             @Override
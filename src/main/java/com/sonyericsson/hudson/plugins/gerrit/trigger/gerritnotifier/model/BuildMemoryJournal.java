@@ -0,0 +1,625 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2026 the Gerrit Trigger plugin authors.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.model;
+
+import com.sonymobile.tools.gerrit.gerritevents.dto.events.GerritTriggeredEvent;
+import jenkins.model.Jenkins;
+import jenkins.util.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An append-only journal of the transitions in a {@link BuildMemory}, so that the memory survives a restart or crash.
+ *
+ * Recording a transition only puts it on an in-memory queue. A periodic task writes the queued records to disk in
+ * batches with one fsync per batch, so the build completion path never waits for the disk. When enough records
+ * have been written the journal is compacted into a snapshot of the current memory. At startup the snapshot and
+ * the journal written after it are replayed to rebuild the memory.
+ *
+ * @see BuildMemory#setJournal(BuildMemoryJournal)
+ */
+public class BuildMemoryJournal {
+
+    /**
+     * The folder in the Jenkins root directory where the journal is kept.
+     */
+    public static final String JOURNAL_FOLDER = "gerrit-trigger-build-memory";
+    /**
+     * Default number of milliseconds between each write of queued records.
+     */
+    public static final long DEFAULT_FLUSH_INTERVAL = 1000;
+    /**
+     * Default number of written records before the journal is compacted into a snapshot.
+     */
+    public static final int DEFAULT_COMPACTION_THRESHOLD = 10000;
+    /**
+     * The name of the snapshot file.
+     */
+    static final String SNAPSHOT_FILE = "snapshot.log";
+
+    private static final Logger logger = LoggerFactory.getLogger(BuildMemoryJournal.class);
+    private static final String JOURNAL_FILE_PREFIX = "journal-";
+    private static final String JOURNAL_FILE_SUFFIX = ".log";
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final String GENERATION = "G";
+    private static final String NULL_VALUE = "-";
+    private static final char SEPARATOR = '\t';
+    private static final int FIELDS = 4;
+
+    private final File directory;
+    private final BuildMemory memory;
+    private final long flushInterval;
+    private final int compactionThreshold;
+    private final Queue<Record> pending = new ConcurrentLinkedQueue<Record>();
+    private final AtomicLong lastId = new AtomicLong();
+    private long generation = 0;
+    private int recordsSinceCompaction = 0;
+    private FileOutputStream journalStream;
+    private Writer journalWriter;
+    private ScheduledFuture<?> task;
+
+    /**
+     * Constructor.
+     * The flush interval and compaction threshold can be changed with the system properties
+     * <code>BuildMemoryJournal.flushInterval</code> and <code>BuildMemoryJournal.compactionThreshold</code>
+     * prefixed with the package name.
+     *
+     * @param directory the directory to keep the journal in.
+     * @param memory    the memory to journal.
+     */
+    public BuildMemoryJournal(@NonNull File directory, @NonNull BuildMemory memory) {
+        this(directory, memory,
+                Long.getLong(BuildMemoryJournal.class.getName() + ".flushInterval", DEFAULT_FLUSH_INTERVAL),
+                Integer.getInteger(BuildMemoryJournal.class.getName() + ".compactionThreshold",
+                        DEFAULT_COMPACTION_THRESHOLD));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param directory           the directory to keep the journal in.
+     * @param memory              the memory to journal.
+     * @param flushInterval       milliseconds between each write of queued records.
+     * @param compactionThreshold number of written records before the journal is compacted.
+     */
+    public BuildMemoryJournal(@NonNull File directory, @NonNull BuildMemory memory,
+                              long flushInterval, int compactionThreshold) {
+        this.directory = directory;
+        this.memory = memory;
+        this.flushInterval = flushInterval;
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    /**
+     * The directory the journal is kept in.
+     *
+     * @return the directory.
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Number of records waiting to be written to disk.
+     *
+     * @return the number of records.
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Queues a record to be written with the next batch.
+     *
+     * @param record the record.
+     */
+    void record(@NonNull Record record) {
+        pending.add(record);
+    }
+
+    /**
+     * Gives out a new id to identify an event with in the journal.
+     *
+     * @return the id.
+     */
+    long nextId() {
+        return lastId.incrementAndGet();
+    }
+
+    /**
+     * Reads the snapshot and the journal written after it from disk and applies them to the memory.
+     * Should be done before the journal is attached to the memory.
+     */
+    public synchronized void replay() {
+        Map<Long, GerritTriggeredEvent> events = new HashMap<Long, GerritTriggeredEvent>();
+        File snapshot = new File(directory, SNAPSHOT_FILE);
+        generation = 0;
+        if (snapshot.isFile()) {
+            read(snapshot, events);
+        }
+        File journal = getJournalFile(generation);
+        if (journal.isFile()) {
+            read(journal, events);
+        }
+        logger.info("Restored {} events from the build memory journal in {}", events.size(), directory);
+    }
+
+    /**
+     * Compacts what has been replayed into a new snapshot and starts writing queued records periodically.
+     */
+    public synchronized void start() {
+        if (task != null) {
+            return;
+        }
+        try {
+            compact();
+        } catch (IOException e) {
+            logger.error("Could not write the build memory snapshot to {}", directory, e);
+        }
+        task = Timer.get().scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes all queued records to disk and compacts the journal if it has grown large enough.
+     */
+    public synchronized void flush() {
+        try {
+            List<Record> batch = new ArrayList<Record>();
+            drainTo(batch);
+            if (!batch.isEmpty()) {
+                append(batch);
+            }
+            if (recordsSinceCompaction >= compactionThreshold) {
+                compact();
+            }
+        } catch (IOException e) {
+            logger.error("Could not write the build memory journal to {}", directory, e);
+            //The memory still has everything, so make sure the next attempt writes it all in a snapshot.
+            recordsSinceCompaction = compactionThreshold;
+        }
+    }
+
+    /**
+     * Stops the periodic writes, writes what is queued and closes the journal.
+     */
+    public synchronized void close() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+        flush();
+        closeJournal();
+    }
+
+    /**
+     * Moves all queued records into the list.
+     *
+     * @param list the list to add to.
+     */
+    private void drainTo(List<Record> list) {
+        Record record = pending.poll();
+        while (record != null) {
+            list.add(record);
+            record = pending.poll();
+        }
+    }
+
+    /**
+     * Appends the records to the current journal file and syncs it to disk.
+     *
+     * @param records the records.
+     * @throws IOException if so.
+     */
+    private void append(List<Record> records) throws IOException {
+        if (journalWriter == null) {
+            openJournal();
+        }
+        for (Record record : records) {
+            write(journalWriter, record);
+        }
+        journalWriter.flush();
+        journalStream.getFD().sync();
+        recordsSinceCompaction += records.size();
+    }
+
+    /**
+     * Writes a snapshot of the current memory and starts a new journal file after it.
+     * Records queued before the snapshot was taken are first appended to the old journal file,
+     * so a crash at any point leaves either the old snapshot and journal or the new snapshot on disk.
+     *
+     * @throws IOException if so.
+     */
+    private void compact() throws IOException {
+        List<Record> tail = new ArrayList<Record>();
+        List<Record> snapshot;
+        synchronized (memory) {
+            drainTo(tail);
+            snapshot = memory.snapshot(this);
+        }
+        if (!tail.isEmpty()) {
+            append(tail);
+        }
+        long nextGeneration = generation + 1;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        File tmp = new File(directory, SNAPSHOT_FILE + TMP_SUFFIX);
+        FileOutputStream out = new FileOutputStream(tmp);
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+            writer.write(GENERATION + SEPARATOR + nextGeneration + "\n");
+            for (Record record : snapshot) {
+                write(writer, record);
+            }
+            writer.flush();
+            out.getFD().sync();
+        }
+        Files.move(tmp.toPath(), new File(directory, SNAPSHOT_FILE).toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        closeJournal();
+        generation = nextGeneration;
+        openJournal();
+        recordsSinceCompaction = 0;
+        File[] files = directory.listFiles();
+        if (files != null) {
+            File current = getJournalFile(generation);
+            for (File file : files) {
+                if (file.getName().startsWith(JOURNAL_FILE_PREFIX) && !file.equals(current) && !file.delete()) {
+                    logger.warn("Could not delete old build memory journal {}", file);
+                }
+            }
+        }
+        logger.debug("Compacted the build memory journal into {} records", snapshot.size());
+    }
+
+    /**
+     * Opens the journal file of the current generation for appending.
+     *
+     * @throws IOException if so.
+     */
+    private void openJournal() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        journalStream = new FileOutputStream(getJournalFile(generation), true);
+        journalWriter = new BufferedWriter(new OutputStreamWriter(journalStream, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Closes the journal file if it is open.
+     */
+    private void closeJournal() {
+        if (journalWriter != null) {
+            try {
+                journalWriter.close();
+            } catch (IOException e) {
+                logger.warn("Could not close the build memory journal", e);
+            }
+            journalWriter = null;
+            journalStream = null;
+        }
+    }
+
+    /**
+     * The journal file for a generation.
+     *
+     * @param gen the generation.
+     * @return the file.
+     */
+    private File getJournalFile(long gen) {
+        return new File(directory, JOURNAL_FILE_PREFIX + gen + JOURNAL_FILE_SUFFIX);
+    }
+
+    /**
+     * Reads a snapshot or journal file and applies every record in it to the memory.
+     * Lines that can't be parsed, like a last line torn by a crash, are skipped.
+     *
+     * @param file   the file.
+     * @param events the events seen so far, by id.
+     */
+    private void read(File file, Map<Long, GerritTriggeredEvent> events) {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line = reader.readLine();
+            while (line != null) {
+                if (line.startsWith(GENERATION + SEPARATOR)) {
+                    try {
+                        generation = Long.parseLong(line.substring(GENERATION.length() + 1).trim());
+                    } catch (NumberFormatException e) {
+                        logger.warn("Bad generation in build memory snapshot: {}", line);
+                    }
+                } else {
+                    Record record = parse(line);
+                    if (record != null) {
+                        apply(record, events);
+                    } else if (!line.isEmpty()) {
+                        logger.warn("Skipping unreadable record in {}", file);
+                    }
+                }
+                line = reader.readLine();
+            }
+        } catch (IOException e) {
+            logger.error("Could not read the build memory journal {}", file, e);
+        }
+    }
+
+    /**
+     * Applies one record to the memory.
+     *
+     * @param record the record.
+     * @param events the events seen so far, by id.
+     */
+    private void apply(Record record, Map<Long, GerritTriggeredEvent> events) {
+        if (record.getId() > lastId.get()) {
+            lastId.set(record.getId());
+        }
+        GerritTriggeredEvent event;
+        if (record.getOperation() == Operation.EVENT) {
+            event = record.getEvent();
+            if (event == null) {
+                return;
+            }
+            events.put(record.getId(), event);
+        } else if (record.getOperation() == Operation.FORGET) {
+            event = events.remove(record.getId());
+        } else {
+            event = events.get(record.getId());
+        }
+        if (event != null || record.getOperation() == Operation.REMOVED) {
+            memory.restore(record, event);
+        }
+    }
+
+    /**
+     * Writes one record as a line.
+     *
+     * @param writer the writer.
+     * @param record the record.
+     * @throws IOException if so.
+     */
+    private static void write(Writer writer, Record record) throws IOException {
+        writer.write(record.getOperation().name());
+        writer.write(SEPARATOR);
+        writer.write(String.valueOf(record.getId()));
+        writer.write(SEPARATOR);
+        writer.write(encode(record.getProject()));
+        writer.write(SEPARATOR);
+        if (record.getOperation() == Operation.EVENT) {
+            writer.write(encode(Jenkins.XSTREAM2.toXML(record.getEvent())));
+        } else {
+            writer.write(encode(record.getValue()));
+        }
+        writer.write('\n');
+    }
+
+    /**
+     * Parses a line written by {@link #write(Writer, Record)}.
+     *
+     * @param line the line.
+     * @return the record or null if the line is not a complete record.
+     */
+    @CheckForNull
+    static Record parse(String line) {
+        String[] fields = line.split(String.valueOf(SEPARATOR), -1);
+        if (fields.length != FIELDS) {
+            return null;
+        }
+        try {
+            Operation operation = Operation.valueOf(fields[0]);
+            long id = Long.parseLong(fields[1]);
+            String project = decode(fields[2]);
+            String value = decode(fields[FIELDS - 1]);
+            if (operation == Operation.EVENT) {
+                GerritTriggeredEvent event = null;
+                try {
+                    event = (GerritTriggeredEvent)Jenkins.XSTREAM2.fromXML(value);
+                } catch (RuntimeException e) {
+                    logger.warn("Could not read event {} from the build memory journal", id, e);
+                }
+                return new Record(operation, id, null, null, event);
+            }
+            return new Record(operation, id, project, value, null);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Encodes a value so that it can't contain separators or line breaks.
+     *
+     * @param value the value.
+     * @return the encoded value.
+     */
+    private static String encode(String value) {
+        if (value == null) {
+            return NULL_VALUE;
+        }
+        return Base64.getEncoder().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a value encoded with {@link #encode(String)}.
+     *
+     * @param value the encoded value.
+     * @return the value.
+     */
+    private static String decode(String value) {
+        if (NULL_VALUE.equals(value)) {
+            return null;
+        }
+        return new String(Base64.getDecoder().decode(value), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The kind of transition a {@link Record} describes.
+     */
+    enum Operation {
+        /**
+         * A new event is remembered, carries the event itself.
+         */
+        EVENT,
+        /**
+         * A project was triggered.
+         */
+        TRIGGERED,
+        /**
+         * A project was retriggered.
+         */
+        RETRIGGERED,
+        /**
+         * A build started, the value is the build id.
+         */
+        STARTED,
+        /**
+         * A build completed, the value is the build id.
+         */
+        COMPLETED,
+        /**
+         * The result of a completed build, the value is the name of the {@link hudson.model.Result}.
+         */
+        RESULT,
+        /**
+         * A project was cancelled in the queue.
+         */
+        CANCELLED,
+        /**
+         * A custom URL was set, the value is the URL.
+         */
+        CUSTOM_URL,
+        /**
+         * An unsuccessful message was set, the value is the message.
+         */
+        UNSUCCESSFUL_MESSAGE,
+        /**
+         * The event was forgotten.
+         */
+        FORGET,
+        /**
+         * A project was removed from all events.
+         */
+        REMOVED
+    }
+
+    /**
+     * One transition in the journal.
+     */
+    static final class Record {
+        private final Operation operation;
+        private final long id;
+        private final String project;
+        private final String value;
+        private final GerritTriggeredEvent event;
+
+        /**
+         * Constructor.
+         *
+         * @param operation the kind of transition.
+         * @param id        the journal id of the event.
+         * @param project   the full name of the project, if any.
+         * @param value     the build id, URL or message, if any.
+         * @param event     the event, only for {@link Operation#EVENT}.
+         */
+        Record(Operation operation, long id, String project, String value, GerritTriggeredEvent event) {
+            this.operation = operation;
+            this.id = id;
+            this.project = project;
+            this.value = value;
+            this.event = event;
+        }
+
+        /**
+         * The kind of transition.
+         *
+         * @return the operation.
+         */
+        Operation getOperation() {
+            return operation;
+        }
+
+        /**
+         * The journal id of the event.
+         *
+         * @return the id.
+         */
+        long getId() {
+            return id;
+        }
+
+        /**
+         * The full name of the project.
+         *
+         * @return the project name.
+         */
+        String getProject() {
+            return project;
+        }
+
+        /**
+         * The build id, URL or message.
+         *
+         * @return the value.
+         */
+        String getValue() {
+            return value;
+        }
+
+        /**
+         * The event.
+         *
+         * @return the event.
+         */
+        GerritTriggeredEvent getEvent() {
+            return event;
+        }
+    }
+}
@@ -23,6 +23,7 @@
  */
 package com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger;
 
+import com.sonyericsson.hudson.plugins.gerrit.trigger.dependency.DependencyQueueTaskDispatcher;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.ToGerritRunListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,7 +37,7 @@ import hudson.model.Item;
 import hudson.model.listeners.ItemListener;
 
 /**
- * Listens for onDeleted and onLoaded events.
+ * Listens for onCreated, onDeleted, onLocationChanged and onLoaded events.
  * If the deleted project has a Gerrit trigger, it will be stopped
  * If all project have been loaded, start the connections to Gerrit servers.
  * Since this class has no member variables, and doesn't need any
@@ -65,6 +66,7 @@ public class GerritItemListener extends ItemListener {
      */
     @Override
     public void onDeleted(Item item) {
+        DependencyQueueTaskDispatcher.itemsChanged();
         if (item instanceof Job<?, ?>) {
             Job<?, ?> project = (Job<?, ?>)item;
             GerritTrigger gerritTrigger = GerritTrigger.getTrigger(project);
@@ -91,6 +93,7 @@ public class GerritItemListener extends ItemListener {
      */
     @Override
     public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+        DependencyQueueTaskDispatcher.itemsChanged();
         if (item instanceof Job<?, ?>) {
             Job<?, ?> project = (Job<?, ?>)item;
             GerritTrigger gerritTrigger = GerritTrigger.getTrigger(project);
@@ -100,6 +103,16 @@ public class GerritItemListener extends ItemListener {
         }
     }
 
+    /**
+     * Called by Jenkins when an item is created, dependency names may now resolve to it.
+     *
+     * @param item the created item.
+     */
+    @Override
+    public void onCreated(Item item) {
+        DependencyQueueTaskDispatcher.itemsChanged();
+    }
+
     /**
      * Called by Jenkins when all items are loaded.
      */
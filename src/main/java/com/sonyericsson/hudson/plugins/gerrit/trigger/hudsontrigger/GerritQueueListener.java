@@ -5,25 +5,39 @@ import hudson.model.TaskListener;
 import hudson.model.Cause;
 import hudson.model.Job;
 import hudson.model.Queue.LeftItem;
+import hudson.model.Queue.WaitingItem;
 import hudson.model.queue.QueueListener;
 import hudson.util.LogTaskListener;
 
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.sonyericsson.hudson.plugins.gerrit.trigger.dependency.DependencyQueueTaskDispatcher;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.ToGerritRunListener;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.replication.ReplicationQueueTaskDispatcher;
 import com.sonymobile.tools.gerrit.gerritevents.dto.events.GerritTriggeredEvent;
 
 /**
- * Listens to delete events in the Jenkins Queue to clean up the BuildMemory.
+ * Listens to delete events in the Jenkins Queue to clean up the BuildMemory,
+ * and keeps the {@link TriggeredBuildRegistry} and the dependency decisions up to date.
  */
 @Extension
 public class GerritQueueListener extends QueueListener {
 
     private static final Logger logger = Logger.getLogger(GerritQueueListener.class.getName());
 
+    @Override
+    public void onEnterWaiting(WaitingItem item) {
+        TriggeredBuildRegistry.getInstance().queued(item);
+    }
+
     @Override
     public void onLeft(LeftItem item) {
+        TriggeredBuildRegistry.getInstance().left(item);
+        ReplicationQueueTaskDispatcher replicationDispatcher = ReplicationQueueTaskDispatcher.getInstance();
+        if (replicationDispatcher != null) {
+            replicationDispatcher.left(item);
+        }
         if (item.isCancelled() && item.task instanceof Job) {
             for (Cause cause : item.getCauses()) {
                 if (cause instanceof GerritCause && !((GerritCause)cause).isSilentMode()) {
@@ -36,6 +50,12 @@ public class GerritQueueListener extends QueueListener {
                 }
             }
         }
+        //After the memory has been updated, so that the items of the event are checked against the new state.
+        for (Cause cause : item.getCauses()) {
+            if (cause instanceof GerritCause) {
+                DependencyQueueTaskDispatcher.buildStateChanged(((GerritCause)cause).getEvent());
+            }
+        }
     }
 
 }
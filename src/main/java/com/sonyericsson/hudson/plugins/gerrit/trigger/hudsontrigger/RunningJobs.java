@@ -6,10 +6,11 @@ import com.sonyericsson.hudson.plugins.gerrit.trigger.config.IGerritHudsonTrigge
 import com.sonyericsson.hudson.plugins.gerrit.trigger.events.ManualPatchsetCreated;
 import static com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.GerritTrigger.JOB_ABORT;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.data.BuildCancellationPolicy;
+import com.sonymobile.tools.gerrit.gerritevents.dto.attr.Change;
 import com.sonymobile.tools.gerrit.gerritevents.dto.events.ChangeBasedEvent;
 import com.sonymobile.tools.gerrit.gerritevents.dto.events.GerritTriggeredEvent;
+import com.sonymobile.tools.gerrit.gerritevents.dto.events.TopicChanged;
 import hudson.model.Cause;
-import hudson.model.Computer;
 import hudson.model.Executor;
 import hudson.model.Item;
 import hudson.model.Queue;
@@ -17,26 +18,31 @@ import hudson.model.Result;
 import hudson.model.Run;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import jenkins.model.Jenkins;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
 * Class for maintaining and synchronizing the runningJobs info.
 * Association between patches and the jobs that we're running for them.
+* The events are indexed by change and by topic, so only the events of the same change,
+* or the same topic, are compared when looking for outdated events.
 */
 public class RunningJobs {
 
    private final GerritTrigger trigger;
    private Item job;
 
-   private final Set<GerritTriggeredEvent> runningJobs =
-           Collections.synchronizedSet(new HashSet<>());
+   private final AtomicLong sequence = new AtomicLong();
+   private final ConcurrentMap<ChangeBasedEvent, Long> runningJobs = new ConcurrentHashMap<>();
+   private final ConcurrentMap<Change, Set<ChangeBasedEvent>> byChange = new ConcurrentHashMap<>();
+   private final ConcurrentMap<String, Set<ChangeBasedEvent>> byTopic = new ConcurrentHashMap<>();
    private static final Logger logger = LoggerFactory.getLogger(RunningJobs.class);
 
    /**
@@ -91,7 +97,7 @@ public class RunningJobs {
    public void scheduled(ChangeBasedEvent event) {
        IGerritHudsonTriggerConfig serverConfig = getServerConfig(event);
        if (serverConfig == null) {
-           runningJobs.add(event);
+           add(event);
            return;
        }
 
@@ -100,7 +106,7 @@ public class RunningJobs {
        if (!serverBuildCurrentPatchesOnly.isEnabled()
                || (event instanceof ManualPatchsetCreated
                && !serverBuildCurrentPatchesOnly.isAbortManualPatchsets())) {
-           runningJobs.add(event);
+           add(event);
            return;
        }
 
@@ -116,26 +122,27 @@ public class RunningJobs {
    private void cancelOutDatedEvents(ChangeBasedEvent event, BuildCancellationPolicy policy, String jobName)
    {
        List<ChangeBasedEvent> outdatedEvents = new ArrayList<>();
-       synchronized (runningJobs) {
-           Iterator<GerritTriggeredEvent> it = runningJobs.iterator();
-           while (it.hasNext()) {
-               GerritTriggeredEvent runningEvent = it.next();
-
-               if (runningEvent instanceof ChangeBasedEvent) {
-                   ChangeBasedEvent runningChangeBasedEvent = ((ChangeBasedEvent)runningEvent);
-                   if (!shouldIgnoreEvent(event, policy, runningChangeBasedEvent))
-                   {
-                       outdatedEvents.add(runningChangeBasedEvent);
-                       it.remove();
-                   }
-               }
+       long seq;
+       if (runningJobs.containsKey(event) && !shouldIgnoreEvent(event, policy, event) && remove(event)) {
+           // The event is outdated by itself, so it is cancelled and not added again.
+           outdatedEvents.add(event);
+           seq = sequence.incrementAndGet();
+       } else {
+           // The new job is added before looking for outdated events, and only events added before it
+           // are compared, so concurrent events of the same change are handled in the order they were added.
+           seq = add(event);
+       }
+       for (ChangeBasedEvent runningEvent : getCandidates(event, policy)) {
+           Long runningSeq = runningJobs.get(runningEvent);
+           if (runningSeq == null || runningSeq >= seq || runningEvent.equals(event)) {
+               continue;
            }
-           // add our new job
-           if (!outdatedEvents.contains(event)) {
-               runningJobs.add(event);
+           // Only the thread that removes the event cancels its builds.
+           if (!shouldIgnoreEvent(event, policy, runningEvent) && remove(runningEvent)) {
+               outdatedEvents.add(runningEvent);
            }
        }
-       // This step can't be done under the lock, because cancelling the jobs needs a lock on higher level.
+       // This step can't be done while holding a change, because cancelling the jobs needs a lock on higher level.
        for (ChangeBasedEvent outdatedEvent : outdatedEvents) {
            logger.debug("Cancelling build for " + outdatedEvent);
            try {
@@ -147,6 +154,124 @@ public class RunningJobs {
        }
    }
 
+   /**
+    * The running events that can be outdated by the event,
+    * those of the same change and, if the policy aborts builds of the same topic, of the same topic.
+    *
+    * @param event the new event.
+    * @param policy the policy.
+    * @return the events to compare with.
+    */
+   private Set<ChangeBasedEvent> getCandidates(ChangeBasedEvent event, BuildCancellationPolicy policy) {
+       Set<ChangeBasedEvent> candidates = new LinkedHashSet<>();
+       Change change = event.getChange();
+       if (change == null) {
+           return candidates;
+       }
+       Set<ChangeBasedEvent> sameChange = byChange.get(change);
+       if (sameChange != null) {
+           candidates.addAll(sameChange);
+       }
+       if (policy.isAbortSameTopic()) {
+           String topicName = change.getTopic();
+           if (event instanceof TopicChanged) {
+               topicName = ((TopicChanged)event).getOldTopic();
+           }
+           if (topicName != null && !topicName.isEmpty()) {
+               Set<ChangeBasedEvent> sameTopic = byTopic.get(topicName);
+               if (sameTopic != null) {
+                   candidates.addAll(sameTopic);
+               }
+           }
+       }
+       return candidates;
+   }
+
+   /**
+    * Adds a running event and indexes it by its change and topic.
+    *
+    * @param event the event.
+    * @return the order the event was added in.
+    */
+   private long add(ChangeBasedEvent event) {
+       Change change = event.getChange();
+       if (change == null) {
+           long seq = sequence.incrementAndGet();
+           runningJobs.put(event, seq);
+           return seq;
+       }
+       long seq;
+       while (true) {
+           Set<ChangeBasedEvent> bucket = getBucket(byChange, change);
+           // The order is taken while holding the change, so events of the same change are added in order.
+           synchronized (bucket) {
+               if (byChange.get(change) != bucket) {
+                   continue;
+               }
+               seq = sequence.incrementAndGet();
+               runningJobs.put(event, seq);
+               bucket.add(event);
+               break;
+           }
+       }
+       String topic = change.getTopic();
+       if (topic != null && !topic.isEmpty()) {
+           while (true) {
+               Set<ChangeBasedEvent> bucket = getBucket(byTopic, topic);
+               synchronized (bucket) {
+                   if (byTopic.get(topic) == bucket) {
+                       bucket.add(event);
+                       break;
+                   }
+               }
+           }
+       }
+       return seq;
+   }
+
+   /**
+    * Gets or creates the events of a key in an index.
+    *
+    * @param index the index.
+    * @param key the key.
+    * @param <K> the type of key.
+    * @return the events.
+    */
+   private static <K> Set<ChangeBasedEvent> getBucket(ConcurrentMap<K, Set<ChangeBasedEvent>> index, K key) {
+       Set<ChangeBasedEvent> bucket = index.get(key);
+       if (bucket == null) {
+           Set<ChangeBasedEvent> created = ConcurrentHashMap.newKeySet();
+           bucket = index.putIfAbsent(key, created);
+           if (bucket == null) {
+               bucket = created;
+           }
+       }
+       return bucket;
+   }
+
+   /**
+    * Removes an event from the events of a key in an index, and the key when it has no more events.
+    *
+    * @param index the index.
+    * @param key the key, or null if the event is not indexed.
+    * @param event the event.
+    * @param <K> the type of key.
+    */
+   private static <K> void unindex(ConcurrentMap<K, Set<ChangeBasedEvent>> index, K key, ChangeBasedEvent event) {
+       if (key == null) {
+           return;
+       }
+       Set<ChangeBasedEvent> bucket = index.get(key);
+       if (bucket != null) {
+           synchronized (bucket) {
+               bucket.remove(event);
+               if (bucket.isEmpty()) {
+                   index.remove(key, bucket);
+               }
+           }
+       }
+   }
+
    /**
     * Determines if event should be ignored due to policy
     *
@@ -200,6 +325,7 @@ public class RunningJobs {
     * This extra work is required due to race conditions when calling
     * Future.cancel() - see
     * https://issues.jenkins-ci.org/browse/JENKINS-13829
+    * The queue items and builds of the event are looked up in the {@link TriggeredBuildRegistry}.
     *
     * @param event The event that originally triggered the build.
     * @param matchOnJobName  job name to match on.
@@ -211,10 +337,11 @@ public class RunningJobs {
                return;
            }
 
+           TriggeredBuildRegistry registry = TriggeredBuildRegistry.getInstance();
+
            // Remove any jobs in the build queue.
-           List<hudson.model.Queue.Item> itemsInQueue = Queue.getInstance().getItems((Queue.Task)getJob());
-           for (hudson.model.Queue.Item item : itemsInQueue) {
-               if (checkCausedByGerrit(event, item.getCauses())) {
+           for (hudson.model.Queue.Item item : registry.getQueueItems(event)) {
+               if (item.task.equals(getJob()) && checkCausedByGerrit(event, item.getCauses())) {
                    if (matchOnJobName == null || matchOnJobName.equals(item.task.getName())) {
                        Queue.getInstance().cancel(item);
                    }
@@ -227,24 +354,18 @@ public class RunningJobs {
            }
 
            // Interrupt any currently running jobs.
-           Jenkins jenkins = Jenkins.get();
-           for (Computer c : jenkins.getComputers()) {
-               List<Executor> executors = new ArrayList<Executor>();
-               executors.addAll(c.getOneOffExecutors());
-               executors.addAll(c.getExecutors());
-               for (Executor e : executors) {
-                   Queue.Executable currentExecutable = e.getCurrentExecutable();
-
-                   if (currentExecutable != null && currentExecutable instanceof Run<?, ?>) {
-                       Run<?, ?> run = (Run<?, ?>)currentExecutable;
-                       if (checkCausedByGerrit(event, run.getCauses())) {
-                           if (matchOnJobName == null || matchOnJobName.equals(run.getParent().getFullName())) {
-                               e.interrupt(
-                                       Result.ABORTED,
-                                       new NewPatchSetInterruption()
-                               );
-                           }
-                       }
+           for (Map.Entry<Run, Executor> running : registry.getRunningBuilds(event).entrySet()) {
+               Run<?, ?> run = running.getKey();
+               Executor e = running.getValue();
+               if (e == null || e.getCurrentExecutable() != run) {
+                   e = run.getExecutor();
+               }
+               if (e != null && checkCausedByGerrit(event, run.getCauses())) {
+                   if (matchOnJobName == null || matchOnJobName.equals(run.getParent().getFullName())) {
+                       e.interrupt(
+                               Result.ABORTED,
+                               new NewPatchSetInterruption()
+                       );
                    }
                }
            }
@@ -283,6 +404,17 @@ public class RunningJobs {
     */
    public boolean remove(ChangeBasedEvent event) {
        logger.debug("Removing future job " + event.getPatchSet().getNumber());
-       return runningJobs.remove(event);
+       if (runningJobs.remove(event) == null) {
+           return false;
+       }
+       Change change = event.getChange();
+       if (change != null) {
+           unindex(byChange, change, event);
+           String topic = change.getTopic();
+           if (topic != null && !topic.isEmpty()) {
+               unindex(byTopic, topic, event);
+           }
+       }
+       return true;
    }
 }
@@ -0,0 +1,295 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2026 the Gerrit Trigger plugin authors.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger;
+
+import com.sonymobile.tools.gerrit.gerritevents.dto.events.GerritTriggeredEvent;
+import hudson.model.Cause;
+import hudson.model.Computer;
+import hudson.model.Executor;
+import hudson.model.Queue;
+import hudson.model.Run;
+import jenkins.model.Jenkins;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps track of the queue items and the running builds of every triggering event,
+ * so that the builds of an outdated event can be cancelled without looking through the whole queue
+ * and every executor.
+ *
+ * Queue items are added by {@link GerritQueueListener} and builds by
+ * {@link com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.ToGerritRunListener}.
+ * Builds that were already running when Jenkins started are found by looking through the executors once.
+ * Events are compared by identity, like the events of the causes of the builds.
+ *
+ * @see RunningJobs
+ */
+public final class TriggeredBuildRegistry {
+
+    private static final TriggeredBuildRegistry INSTANCE = new TriggeredBuildRegistry();
+
+    private final Map<GerritTriggeredEvent, Builds> events = new IdentityHashMap<GerritTriggeredEvent, Builds>();
+    private boolean seeded = false;
+
+    /**
+     * Constructor, use {@link #getInstance()}.
+     */
+    /*package*/ TriggeredBuildRegistry() {
+    }
+
+    /**
+     * The registry.
+     *
+     * @return the instance.
+     */
+    public static TriggeredBuildRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Registers a queue item of the events of its causes.
+     *
+     * @param item the item that entered the queue.
+     */
+    public void queued(Queue.Item item) {
+        synchronized (this) {
+            for (GerritTriggeredEvent event : getEvents(item.getCauses())) {
+                getBuilds(event).items.add(item.getId());
+            }
+        }
+    }
+
+    /**
+     * Forgets a queue item, it has been cancelled or has started to build.
+     *
+     * @param item the item that left the queue.
+     */
+    public void left(Queue.Item item) {
+        synchronized (this) {
+            for (GerritTriggeredEvent event : getEvents(item.getCauses())) {
+                Builds builds = events.get(event);
+                if (builds != null) {
+                    builds.items.remove(item.getId());
+                    forgetIfEmpty(event, builds);
+                }
+            }
+        }
+    }
+
+    /**
+     * Registers a build that has started, with the executor it runs on.
+     * Should be called on the thread of the executor.
+     *
+     * @param build the build.
+     */
+    public void started(Run build) {
+        Executor executor = Executor.currentExecutor();
+        if (executor != null && executor.getCurrentExecutable() != build) {
+            executor = null;
+        }
+        synchronized (this) {
+            for (GerritTriggeredEvent event : getEvents(build.getCauses())) {
+                getBuilds(event).runs.put(build, executor);
+            }
+        }
+    }
+
+    /**
+     * Forgets a build that has completed.
+     *
+     * @param build the build.
+     */
+    public void completed(Run build) {
+        synchronized (this) {
+            for (GerritTriggeredEvent event : getEvents(build.getCauses())) {
+                Builds builds = events.get(event);
+                if (builds != null) {
+                    builds.runs.remove(build);
+                    forgetIfEmpty(event, builds);
+                }
+            }
+        }
+    }
+
+    /**
+     * The queue items of an event that are still in the queue.
+     *
+     * @param event the event.
+     * @return the items.
+     */
+    public List<Queue.Item> getQueueItems(GerritTriggeredEvent event) {
+        List<Long> ids;
+        synchronized (this) {
+            Builds builds = events.get(event);
+            if (builds == null) {
+                return new ArrayList<Queue.Item>();
+            }
+            ids = new ArrayList<Long>(builds.items);
+        }
+        List<Queue.Item> items = new ArrayList<Queue.Item>(ids.size());
+        Queue queue = Queue.getInstance();
+        for (Long id : ids) {
+            Queue.Item item = queue.getItem(id);
+            if (item != null) {
+                items.add(item);
+            }
+        }
+        return items;
+    }
+
+    /**
+     * The running builds of an event, with the executors they run on.
+     *
+     * @param event the event.
+     * @return the builds and their executors, the executor is null if it is not known.
+     */
+    public Map<Run, Executor> getRunningBuilds(GerritTriggeredEvent event) {
+        seed();
+        synchronized (this) {
+            Builds builds = events.get(event);
+            if (builds == null) {
+                return new IdentityHashMap<Run, Executor>();
+            }
+            return new IdentityHashMap<Run, Executor>(builds.runs);
+        }
+    }
+
+    /**
+     * The number of events with queued or running builds.
+     *
+     * @return the count.
+     */
+    public synchronized int getEventCount() {
+        return events.size();
+    }
+
+    /**
+     * Registers the builds that are running on the executors, once,
+     * to find those that started before Jenkins did and never were reported as started.
+     */
+    private void seed() {
+        synchronized (this) {
+            if (seeded) {
+                return;
+            }
+            seeded = true;
+        }
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        if (jenkins == null) {
+            return;
+        }
+        for (Computer computer : jenkins.getComputers()) {
+            List<Executor> executors = new ArrayList<Executor>();
+            executors.addAll(computer.getOneOffExecutors());
+            executors.addAll(computer.getExecutors());
+            for (Executor executor : executors) {
+                Queue.Executable executable = executor.getCurrentExecutable();
+                if (executable instanceof Run<?, ?>) {
+                    Run<?, ?> run = (Run<?, ?>)executable;
+                    synchronized (this) {
+                        for (GerritTriggeredEvent event : getEvents(run.getCauses())) {
+                            getBuilds(event).runs.put(run, executor);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The builds of an event, created if there are none.
+     *
+     * @param event the event.
+     * @return the builds.
+     */
+    private Builds getBuilds(GerritTriggeredEvent event) {
+        Builds builds = events.get(event);
+        if (builds == null) {
+            builds = new Builds();
+            events.put(event, builds);
+        }
+        return builds;
+    }
+
+    /**
+     * Forgets an event when it has no more queued or running builds.
+     *
+     * @param event the event.
+     * @param builds its builds.
+     */
+    private void forgetIfEmpty(GerritTriggeredEvent event, Builds builds) {
+        if (builds.items.isEmpty() && builds.runs.isEmpty()) {
+            events.remove(event);
+        }
+    }
+
+    /**
+     * The events of the {@link GerritCause}s.
+     *
+     * @param causes the causes.
+     * @return the events.
+     */
+    private static Collection<GerritTriggeredEvent> getEvents(Collection<? extends Cause> causes) {
+        List<GerritTriggeredEvent> found = new ArrayList<GerritTriggeredEvent>(1);
+        for (Cause cause : causes) {
+            if (cause instanceof GerritCause) {
+                GerritTriggeredEvent event = ((GerritCause)cause).getEvent();
+                if (event != null && !containsIdentical(found, event)) {
+                    found.add(event);
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * If the list contains the very same event.
+     *
+     * @param list the list.
+     * @param event the event.
+     * @return true if so.
+     */
+    private static boolean containsIdentical(List<GerritTriggeredEvent> list, GerritTriggeredEvent event) {
+        for (GerritTriggeredEvent e : list) {
+            if (e == event) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The queue items and running builds of one event.
+     */
+    private static final class Builds {
+        private final Set<Long> items = new LinkedHashSet<Long>();
+        private final Map<Run, Executor> runs = new IdentityHashMap<Run, Executor>();
+    }
+}
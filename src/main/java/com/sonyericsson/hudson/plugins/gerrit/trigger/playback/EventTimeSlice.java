@@ -21,14 +21,26 @@
  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
  * THE SOFTWARE.
  */
-
 package com.sonyericsson.hudson.plugins.gerrit.trigger.playback;
 
+import com.sonyericsson.hudson.plugins.gerrit.trigger.utils.StringUtil;
 import com.sonymobile.tools.gerrit.gerritevents.dto.events.GerritTriggeredEvent;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This class holds events that were processed by the MissedEventPlaybackManager
@@ -42,11 +54,22 @@ import java.util.List;
  */
 public class EventTimeSlice {
 
+    /**
+     * The first four bytes of a checkpoint file, "GTS1".
+     */
+    private static final int CHECKPOINT_MAGIC = 0x47545331;
+    private static final String TMP_SUFFIX = ".tmp";
+
     private long timeSlice;
     /**
      * events to persist.
      */
     protected List<GerritTriggeredEvent> events = Collections.synchronizedList(new ArrayList<GerritTriggeredEvent>());
+    /**
+     * Identities of the events in this time slice, which is what is checkpointed.
+     * @see StringUtil#getEventIdentity(GerritTriggeredEvent)
+     */
+    private transient Set<String> identities = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
 
     /**
      *
@@ -68,7 +91,27 @@ public class EventTimeSlice {
      * @param evt Event to be persisted.
      */
     public void addEvent(GerritTriggeredEvent evt) {
-        events.add(evt);
+        if (identities.add(StringUtil.getEventIdentity(evt))) {
+            events.add(evt);
+        }
+    }
+
+    /**
+     * Tells if an event is in this time slice.
+     * @param identity the {@link StringUtil#getEventIdentity(GerritTriggeredEvent)} of the event.
+     * @return true if it is.
+     */
+    public boolean containsEvent(String identity) {
+        return identities.contains(identity);
+    }
+
+    /**
+     * The number of events in this time slice,
+     * including the ones restored from a checkpoint that are not in {@link #getEvents()}.
+     * @return the number of events.
+     */
+    public int getEventCount() {
+        return identities.size();
     }
 
     /**
@@ -90,6 +133,68 @@ public class EventTimeSlice {
        for (GerritTriggeredEvent event : ets.getEvents()) {
            nets.addEvent(event);
        }
+       nets.identities.addAll(ets.identities);
        return nets;
    }
+
+    /**
+     * Writes the time slice and the identities of its events to a checkpoint file.
+     * The file is replaced atomically, so a crash while writing leaves the previous checkpoint in place.
+     *
+     * @param file the checkpoint file.
+     * @throws IOException if so.
+     */
+    public void write(File file) throws IOException {
+        File tmp = new File(file.getPath() + TMP_SUFFIX);
+        FileOutputStream out = new FileOutputStream(tmp);
+        try (DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out))) {
+            List<String> ids = new ArrayList<String>(identities);
+            data.writeInt(CHECKPOINT_MAGIC);
+            data.writeLong(timeSlice);
+            data.writeInt(ids.size());
+            for (String id : ids) {
+                data.writeUTF(id);
+            }
+            data.flush();
+            out.getFD().sync();
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a time slice written by {@link #write(File)}.
+     * Only the identities of its events are restored, so {@link #getEvents()} of the result is empty.
+     *
+     * @param file the checkpoint file.
+     * @return the time slice.
+     * @throws IOException if the file can't be read or is not a checkpoint.
+     */
+    public static EventTimeSlice read(File file) throws IOException {
+        try (DataInputStream data = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (data.readInt() != CHECKPOINT_MAGIC) {
+                throw new IOException(file + " is not a timestamp checkpoint");
+            }
+            EventTimeSlice slice = new EventTimeSlice(data.readLong());
+            int count = data.readInt();
+            for (int i = 0; i < count; i++) {
+                slice.identities.add(data.readUTF());
+            }
+            return slice;
+        }
+    }
+
+    /**
+     * Rebuilds the identities of the events when deserialized from the old xml format.
+     * @return this.
+     */
+    private Object readResolve() {
+        identities = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        if (events == null) {
+            events = Collections.synchronizedList(new ArrayList<GerritTriggeredEvent>());
+        }
+        for (GerritTriggeredEvent event : events) {
+            identities.add(StringUtil.getEventIdentity(event));
+        }
+        return this;
+    }
 }
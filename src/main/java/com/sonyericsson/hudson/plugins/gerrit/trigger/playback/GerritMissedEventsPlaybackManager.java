@@ -24,6 +24,7 @@
 
 package com.sonyericsson.hudson.plugins.gerrit.trigger.playback;
 
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.GerritServer;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.NamedGerritEventListener;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.PluginImpl;
@@ -36,37 +37,48 @@ import com.sonymobile.tools.gerrit.gerritevents.GerritEventListener;
 import com.sonymobile.tools.gerrit.gerritevents.GerritJsonEventFactory;
 import com.sonymobile.tools.gerrit.gerritevents.dto.GerritEvent;
 import com.sonymobile.tools.gerrit.gerritevents.dto.attr.Provider;
+import com.sonymobile.tools.gerrit.gerritevents.dto.events.ChangeBasedEvent;
 import com.sonymobile.tools.gerrit.gerritevents.dto.events.GerritTriggeredEvent;
+import com.sonymobile.tools.gerrit.gerritevents.dto.events.PatchsetCreated;
 
 import hudson.Util;
 import hudson.XmlFile;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
 import net.sf.json.JSONObject;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.http.HttpEntity;
-import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.entity.ContentType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
 import java.net.URLEncoder;
+import java.nio.file.Files;
 import java.nio.charset.Charset;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
-import java.util.Iterator;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Scanner;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 
@@ -91,21 +103,117 @@ public class GerritMissedEventsPlaybackManager implements ConnectionListener, Na
     static final String EVENTS_LOG_PLUGIN_NAME = "events-log";
     private static final String EVENTS_LOG_PLUGIN_URL = "a/plugins/" + EVENTS_LOG_PLUGIN_NAME + "/events/";
     private static final String GERRIT_TRIGGER_SERVER_TIMESTAMPS_XML = "gerrit-trigger-server-timestamps.xml";
+    private static final String GERRIT_TRIGGER_SERVER_TIMESTAMPS_CHECKPOINT = "gerrit-trigger-server-timestamps.bin";
+    /**
+     * Swaps {@link #serverTimestamp} without locking the event path.
+     */
+    private static final AtomicReferenceFieldUpdater<GerritMissedEventsPlaybackManager, EventTimeSlice> SERVER_TIMESTAMP
+            = AtomicReferenceFieldUpdater.newUpdater(GerritMissedEventsPlaybackManager.class, EventTimeSlice.class,
+            "serverTimestamp");
+    private static final int DEFAULT_BATCH_SIZE = 100;
+    private static final int DEFAULT_RECEIVED_EVENT_CACHE_SIZE = 100000;
+    private static final int DEFAULT_PLAYBACK_WINDOW_SECONDS = 3600;
+    private static final int DEFAULT_PLAYBACK_WINDOW_EVENTS = 1000;
+    private static final int MAXIMUM_PLAYBACK_WINDOW_DAYS = 365;
+    private static final int DEFAULT_REPLAY_EVENTS_PER_SECOND = 20;
+    private static final int DEFAULT_REPLAY_MAX_QUEUE_LENGTH = 1000;
+    private static final int DEFAULT_REPLAY_MAX_QUEUE_WAIT_SECONDS = 600;
+    private static final int DEFAULT_PLAYBACK_RETRY_SECONDS = 30;
+    private static final int MAXIMUM_PLAYBACK_RETRY_SECONDS = 600;
+    private static final int MAX_RETRY_SHIFT = 10;
+    private static final int QUEUE_WAIT_LOG_SECONDS = 60;
+    /**
+     * Runs the playbacks, so they don't hold up the connection they were started from.
+     */
+    private static final ExecutorService PLAYBACK_EXECUTOR = Executors.newCachedThreadPool(
+            new NamingThreadFactory(new DaemonThreadFactory(), "Gerrit missed events playback"));
+
+    /**
+     * The maximum number of missed events parsed ahead of the ones being played back.
+     */
+    static final int BATCH_SIZE = Math.max(1,
+            Integer.getInteger(GerritMissedEventsPlaybackManager.class.getName() + ".batchSize", DEFAULT_BATCH_SIZE));
+
+    /**
+     * The maximum number of event identities remembered in {@link #receivedEventCache}.
+     */
+    private static final int RECEIVED_EVENT_CACHE_SIZE = Integer.getInteger(
+            GerritMissedEventsPlaybackManager.class.getName() + ".receivedEventCacheSize",
+            DEFAULT_RECEIVED_EVENT_CACHE_SIZE);
+
+    /**
+     * The length in seconds of the first window of missed events requested from the events-log plugin.
+     */
+    private static final int PLAYBACK_WINDOW_SECONDS = Math.max(1, Integer.getInteger(
+            GerritMissedEventsPlaybackManager.class.getName() + ".playbackWindowSeconds",
+            DEFAULT_PLAYBACK_WINDOW_SECONDS));
+
+    /**
+     * The number of missed events per window that the window length is adapted towards.
+     */
+    private static final int PLAYBACK_WINDOW_EVENTS = Integer.getInteger(
+            GerritMissedEventsPlaybackManager.class.getName() + ".playbackWindowEvents",
+            DEFAULT_PLAYBACK_WINDOW_EVENTS);
+
+    /**
+     * The maximum number of missed events triggered per second, 0 or less for no limit.
+     */
+    private static final int REPLAY_EVENTS_PER_SECOND = Integer.getInteger(
+            GerritMissedEventsPlaybackManager.class.getName() + ".replayEventsPerSecond",
+            DEFAULT_REPLAY_EVENTS_PER_SECOND);
+
+    /**
+     * The build queue length above which triggering missed events is paused, 0 or less for no limit.
+     */
+    private static final int REPLAY_MAX_QUEUE_LENGTH = Integer.getInteger(
+            GerritMissedEventsPlaybackManager.class.getName() + ".replayMaxQueueLength",
+            DEFAULT_REPLAY_MAX_QUEUE_LENGTH);
+
+    /**
+     * The maximum time in seconds to wait for the build queue to shrink below {@link #REPLAY_MAX_QUEUE_LENGTH}
+     * before triggering the next missed event anyway, 0 or less for no limit.
+     */
+    private static final int REPLAY_MAX_QUEUE_WAIT_SECONDS = Integer.getInteger(
+            GerritMissedEventsPlaybackManager.class.getName() + ".replayMaxQueueWaitSeconds",
+            DEFAULT_REPLAY_MAX_QUEUE_WAIT_SECONDS);
+
+    /**
+     * The time in seconds to wait before retrying a playback that failed to fetch a window,
+     * doubled for every failure in a row up to {@link #MAXIMUM_PLAYBACK_RETRY_SECONDS}.
+     */
+    private static final int PLAYBACK_RETRY_SECONDS = Math.max(1, Integer.getInteger(
+            GerritMissedEventsPlaybackManager.class.getName() + ".playbackRetrySeconds",
+            DEFAULT_PLAYBACK_RETRY_SECONDS));
 
     private String serverName;
     /**
      * Server Timestamp.
      */
-    protected EventTimeSlice serverTimestamp = null;
-    private static long previousTimeSlice = 0;
+    protected volatile EventTimeSlice serverTimestamp = null;
+    /**
+     * The last-alive timestamp as far as playback has come, persisted instead of {@link #serverTimestamp}
+     * while playback is in progress, so an interrupted playback resumes from there.
+     * Null when no playback is in progress.
+     */
+    protected volatile EventTimeSlice playbackTimestamp = null;
+    /**
+     * Identities of the Gerrit Events received or played back while playback is in progress.
+     * @see StringUtil#getEventIdentity(GerritTriggeredEvent)
+     */
+    protected final Set<String> receivedEventCache = Collections.newSetFromMap(Caffeine.newBuilder()
+            .maximumSize(RECEIVED_EVENT_CACHE_SIZE).<String, Boolean>build().asMap());
     /**
-     * List that contains received Gerrit Events.
+     * The highest patch set number by change number of the {@link PatchsetCreated} events received or played back
+     * while playback is in progress, so that an older patch set is not played back after a newer one.
      */
-    protected List<GerritTriggeredEvent> receivedEventCache
-        = Collections.synchronizedList(new ArrayList<GerritTriggeredEvent>());
+    protected final ConcurrentMap<String, Integer> newestPatchSets = Caffeine.newBuilder()
+            .maximumSize(RECEIVED_EVENT_CACHE_SIZE).<String, Integer>build().asMap();
 
     private boolean isSupported = false;
-    private boolean playBackComplete = false;
+    private volatile boolean playBackComplete = false;
+    private volatile PlaybackProgress progress = null;
+    private Future<?> playback = null;
+    private long nextReplay = 0;
     private boolean previousIsSupported;
     private GerritMissedEventsPlaybackPersistRunnable persistenceCheck;
 
@@ -123,7 +231,6 @@ public class GerritMissedEventsPlaybackManager implements ConnectionListener, Na
      * Start the persistenceCheck thread.
      */
     private void startPersistenceCheck() {
-        previousTimeSlice = 0;
         persistenceCheck.start();
     }
 
@@ -146,6 +253,11 @@ public class GerritMissedEventsPlaybackManager implements ConnectionListener, Na
                 // we could be missing events here that we should be persisting...
                 // so let's remove the data file so we are ready if it comes back
                 try {
+                    File checkpoint = getCheckpointFile(serverName);
+                    if (checkpoint != null && checkpoint.isFile()) {
+                        logger.warn("Deleting " + checkpoint.getAbsolutePath());
+                        Files.delete(checkpoint.toPath());
+                    }
                     XmlFile config = getConfigXml(serverName);
                     if (config != null) {
                         config.delete();
@@ -196,9 +308,15 @@ public class GerritMissedEventsPlaybackManager implements ConnectionListener, Na
 
     /**
      * Load in the last-alive Timestamp file.
+     * Falls back to the xml file written by earlier versions if there is no checkpoint yet.
      * @throws IOException is we cannot unmarshal.
      */
     protected void load() throws IOException {
+        File checkpoint = getCheckpointFile(serverName);
+        if (checkpoint != null && checkpoint.isFile()) {
+            serverTimestamp = EventTimeSlice.read(checkpoint);
+            return;
+        }
         XmlFile xml = getConfigXml(serverName);
         if (xml != null && xml.exists()) {
             serverTimestamp  = (EventTimeSlice)xml.unmarshal(serverTimestamp);
@@ -211,10 +329,11 @@ public class GerritMissedEventsPlaybackManager implements ConnectionListener, Na
      * get DateRange from current and last known time.
      * @return last known timestamp or current date if not found.
      */
-    protected synchronized Date getDateFromTimestamp() {
+    protected Date getDateFromTimestamp() {
         //get timestamp for server
-        if (serverTimestamp != null) {
-            Date myDate = new Date(serverTimestamp.getTimeSlice());
+        EventTimeSlice timestamp = serverTimestamp;
+        if (timestamp != null) {
+            Date myDate = new Date(timestamp.getTimeSlice());
             logger.debug("Previous alive timestamp was: {}", myDate);
             return myDate;
         }
@@ -258,52 +377,356 @@ public class GerritMissedEventsPlaybackManager implements ConnectionListener, Na
             playBackComplete = true;
             return;
         }
+        EventTimeSlice loaded = serverTimestamp;
+        if (loaded == null) {
+            loaded = new EventTimeSlice(timeStampDate.getTime());
+        }
+        final PlaybackProgress current = new PlaybackProgress(timeStampDate.getTime(), System.currentTimeMillis());
+        synchronized (this) {
+            if (playback != null) {
+                playback.cancel(true);
+            }
+            progress = current;
+            playbackTimestamp = loaded;
+            playback = PLAYBACK_EXECUTOR.submit(new Runnable() {
+                @Override
+                public void run() {
+                    playBack(current);
+                }
+            });
+        }
+    }
+
+    /**
+     * Plays back the missed events in the background, so the connection can go on with the live events.
+     * If a window cannot be fetched the playback is retried from the checkpoint of the last complete window
+     * while the connection stays up. Until it succeeds the playback stays in progress, so that checkpoint
+     * stays the persisted last-alive timestamp and the live events are remembered to not be triggered again.
+     *
+     * @param current the progress of this playback.
+     */
+    private void playBack(PlaybackProgress current) {
+        boolean failed = false;
         try {
-            List<GerritTriggeredEvent> events = getEventsFromDateRange(timeStampDate);
-            logger.info("({}) missed events to process for server: {} ...", events.size(), serverName);
-            for (GerritTriggeredEvent evt: events) {
-                logger.debug("({}) Processing missed event {}", serverName, evt);
-                boolean receivedEvtFound = false;
-                synchronized (receivedEventCache) {
-                  Iterator<GerritTriggeredEvent> i = receivedEventCache.iterator(); // Must be in synchronized block
-                  while (i.hasNext()) {
-                      GerritTriggeredEvent rEvt = i.next();
-                      if (rEvt.equals(evt)) {
-                        receivedEvtFound = true;
-                        break;
-                      }
-                  }
+            int count = playBackWindows(current);
+            logger.info("({}) missed events processed for server: {}", count, serverName);
+        } catch (UnsupportedEncodingException e) {
+            logger.error("Error building URL for playback query: " + e.getMessage(), e);
+        } catch (IOException e) {
+            failed = true;
+            logger.error("Error accessing URL for playback query for server " + serverName + ": " + e.getMessage(), e);
+        } finally {
+            synchronized (this) {
+                if (progress == current) {
+                    if (failed) {
+                        scheduleRetry(current);
+                    } else {
+                        progress = null;
+                        playback = null;
+                        playbackTimestamp = null;
+                        playBackComplete = true;
+                        logger.info("Processing completed for server: {}", serverName);
+                    }
                 }
-                if (receivedEvtFound) {
-                    logger.debug("({}) Event already triggered...skipping trigger.", serverName);
-                } else {
+            }
+        }
+    }
 
-                    //do we have this event in the time slice?
-                    long currentEventCreatedTime = evt.getEventCreatedOn().getTime();
-                    if (serverTimestamp.getTimeSlice() == currentEventCreatedTime) {
-                        if (serverTimestamp.getEvents().contains(evt)) {
-                            logger.debug("({}) Event already triggered from time slice...skipping trigger.", serverName);
-                            continue;
-                        }
+    /**
+     * Runs a failed playback again later, from the last checkpoint.
+     * A new connection cancels the retry and starts a playback of its own.
+     *
+     * @param current the progress of the failed playback.
+     */
+    private synchronized void scheduleRetry(final PlaybackProgress current) {
+        int failures = current.failed();
+        long delay = Math.min((long)PLAYBACK_RETRY_SECONDS << Math.min(failures - 1, MAX_RETRY_SHIFT),
+                MAXIMUM_PLAYBACK_RETRY_SECONDS);
+        logger.warn("({}) Playback of missed events failed {} times, retrying from {} in {} seconds",
+                serverName, failures, new Date(playbackTimestamp.getTimeSlice()), delay);
+        playback = jenkins.util.Timer.get().schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (GerritMissedEventsPlaybackManager.this) {
+                    if (progress == current) {
+                        playback = PLAYBACK_EXECUTOR.submit(new Runnable() {
+                            @Override
+                            public void run() {
+                                playBack(current);
+                            }
+                        });
                     }
-                    logger.info("({}) Triggering: {}", serverName, evt);
-                    GerritServer server = PluginImpl.getServer_(serverName);
-                    if (server == null) {
-                        logger.error("Server for {} could not be found. Skipping this event", serverName);
-                        continue;
+                }
+            }
+        }, delay, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Plays back the missed events between two points in time, one window at a time.
+     * Starts from the last checkpoint, which is the last-alive timestamp unless this playback is retried.
+     * After each window the end of it is checkpointed as the last-alive timestamp,
+     * so an interrupted playback resumes from there instead of from the beginning.
+     * A window that cannot be fetched completely is not checkpointed.
+     * The length of the next window is adapted to the number of events in the previous one.
+     * Patch sets are skipped when a newer patch set of the change follows in the batch,
+     * or has already been received or played back, see {@link #isSuperseded(GerritTriggeredEvent, Map)}.
+     *
+     * @param current the progress of this playback, from the last-alive timestamp to the time of connection.
+     * @return the number of missed events read.
+     * @throws IOException if HTTP errors occur, before the failing window is checkpointed.
+     */
+    private int playBackWindows(final PlaybackProgress current) throws IOException {
+        long window = TimeUnit.SECONDS.toMillis(PLAYBACK_WINDOW_SECONDS);
+        int total = 0;
+        long start = playbackTimestamp.getTimeSlice();
+        long end = current.getEnd();
+        do {
+            long to = Math.min(start + window, end);
+            // t2 is inclusive and has second precision, so the events in the last second make up the checkpoint
+            final EventTimeSlice checkpoint = new EventTimeSlice(to - to % TimeUnit.SECONDS.toMillis(1));
+            int count = getEventsFromDateRange(new Date(start), new Date(to), new EventBatchHandler() {
+                @Override
+                public void handle(List<GerritTriggeredEvent> batch) {
+                    Map<String, Integer> latestPatchSets = getLatestPatchSets(batch);
+                    for (GerritTriggeredEvent evt : batch) {
+                        if (Thread.currentThread().isInterrupted()) {
+                            return;
+                        }
+                        current.read();
+                        if (isSuperseded(evt, latestPatchSets)) {
+                            logger.debug("({}) Skipping {} since a later patch set is known", serverName, evt);
+                            receivedEventCache.add(StringUtil.getEventIdentity(evt));
+                            current.coalesced();
+                        } else if (playBack(evt, latestPatchSets)) {
+                            current.triggered();
+                        }
+                        Date createdOn = evt.getEventCreatedOn();
+                        if (createdOn != null) {
+                            current.advance(createdOn.getTime());
+                            if (createdOn.getTime() == checkpoint.getTimeSlice()) {
+                                checkpoint.addEvent(evt);
+                            }
+                        }
                     }
-                    server.triggerEvent(evt);
-                    receivedEventCache.add(evt);
-                    logger.debug("Added event {} to received cache for server: {}", evt, serverName);
                 }
+            });
+            total += count;
+            if (Thread.currentThread().isInterrupted()) {
+                logger.info("({}) Playback of missed events interrupted after {} events", serverName, total);
+                return total;
             }
-        } catch (UnsupportedEncodingException e) {
-            logger.error("Error building URL for playback query: " + e.getMessage(), e);
-        } catch (IOException e) {
-            logger.error("Error accessing URL for playback query: " + e.getMessage(), e);
+            logger.debug("({}) {} missed events between {} and {}", serverName, count, new Date(start), new Date(to));
+            if (checkpoint.getTimeSlice() > playbackTimestamp.getTimeSlice()) {
+                playbackTimestamp = checkpoint;
+                persistenceCheck.run();
+            }
+            current.advance(to);
+            window = adaptWindow(window, count);
+            start = to;
+        } while (start < end);
+        return total;
+    }
+
+    /**
+     * The highest patch set number of each change that has a {@link PatchsetCreated} event in a batch.
+     *
+     * @param batch the events.
+     * @return patch set number by change number.
+     */
+    private Map<String, Integer> getLatestPatchSets(List<GerritTriggeredEvent> batch) {
+        Map<String, Integer> latest = new HashMap<String, Integer>();
+        for (GerritTriggeredEvent evt : batch) {
+            if (evt instanceof PatchsetCreated && ((PatchsetCreated)evt).getChange() != null) {
+                String change = ((PatchsetCreated)evt).getChange().getNumber();
+                int patchSet = getPatchSetNumber((PatchsetCreated)evt);
+                Integer previous = latest.get(change);
+                if (change != null && (previous == null || previous < patchSet)) {
+                    latest.put(change, patchSet);
+                }
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * Tells if an event is a {@link PatchsetCreated} for a patch set that a later event in the same batch replaces,
+     * or that is older than a patch set of the change already received live or played back.
+     * Building it would only be wasted, since the newer patch set is built as well,
+     * and would report on the outdated patch set after the current one.
+     *
+     * @param evt the event.
+     * @param latestPatchSets the result of {@link #getLatestPatchSets(List)} for the batch.
+     * @return true if so.
+     */
+    private boolean isSuperseded(GerritTriggeredEvent evt, Map<String, Integer> latestPatchSets) {
+        if (!(evt instanceof PatchsetCreated) || ((PatchsetCreated)evt).getChange() == null) {
+            return false;
+        }
+        String change = ((PatchsetCreated)evt).getChange().getNumber();
+        if (change == null) {
+            return false;
+        }
+        int patchSet = getPatchSetNumber((PatchsetCreated)evt);
+        Integer latest = latestPatchSets.get(change);
+        Integer newest = newestPatchSets.get(change);
+        return patchSet >= 0 && ((latest != null && patchSet < latest) || (newest != null && patchSet < newest));
+    }
+
+    /**
+     * Remembers the patch set of a {@link PatchsetCreated} event received or played back during playback,
+     * if it is the newest of its change so far.
+     *
+     * @param evt the event.
+     */
+    private void recordPatchSet(GerritTriggeredEvent evt) {
+        if (!(evt instanceof PatchsetCreated) || ((PatchsetCreated)evt).getChange() == null) {
+            return;
+        }
+        String change = ((PatchsetCreated)evt).getChange().getNumber();
+        int patchSet = getPatchSetNumber((PatchsetCreated)evt);
+        if (change == null || patchSet < 0) {
+            return;
+        }
+        while (true) {
+            Integer previous = newestPatchSets.putIfAbsent(change, patchSet);
+            if (previous == null || previous >= patchSet || newestPatchSets.replace(change, previous, patchSet)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * The patch set number of an event.
+     *
+     * @param evt the event.
+     * @return the number, or -1 if it is missing or not a number.
+     */
+    private int getPatchSetNumber(ChangeBasedEvent evt) {
+        if (evt.getPatchSet() == null || evt.getPatchSet().getNumber() == null) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(evt.getPatchSet().getNumber());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Waits until the next missed event may be triggered, so that no more than {@link #REPLAY_EVENTS_PER_SECOND}
+     * are triggered per second and the build queue does not grow beyond {@link #REPLAY_MAX_QUEUE_LENGTH}.
+     * The wait for the build queue is given up after {@link #REPLAY_MAX_QUEUE_WAIT_SECONDS},
+     * so a queue that never drains does not stall the playback forever.
+     *
+     * @throws InterruptedException if the playback is cancelled while waiting.
+     */
+    private void throttle() throws InterruptedException {
+        if (REPLAY_MAX_QUEUE_LENGTH > 0) {
+            Jenkins jenkins = Jenkins.getInstanceOrNull();
+            int waited = 0;
+            int queueLength = getQueueLength(jenkins);
+            while (queueLength > REPLAY_MAX_QUEUE_LENGTH) {
+                if (REPLAY_MAX_QUEUE_WAIT_SECONDS > 0 && waited >= REPLAY_MAX_QUEUE_WAIT_SECONDS) {
+                    logger.warn("({}) The build queue is still {} items long after {} seconds, "
+                            + "triggering more missed events anyway", serverName, queueLength, waited);
+                    break;
+                }
+                if (waited % QUEUE_WAIT_LOG_SECONDS == 0) {
+                    logger.info("({}) Waiting for the build queue of {} items before triggering more missed events",
+                            serverName, queueLength);
+                }
+                TimeUnit.SECONDS.sleep(1);
+                waited++;
+                queueLength = getQueueLength(jenkins);
+            }
+        }
+        if (REPLAY_EVENTS_PER_SECOND > 0) {
+            long now = System.nanoTime();
+            long wait = nextReplay - now;
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            nextReplay = Math.max(now, nextReplay) + TimeUnit.SECONDS.toNanos(1) / REPLAY_EVENTS_PER_SECOND;
+        }
+    }
+
+    /**
+     * The length of the build queue.
+     *
+     * @param jenkins the Jenkins instance, or null if it is not up.
+     * @return the number of items in the queue, 0 if Jenkins is not up.
+     */
+    private int getQueueLength(@CheckForNull Jenkins jenkins) {
+        if (jenkins == null) {
+            return 0;
         }
-        playBackComplete = true;
-        logger.info("Processing completed for server: {}", serverName);
+        return jenkins.getQueue().getApproximateItemsQuickly().size();
+    }
+
+    /**
+     * Halves the playback window if it had more events than {@link #PLAYBACK_WINDOW_EVENTS},
+     * or doubles it if it had less than half of that.
+     *
+     * @param window the current window in ms.
+     * @param count the number of events in the current window.
+     * @return the next window in ms.
+     */
+    private long adaptWindow(long window, int count) {
+        long minimum = TimeUnit.SECONDS.toMillis(1);
+        long maximum = TimeUnit.DAYS.toMillis(MAXIMUM_PLAYBACK_WINDOW_DAYS);
+        if (count > PLAYBACK_WINDOW_EVENTS) {
+            return Math.max(minimum, window / 2);
+        } else if (count * 2 < PLAYBACK_WINDOW_EVENTS) {
+            return Math.min(maximum, window * 2);
+        }
+        return window;
+    }
+
+    /**
+     * Triggers a missed event unless it has already been received or triggered from the persisted time slice,
+     * or a newer patch set of its change has been received while waiting for the throttle.
+     * @param evt the missed event.
+     * @param latestPatchSets the result of {@link #getLatestPatchSets(List)} for the batch of the event.
+     * @return true if it was triggered.
+     */
+    private boolean playBack(GerritTriggeredEvent evt, Map<String, Integer> latestPatchSets) {
+        logger.debug("({}) Processing missed event {}", serverName, evt);
+        String identity = StringUtil.getEventIdentity(evt);
+        if (receivedEventCache.contains(identity)) {
+            logger.debug("({}) Event already triggered...skipping trigger.", serverName);
+            return false;
+        }
+        //do we have this event in the time slice?
+        EventTimeSlice slice = playbackTimestamp;
+        if (slice != null && evt.getEventCreatedOn() != null
+                && slice.getTimeSlice() == evt.getEventCreatedOn().getTime()) {
+            if (slice.containsEvent(identity)) {
+                logger.debug("({}) Event already triggered from time slice...skipping trigger.", serverName);
+                return false;
+            }
+        }
+        GerritServer server = PluginImpl.getServer_(serverName);
+        if (server == null) {
+            logger.error("Server for {} could not be found. Skipping this event", serverName);
+            return false;
+        }
+        try {
+            throttle();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        if (isSuperseded(evt, latestPatchSets)) {
+            logger.debug("({}) Skipping {} since a later patch set has been received", serverName, evt);
+            receivedEventCache.add(identity);
+            return false;
+        }
+        logger.info("({}) Triggering: {}", serverName, evt);
+        server.triggerEvent(evt);
+        recordPatchSet(evt);
+        receivedEventCache.add(identity);
+        logger.debug("Added event {} to received cache for server: {}", evt, serverName);
+        return true;
     }
 
     /**
@@ -345,25 +768,19 @@ public class GerritMissedEventsPlaybackManager implements ConnectionListener, Na
             saveTimestamp(triggeredEvent);
             //add to cache
             if (!playBackComplete) {
-                boolean receivedEvtFound = false;
-                synchronized (this) {
-                  Iterator<GerritTriggeredEvent> i = receivedEventCache.iterator(); // Must be in synchronized block
-                  while (i.hasNext()) {
-                      GerritTriggeredEvent rEvt = i.next();
-                      if (rEvt.equals(triggeredEvent)) {
-                        receivedEvtFound = true;
-                        break;
-                      }
-                  }
-                }
-                if (!receivedEvtFound) {
-                    receivedEventCache.add(triggeredEvent);
+                recordPatchSet(triggeredEvent);
+                if (receivedEventCache.add(StringUtil.getEventIdentity(triggeredEvent))) {
                     logger.debug("Added event {} to received cache for server: {}", event, serverName);
                 } else {
                     logger.debug("Event {} ALREADY in received cache for server: {}", event, serverName);
                 }
             } else {
-                receivedEventCache = Collections.synchronizedList(new ArrayList<GerritTriggeredEvent>());
+                if (!receivedEventCache.isEmpty()) {
+                    receivedEventCache.clear();
+                }
+                if (!newestPatchSets.isEmpty()) {
+                    newestPatchSets.clear();
+                }
                 logger.debug("Playback complete...will NOT add event {} to received cache for server: {}"
                         , event, serverName);
             }
@@ -372,101 +789,171 @@ public class GerritMissedEventsPlaybackManager implements ConnectionListener, Na
 
     /**
      * Get events for a given lower bound date.
+     * If the events cannot be fetched, the error is logged and the events read until then are returned.
      * @param lowerDate lower bound for which to request missed events.
      * @return collection of gerrit events.
-     * @throws IOException if HTTP errors occur
+     * @throws IOException if the URL cannot be built
      */
     protected List<GerritTriggeredEvent> getEventsFromDateRange(Date lowerDate) throws IOException {
+        final List<GerritTriggeredEvent> events = new ArrayList<GerritTriggeredEvent>();
+        try {
+            getEventsFromDateRange(lowerDate, new EventBatchHandler() {
+                @Override
+                public void handle(List<GerritTriggeredEvent> batch) {
+                    events.addAll(batch);
+                }
+            });
+        } catch (UnsupportedEncodingException e) {
+            throw e;
+        } catch (IOException e) {
+            logger.warn("Could not read all missed events for server " + serverName + ": " + e.getMessage(), e);
+        }
+        return events;
+    }
+
+    /**
+     * Streams the events for a given lower bound date to the handler in batches of at most {@link #BATCH_SIZE}.
+     * @param lowerDate lower bound for which to request missed events.
+     * @param handler the handler of the parsed events.
+     * @return the number of events handed to the handler.
+     * @throws IOException if HTTP errors occur
+     */
+    protected int getEventsFromDateRange(Date lowerDate, EventBatchHandler handler) throws IOException {
+        return getEventsFromDateRange(lowerDate, null, handler);
+    }
 
+    /**
+     * Streams the events for a given date range to the handler in batches of at most {@link #BATCH_SIZE}.
+     * @param lowerDate lower bound for which to request missed events.
+     * @param upperDate upper bound for which to request missed events, or null for no upper bound.
+     * @param handler the handler of the parsed events.
+     * @return the number of events handed to the handler.
+     * @throws IOException if the server is gone or HTTP errors occur, after the events read until then are handled.
+     */
+    protected int getEventsFromDateRange(Date lowerDate, @CheckForNull Date upperDate, EventBatchHandler handler)
+            throws IOException {
         GerritServer server = PluginImpl.getServer_(serverName);
         if (server == null) {
-            logger.error("Server for {} could not be found.", serverName);
-            return Collections.synchronizedList(new ArrayList<GerritTriggeredEvent>());
+            throw new IOException("Server for " + serverName + " could not be found.");
         }
         IGerritHudsonTriggerConfig config = server.getConfig();
 
-        String events = getEventsFromEventsLogPlugin(config, buildEventsLogURL(config, lowerDate));
-
-        return createEventsFromString(events);
+        return getEventsFromEventsLogPlugin(config, buildEventsLogURL(config, lowerDate, upperDate), handler);
     }
 
     /**
-     * Takes a string of json events and creates a collection.
-     * @param eventsString Events in json in a string.
-     * @return collection of events.
+     * Creates an event from one line of json.
+     * @param line the json line.
+     * @return the event, or null if the line is not a usable triggered event.
      */
-    private List<GerritTriggeredEvent> createEventsFromString(String eventsString) {
-        List<GerritTriggeredEvent> events = Collections.synchronizedList(new ArrayList<GerritTriggeredEvent>());
-        Scanner scanner = new Scanner(eventsString);
-        while (scanner.hasNextLine()) {
-            String line = scanner.nextLine();
-            logger.debug("found line: {}", line);
-            JSONObject jsonObject = null;
-            try {
-                jsonObject = GerritJsonEventFactory.getJsonObjectIfInterestingAndUsable(line);
-                if (jsonObject == null) {
-                    continue;
-                }
-            } catch (Exception ex) {
-                logger.warn("Unanticipated error when creating DTO representation of JSON string.", ex);
-                continue;
-            }
-            GerritEvent evt = GerritJsonEventFactory.getEvent(jsonObject);
-            if (evt instanceof GerritTriggeredEvent) {
-                Provider provider = new Provider();
-                provider.setName(serverName);
-                ((GerritTriggeredEvent)evt).setProvider(provider);
-                events.add((GerritTriggeredEvent)evt);
+    @CheckForNull
+    private GerritTriggeredEvent createEventFromLine(String line) {
+        JSONObject jsonObject = null;
+        try {
+            jsonObject = GerritJsonEventFactory.getJsonObjectIfInterestingAndUsable(line);
+            if (jsonObject == null) {
+                return null;
             }
+        } catch (Exception ex) {
+            logger.warn("Unanticipated error when creating DTO representation of JSON string.", ex);
+            return null;
         }
-        scanner.close();
-        return events;
+        GerritEvent evt = GerritJsonEventFactory.getEvent(jsonObject);
+        if (evt instanceof GerritTriggeredEvent) {
+            Provider provider = new Provider();
+            provider.setName(serverName);
+            ((GerritTriggeredEvent)evt).setProvider(provider);
+            return (GerritTriggeredEvent)evt;
+        }
+        return null;
     }
 
     /**
+     * Reads the events line by line from the response of the events-log plugin
+     * and hands them to the handler in batches, so the response is never held in memory as a whole.
      *
      * @param config Gerrit config for server.
      * @param url URL to use.
-     * @return String of gerrit events.
+     * @param handler the handler of the parsed events.
+     * @return the number of events handed to the handler.
+     * @throws IOException if the request fails, is not successful or breaks off,
+     *                     after the events read until then are handled.
      */
-    protected String getEventsFromEventsLogPlugin(IGerritHudsonTriggerConfig config, String url) {
+    protected int getEventsFromEventsLogPlugin(IGerritHudsonTriggerConfig config, String url,
+                                               EventBatchHandler handler) throws IOException {
         logger.debug("({}) Going to GET: {}", serverName, url);
 
-        HttpResponse execute = null;
+        CloseableHttpResponse execute = HttpUtils.performHTTPGet(config, url);
+        int count = 0;
         try {
-            execute = HttpUtils.performHTTPGet(config, url);
-        } catch (IOException e) {
-            logger.warn(e.getMessage(), e);
-            return "";
-        }
+            int statusCode = execute.getStatusLine().getStatusCode();
+            logger.debug("Received status code: {} for server: {}", statusCode, serverName);
 
-        int statusCode = execute.getStatusLine().getStatusCode();
-        logger.debug("Received status code: {} for server: {}", statusCode, serverName);
-
-        if (statusCode == HttpURLConnection.HTTP_OK) {
-            try {
-                HttpEntity entity = execute.getEntity();
-                if (entity != null) {
-                    ContentType contentType = ContentType.get(entity);
-                    if (contentType == null) {
-                        contentType = ContentType.DEFAULT_TEXT;
+            if (statusCode == HttpURLConnection.HTTP_OK) {
+                List<GerritTriggeredEvent> batch = new ArrayList<GerritTriggeredEvent>(BATCH_SIZE);
+                try {
+                    HttpEntity entity = execute.getEntity();
+                    if (entity != null) {
+                        ContentType contentType = ContentType.get(entity);
+                        if (contentType == null) {
+                            contentType = ContentType.DEFAULT_TEXT;
+                        }
+                        Charset charset = contentType.getCharset();
+                        if (charset == null) {
+                            charset = Charset.defaultCharset();
+                        }
+                        BufferedReader reader = new BufferedReader(new InputStreamReader(entity.getContent(), charset));
+                        try {
+                            String line = reader.readLine();
+                            while (line != null && !Thread.currentThread().isInterrupted()) {
+                                GerritTriggeredEvent evt = createEventFromLine(line);
+                                if (evt != null) {
+                                    batch.add(evt);
+                                    if (batch.size() >= BATCH_SIZE) {
+                                        count += handle(handler, batch);
+                                    }
+                                }
+                                line = reader.readLine();
+                            }
+                        } finally {
+                            reader.close();
+                        }
+                        count += handle(handler, batch);
                     }
-                    Charset charset = contentType.getCharset();
-                    if (charset == null) {
-                        charset = Charset.defaultCharset();
+                    return count;
+                } catch (IOException ioe) {
+                    count += handle(handler, batch);
+                    if (count > 0) {
+                        logger.warn("Stopped reading missed events for server {} after {} events.", serverName, count);
                     }
-                    InputStream bodyStream = entity.getContent();
-                    String body = IOUtils.toString(bodyStream, charset.name());
-                    logger.debug(body);
-                    return body;
+                    throw ioe;
                 }
-            } catch (IOException ioe) {
-                logger.warn(ioe.getMessage(), ioe);
             }
+            throw new IOException("Not successful at requesting missed events from " + EVENTS_LOG_PLUGIN_NAME
+                    + " plugin. (errorcode: " + statusCode + ")");
+        } finally {
+            try {
+                //Gives the connection back to the pool
+                execute.close();
+            } catch (IOException e) {
+                logger.trace("Error happened when closing the response.", e);
+            }
+        }
+    }
+
+    /**
+     * Hands a batch of events to the handler and clears it.
+     * @param handler the handler.
+     * @param batch the batch, empty when this method returns.
+     * @return the number of events handed over.
+     */
+    private int handle(EventBatchHandler handler, List<GerritTriggeredEvent> batch) {
+        int size = batch.size();
+        if (size > 0) {
+            handler.handle(Collections.unmodifiableList(batch));
+            batch.clear();
         }
-        logger.warn("Not successful at requesting missed events from {} plugin. (errorcode: {})",
-                EVENTS_LOG_PLUGIN_NAME, statusCode);
-        return "";
+        return size;
     }
 
     /**
@@ -478,9 +965,25 @@ public class GerritMissedEventsPlaybackManager implements ConnectionListener, Na
      */
     protected String buildEventsLogURL(IGerritHudsonTriggerConfig config, Date date1)
             throws UnsupportedEncodingException {
+        return buildEventsLogURL(config, date1, null);
+    }
+
+    /**
+     *
+     * @param config Gerrit Config for server.
+     * @param date1 lower bound for date range,
+     * @param date2 upper bound for date range, or null for no upper bound.
+     * @return url to use to request missed events.
+     * @throws UnsupportedEncodingException if URL encoding not supported.
+     */
+    protected String buildEventsLogURL(IGerritHudsonTriggerConfig config, Date date1, @CheckForNull Date date2)
+            throws UnsupportedEncodingException {
         SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
 
         String url = EVENTS_LOG_PLUGIN_URL + "?t1=" + URLEncoder.encode(df.format(date1), "UTF-8");
+        if (date2 != null) {
+            url += "&t2=" + URLEncoder.encode(df.format(date2), "UTF-8");
+        }
 
         String gerritFrontEndUrl = config.getGerritFrontEndUrl();
         String restUrl = gerritFrontEndUrl;
@@ -492,11 +995,12 @@ public class GerritMissedEventsPlaybackManager implements ConnectionListener, Na
 
     /**
      * Takes an event timestamp and saves it.
-     * The thread persistenceCheck stores this to xml.
+     * The thread persistenceCheck stores this to the checkpoint file.
+     * Lock-free, since it is called for every event.
      * @param evt Gerrit Event to save.
      * @return true if successfully saved.
      */
-    synchronized boolean saveTimestamp(GerritTriggeredEvent evt) {
+    boolean saveTimestamp(GerritTriggeredEvent evt) {
         // If there is not timestamp, then ignore this event.
         if (evt == null || evt.getEventCreatedOn() == null) {
             logger.debug("'eventCreatedOn' is null; skipping event.");
@@ -510,29 +1014,24 @@ public class GerritMissedEventsPlaybackManager implements ConnectionListener, Na
             return false;
         }
 
-        if (serverTimestamp != null && ts < serverTimestamp.getTimeSlice()) {
-            logger.debug("Event has same time slice {} or is earlier...NOT Updating time slice.", ts);
-            return false;
-        } else {
-            if (serverTimestamp == null) {
-                serverTimestamp = new EventTimeSlice(ts);
-                serverTimestamp.addEvent(evt);
-            } else {
-                if (ts > serverTimestamp.getTimeSlice()) {
-                    logger.debug("Current timestamp {} is GREATER than slice time {}.",
-                            ts, serverTimestamp.getTimeSlice());
-                    serverTimestamp = new EventTimeSlice(ts);
-                    serverTimestamp.addEvent(evt);
-                } else {
-                    if (ts == serverTimestamp.getTimeSlice()) {
-                        logger.debug("Current timestamp {} is EQUAL to slice time {}.",
-                                ts, serverTimestamp.getTimeSlice());
-                        serverTimestamp.addEvent(evt);
-                    }
-                }
+        while (true) {
+            EventTimeSlice current = serverTimestamp;
+            if (current != null && ts < current.getTimeSlice()) {
+                logger.debug("Event has same time slice {} or is earlier...NOT Updating time slice.", ts);
+                return false;
+            }
+            if (current != null && ts == current.getTimeSlice()) {
+                logger.debug("Current timestamp {} is EQUAL to slice time {}.", ts, current.getTimeSlice());
+                current.addEvent(evt);
+                return true;
+            }
+            EventTimeSlice next = new EventTimeSlice(ts);
+            next.addEvent(evt);
+            if (SERVER_TIMESTAMP.compareAndSet(this, current, next)) {
+                logger.debug("Current timestamp {} starts a new time slice.", ts);
+                return true;
             }
         }
-        return true;
     }
 
     /**
@@ -546,6 +1045,11 @@ public class GerritMissedEventsPlaybackManager implements ConnectionListener, Na
             logger.error("Could not find server {}", serverName);
         }
         stopPersistenceCheck();
+        synchronized (this) {
+            if (playback != null) {
+                playback.cancel(true);
+            }
+        }
     }
 
     /**
@@ -555,6 +1059,22 @@ public class GerritMissedEventsPlaybackManager implements ConnectionListener, Na
         return isSupported;
     }
 
+    /**
+     * @return whether no playback is in progress.
+     */
+    public boolean isPlayBackComplete() {
+        return playBackComplete;
+    }
+
+    /**
+     * The progress of the playback in progress.
+     * @return the progress, or null if no playback is in progress.
+     */
+    @CheckForNull
+    public PlaybackProgress getPlaybackProgress() {
+        return progress;
+    }
+
     /**
      * Return server timestamp.
      * @return timestamp.
@@ -564,6 +1084,24 @@ public class GerritMissedEventsPlaybackManager implements ConnectionListener, Na
     }
 
     /**
+     * @param serverName The Name of the Gerrit Server to load the checkpoint for.
+     * @return the checkpoint file gerrit-trigger-server-timestamps.bin, or null if Jenkins is not available.
+     */
+    @CheckForNull
+    public static File getCheckpointFile(String serverName) {
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        if (jenkins == null) {
+            return null;
+        }
+
+        File dataDir = new File(jenkins.getRootDir(), GERRIT_SERVER_EVENT_DATA_FOLDER);
+        File serverDataDir = new File(dataDir, serverName);
+        serverDataDir.mkdirs();
+        return new File(serverDataDir, GERRIT_TRIGGER_SERVER_TIMESTAMPS_CHECKPOINT);
+    }
+
+    /**
+     * The file the timestamp was persisted to by earlier versions, only read when there is no checkpoint.
      * @param serverName The Name of the Gerrit Server to load config for.
      * @return XmlFile corresponding to gerrit-trigger-server-timestamps.xml.
      * @throws IOException if it occurs.
@@ -589,14 +1127,29 @@ public class GerritMissedEventsPlaybackManager implements ConnectionListener, Na
     }
 
     /**
-     * Responsible for persisting timestamps to xml.
-     * Time slices jump by 1000ms so the thread only checks every 1 second.
+     * Receives the missed events in the order they were read from the events-log plugin.
+     */
+    interface EventBatchHandler {
+        /**
+         * Handles one batch of events. The list is only valid during the call.
+         * @param batch the events.
+         */
+        void handle(List<GerritTriggeredEvent> batch);
+    }
+
+    /**
+     * Responsible for persisting timestamps to the checkpoint file.
+     * Time slices jump by 1000ms so the thread only checks every 1 second,
+     * and only writes when the time slice or the number of events in it changed.
      */
     class GerritMissedEventsPlaybackPersistRunnable implements Runnable {
         private final AtomicBoolean running = new AtomicBoolean(false);
         private static final long CHECK_INTERVAL = 1000;
         private ScheduledExecutorService scheduler = jenkins.util.Timer.get();
         private ScheduledFuture<?> task = null;
+        private long persistedTimeSlice = 0;
+        private int persistedEventCount = 0;
+        private boolean legacyDeleted = false;
 
         /**
          * Constructor.
@@ -609,6 +1162,7 @@ public class GerritMissedEventsPlaybackManager implements ConnectionListener, Na
          */
         public synchronized void start() {
             if (!isRunning()) {
+                persistedTimeSlice = 0;
                 running.set(true);
                 task = scheduler.scheduleAtFixedRate(this, 0, CHECK_INTERVAL, TimeUnit.MILLISECONDS);
             }
@@ -632,28 +1186,54 @@ public class GerritMissedEventsPlaybackManager implements ConnectionListener, Na
         }
 
         @Override
-        public void run() {
-            if (serverTimestamp != null && previousTimeSlice < serverTimestamp.getTimeSlice()) {
-                previousTimeSlice = serverTimestamp.getTimeSlice();
-                persistTimeStamp();
+        public synchronized void run() {
+            EventTimeSlice timestamp = playbackTimestamp;
+            if (timestamp == null) {
+                timestamp = serverTimestamp;
+            }
+            if (timestamp == null) {
+                return;
+            }
+            long timeSlice = timestamp.getTimeSlice();
+            int eventCount = timestamp.getEventCount();
+            if (persistedTimeSlice < timeSlice
+                    || (persistedTimeSlice == timeSlice && persistedEventCount != eventCount)) {
+                if (persistTimeStamp(timestamp)) {
+                    persistedTimeSlice = timeSlice;
+                    persistedEventCount = eventCount;
+                }
             }
         }
 
         /**
-         * Saves the current event timestamp to xml.
+         * Saves an event timestamp to the checkpoint file.
+         * @param timestamp the timestamp.
+         * @return true if it was saved.
          */
-        private void persistTimeStamp() {
+        private boolean persistTimeStamp(EventTimeSlice timestamp) {
+            File checkpoint = getCheckpointFile(serverName);
+            if (checkpoint == null) {
+                logger.error("Checkpoint for " + serverName + " is null, please check file permissions.");
+                return false;
+            }
             try {
-                XmlFile config = getConfigXml(serverName);
-                if (config == null) {
-                    logger.error("XML " + serverName + " is null, please check file permissions.");
-                } else {
-                    EventTimeSlice serverTimestampCopy = EventTimeSlice.shallowCopy(serverTimestamp);
-                    config.write(serverTimestampCopy);
-                }
+                timestamp.write(checkpoint);
             } catch (IOException e) {
                 logger.error(e.getMessage(), e);
+                return false;
+            }
+            if (!legacyDeleted) {
+                legacyDeleted = true;
+                try {
+                    XmlFile config = getConfigXml(serverName);
+                    if (config != null && config.exists()) {
+                        config.delete();
+                    }
+                } catch (IOException e) {
+                    logger.warn("Could not delete the old timestamp file for " + serverName, e);
+                }
             }
+            return true;
         }
     }
 }
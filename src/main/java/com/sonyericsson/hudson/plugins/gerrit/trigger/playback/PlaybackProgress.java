@@ -0,0 +1,192 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2026 the Gerrit Trigger plugin authors.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.trigger.playback;
+
+import hudson.Util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The progress of one playback of missed events, as shown on the server page.
+ * Progress is measured as how far into the missed period the played back events have come.
+ */
+public class PlaybackProgress {
+
+    private static final int HUNDRED_PERCENT = 100;
+
+    private final long from;
+    private final long end;
+    private final long started = System.currentTimeMillis();
+    private volatile long position;
+    private final AtomicInteger read = new AtomicInteger();
+    private final AtomicInteger triggered = new AtomicInteger();
+    private final AtomicInteger coalesced = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+
+    /**
+     * Constructor.
+     *
+     * @param from the last-alive timestamp in ms.
+     * @param end the time the connection was established in ms.
+     */
+    PlaybackProgress(long from, long end) {
+        this.from = from;
+        this.end = end;
+        this.position = from;
+    }
+
+    /**
+     * The last-alive timestamp playback started from.
+     *
+     * @return the time in ms.
+     */
+    long getFrom() {
+        return from;
+    }
+
+    /**
+     * The time the connection was established, where playback ends.
+     *
+     * @return the time in ms.
+     */
+    long getEnd() {
+        return end;
+    }
+
+    /**
+     * Moves the progress forward to the creation time of a played back event.
+     *
+     * @param time the time in ms.
+     */
+    void advance(long time) {
+        if (time > position) {
+            position = Math.min(time, end);
+        }
+    }
+
+    /**
+     * Counts an event read from the events-log plugin.
+     */
+    void read() {
+        read.incrementAndGet();
+    }
+
+    /**
+     * Counts an event that was triggered.
+     */
+    void triggered() {
+        triggered.incrementAndGet();
+    }
+
+    /**
+     * Counts an event that was not triggered since a later patch set of the same change was.
+     */
+    void coalesced() {
+        coalesced.incrementAndGet();
+    }
+
+    /**
+     * Counts a failure to fetch the missed events.
+     *
+     * @return the number of failures so far.
+     */
+    int failed() {
+        return failures.incrementAndGet();
+    }
+
+    /**
+     * The number of times the missed events could not be fetched and playback has been retried.
+     *
+     * @return the count.
+     */
+    public int getFailures() {
+        return failures.get();
+    }
+
+    /**
+     * The number of events read so far.
+     *
+     * @return the count.
+     */
+    public int getRead() {
+        return read.get();
+    }
+
+    /**
+     * The number of events triggered so far.
+     *
+     * @return the count.
+     */
+    public int getTriggered() {
+        return triggered.get();
+    }
+
+    /**
+     * The number of events skipped so far since a later patch set of the same change was triggered.
+     *
+     * @return the count.
+     */
+    public int getCoalesced() {
+        return coalesced.get();
+    }
+
+    /**
+     * How far into the missed period playback has come.
+     *
+     * @return the percentage, 0 to 100.
+     */
+    public int getPercentage() {
+        if (end <= from) {
+            return HUNDRED_PERCENT;
+        }
+        return (int)((position - from) * HUNDRED_PERCENT / (end - from));
+    }
+
+    /**
+     * The estimated time left, extrapolated from the time taken so far.
+     *
+     * @return the time left in ms, or -1 if nothing has been played back yet.
+     */
+    public long getRemainingMillis() {
+        long done = position - from;
+        if (done <= 0) {
+            return -1;
+        }
+        long elapsed = System.currentTimeMillis() - started;
+        return (long)((double)elapsed * (end - position) / done);
+    }
+
+    /**
+     * The estimated time left for display.
+     *
+     * @return the time span, or null if it can't be estimated yet.
+     */
+    public String getRemainingTime() {
+        long remaining = getRemainingMillis();
+        if (remaining < 0) {
+            return null;
+        }
+        return Util.getTimeSpanString(remaining);
+    }
+}
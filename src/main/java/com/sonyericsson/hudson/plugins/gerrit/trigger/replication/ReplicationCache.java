@@ -23,14 +23,35 @@
  */
 package com.sonyericsson.hudson.plugins.gerrit.trigger.replication;
 
-
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Policy;
+import com.github.benmanes.caffeine.cache.Weigher;
+import com.sonymobile.tools.gerrit.gerritevents.dto.attr.Provider;
 import com.sonymobile.tools.gerrit.gerritevents.dto.events.RefReplicated;
 
 /**
@@ -86,12 +107,37 @@ public class ReplicationCache {
      * Cache expiration in minutes.
      */
     public static final int DEFAULT_EXPIRATION_IN_MINUTES = (int)TimeUnit.HOURS.toMinutes(6);
+    /**
+     * Default maximum number of events written to the store, the most recent ones are kept.
+     */
+    public static final int DEFAULT_MAX_STORED_EVENTS = 100000;
+    /**
+     * Default maximum estimated size of the cached events in bytes.
+     */
+    public static final long DEFAULT_MAXIMUM_WEIGHT = 64L * 1024 * 1024;
+
+    /**
+     * The prefix of the system properties tuning the cache.
+     */
+    static final String PROPERTY_PREFIX = ReplicationCache.class.getName() + ".";
+    /**
+     * Estimated bytes taken by a cached event besides its ref: the key, the event, the shared strings
+     * and the cache entry.
+     */
+    static final int ENTRY_WEIGHT = 320;
 
     private static final Logger logger = LoggerFactory.getLogger(ReplicationCache.class);
+    private static final String STORE_HEADER = "RC1";
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final char SEPARATOR = '\t';
+    private static final int FIELDS = 7;
     private final long expiration;
     private final TimeUnit unit;
+    private final long maximumSize;
+    private final long maximumWeight;
     private long creationTime;
-    private Cache<RefReplicatedId, RefReplicated> events = null;
+    private Cache<RefReplicatedId, Entry> events = null;
+    private final AtomicBoolean modified = new AtomicBoolean();
 
     /**
      * Default constructor.
@@ -102,11 +148,28 @@ public class ReplicationCache {
 
     /**
      * Constructor use by default constructor and for unit tests.
+     * The cache is bounded by the system property <code>maximumSize</code> in number of events if set,
+     * otherwise by <code>maximumWeight</code> in estimated bytes, prefixed with the name of this class.
      *
      * @param expiration Cache expiration
      * @param unit the unit that expiration is expressed in
      */
     public ReplicationCache(long expiration, TimeUnit unit) {
+        this(expiration, unit, Long.getLong(PROPERTY_PREFIX + "maximumSize", 0),
+                Long.getLong(PROPERTY_PREFIX + "maximumWeight", DEFAULT_MAXIMUM_WEIGHT));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param expiration Cache expiration
+     * @param unit the unit that expiration is expressed in
+     * @param maximumSize the maximum number of events, or 0 to bound by weight instead
+     * @param maximumWeight the maximum estimated size of the events in bytes, when not bound by number
+     */
+    public ReplicationCache(long expiration, TimeUnit unit, long maximumSize, long maximumWeight) {
+        this.maximumSize = maximumSize;
+        this.maximumWeight = maximumWeight;
         if (expiration >= 0) {
             this.expiration = expiration;
         } else {
@@ -135,9 +198,37 @@ public class ReplicationCache {
     public boolean initialize() {
         if (events == null) {
             try {
-                events = Caffeine.newBuilder()
-                        .expireAfterWrite(expiration, unit)
-                        .build();
+                Caffeine<RefReplicatedId, Entry> builder = Caffeine.newBuilder()
+                        .expireAfter(new Expiry<RefReplicatedId, Entry>() {
+                            @Override
+                            public long expireAfterCreate(RefReplicatedId key, Entry value, long currentTime) {
+                                return value.getRemainingNanos();
+                            }
+
+                            @Override
+                            public long expireAfterUpdate(RefReplicatedId key, Entry value, long currentTime,
+                                                          long currentDuration) {
+                                return value.getRemainingNanos();
+                            }
+
+                            @Override
+                            public long expireAfterRead(RefReplicatedId key, Entry value, long currentTime,
+                                                        long currentDuration) {
+                                return currentDuration;
+                            }
+                        })
+                        .recordStats();
+                if (maximumSize > 0) {
+                    builder.maximumSize(maximumSize);
+                } else {
+                    builder.maximumWeight(maximumWeight).weigher(new Weigher<RefReplicatedId, Entry>() {
+                        @Override
+                        public int weigh(RefReplicatedId key, Entry value) {
+                            return value.getWeight();
+                        }
+                    });
+                }
+                events = builder.build();
                 logger.info("initialized replication cache with expiration in {}: {}", unit, expiration);
             } catch (Exception ex) {
                 logger.warn("initialize failure in {}: {}", unit, expiration);
@@ -153,8 +244,275 @@ public class ReplicationCache {
      */
     public void put(RefReplicated refReplicated) {
         if (events != null) {
-            events.put(RefReplicatedId.fromRefReplicated(refReplicated), refReplicated);
+            RefReplicatedId id = RefReplicatedId.fromRefReplicated(refReplicated);
+            //Let the event share the strings repeated over many events with the key
+            refReplicated.setProject(id.project);
+            refReplicated.setTargetNode(id.targetNode);
+            events.put(id, new Entry(refReplicated, System.currentTimeMillis() + unit.toMillis(expiration)));
+            modified.set(true);
+        }
+    }
+
+    /**
+     * Performs the pending evictions now rather than with the next operations on the cache.
+     */
+    void cleanUp() {
+        if (events != null) {
+            events.cleanUp();
+        }
+    }
+
+    /**
+     * The number of cached events.
+     *
+     * @return the approximate number.
+     */
+    public long getSize() {
+        if (events == null) {
+            return 0;
+        }
+        return events.estimatedSize();
+    }
+
+    /**
+     * The estimated memory taken by the cached events.
+     *
+     * @return the approximate number of bytes.
+     */
+    public long getEstimatedFootprint() {
+        if (events == null) {
+            return 0;
         }
+        Optional<Policy.Eviction<RefReplicatedId, Entry>> eviction = events.policy().eviction();
+        if (eviction.isPresent() && eviction.get().weightedSize().isPresent()) {
+            return eviction.get().weightedSize().getAsLong();
+        }
+        //Bound by number, so the weights are not tracked
+        return events.estimatedSize() * ENTRY_WEIGHT;
+    }
+
+    /**
+     * The ratio of lookups that found a replicated event.
+     *
+     * @return the hit rate, between 0 and 1.
+     */
+    public double getHitRate() {
+        if (events == null) {
+            return 0;
+        }
+        return events.stats().hitRate();
+    }
+
+    /**
+     * The number of lookups.
+     *
+     * @return the count.
+     */
+    public long getRequestCount() {
+        if (events == null) {
+            return 0;
+        }
+        return events.stats().requestCount();
+    }
+
+    /**
+     * The number of events removed to keep the cache within its bounds, not counting expired ones.
+     *
+     * @return the count.
+     */
+    public long getEvictionCount() {
+        if (events == null) {
+            return 0;
+        }
+        return events.stats().evictionCount();
+    }
+
+    /**
+     * The bound of the cache.
+     *
+     * @return the maximum number of events if bound by number, otherwise 0.
+     */
+    public long getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * The bound of the cache.
+     *
+     * @return the maximum estimated bytes if not bound by number.
+     */
+    public long getMaximumWeight() {
+        return maximumWeight;
+    }
+
+    /**
+     * Reads the events written by {@link #save(File, int)} back into the cache, except the ones that have expired
+     * since. Events already in the cache are kept, since they are more recent.
+     * A missing or unreadable store is not an error, the cache is then just not filled.
+     *
+     * @param file the store.
+     * @return the number of events read.
+     */
+    public int load(File file) {
+        if (events == null || !file.isFile()) {
+            return 0;
+        }
+        int count = 0;
+        long now = System.currentTimeMillis();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line = reader.readLine();
+            if (!STORE_HEADER.equals(line)) {
+                logger.warn("Ignoring replication cache store {} of unknown format", file);
+                return 0;
+            }
+            line = reader.readLine();
+            while (line != null) {
+                Entry entry = parse(line);
+                if (entry != null && entry.expiresAt > now) {
+                    RefReplicatedId id = RefReplicatedId.fromRefReplicated(entry.event);
+                    if (events.asMap().putIfAbsent(id, entry) == null) {
+                        count++;
+                    }
+                }
+                line = reader.readLine();
+            }
+        } catch (IOException e) {
+            logger.warn("Could not read the replication cache store {}", file, e);
+        }
+        logger.info("Restored {} replicated refs from {}", count, file);
+        return count;
+    }
+
+    /**
+     * Writes the events that have not expired to the store, if the cache changed since the last time.
+     * The file is replaced atomically, so a crash while writing leaves the previous store in place.
+     *
+     * @param file the store.
+     * @param maxEvents the maximum number of events to write, the most recent ones are kept.
+     * @return true if the store was written.
+     * @throws IOException if so.
+     */
+    public boolean save(File file, int maxEvents) throws IOException {
+        if (events == null || !modified.getAndSet(false)) {
+            return false;
+        }
+        List<Entry> entries = new ArrayList<Entry>(events.asMap().values());
+        if (entries.size() > maxEvents) {
+            Collections.sort(entries, new Comparator<Entry>() {
+                @Override
+                public int compare(Entry o1, Entry o2) {
+                    return Long.compare(o2.expiresAt, o1.expiresAt);
+                }
+            });
+            entries = entries.subList(0, maxEvents);
+        }
+        File directory = file.getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            modified.set(true);
+            throw new IOException("Could not create " + directory);
+        }
+        File tmp = new File(file.getPath() + TMP_SUFFIX);
+        long now = System.currentTimeMillis();
+        try {
+            FileOutputStream out = new FileOutputStream(tmp);
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+                writer.write(STORE_HEADER);
+                writer.write('\n');
+                for (Entry entry : entries) {
+                    if (entry.expiresAt > now) {
+                        write(writer, entry);
+                    }
+                }
+                writer.flush();
+                out.getFD().sync();
+            }
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            modified.set(true);
+            throw e;
+        }
+        logger.debug("Saved {} replicated refs to {}", entries.size(), file);
+        return true;
+    }
+
+    /**
+     * Writes one event as a line, unless it has no provider or one of its values can't be written on a line.
+     *
+     * @param writer the writer.
+     * @param entry the event.
+     * @throws IOException if so.
+     */
+    private static void write(Writer writer, Entry entry) throws IOException {
+        RefReplicated event = entry.event;
+        if (event.getProvider() == null) {
+            return;
+        }
+        String[] values = {
+                String.valueOf(entry.expiresAt),
+                String.valueOf(event.getReceivedOn()),
+                event.getProvider().getName(),
+                event.getProject(),
+                event.getRef(),
+                event.getTargetNode(),
+                event.getStatus()
+        };
+        StringBuilder line = new StringBuilder();
+        for (String value : values) {
+            if (value != null && (value.indexOf(SEPARATOR) >= 0 || value.indexOf('\n') >= 0)) {
+                return;
+            }
+            if (line.length() > 0) {
+                line.append(SEPARATOR);
+            }
+            if (value != null) {
+                line.append(value);
+            }
+        }
+        line.append('\n');
+        writer.write(line.toString());
+    }
+
+    /**
+     * Parses a line written by {@link #write(Writer, Entry)}.
+     *
+     * @param line the line.
+     * @return the event or null if the line is not a complete event.
+     */
+    private static Entry parse(String line) {
+        String[] fields = line.split(String.valueOf(SEPARATOR), -1);
+        if (fields.length != FIELDS) {
+            return null;
+        }
+        try {
+            int i = 0;
+            long expiresAt = Long.parseLong(fields[i++]);
+            long receivedOn = Long.parseLong(fields[i++]);
+            RefReplicated event = new RefReplicated();
+            event.setReceivedOn(receivedOn);
+            event.setProvider(new Provider(emptyToNull(fields[i++]), null, null, null, null, null));
+            event.setProject(emptyToNull(fields[i++]));
+            event.setRef(emptyToNull(fields[i++]));
+            event.setTargetNode(emptyToNull(fields[i++]));
+            event.setStatus(emptyToNull(fields[i]));
+            return new Entry(event, expiresAt);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads back a value that was null when written.
+     *
+     * @param value the value.
+     * @return the value, or null if it is empty.
+     */
+    private static String emptyToNull(String value) {
+        if (value.isEmpty()) {
+            return null;
+        }
+        return value;
     }
 
     /**
@@ -181,16 +539,21 @@ public class ReplicationCache {
     public RefReplicated getIfPresent(String gerritServer, String gerritProject, String ref, String slaveHost) {
         if (events != null) {
             RefReplicatedId refReplicatedId = new RefReplicatedId(gerritServer, gerritProject, ref, slaveHost);
-            return events.getIfPresent(refReplicatedId);
+            Entry entry = events.getIfPresent(refReplicatedId);
+            if (entry != null) {
+                return entry.event;
+            }
+            return null;
         } else {
             return null;
         }
     }
 
     /**
-     * Id of RefReplicated to identify a RefReplicated event in the cache.
+     * Id of RefReplicated to identify a RefReplicated event in the cache,
+     * and the items waiting for it in the {@link ReplicationQueueTaskDispatcher}.
      */
-    private static class RefReplicatedId {
+    static class RefReplicatedId {
         private String gerritServer;
         private String project;
         private String ref;
@@ -204,10 +567,22 @@ public class ReplicationCache {
          * @param targetNode the target node
          */
         public RefReplicatedId(String gerritServer, String project, String ref, String targetNode) {
-            this.gerritServer = gerritServer;
-            this.project = project;
+            this.gerritServer = intern(gerritServer);
+            this.project = intern(project);
             this.ref = ref;
-            this.targetNode = targetNode;
+            this.targetNode = intern(targetNode);
+        }
+
+        /**
+         * Shares the instances of the few distinct server, project and host names among all the ids.
+         * @param value the value
+         * @return the shared instance
+         */
+        private static String intern(String value) {
+            if (value == null) {
+                return null;
+            }
+            return value.intern();
         }
 
         @Override
@@ -271,7 +646,7 @@ public class ReplicationCache {
          * @param refReplicated The RefReplicated
          * @return the RefReplicatedId
          */
-        private static RefReplicatedId fromRefReplicated(RefReplicated refReplicated) {
+        static RefReplicatedId fromRefReplicated(RefReplicated refReplicated) {
             String gerritServer = null;
             if (refReplicated.getProvider() != null) {
                 gerritServer = refReplicated.getProvider().getName();
@@ -280,4 +655,42 @@ public class ReplicationCache {
                     refReplicated.getTargetNode());
         }
     }
+
+    /**
+     * A cached RefReplicated and when it expires.
+     */
+    private static final class Entry {
+        private final RefReplicated event;
+        private final long expiresAt;
+
+        /**
+         * Standard constructor.
+         * @param event the event
+         * @param expiresAt when the event expires, in milliseconds since the epoch
+         */
+        private Entry(RefReplicated event, long expiresAt) {
+            this.event = event;
+            this.expiresAt = expiresAt;
+        }
+
+        /**
+         * The estimated memory taken by the event.
+         * @return the number of bytes.
+         */
+        private int getWeight() {
+            String ref = event.getRef();
+            if (ref == null) {
+                return ENTRY_WEIGHT;
+            }
+            return ENTRY_WEIGHT + 2 * ref.length();
+        }
+
+        /**
+         * The time left before the event expires.
+         * @return the time in nanoseconds, never negative.
+         */
+        private long getRemainingNanos() {
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0, expiresAt - System.currentTimeMillis()));
+        }
+    }
 }
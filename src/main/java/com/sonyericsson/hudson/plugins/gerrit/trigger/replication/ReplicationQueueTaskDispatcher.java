@@ -25,6 +25,11 @@ package com.sonyericsson.hudson.plugins.gerrit.trigger.replication;
 
 import com.sonyericsson.hudson.plugins.gerrit.trigger.config.PluginConfig;
 import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.init.TermMilestone;
+import hudson.init.Terminator;
 import hudson.model.Job;
 import hudson.model.Cause;
 import hudson.model.Queue;
@@ -32,14 +37,26 @@ import hudson.model.Queue.Item;
 import hudson.model.queue.QueueTaskDispatcher;
 import hudson.model.queue.CauseOfBlockage;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
+import jenkins.model.Jenkins;
+import jenkins.util.Timer;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.DoNotUse;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -57,6 +74,7 @@ import com.sonyericsson.hudson.plugins.gerrit.trigger.PluginImpl;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.GerritCause;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.GerritTrigger;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.data.GerritSlave;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.replication.ReplicationCache.RefReplicatedId;
 
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
@@ -69,9 +87,26 @@ import edu.umd.cs.findbugs.annotations.NonNull;
 @Extension
 public class ReplicationQueueTaskDispatcher extends QueueTaskDispatcher implements GerritEventListener {
 
+    /**
+     * The file in the Jenkins root directory where the replication cache is kept between restarts.
+     */
+    public static final String STORE_FILE = "gerrit-trigger-replication-cache.txt";
+    /**
+     * Default number of milliseconds between each write of the replication cache.
+     */
+    public static final long DEFAULT_STORE_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
+    private static final String PROPERTY_PREFIX = ReplicationCache.PROPERTY_PREFIX;
     private static final Logger logger = LoggerFactory.getLogger(ReplicationQueueTaskDispatcher.class);
     private final Map<Long, BlockedItem> blockedItems;
+    /**
+     * The blocked items waiting for replication of a ref to a slave, so a RefReplicated event
+     * only needs to look at the items it concerns. Guarded by itself.
+     */
+    private final Map<RefReplicatedId, Set<BlockedItem>> waiters = new HashMap<RefReplicatedId, Set<BlockedItem>>();
     private final ReplicationCache replicationCache;
+    private File storeFile;
+    private ScheduledFuture<?> storeTask;
 
     /**
      * Default constructor.
@@ -118,6 +153,103 @@ public class ReplicationQueueTaskDispatcher extends QueueTaskDispatcher implemen
         logger.debug("Registered to gerrit events");
     }
 
+    /**
+     * Restores the replication cache written before the last shutdown and keeps writing it periodically,
+     * so replication that completed before a restart does not have to be waited for again.
+     * Can be turned off with the system property
+     * <code>com.sonyericsson.hudson.plugins.gerrit.trigger.replication.ReplicationCache.storeDisabled</code>.
+     */
+    @Initializer(after = InitMilestone.COMPLETED)
+    @Restricted(DoNotUse.class)
+    public static void restoreCache() {
+        if (Boolean.getBoolean(PROPERTY_PREFIX + "storeDisabled")) {
+            logger.info("The replication cache store is disabled.");
+            return;
+        }
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        ReplicationQueueTaskDispatcher instance = getInstance();
+        if (jenkins == null || instance == null) {
+            return;
+        }
+        instance.startStore(new File(jenkins.getRootDir(), STORE_FILE),
+                Long.getLong(PROPERTY_PREFIX + "storeInterval", DEFAULT_STORE_INTERVAL));
+    }
+
+    /**
+     * Writes the replication cache at shutdown.
+     */
+    @Terminator(after = TermMilestone.COMPLETED)
+    @Restricted(DoNotUse.class)
+    public static void storeCache() {
+        ReplicationQueueTaskDispatcher instance = getInstance();
+        if (instance != null) {
+            instance.stopStore();
+        }
+    }
+
+    /**
+     * Returns the registered instance, if any.
+     *
+     * @return the instance, or null.
+     */
+    @CheckForNull
+    public static ReplicationQueueTaskDispatcher getInstance() {
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        if (jenkins == null) {
+            return null;
+        }
+        ExtensionList<ReplicationQueueTaskDispatcher> dispatchers =
+                jenkins.getExtensionList(ReplicationQueueTaskDispatcher.class);
+        if (dispatchers == null || dispatchers.isEmpty()) {
+            return null;
+        }
+        return dispatchers.get(0);
+    }
+
+    /**
+     * Loads the replication cache from the store and starts writing it periodically.
+     *
+     * @param file the store.
+     * @param interval milliseconds between each write.
+     */
+    synchronized void startStore(File file, long interval) {
+        if (storeTask != null) {
+            return;
+        }
+        storeFile = file;
+        replicationCache.load(file);
+        storeTask = Timer.get().scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                writeStore();
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the periodic writes and writes the replication cache one last time.
+     */
+    synchronized void stopStore() {
+        if (storeTask != null) {
+            storeTask.cancel(false);
+            storeTask = null;
+            writeStore();
+        }
+    }
+
+    /**
+     * Writes the replication cache to the store if it changed.
+     */
+    private synchronized void writeStore() {
+        int maxEvents = Integer.getInteger(PROPERTY_PREFIX + "maxStoredEvents",
+                ReplicationCache.DEFAULT_MAX_STORED_EVENTS);
+        try {
+            replicationCache.save(storeFile, maxEvents);
+        } catch (IOException e) {
+            logger.warn("Could not write the replication cache to {}", storeFile, e);
+        }
+    }
+
     @Override
     public CauseOfBlockage canRun(Item item) {
         //we do not block item when it reached the buildable state, a buildable item is an item that
@@ -128,7 +260,7 @@ public class ReplicationQueueTaskDispatcher extends QueueTaskDispatcher implemen
         Long itemId = Long.valueOf(item.getId());
         if (blockedItems.containsKey(itemId)) {
             BlockedItem blockedItem = blockedItems.get(itemId);
-            if (blockedItem.canRunWithTimeoutCheck()) {
+            if (blockedItem.canRun) {
                 if (blockedItem.replicationFailedMessage != null) {
                     item.addAction(new ReplicationFailedAction(blockedItem.replicationFailedMessage));
                     logger.trace("{} -> {}", blockedItem.getEventDescription(), blockedItem.replicationFailedMessage);
@@ -136,6 +268,8 @@ public class ReplicationQueueTaskDispatcher extends QueueTaskDispatcher implemen
                     logger.trace("{} can now run with no timeout check.", blockedItem.getEventDescription());
                 }
                 blockedItems.remove(itemId);
+                unindex(blockedItem);
+                blockedItem.cancelTimeout();
                 return null;
             } else {
                 logger.trace(blockedItem.getEventDescription()
@@ -147,11 +281,16 @@ public class ReplicationQueueTaskDispatcher extends QueueTaskDispatcher implemen
         } else {
             BlockedItem blockedItem = getBlockedItem(item);
             if (blockedItem != null) {
-                //before blocking the build, lets check if we already received the replication events
-                updateFromReplicationCache(blockedItem);
                 // store the info to be able to unblock the build
                 // later without having to iterate through all the builds in the queue
                 blockedItems.put(itemId, blockedItem);
+                index(blockedItem);
+                //before blocking the build, lets check if we already received the replication events
+                updateFromReplicationCache(blockedItem);
+                //and if it has already waited long enough, otherwise check again when it has
+                if (!blockedItem.checkTimeout(System.currentTimeMillis())) {
+                    scheduleTimeout(blockedItem);
+                }
                 return canRun(item);
             } else {
                 logger.debug("blockedItem null for {}!", item.getId());
@@ -160,6 +299,25 @@ public class ReplicationQueueTaskDispatcher extends QueueTaskDispatcher implemen
         return null;
     }
 
+    /**
+     * Forgets an item that has left the queue, whether it was cancelled or started,
+     * so it is no longer waited for or checked for timeouts.
+     * @param item The item that left the queue
+     */
+    public void left(Item item) {
+        BlockedItem blockedItem = blockedItems.remove(Long.valueOf(item.getId()));
+        if (blockedItem == null) {
+            return;
+        }
+        synchronized (waiters) {
+            // so a timeout check already running doesn't schedule another one
+            blockedItem.canRun = true;
+            unindex(blockedItem);
+        }
+        blockedItem.cancelTimeout();
+        logger.trace("{} left the queue (item id {})", blockedItem.getEventDescription(), item.getId());
+    }
+
     /**
      * Update the blocked item with any cached RefReplicated that are interesting to that item.
      * @param blockedItem The blocked item to update
@@ -170,13 +328,141 @@ public class ReplicationQueueTaskDispatcher extends QueueTaskDispatcher implemen
             RefReplicated refReplicated = replicationCache.getIfPresent(blockedItem.gerritServer,
                     blockedItem.gerritProject, blockedItem.ref, it.next().getHost());
             if (refReplicated != null) {
-                blockedItem.processRefReplicatedEvent(refReplicated);
+                process(blockedItem, refReplicated);
                 logger.trace("processed a replication event from the cache, remaining number of events waiting for: {}"
                         , blockedItem.slavesWaitingFor.size());
             }
         }
     }
 
+    /**
+     * Schedules a check of the blocked item when the next slave it waits for reaches its timeout, if any.
+     * @param blockedItem The blocked item
+     */
+    private void scheduleTimeout(final BlockedItem blockedItem) {
+        long next = blockedItem.getNextTimeout();
+        if (next < 0) {
+            return;
+        }
+        blockedItem.timeout = Timer.get().schedule(new Runnable() {
+            @Override
+            public void run() {
+                onTimeout(blockedItem);
+            }
+        }, Math.max(0, next - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Lets the blocked item run with a replication failed message if a slave it still waits for has timed out,
+     * and has the queue check it right away. Otherwise, the slave that was to time out has replicated since,
+     * so the check is scheduled for the next one.
+     * @param blockedItem The blocked item
+     */
+    private void onTimeout(BlockedItem blockedItem) {
+        synchronized (waiters) {
+            if (blockedItem.canRun) {
+                return;
+            }
+            if (!blockedItem.checkTimeout(System.currentTimeMillis())) {
+                scheduleTimeout(blockedItem);
+                return;
+            }
+            unindex(blockedItem);
+        }
+        logger.debug("{} timed out waiting for replication", blockedItem.getEventDescription());
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        if (jenkins != null) {
+            jenkins.getQueue().scheduleMaintenance();
+        }
+    }
+
+    /**
+     * Registers the blocked item as waiting for each of its slaves.
+     * @param blockedItem The blocked item
+     */
+    private void index(BlockedItem blockedItem) {
+        synchronized (waiters) {
+            for (String host : blockedItem.slavesWaitingFor.keySet()) {
+                RefReplicatedId id = blockedItem.getRefReplicatedId(host);
+                Set<BlockedItem> items = waiters.get(id);
+                if (items == null) {
+                    items = new HashSet<BlockedItem>();
+                    waiters.put(id, items);
+                }
+                items.add(blockedItem);
+            }
+        }
+    }
+
+    /**
+     * Removes the blocked item from the waiters of the slave.
+     * @param blockedItem The blocked item
+     * @param host The host of the slave
+     */
+    private void unindex(BlockedItem blockedItem, String host) {
+        synchronized (waiters) {
+            RefReplicatedId id = blockedItem.getRefReplicatedId(host);
+            Set<BlockedItem> items = waiters.get(id);
+            if (items != null && items.remove(blockedItem) && items.isEmpty()) {
+                waiters.remove(id);
+            }
+        }
+    }
+
+    /**
+     * Removes the blocked item from the waiters of all the slaves it still waits for.
+     * @param blockedItem The blocked item
+     */
+    private void unindex(BlockedItem blockedItem) {
+        synchronized (waiters) {
+            for (String host : blockedItem.slavesWaitingFor.keySet()) {
+                unindex(blockedItem, host);
+            }
+        }
+    }
+
+    /**
+     * Lets the blocked item process the RefReplicated, and removes it from the waiters
+     * of the slave if it no longer waits for it.
+     * @param blockedItem The blocked item
+     * @param refReplicated The RefReplicated
+     */
+    private void process(BlockedItem blockedItem, RefReplicated refReplicated) {
+        synchronized (waiters) {
+            blockedItem.processRefReplicatedEvent(refReplicated);
+            if (!blockedItem.slavesWaitingFor.containsKey(refReplicated.getTargetNode())) {
+                unindex(blockedItem, refReplicated.getTargetNode());
+            }
+        }
+    }
+
+    /**
+     * The cache of the replication events received.
+     * @return the cache.
+     */
+    @NonNull
+    public ReplicationCache getReplicationCache() {
+        return replicationCache;
+    }
+
+    /**
+     * The number of items blocked waiting for replication.
+     * @return the count.
+     */
+    public int getBlockedItemCount() {
+        return blockedItems.size();
+    }
+
+    /**
+     * The number of distinct ref and slave pairs blocked items are waiting for.
+     * @return the count.
+     */
+    int getWaitedForCount() {
+        synchronized (waiters) {
+            return waiters.size();
+        }
+    }
+
     /**
      * Get event description from RepositoryModifiedEvent
      * @param evt Event to be described
@@ -312,12 +598,20 @@ public class ReplicationQueueTaskDispatcher extends QueueTaskDispatcher implemen
     public void gerritEvent(RefReplicated refReplicated) {
         logger.trace("Cache received event {}", refReplicated.toString());
         replicationCache.put(refReplicated);
+        if (refReplicated.getProvider() == null) {
+            return;
+        }
         boolean queueMaintenanceRequired = false;
-        for (BlockedItem blockedItem : blockedItems.values()) {
-            if (!blockedItem.canRun) {
-                blockedItem.processRefReplicatedEvent(refReplicated);
-                if (blockedItem.canRun) {
-                    queueMaintenanceRequired = true;
+        synchronized (waiters) {
+            Set<BlockedItem> items = waiters.get(RefReplicatedId.fromRefReplicated(refReplicated));
+            if (items != null) {
+                for (BlockedItem blockedItem : new ArrayList<BlockedItem>(items)) {
+                    if (!blockedItem.canRun) {
+                        process(blockedItem, refReplicated);
+                        if (blockedItem.canRun) {
+                            queueMaintenanceRequired = true;
+                        }
+                    }
                 }
             }
         }
@@ -336,10 +630,11 @@ public class ReplicationQueueTaskDispatcher extends QueueTaskDispatcher implemen
         private String ref;
         private String gerritServer;
         private ConcurrentMap<String, GerritSlave> slavesWaitingFor;
-        private boolean canRun = false;
+        private volatile boolean canRun = false;
         private long eventTimeStamp;
         private String eventDescription;
-        private String replicationFailedMessage;
+        private volatile String replicationFailedMessage;
+        private volatile ScheduledFuture<?> timeout;
         private boolean useTimestampWhenProcessingRefReplicatedEvent = false;
 
         /**
@@ -368,6 +663,15 @@ public class ReplicationQueueTaskDispatcher extends QueueTaskDispatcher implemen
             this.useTimestampWhenProcessingRefReplicatedEvent = useTimestampWhenProcessingRefReplicatedEvent;
         }
 
+        /**
+         * Return the id of the RefReplicated event this item waits for from the slave.
+         * @param host The host of the slave
+         * @return the id
+         */
+        public RefReplicatedId getRefReplicatedId(String host) {
+            return new RefReplicatedId(gerritServer, gerritProject, ref, host);
+        }
+
         /**
          * Return description of the event that is blocked
          * @return Description of the event
@@ -377,30 +681,52 @@ public class ReplicationQueueTaskDispatcher extends QueueTaskDispatcher implemen
         }
 
         /**
-         * Return if this block item is ready to run.
+         * Checks if any slave still waited for has reached its timeout. If so, the item is ready to run
+         * and replicationFailedMessage is set with the message.
          *
-         * Item can be ready to run if the replication events are received for all the slaves, if a replication failed
-         * or if we reached the wait time out for a slave. If a replication failed or if time out is reached,
-         * replicationFailedMessage will be set with message.
-         *
-         * @return true if ready to run, otherwise false
+         * @param now the current time
+         * @return true if a slave timed out, otherwise false
          */
-        public boolean canRunWithTimeoutCheck() {
-            if (canRun) {
-                return true;
-            }
-            // check if any Gerrit Slave reached its timeout
+        public boolean checkTimeout(long now) {
             for (GerritSlave slave : slavesWaitingFor.values()) {
                 if (slave.getTimeoutInSeconds() != GerritSlave.DISABLED_TIMEOUT_VALUE
-                        && TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis() - eventTimeStamp) > slave
-                        .getTimeoutInSeconds()) {
+                        && now - eventTimeStamp > TimeUnit.SECONDS.toMillis(slave.getTimeoutInSeconds())) {
                     replicationFailedMessage = Messages.WaitingForReplicationTimeout(ref, slave.getName());
+                    canRun = true;
                     return true;
                 }
             }
             return false;
         }
 
+        /**
+         * Return when the first of the slaves still waited for reaches its timeout.
+         *
+         * @return the time in milliseconds since the epoch, or -1 if none of them has a timeout
+         */
+        public long getNextTimeout() {
+            long next = -1;
+            for (GerritSlave slave : slavesWaitingFor.values()) {
+                if (slave.getTimeoutInSeconds() != GerritSlave.DISABLED_TIMEOUT_VALUE) {
+                    long time = eventTimeStamp + TimeUnit.SECONDS.toMillis(slave.getTimeoutInSeconds()) + 1;
+                    if (next < 0 || time < next) {
+                        next = time;
+                    }
+                }
+            }
+            return next;
+        }
+
+        /**
+         * Cancels the scheduled timeout check, if any.
+         */
+        public void cancelTimeout() {
+            ScheduledFuture<?> future = timeout;
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+
         /**
          * Process the RefReplicated to and if related to this blocked item, update the slaves
          * list and canRun flag accordingly.
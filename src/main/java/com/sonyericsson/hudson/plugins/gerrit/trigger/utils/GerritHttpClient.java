@@ -0,0 +1,287 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2026 the Gerrit Trigger plugin authors.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.trigger.utils;
+
+import com.sonyericsson.hudson.plugins.gerrit.trigger.config.IGerritHudsonTriggerConfig;
+import jenkins.util.Timer;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.DefaultProxyRoutePlanner;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A pooled HTTP client with keep-alive connections to one Gerrit server.
+ * It is created from the proxy and credentials of the server's config and should be closed when the server stops
+ * or its config changes.
+ *
+ * The pool is tuned with the system properties <code>maxConnections</code>, <code>keepAlive</code>,
+ * <code>connectTimeout</code>, <code>socketTimeout</code> and <code>closeTimeout</code>,
+ * prefixed with the name of this class.
+ * Times are in milliseconds.
+ *
+ * Code that uses a shared client counts its use with {@link #acquire()} and {@link #release()},
+ * so that {@link #closeWhenIdle()} doesn't close the client between it being handed out and the request leasing
+ * a connection from the pool.
+ *
+ * @see com.sonyericsson.hudson.plugins.gerrit.trigger.GerritServer#acquireHttpClient()
+ */
+public final class GerritHttpClient implements Closeable {
+
+    /**
+     * Default maximum number of connections to the server.
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS = 10;
+    /**
+     * Default milliseconds to keep an idle connection open, when the server doesn't say.
+     */
+    public static final long DEFAULT_KEEP_ALIVE = TimeUnit.SECONDS.toMillis(30);
+    /**
+     * Default milliseconds to wait for a connection, both to the server and from the pool.
+     */
+    public static final int DEFAULT_CONNECT_TIMEOUT = (int)TimeUnit.SECONDS.toMillis(10);
+    /**
+     * Default milliseconds to wait for data from the server.
+     */
+    public static final int DEFAULT_SOCKET_TIMEOUT = (int)TimeUnit.SECONDS.toMillis(60);
+    /**
+     * Default milliseconds that {@link #closeWhenIdle()} waits for requests in progress to finish.
+     */
+    public static final long DEFAULT_CLOSE_TIMEOUT = TimeUnit.MINUTES.toMillis(10);
+    /**
+     * Milliseconds between each check if the requests in progress have finished.
+     */
+    static final long CLOSE_CHECK_INTERVAL = 500;
+
+    private static final Logger logger = LoggerFactory.getLogger(GerritHttpClient.class);
+    private static final String PROPERTY_PREFIX = GerritHttpClient.class.getName() + ".";
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CredentialsProvider credentialsProvider;
+    private final CloseableHttpClient client;
+    private volatile boolean closed = false;
+    private boolean closing = false;
+    private int users = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param config the config of the server.
+     */
+    public GerritHttpClient(IGerritHudsonTriggerConfig config) {
+        final long keepAlive = Long.getLong(PROPERTY_PREFIX + "keepAlive", DEFAULT_KEEP_ALIVE);
+        int maxConnections = Integer.getInteger(PROPERTY_PREFIX + "maxConnections", DEFAULT_MAX_CONNECTIONS);
+        int connectTimeout = Integer.getInteger(PROPERTY_PREFIX + "connectTimeout", DEFAULT_CONNECT_TIMEOUT);
+        int socketTimeout = Integer.getInteger(PROPERTY_PREFIX + "socketTimeout", DEFAULT_SOCKET_TIMEOUT);
+
+        connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnections);
+
+        credentialsProvider = new BasicCredentialsProvider();
+        credentialsProvider.setCredentials(new AuthScope(null, -1), config.getHttpCredentials());
+
+        HttpClientBuilder builder = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultCredentialsProvider(credentialsProvider)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectTimeout(connectTimeout)
+                        .setConnectionRequestTimeout(connectTimeout)
+                        .setSocketTimeout(socketTimeout)
+                        .build())
+                .setKeepAliveStrategy(new ConnectionKeepAliveStrategy() {
+                    @Override
+                    public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+                        long duration = DefaultConnectionKeepAliveStrategy.INSTANCE
+                                .getKeepAliveDuration(response, context);
+                        if (duration <= 0) {
+                            return keepAlive;
+                        }
+                        return Math.min(duration, keepAlive);
+                    }
+                })
+                .evictExpiredConnections()
+                .evictIdleConnections(keepAlive, TimeUnit.MILLISECONDS);
+        if (config.getGerritProxy() != null && !config.getGerritProxy().isEmpty()) {
+            try {
+                URL proxyUrl = new URL(config.getGerritProxy());
+                HttpHost proxy = new HttpHost(proxyUrl.getHost(), proxyUrl.getPort(), proxyUrl.getProtocol());
+                builder.setRoutePlanner(new DefaultProxyRoutePlanner(proxy));
+            } catch (MalformedURLException e) {
+                logger.error("Could not parse proxy URL, attempting without proxy.", e);
+            }
+        }
+        client = builder.build();
+    }
+
+    /**
+     * Performs a GET request.
+     * The response must be closed to give the connection back to the pool.
+     *
+     * @param url the URL to get.
+     * @return the response.
+     * @throws IOException if so.
+     */
+    public CloseableHttpResponse get(String url) throws IOException {
+        return execute(new HttpGet(url));
+    }
+
+    /**
+     * Performs a request.
+     * The response must be closed to give the connection back to the pool.
+     *
+     * @param request the request.
+     * @return the response.
+     * @throws IOException if so.
+     */
+    public CloseableHttpResponse execute(HttpUriRequest request) throws IOException {
+        HttpClientContext context = HttpClientContext.create();
+        context.setCredentialsProvider(credentialsProvider);
+        return client.execute(request, context);
+    }
+
+    /**
+     * Counts a use of the client, it is not closed by {@link #closeWhenIdle()} until the use is released.
+     * A response returned during the use keeps the client open until it is closed, also after the release.
+     *
+     * @throws IllegalStateException if the client is closing.
+     * @see #release()
+     */
+    public synchronized void acquire() {
+        if (closing || closed) {
+            throw new IllegalStateException("The HTTP client has been closed.");
+        }
+        users++;
+    }
+
+    /**
+     * Ends a use counted by {@link #acquire()}.
+     */
+    public synchronized void release() {
+        if (users > 0) {
+            users--;
+        }
+    }
+
+    /**
+     * The number of uses that have been acquired and not released.
+     *
+     * @return the count.
+     */
+    public synchronized int getUsers() {
+        return users;
+    }
+
+    /**
+     * Statistics about the connections in the pool.
+     *
+     * @return the stats.
+     */
+    public PoolStats getPoolStats() {
+        return connectionManager.getTotalStats();
+    }
+
+    /**
+     * If the client has been closed.
+     *
+     * @return true if so.
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Closes all connections. The client can't be used after this.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            client.close();
+        } catch (IOException e) {
+            logger.warn("Could not close the HTTP client.", e);
+        }
+    }
+
+    /**
+     * Closes the client once it is not used and no response holds a connection from the pool any more,
+     * so that requests in progress on a replaced client can finish.
+     * No new use can be acquired after this.
+     * Requests that haven't closed their response within the close timeout are cut off.
+     */
+    public void closeWhenIdle() {
+        synchronized (this) {
+            closing = true;
+        }
+        long timeout = Long.getLong(PROPERTY_PREFIX + "closeTimeout", DEFAULT_CLOSE_TIMEOUT);
+        closeWhenIdle(System.currentTimeMillis() + timeout);
+    }
+
+    /**
+     * Closes the client if it is idle or the deadline has passed, or checks again later.
+     *
+     * @param deadline the time in milliseconds to close the client at the latest.
+     */
+    private void closeWhenIdle(final long deadline) {
+        if (closed) {
+            return;
+        }
+        int inUse = getPoolStats().getLeased() + getUsers();
+        if (inUse == 0) {
+            close();
+        } else if (System.currentTimeMillis() >= deadline) {
+            logger.warn("Closing the HTTP client with {} requests still in progress.", inUse);
+            close();
+        } else {
+            Timer.get().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    closeWhenIdle(deadline);
+                }
+            }, CLOSE_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+    }
+}
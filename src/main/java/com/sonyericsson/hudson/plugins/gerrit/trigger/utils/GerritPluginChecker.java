@@ -29,6 +29,7 @@ import com.sonyericsson.hudson.plugins.gerrit.trigger.Messages;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.config.IGerritHudsonTriggerConfig;
 
 import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -157,6 +158,8 @@ public final class GerritPluginChecker {
         } finally {
             if (execute != null) {
                 try {
+                    //Reads what is left so that the connection can be reused
+                    EntityUtils.consume(execute.getEntity());
                     execute.close();
                 } catch (Exception exp) {
                     logger.trace("Error happened when close http client.", exp);
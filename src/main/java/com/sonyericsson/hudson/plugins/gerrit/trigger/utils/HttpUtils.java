@@ -41,6 +41,8 @@ import org.apache.http.impl.conn.DefaultProxyRoutePlanner;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.sonyericsson.hudson.plugins.gerrit.trigger.GerritServer;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.PluginImpl;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.config.IGerritHudsonTriggerConfig;
 
 /**
@@ -57,13 +59,28 @@ public final class HttpUtils {
     }
 
     /**
+     * Performs a GET with the pooled client of the server that has the config,
+     * or with a new client if no server has it.
+     * The response must be closed.
+     *
      * @param config Gerrit Server Configuration.
      * @param url URL to get.
      * @return httpresponse.
      * @throws IOException if found.
+     * @see GerritServer#acquireHttpClient()
      */
     public static CloseableHttpResponse performHTTPGet(IGerritHudsonTriggerConfig config,
                                                        String url) throws IOException {
+        for (GerritServer server : PluginImpl.getServers_()) {
+            if (server.getConfig() == config) {
+                GerritHttpClient client = server.acquireHttpClient();
+                try {
+                    return client.get(url);
+                } finally {
+                    client.release();
+                }
+            }
+        }
         CloseableHttpClient httpClient = HttpClients.createDefault();
         HttpGet httpGet = new HttpGet(url);
         if (config.getGerritProxy() != null && !config.getGerritProxy().isEmpty()) {
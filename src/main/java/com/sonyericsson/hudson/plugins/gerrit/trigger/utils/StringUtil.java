@@ -28,6 +28,8 @@ import com.sonyericsson.hudson.plugins.gerrit.trigger.GerritServer;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.PluginImpl;
 import com.sonymobile.tools.gerrit.gerritevents.GerritEventListener;
 import com.sonymobile.tools.gerrit.gerritevents.dto.events.ChangeBasedEvent;
+import com.sonymobile.tools.gerrit.gerritevents.dto.events.GerritTriggeredEvent;
+import com.sonymobile.tools.gerrit.gerritevents.dto.events.RefUpdated;
 import java.util.regex.Pattern;
 
 /**
@@ -96,6 +98,43 @@ public final class StringUtil {
         return str.toString();
     }
 
+    /**
+     * Creates a string identifying the event that stays the same when the event is serialized and read back,
+     * for example by a restart or when the same event is received from the events-log plugin.
+     * It consists of the event type, the change and patch set numbers for {@link ChangeBasedEvent}s
+     * or the project, ref and new revision for {@link RefUpdated} events, and the time the event was created.
+     *
+     * @param event the event.
+     * @return the identity of the event, or null if the event is null.
+     */
+    public static String getEventIdentity(GerritTriggeredEvent event) {
+        if (event == null) {
+            return null;
+        }
+        StringBuilder str = new StringBuilder();
+        if (event.getEventType() != null) {
+            str.append(event.getEventType().getTypeValue());
+        }
+        if (event instanceof ChangeBasedEvent) {
+            ChangeBasedEvent changeBasedEvent = (ChangeBasedEvent)event;
+            if (changeBasedEvent.getChange() != null) {
+                str.append('/').append(changeBasedEvent.getChange().getNumber());
+            }
+            if (changeBasedEvent.getPatchSet() != null) {
+                str.append('/').append(changeBasedEvent.getPatchSet().getNumber());
+            }
+        } else if (event instanceof RefUpdated && ((RefUpdated)event).getRefUpdate() != null) {
+            RefUpdated refUpdated = (RefUpdated)event;
+            str.append('/').append(refUpdated.getRefUpdate().getProject());
+            str.append('/').append(refUpdated.getRefUpdate().getRefName());
+            str.append('/').append(refUpdated.getRefUpdate().getNewRev());
+        }
+        if (event.getEventCreatedOn() != null) {
+            str.append('@').append(event.getEventCreatedOn().getTime());
+        }
+        return str.toString();
+    }
+
     /**
      * Gets the path to the provided image inside this plugin.
      * The path returned is "compliant" with what for example {@link hudson.model.Action#getIconFileName()} expects.
@@ -28,6 +28,7 @@ import com.sonyericsson.hudson.plugins.gerrit.trigger.diagnostics.BuildMemoryRep
 import com.sonyericsson.hudson.plugins.gerrit.trigger.diagnostics.Diagnostics
 import com.sonymobile.tools.gerrit.gerritevents.dto.events.ChangeBasedEvent
 import com.sonymobile.tools.gerrit.gerritevents.dto.events.RefUpdated
+import hudson.Util
 import hudson.model.Job
 import hudson.model.Run
 
@@ -48,6 +49,36 @@ l.layout(title: _("Build Coordination - Gerrit Trigger Diagnostics"), norefresh:
     l.'main-panel' {
         h1(report.getDisplayName())
         p(style: "font-size: smaller; font-style: italic;", _("blurb"))
+        h2(_("Age"))
+        p(_("evictions", report.evictionCount))
+        table(class: "pane bigtable") {
+            tr {
+                report.ageHistogram.each {bucket ->
+                    th(align: "left", bucket.key)
+                }
+            }
+            tr {
+                report.ageHistogram.each {bucket ->
+                    td(bucket.value)
+                }
+            }
+        }
+        if (!report.isEmpty()) {
+            h2(_("Oldest"))
+            table(class: "pane bigtable") {
+                tr {
+                    th(align: "left", _('Event'))
+                    th(align: "left", _('Remembered for'))
+                }
+                report.oldest.each {event ->
+                    tr {
+                        td(report.getDisplayNameFor(event))
+                        td(Util.getTimeSpanString(report.getAge(event)))
+                    }
+                }
+            }
+        }
+        h2(_("Events"))
         table(class: "sortable pane bigtable") {
             tr {
                 th(id: 'hJob', align: "left", _('Job'))
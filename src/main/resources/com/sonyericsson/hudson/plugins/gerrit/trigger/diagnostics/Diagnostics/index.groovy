@@ -37,6 +37,8 @@ l.layout(title: _("Gerrit Trigger Diagnostics"), norefresh: false, permission: D
             l.task(icon: "icon-up icon-md", href: "${rootURL}/${GerritManagement.URL_NAME}/", title: _("Back to Gerrit Management"))
             l.task(icon: "icon-clipboard icon-md", href: "buildMemory", title: Messages.BuildMemoryReport_DisplayName())
             l.task(icon: "icon-clipboard icon-md", href: "eventListeners", title: Messages.EventListenersReport_DisplayName())
+            l.task(icon: "icon-clipboard icon-md", href: "notifications", title: Messages.NotificationsReport_DisplayName())
+            l.task(icon: "icon-clipboard icon-md", href: "replication", title: Messages.ReplicationReport_DisplayName())
             if (diag.isDebugMode()) {
                 l.task(icon: "icon-warning icon-md", href: "triggerDebugEvent", title: "Trigger Event", post: false, requiresConfirmation: true)
             }
@@ -0,0 +1,124 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2026 the Gerrit Trigger plugin authors.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.trigger.diagnostics.NotificationsReport
+
+import com.sonyericsson.hudson.plugins.gerrit.trigger.GerritManagement
+import com.sonyericsson.hudson.plugins.gerrit.trigger.diagnostics.Diagnostics
+import com.sonyericsson.hudson.plugins.gerrit.trigger.diagnostics.NotificationsReport
+import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.GerritMessageProviders
+import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.job.rest.RestNotifier
+import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.job.ssh.SshSessionPool
+
+NotificationsReport report = my
+
+def l = namespace(lib.LayoutTagLib)
+
+l.layout(title: _("${report.getDisplayName()} - Gerrit Trigger Diagnostics"), norefresh: false, permission: Diagnostics.requiredPermission) {
+    l.'side-panel' {
+        l.tasks {
+            l.task(icon: "icon-up icon-md", href: "${rootURL}/${GerritManagement.URL_NAME}/", title: _("Back to Gerrit Management"))
+            l.task(icon: "icon-folder icon-md", href: "${rootURL}/${GerritManagement.URL_NAME}/diagnostics", title: _("Back to Diagnostics"))
+        }
+    }
+    l.'main-panel' {
+        h1(report.getDisplayName())
+        p(style: "font-size: smaller; font-style: italic;", _("blurb"))
+        p(_("_superseded", report.supersession.droppedCount, report.supersession.changeCount))
+        h2(_("REST"))
+        table(class: "sortable pane bigtable") {
+            tr {
+                th(align: "left", _("Server"))
+                th(_("Circuit"))
+                th(_("Queued"))
+                th(_("In flight"))
+                th(_("Sent"))
+                th(_("Retried"))
+                th(_("Failed"))
+                th(_("Average ms"))
+                th(_("Max ms"))
+            }
+            report.restNotifiers.each { RestNotifier notifier ->
+                tr {
+                    td(notifier.name)
+                    td(notifier.circuitState)
+                    td(notifier.queueDepth)
+                    td(notifier.inFlight)
+                    td(notifier.sentCount)
+                    td(notifier.retryCount)
+                    td(notifier.failedCount)
+                    td(notifier.averageLatency)
+                    td(notifier.maxLatency)
+                }
+            }
+        }
+        h2(_("SSH"))
+        table(class: "sortable pane bigtable") {
+            tr {
+                th(align: "left", _("Server"))
+                th(_("Utilization"))
+                th(_("Active"))
+                th(_("Idle"))
+                th(_("Waiting"))
+                th(_("Opened"))
+                th(_("Reused"))
+                th(_("Disconnected"))
+                th(_("Had to wait"))
+            }
+            report.sshSessionPools.each { SshSessionPool pool ->
+                tr {
+                    td(pool.name)
+                    td(_("_utilization", pool.utilization, pool.activeCount, pool.maxSessions))
+                    td(pool.activeCount)
+                    td(pool.idleCount)
+                    td(pool.waitingCount)
+                    td(pool.createdCount)
+                    td(pool.reusedCount)
+                    td(pool.discardedCount)
+                    td(pool.waitCount)
+                }
+            }
+        }
+        h2(_("Message providers"))
+        table(class: "sortable pane bigtable") {
+            tr {
+                th(align: "left", _("Provider"))
+                th(_("Calls"))
+                th(_("Failed"))
+                th(_("Timed out"))
+                th(_("Average ms"))
+                th(_("Max ms"))
+            }
+            report.messageProviderTimings.each { GerritMessageProviders.Timing timing ->
+                tr {
+                    td(timing.name)
+                    td(timing.calls)
+                    td(timing.failures)
+                    td(timing.timeouts)
+                    td(timing.averageTime)
+                    td(timing.maxTime)
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2026 the Gerrit Trigger plugin authors.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.trigger.diagnostics.ReplicationReport
+
+import com.sonyericsson.hudson.plugins.gerrit.trigger.GerritManagement
+import com.sonyericsson.hudson.plugins.gerrit.trigger.diagnostics.Diagnostics
+import com.sonyericsson.hudson.plugins.gerrit.trigger.diagnostics.ReplicationReport
+
+ReplicationReport report = my
+
+def l = namespace(lib.LayoutTagLib)
+
+l.layout(title: _("${report.getDisplayName()} - Gerrit Trigger Diagnostics"), norefresh: false, permission: Diagnostics.requiredPermission) {
+    l.'side-panel' {
+        l.tasks {
+            l.task(icon: "icon-up icon-md", href: "${rootURL}/${GerritManagement.URL_NAME}/", title: _("Back to Gerrit Management"))
+            l.task(icon: "icon-folder icon-md", href: "${rootURL}/${GerritManagement.URL_NAME}/diagnostics", title: _("Back to Diagnostics"))
+        }
+    }
+    l.'main-panel' {
+        h1(report.getDisplayName())
+        p(style: "font-size: smaller; font-style: italic;", _("blurb"))
+        p(_("_blocked", report.blockedItemCount))
+        h2(_("Replication cache"))
+        table(class: "pane bigtable") {
+            tr {
+                th(align: "left", _("Events"))
+                td(report.cache.size)
+            }
+            tr {
+                th(align: "left", _("Estimated size"))
+                td(_("_kilobytes", (long)(report.cache.estimatedFootprint / 1024)))
+            }
+            tr {
+                th(align: "left", _("Bound"))
+                if (report.cache.maximumSize > 0) {
+                    td(_("_maximumSize", report.cache.maximumSize))
+                } else {
+                    td(_("_kilobytes", (long)(report.cache.maximumWeight / 1024)))
+                }
+            }
+            tr {
+                th(align: "left", _("Lookups"))
+                td(report.cache.requestCount)
+            }
+            tr {
+                th(align: "left", _("Hit rate"))
+                td(_("_percent", (int)Math.round(report.cache.hitRate * 100)))
+            }
+            tr {
+                th(align: "left", _("Evicted"))
+                td(report.cache.evictionCount)
+            }
+        }
+    }
+}
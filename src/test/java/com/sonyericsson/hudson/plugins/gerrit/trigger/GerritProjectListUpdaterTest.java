@@ -27,9 +27,15 @@ import org.junit.Test;
 
 import java.io.IOException;
 import java.io.StringReader;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Test class for the GerritProjectListUpdater.
@@ -38,6 +44,8 @@ import static org.junit.Assert.assertArrayEquals;
  */
 public class GerritProjectListUpdaterTest {
 
+    private static final long DEFAULT_PERIOD = 5;
+
     /**
      * Standard constructor.
      */
@@ -63,4 +71,55 @@ public class GerritProjectListUpdaterTest {
             "tools/gerrit",
         });
     }
+
+    /**
+     * Tests that projects added one by one are kept sorted and distinct,
+     * and that the list handed out is not affected by later additions.
+     */
+    @Test
+    public void testAddGerritProjectKeepsSortedSnapshot() {
+        GerritProjectListUpdater updater = new GerritProjectListUpdater("someServer");
+        updater.setGerritProjects(Arrays.asList("tools/gerrit", "a/project", "tools/gerrit"));
+        List<String> before = updater.getGerritProjects();
+
+        updater.addGerritProject("m/project");
+        updater.addGerritProject(new String("a/project"));
+        updater.addGerritProject("z/project");
+
+        assertEquals(Arrays.asList("a/project", "tools/gerrit"), before);
+        assertEquals(Arrays.asList("a/project", "m/project", "tools/gerrit", "z/project"),
+                updater.getGerritProjects());
+        assertSame("a/project", updater.getGerritProjects().get(0));
+    }
+
+    /**
+     * Tests that the project list can't be modified by its readers.
+     */
+    @Test(expected = UnsupportedOperationException.class)
+    public void testGerritProjectsAreUnmodifiable() {
+        GerritProjectListUpdater updater = new GerritProjectListUpdater("someServer");
+        updater.addGerritProject("a/project");
+        updater.getGerritProjects().add("b/project");
+    }
+
+    /**
+     * Tests that the projects are only listed again when the connection was lost since the last listing,
+     * or when the reconciliation interval has passed.
+     */
+    @Test
+    public void testReconcileDue() {
+        GerritProjectListUpdater updater = new GerritProjectListUpdater("someServer");
+        long now = System.nanoTime();
+        long interval = TimeUnit.MINUTES.toNanos(GerritProjectListUpdater.DEFAULT_RECONCILE_INTERVAL);
+        assertTrue(updater.isReconcileDue(now));
+
+        updater.reconciled(0, now);
+        assertFalse(updater.isReconcileDue(now + TimeUnit.MINUTES.toNanos(DEFAULT_PERIOD)));
+        assertTrue(updater.isReconcileDue(now + interval));
+
+        updater.connectionDown();
+        assertTrue(updater.isReconcileDue(now + TimeUnit.MINUTES.toNanos(DEFAULT_PERIOD)));
+        updater.reconciled(1, now);
+        assertFalse(updater.isReconcileDue(now + TimeUnit.MINUTES.toNanos(DEFAULT_PERIOD)));
+    }
 }
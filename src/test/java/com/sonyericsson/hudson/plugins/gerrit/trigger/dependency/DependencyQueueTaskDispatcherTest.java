@@ -29,6 +29,7 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.same;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.mock;
@@ -71,6 +72,8 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mockito;
 import org.mockito.internal.matchers.InstanceOf;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
@@ -236,10 +239,128 @@ public class DependencyQueueTaskDispatcherTest {
 
         //Setting the dependency as "triggered and built"
         setBuilding(patchsetCreated, false);
+        dispatcher.onBuildStateChanged(patchsetCreated);
         cause = dispatcher.canRun(item);
         assertNull("Build should not be blocked", cause);
     }
 
+    /**
+     * Test that the dependencies are resolved and the rules evaluated once,
+     * and only evaluated again after a build state change for the event.
+     */
+    @Test
+    public void shouldRememberDecisionUntilBuildStateChanged() {
+        PatchsetCreated patchsetCreated = Setup.createPatchsetCreated("someGerritServer", "someProject",
+                "refs/changes/1/1/1");
+        Queue.Item item = createItem(patchsetCreated, "upstream");
+        setBuilding(patchsetCreated, true);
+        assertNotNull("Build should be blocked", dispatcher.canRun(item));
+
+        setBuilding(patchsetCreated, false);
+        assertNotNull("Decision should be remembered", dispatcher.canRun(item));
+        verify(toGerritRunListenerMock, times(1)).isBuilding(abstractProjectDependencyMock, patchsetCreated);
+
+        dispatcher.onBuildStateChanged(Setup.createPatchsetCreated("someGerritServer", "otherProject",
+                "refs/changes/2/2/1"));
+        assertNotNull("Decision should only be forgotten for its event", dispatcher.canRun(item));
+
+        dispatcher.onBuildStateChanged(patchsetCreated);
+        assertNull("Build should not be blocked", dispatcher.canRun(item));
+        verify(toGerritRunListenerMock, times(2)).isBuilding(abstractProjectDependencyMock, patchsetCreated);
+        verify(jenkinsMock, times(1)).getItem(eq("upstream"), any(Item.class), eq(Item.class));
+
+        dispatcher.onItemsChanged();
+        dispatcher.onBuildStateChanged(patchsetCreated);
+        dispatcher.canRun(item);
+        verify(jenkinsMock, times(2)).getItem(eq("upstream"), any(Item.class), eq(Item.class));
+    }
+
+    /**
+     * Test that forgetting a blocked decision asks the queue to check the items again right away,
+     * and that forgetting an unblocked decision does not.
+     */
+    @Test
+    public void shouldScheduleMaintenanceWhenBlockedDecisionForgotten() {
+        when(Jenkins.getInstanceOrNull()).thenReturn(jenkinsMock);
+        PatchsetCreated patchsetCreated = Setup.createPatchsetCreated("someGerritServer", "someProject",
+                "refs/changes/1/1/1");
+        Queue.Item item = createItem(patchsetCreated, "upstream");
+        setBuilding(patchsetCreated, true);
+        assertNotNull("Build should be blocked", dispatcher.canRun(item));
+
+        setBuilding(patchsetCreated, false);
+        dispatcher.onBuildStateChanged(patchsetCreated);
+        verify(queueMock, times(1)).scheduleMaintenance();
+
+        assertNull("Build should not be blocked", dispatcher.canRun(item));
+        dispatcher.onBuildStateChanged(patchsetCreated);
+        dispatcher.onBuildStateChanged(patchsetCreated);
+        verify(queueMock, times(1)).scheduleMaintenance();
+    }
+
+    /**
+     * Test that an item blocked by its dependency building becomes runnable once the dependency has completed
+     * and the build state change is signalled after the memory was updated.
+     */
+    @Test
+    public void shouldRunWhenDependencyCompleted() {
+        when(Jenkins.getInstanceOrNull()).thenReturn(jenkinsMock);
+        PatchsetCreated patchsetCreated = Setup.createPatchsetCreated("someGerritServer", "someProject",
+                "refs/changes/1/1/1");
+        Queue.Item item = createItem(patchsetCreated, "upstream");
+        setBuilding(patchsetCreated, true);
+        assertThat(dispatcher.canRun(item), new InstanceOf(BecauseDependentBuildIsBuilding.class));
+
+        //The dependency completes: first the memory is updated, then the state change is signalled.
+        setBuilding(patchsetCreated, false);
+        dispatcher.onBuildStateChanged(patchsetCreated);
+        verify(queueMock, times(1)).scheduleMaintenance();
+        assertNull("Build should not be blocked", dispatcher.canRun(item));
+    }
+
+    /**
+     * Test that a decision made on the old state while the dependency completes is not remembered,
+     * and that the queue is asked to check the item again.
+     */
+    @Test
+    public void shouldNotRememberDecisionMadeDuringStateChange() {
+        when(Jenkins.getInstanceOrNull()).thenReturn(jenkinsMock);
+        final PatchsetCreated patchsetCreated = Setup.createPatchsetCreated("someGerritServer", "someProject",
+                "refs/changes/1/1/1");
+        Queue.Item item = createItem(patchsetCreated, "upstream");
+        when(toGerritRunListenerMock.isTriggered(abstractProjectDependencyMock, patchsetCreated)).thenReturn(true);
+        final boolean[] building = {true};
+        doAnswer(new Answer<Boolean>() {
+            @Override
+            public Boolean answer(InvocationOnMock invocation) {
+                if (building[0]) {
+                    //The dependency completes while the decision is being made on the state read before that.
+                    building[0] = false;
+                    dispatcher.onBuildStateChanged(patchsetCreated);
+                    return true;
+                }
+                return false;
+            }
+        }).when(toGerritRunListenerMock).isBuilding(abstractProjectDependencyMock, patchsetCreated);
+        assertNotNull("Build should be blocked on the old state", dispatcher.canRun(item));
+        verify(queueMock, times(1)).scheduleMaintenance();
+        assertNull("Build should not be blocked", dispatcher.canRun(item));
+    }
+
+    /**
+     * Test that items held back while an event was triggering are checked again once it is done.
+     */
+    @Test
+    public void shouldScheduleMaintenanceWhenDoneTriggering() {
+        when(Jenkins.getInstanceOrNull()).thenReturn(jenkinsMock);
+        PatchsetCreated patchsetCreated = Setup.createPatchsetCreated("someGerritServer", "someProject",
+                "refs/changes/1/1/1");
+        dispatcher.onTriggeringAll(patchsetCreated);
+        verify(queueMock, times(0)).scheduleMaintenance();
+        dispatcher.onDoneTriggeringAll(patchsetCreated);
+        verify(queueMock, times(1)).scheduleMaintenance();
+    }
+
     /**
      * Test that an job is waiting for parent if parent was not triggered, but is interested in event.
      */
@@ -363,6 +484,7 @@ public class DependencyQueueTaskDispatcherTest {
         //Setting the dependency as "triggered and built"
         doReturn(false).when(toGerritRunListenerMock).
                 isBuilding(abstractProjectDependencyMock, manualPatchsetCreated);
+        dispatcher.onBuildStateChanged(manualPatchsetCreated);
         cause = dispatcher.canRun(item);
         assertNull("Build should not be blocked", cause);
     }
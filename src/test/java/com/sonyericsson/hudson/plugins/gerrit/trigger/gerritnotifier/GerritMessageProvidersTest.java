@@ -0,0 +1,282 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2026 the Gerrit Trigger plugin authors.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier;
+
+import hudson.model.AbstractBuild;
+import hudson.model.Run;
+import hudson.util.StreamTaskListener;
+import jenkins.model.Jenkins;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link GerritMessageProviders}.
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({ Jenkins.class, GerritMessageProvider.class })
+public class GerritMessageProvidersTest {
+
+    private static final long TIMEOUT = 500;
+    private static final long SLOW = TimeUnit.SECONDS.toMillis(30);
+    private static final AtomicInteger CALLS = new AtomicInteger();
+
+    private List<GerritMessageProvider> providers;
+
+    /**
+     * Gives the providers a short time budget.
+     */
+    @BeforeClass
+    public static void setUpClass() {
+        System.setProperty(GerritMessageProviders.class.getName() + ".timeout", String.valueOf(TIMEOUT));
+    }
+
+    /**
+     * Mocks the provider extension list.
+     */
+    @Before
+    public void setUp() {
+        PowerMockito.mockStatic(Jenkins.class);
+        PowerMockito.mockStatic(GerritMessageProvider.class);
+        providers = new LinkedList<GerritMessageProvider>();
+        when(GerritMessageProvider.all()).thenReturn(providers);
+        CALLS.set(0);
+    }
+
+    /**
+     * Tests that the messages of all builds are in the order of the providers, without the nulls.
+     */
+    @Test
+    public void testMessagesInProviderOrder() {
+        providers.add(new NamedProvider("first"));
+        providers.add(new NullProvider());
+        providers.add(new NamedProvider("second"));
+        Run build1 = mock(AbstractBuild.class);
+        Run build2 = mock(AbstractBuild.class);
+
+        Map<Run, List<String>> messages = GerritMessageProviders.getBuildCompletedMessages(
+                Arrays.asList(build1, null, build2), null);
+
+        assertEquals(2, messages.size());
+        assertEquals(Arrays.asList("first", "second"), messages.get(build1));
+        assertEquals(Arrays.asList("first", "second"), messages.get(build2));
+    }
+
+    /**
+     * Tests that a provider that runs out of time is not waited for, and that the build log tells so.
+     */
+    @Test
+    public void testSlowProviderNotWaitedFor() {
+        providers.add(new SlowProvider());
+        providers.add(new NamedProvider("fast"));
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        long start = System.currentTimeMillis();
+
+        List<String> messages = GerritMessageProviders.getBuildStartedMessages(mock(AbstractBuild.class),
+                new StreamTaskListener(log, StandardCharsets.UTF_8));
+
+        assertTrue(System.currentTimeMillis() - start < SLOW);
+        assertEquals(Collections.singletonList("fast"), messages);
+        assertEquals(1, getTiming(SlowProvider.class).getTimeouts());
+        assertTrue(new String(log.toByteArray(), StandardCharsets.UTF_8).contains(SlowProvider.class.getName()));
+    }
+
+    /**
+     * Tests that a provider that throws an exception is skipped.
+     */
+    @Test
+    public void testFailingProviderSkipped() {
+        providers.add(new FailingProvider());
+        providers.add(new NamedProvider("working"));
+
+        List<String> messages = GerritMessageProviders.getBuildStartedMessages(mock(AbstractBuild.class), null);
+
+        assertEquals(Collections.singletonList("working"), messages);
+        GerritMessageProviders.Timing timing = getTiming(FailingProvider.class);
+        assertEquals(1, timing.getCalls());
+        assertEquals(1, timing.getFailures());
+    }
+
+    /**
+     * Tests that the providers are asked once per build.
+     */
+    @Test
+    public void testCachedPerBuild() {
+        providers.add(new CountingProvider());
+        Run build = mock(AbstractBuild.class);
+
+        GerritMessageProviders.getBuildCompletedMessages(Collections.singletonList(build), null);
+        Map<Run, List<String>> messages =
+                GerritMessageProviders.getBuildCompletedMessages(Collections.singletonList(build), null);
+        assertEquals(Collections.singletonList("1"), messages.get(build));
+        assertEquals(1, CALLS.get());
+
+        GerritMessageProviders.getBuildStartedMessages(build, null);
+        assertEquals(2, CALLS.get());
+        GerritMessageProviders.getBuildStartedMessages(mock(AbstractBuild.class), null);
+        assertEquals(3, CALLS.get());
+    }
+
+    /**
+     * Tests that the answers for a build are not kept when a provider didn't answer,
+     * so the providers are asked again the next time.
+     */
+    @Test
+    public void testNotCachedWhenProviderFailed() {
+        providers.add(new CountingProvider());
+        providers.add(new FailingOnceProvider());
+        Run build = mock(AbstractBuild.class);
+
+        assertEquals(Collections.singletonList("1"), GerritMessageProviders.getBuildStartedMessages(build, null));
+        assertEquals(Arrays.asList("2", "recovered"), GerritMessageProviders.getBuildStartedMessages(build, null));
+        assertEquals(Arrays.asList("2", "recovered"), GerritMessageProviders.getBuildStartedMessages(build, null));
+        assertEquals(2, CALLS.get());
+    }
+
+    /**
+     * The timing of a provider class.
+     *
+     * @param provider the class.
+     * @return the timing.
+     */
+    private static GerritMessageProviders.Timing getTiming(Class<? extends GerritMessageProvider> provider) {
+        for (GerritMessageProviders.Timing timing : GerritMessageProviders.getTimings()) {
+            if (timing.getName().equals(provider.getName())) {
+                return timing;
+            }
+        }
+        throw new AssertionError("No timing for " + provider.getName());
+    }
+
+    /**
+     * Provides a fixed message.
+     */
+    public static class NamedProvider extends GerritMessageProvider {
+        private final String message;
+
+        /**
+         * Constructor.
+         *
+         * @param message the message.
+         */
+        public NamedProvider(String message) {
+            this.message = message;
+        }
+
+        @Override
+        public String getBuildStartedMessage(Run build) {
+            return message;
+        }
+
+        @Override
+        public String getBuildCompletedMessage(Run build) {
+            return message;
+        }
+    }
+
+    /**
+     * Provides no message.
+     */
+    public static class NullProvider extends GerritMessageProvider {
+        @Override
+        public String getBuildCompletedMessage(Run build) {
+            return null;
+        }
+    }
+
+    /**
+     * Takes much longer than the time budget.
+     */
+    public static class SlowProvider extends GerritMessageProvider {
+        @Override
+        public String getBuildStartedMessage(Run build) {
+            try {
+                Thread.sleep(SLOW);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "slow";
+        }
+    }
+
+    /**
+     * Throws an exception.
+     */
+    public static class FailingProvider extends GerritMessageProvider {
+        @Override
+        public String getBuildStartedMessage(Run build) {
+            throw new IllegalStateException("failing");
+        }
+    }
+
+    /**
+     * Throws an exception the first time it is called.
+     */
+    public static class FailingOnceProvider extends GerritMessageProvider {
+        private boolean failed = false;
+
+        @Override
+        public synchronized String getBuildStartedMessage(Run build) {
+            if (!failed) {
+                failed = true;
+                throw new IllegalStateException("failing once");
+            }
+            return "recovered";
+        }
+    }
+
+    /**
+     * Counts the calls.
+     */
+    public static class CountingProvider extends GerritMessageProvider {
+        @Override
+        public String getBuildStartedMessage(Run build) {
+            return String.valueOf(CALLS.incrementAndGet());
+        }
+
+        @Override
+        public String getBuildCompletedMessage(Run build) {
+            return String.valueOf(CALLS.incrementAndGet());
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2026 the Gerrit Trigger plugin authors.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier;
+
+import hudson.EnvVars;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link MessageTemplate}.
+ */
+public class MessageTemplateTest {
+
+    private Map<String, String> parameters;
+    private EnvVars env;
+
+    /**
+     * Creates some parameters and variables.
+     */
+    @Before
+    public void setUp() {
+        parameters = new HashMap<String, String>();
+        parameters.put("CHANGE", "1000");
+        parameters.put("PATCHSET", "1");
+        parameters.put("VERIFIED", "1");
+        parameters.put("CODE_REVIEW", "null");
+        env = new EnvVars();
+        env.put("BRANCH", "master");
+        env.put("JOB.NAME", "job");
+    }
+
+    /**
+     * Tests that parameters and variables are expanded the same way as before.
+     */
+    @Test
+    public void testExpand() {
+        MessageTemplate template = MessageTemplate.compile(
+                "gerrit review <CHANGE>,<PATCHSET> --message '$BRANCH ${JOB.NAME} $$ $UNKNOWN <UNKNOWN> <>'");
+        assertTrue(template.hasVariables());
+        assertEquals("gerrit review 1000,1 --message 'master job $ $UNKNOWN <UNKNOWN> <>'",
+                template.expand(parameters, env));
+        assertEquals(env.expand(template.getTemplate()).replace("<CHANGE>", "1000").replace("<PATCHSET>", "1"),
+                template.expand(parameters, env));
+    }
+
+    /**
+     * Tests that variables are left as they are without an environment.
+     */
+    @Test
+    public void testExpandWithoutEnvironment() {
+        MessageTemplate template = MessageTemplate.compile("<CHANGE> $BRANCH $$");
+        assertEquals("1000 $BRANCH $$", template.expand(parameters, null));
+        assertFalse(MessageTemplate.compile("<CHANGE> costs 5$").hasVariables());
+    }
+
+    /**
+     * Tests that votes with nothing to vote are left out.
+     */
+    @Test
+    public void testVotesWithoutValue() {
+        MessageTemplate template = MessageTemplate.compile(
+                "gerrit review --verified <VERIFIED> --code-review <CODE_REVIEW> --verified null");
+        assertEquals("gerrit review --verified 1  ", template.expand(parameters, env));
+        parameters.put("VERIFIED", String.valueOf(Integer.MAX_VALUE));
+        assertEquals("gerrit review   ", template.expand(parameters, env));
+    }
+
+    /**
+     * Tests that a template is only parsed once.
+     */
+    @Test
+    public void testCached() {
+        String text = "<CHANGE>,<PATCHSET>";
+        assertSame(MessageTemplate.compile(text), MessageTemplate.compile(new String(text)));
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2026 the Gerrit Trigger plugin authors.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier;
+
+import com.sonyericsson.hudson.plugins.gerrit.trigger.PluginImpl;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.config.IGerritHudsonTriggerConfig;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.job.ssh.BuildCompletedCommandJob;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.job.ssh.BuildStartedCommandJob;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.model.BuildMemory;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.model.BuildsStartedStats;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.mock.Setup;
+import com.sonymobile.tools.gerrit.gerritevents.GerritSendCommandQueue;
+import com.sonymobile.tools.gerrit.gerritevents.dto.events.PatchsetCreated;
+import com.sonymobile.tools.gerrit.gerritevents.workers.cmd.AbstractSendCommandJob;
+import hudson.model.AbstractBuild;
+import hudson.model.TaskListener;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isA;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.powermock.api.mockito.PowerMockito.doReturn;
+import static org.powermock.api.mockito.PowerMockito.mock;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.spy;
+import static org.powermock.api.mockito.PowerMockito.verifyStatic;
+
+//CS IGNORE MagicNumber FOR NEXT 200 LINES. REASON: test-data.
+
+/**
+ * Tests the coalescing of build started notifications in {@link NotificationFactory}.
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(GerritSendCommandQueue.class)
+public class NotificationFactoryTest {
+
+    private NotificationFactory factory;
+    private PatchsetCreated event;
+
+    /**
+     * Sets up a factory with a long window so that only the tests flush it.
+     */
+    @Before
+    public void setUp() {
+        System.setProperty(NotificationFactory.BUILD_STARTED_WINDOW_PROPERTY, "600000");
+        mockStatic(GerritSendCommandQueue.class);
+        event = Setup.createPatchsetCreated();
+        factory = spy(new NotificationFactory());
+        doReturn(mock(IGerritHudsonTriggerConfig.class)).when(factory).getConfig(eq(PluginImpl.DEFAULT_SERVER_NAME));
+    }
+
+    /**
+     * Removes the window property.
+     */
+    @After
+    public void tearDown() {
+        System.clearProperty(NotificationFactory.BUILD_STARTED_WINDOW_PROPERTY);
+    }
+
+    /**
+     * Tests that several started builds of the same event are sent as one notification.
+     */
+    @Test
+    public void testBuildStartedCoalesced() {
+        for (int i = 1; i <= 3; i++) {
+            factory.queueBuildStarted(mock(AbstractBuild.class), TaskListener.NULL, event,
+                    new BuildsStartedStats(event, 3, i));
+        }
+        verifyStatic(never());
+        GerritSendCommandQueue.queue(any(AbstractSendCommandJob.class));
+
+        factory.flushBuildStarted(event);
+        verifyStatic(times(1));
+        GerritSendCommandQueue.queue(isA(BuildStartedCommandJob.class));
+
+        factory.flushBuildStarted(event);
+        verifyStatic(times(1));
+        GerritSendCommandQueue.queue(isA(BuildStartedCommandJob.class));
+    }
+
+    /**
+     * Tests that no started notification is sent once the completed one is queued.
+     */
+    @Test
+    public void testBuildStartedSkippedWhenCompleted() {
+        factory.queueBuildStarted(mock(AbstractBuild.class), TaskListener.NULL, event,
+                new BuildsStartedStats(event, 1, 1));
+        factory.queueBuildCompleted(new BuildMemory.MemoryImprint(event), TaskListener.NULL);
+        factory.flushBuildStarted(event);
+        verifyStatic(times(1));
+        GerritSendCommandQueue.queue(isA(BuildCompletedCommandJob.class));
+        verifyStatic(never());
+        GerritSendCommandQueue.queue(isA(BuildStartedCommandJob.class));
+    }
+}
@@ -65,6 +65,8 @@ import static org.junit.Assert.assertEquals;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 //CS IGNORE MagicNumber FOR NEXT 700 LINES. REASON: Mocks tests.
@@ -142,6 +144,46 @@ public class ParameterExpanderTest {
         assertTrue("Newlines are stripped", result.indexOf("Message\nwith newline") >= 0);
     }
 
+    /**
+     * Tests that one build started command for several builds has the URLs and start messages of all of them,
+     * and the lowest vote.
+     * @throws Exception Exception
+     */
+    @Test
+    public void testGetBuildStartedCommandForSeveralBuilds() throws Exception {
+        TaskListener taskListener = mock(TaskListener.class);
+
+        GerritTrigger trigger = mock(GerritTrigger.class);
+        when(trigger.getGerritBuildStartedCodeReviewValue()).thenReturn(32);
+        when(trigger.getBuildStartMessage()).thenReturn("first started");
+        AbstractProject project = mock(AbstractProject.class);
+        Setup.setTrigger(trigger, project);
+        AbstractBuild first = Setup.createBuild(project, taskListener, Setup.createEnvVars());
+
+        GerritTrigger trigger2 = mock(GerritTrigger.class);
+        when(trigger2.getGerritBuildStartedCodeReviewValue()).thenReturn(-1);
+        when(trigger2.getBuildStartMessage()).thenReturn("second started");
+        AbstractProject project2 = mock(AbstractProject.class);
+        Setup.setTrigger(trigger2, project2);
+        AbstractBuild second = Setup.createBuild(project2, taskListener, Setup.createEnvVars());
+        when(second.getUrl()).thenReturn("test2/");
+
+        PatchsetCreated event = Setup.createPatchsetCreated();
+        BuildsStartedStats stats = Setup.createBuildStartedStats(event);
+        PowerMockito.mockStatic(GerritMessageProvider.class);
+        when(GerritMessageProvider.all()).thenReturn(new LinkedList<GerritMessageProvider>());
+
+        ParameterExpander instance = new ParameterExpander(Setup.createConfig(), jenkins);
+        List<Run> builds = new LinkedList<Run>();
+        builds.add(first);
+        builds.add(second);
+        String result = instance.getBuildStartedCommand(builds, taskListener, event, stats);
+        assertThat(result, containsString("BUILDURL=http://localhost/test/ http://localhost/test2/"));
+        assertThat(result, containsString("CODEREVIEW=-1"));
+        assertThat(result, containsString("first started"));
+        assertThat(result, containsString("second started"));
+    }
+
     /**
      * test.
      */
@@ -849,6 +891,45 @@ public class ParameterExpanderTest {
         return new SubstringMatcher(substrings);
     }
 
+    /**
+     * Tests that the environment of a build is computed at most once per notification,
+     * and not at all when no template refers to it.
+     *
+     * @throws Exception if so
+     */
+    @Test
+    public void testBuildEnvironmentComputedOncePerNotification() throws Exception {
+        TaskListener taskListener = mock(TaskListener.class);
+
+        GerritTrigger trigger = mock(GerritTrigger.class);
+        AbstractProject project = mock(AbstractProject.class);
+        Setup.setTrigger(trigger, project);
+
+        EnvVars env = Setup.createEnvVars();
+        AbstractBuild r = Setup.createBuild(project, taskListener, env);
+        env.put("BUILD_URL", jenkins.getRootUrl() + r.getUrl());
+        when(r.getResult()).thenReturn(Result.SUCCESS);
+
+        MemoryImprint memoryImprint = mock(MemoryImprint.class);
+        when(memoryImprint.getEvent()).thenReturn(Setup.createPatchsetCreated());
+        when(memoryImprint.wereAllBuildsSuccessful()).thenReturn(true);
+        MemoryImprint.Entry[] entries = { Setup.createImprintEntry(project, r) };
+        when(entries[0].getCustomUrl()).thenReturn("${BUILD_URL}console");
+        when(memoryImprint.getEntries()).thenReturn(entries);
+
+        PowerMockito.mockStatic(GerritMessageProvider.class);
+        when(GerritMessageProvider.all()).thenReturn(new LinkedList<GerritMessageProvider>());
+
+        String result = new ParameterExpander(Setup.createConfig(), jenkins)
+                .getBuildCompletedCommand(memoryImprint, taskListener);
+        assertThat(result, containsString("http://localhost/test/console"));
+        verify(r, times(1)).getEnvironment(taskListener);
+
+        when(entries[0].getCustomUrl()).thenReturn("http://localhost/custom");
+        new ParameterExpander(new Config(), jenkins).getBuildCompletedCommand(memoryImprint, taskListener);
+        verify(r, times(1)).getEnvironment(taskListener);
+    }
+
     /**
      * Checks containment of multiple strings in another string.
      */
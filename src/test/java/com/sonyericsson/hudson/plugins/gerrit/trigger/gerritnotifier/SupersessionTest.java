@@ -0,0 +1,144 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2026 the Gerrit Trigger plugin authors.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier;
+
+import com.sonyericsson.hudson.plugins.gerrit.trigger.mock.Setup;
+import com.sonymobile.tools.gerrit.gerritevents.dto.events.PatchsetCreated;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link Supersession}.
+ */
+public class SupersessionTest {
+
+    private static final String SERVER = "gerrit";
+
+    private Supersession supersession;
+
+    /**
+     * Creates the supersession.
+     */
+    @Before
+    public void setUp() {
+        supersession = new Supersession();
+    }
+
+    /**
+     * A patchset created event for a patchset of change 1000.
+     *
+     * @param patchset the patchset number.
+     * @return the event.
+     */
+    private static PatchsetCreated event(int patchset) {
+        PatchsetCreated event = Setup.createPatchsetCreated(SERVER);
+        event.getPatchSet().setNumber(String.valueOf(patchset));
+        return event;
+    }
+
+    /**
+     * Tests that notifications for an older patchset are superseded by one for a newer patchset.
+     */
+    @Test
+    public void testOlderPatchsetSuperseded() {
+        Supersession.Ticket started = supersession.queued(SERVER, event(1), false);
+        Supersession.Ticket completed = supersession.queued(SERVER, event(1), true);
+        Supersession.Ticket newer = supersession.queued(SERVER, event(2), false);
+
+        assertTrue(started.dropIfSuperseded());
+        assertTrue(completed.dropIfSuperseded());
+        assertFalse(newer.dropIfSuperseded());
+        assertEquals(2, supersession.getDroppedCount());
+    }
+
+    /**
+     * Tests that a notification for an old patchset queued after the newer ones, like a retrigger, is sent.
+     */
+    @Test
+    public void testRetriggeredOldPatchsetNotSuperseded() {
+        Supersession.Ticket newer = supersession.queued(SERVER, event(2), true);
+        Supersession.Ticket older = supersession.queued(SERVER, event(1), true);
+
+        assertFalse(older.dropIfSuperseded());
+        assertFalse(newer.dropIfSuperseded());
+    }
+
+    /**
+     * Tests that a build started notification is superseded by the build completed notification of the same event.
+     */
+    @Test
+    public void testStartedSupersededByCompletedOfSameEvent() {
+        PatchsetCreated event = event(1);
+        Supersession.Ticket other = supersession.queued(SERVER, event(1), false);
+        Supersession.Ticket started = supersession.queued(SERVER, event, false);
+        Supersession.Ticket completed = supersession.queued(SERVER, event, true);
+
+        assertTrue(started.dropIfSuperseded());
+        assertFalse(other.dropIfSuperseded());
+        assertFalse(completed.dropIfSuperseded());
+    }
+
+    /**
+     * Tests that the notifications of other changes and servers are not superseded.
+     */
+    @Test
+    public void testOtherChangesNotSuperseded() {
+        PatchsetCreated otherChange = event(1);
+        otherChange.getChange().setNumber("1001");
+        Supersession.Ticket first = supersession.queued(SERVER, otherChange, true);
+        Supersession.Ticket second = supersession.queued("other", event(1), true);
+        supersession.queued(SERVER, event(2), true);
+
+        assertFalse(first.dropIfSuperseded());
+        assertFalse(second.dropIfSuperseded());
+    }
+
+    /**
+     * Tests that a change is forgotten when it has no more queued notifications.
+     */
+    @Test
+    public void testDoneForgetsChange() {
+        Supersession.Ticket newer = supersession.queued(SERVER, event(2), true);
+        assertEquals(1, supersession.getChangeCount());
+        newer.done();
+        newer.done();
+        assertEquals(0, supersession.getChangeCount());
+
+        Supersession.Ticket older = supersession.queued(SERVER, event(1), true);
+        assertFalse(older.dropIfSuperseded());
+    }
+
+    /**
+     * Tests that events without a patchset get no ticket.
+     */
+    @Test
+    public void testNoTicketWithoutPatchset() {
+        assertNull(supersession.queued(SERVER, Setup.createRefUpdated(SERVER, "project", "master"), true));
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2026 the Gerrit Trigger plugin authors.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.job.rest;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.GerritServer;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.mock.Setup;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.utils.GerritHttpClient;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.utils.MockPluginCheckerConfig;
+import com.sonymobile.tools.gerrit.gerritevents.dto.events.PatchsetCreated;
+import com.sonymobile.tools.gerrit.gerritevents.dto.rest.ReviewInput;
+import com.sonymobile.tools.gerrit.gerritevents.dto.rest.ReviewLabel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.containing;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Tests for {@link RestNotifier}.
+ */
+public class RestNotifierTest {
+
+    private static final String PREFIX = RestNotifier.class.getName() + ".";
+    private static final String REVIEW_URL = "/a/changes/project~branch~Iddaaddaa123456789/revisions/9999/review";
+    private static final int HTTPOK = 200;
+    private static final int HTTPBADREQUEST = 400;
+    private static final int HTTPUNAVAILABLE = 503;
+    private static final long TIMEOUT = TimeUnit.SECONDS.toMillis(10);
+    private static final long POLL = 10;
+    private static final int REVIEWS = 3;
+
+    /**
+     * The Gerrit server.
+     */
+    // CS IGNORE VisibilityModifier FOR NEXT 2 LINES. REASON: WireMockRule.
+    @Rule
+    public final WireMockRule wireMockRule = new WireMockRule(0);
+
+    private GerritServer server;
+    private GerritHttpClient client;
+    private RestNotifier notifier;
+    private PatchsetCreated event;
+
+    /**
+     * Sets up a server that talks to WireMock, without limits unless a test sets them.
+     */
+    @Before
+    public void setUp() {
+        System.setProperty(PREFIX + "requestsPerSecond", "0");
+        System.setProperty(PREFIX + "retryDelay", "10");
+        MockPluginCheckerConfig config = new MockPluginCheckerConfig();
+        config.setGerritFrontEndURL("http://localhost:" + wireMockRule.port());
+        config.setGerritHttpUserName("user");
+        config.setGerritHttpPassword("passwd");
+        client = new GerritHttpClient(config);
+        server = mock(GerritServer.class);
+        doReturn("test").when(server).getName();
+        doReturn(config).when(server).getConfig();
+        doAnswer(new Answer<GerritHttpClient>() {
+            @Override
+            public GerritHttpClient answer(InvocationOnMock invocation) {
+                client.acquire();
+                return client;
+            }
+        }).when(server).acquireHttpClient();
+        event = Setup.createPatchsetCreated("test");
+    }
+
+    /**
+     * Closes the notifier and clears the properties.
+     */
+    @After
+    public void tearDown() {
+        if (notifier != null) {
+            notifier.close();
+        }
+        client.close();
+        for (String property : new String[]{"requestsPerSecond", "retryDelay", "maxInFlight", "maxRetries",
+                "failureThreshold", "openTime"}) {
+            System.clearProperty(PREFIX + property);
+        }
+    }
+
+    /**
+     * Tests that the review is posted as JSON to the revision of the event.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testPostsReview() throws Exception {
+        stubFor(post(urlEqualTo(REVIEW_URL)).willReturn(aResponse().withStatus(HTTPOK)));
+        notifier = new RestNotifier(server);
+        notifier.queue(event, createJob("Build Successful"));
+        waitFor(1, 0);
+        verify(1, postRequestedFor(urlEqualTo(REVIEW_URL))
+                .withRequestBody(containing("\"message\":\"Build Successful\""))
+                .withRequestBody(containing("\"Verified\":1")));
+        assertEquals(0, notifier.getQueueDepth());
+        assertEquals(0, notifier.getRetryCount());
+        assertEquals(RestNotifier.CircuitState.CLOSED, notifier.getCircuitState());
+    }
+
+    /**
+     * Tests that a server error is retried.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testRetriesServerError() throws Exception {
+        stubFor(post(urlEqualTo(REVIEW_URL)).inScenario("retry").whenScenarioStateIs(Scenario.STARTED)
+                .willReturn(aResponse().withStatus(HTTPUNAVAILABLE)).willSetStateTo("healthy"));
+        stubFor(post(urlEqualTo(REVIEW_URL)).inScenario("retry").whenScenarioStateIs("healthy")
+                .willReturn(aResponse().withStatus(HTTPOK)));
+        notifier = new RestNotifier(server);
+        notifier.queue(event, createJob("Build Successful"));
+        waitFor(1, 0);
+        verify(2, postRequestedFor(urlEqualTo(REVIEW_URL)));
+        assertEquals(1, notifier.getRetryCount());
+        assertEquals(0, notifier.getConsecutiveFailures());
+    }
+
+    /**
+     * Tests that a rejected review is not retried.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testDoesNotRetryRejected() throws Exception {
+        stubFor(post(urlEqualTo(REVIEW_URL)).willReturn(aResponse().withStatus(HTTPBADREQUEST)));
+        notifier = new RestNotifier(server);
+        notifier.queue(event, createJob("Build Successful"));
+        waitFor(0, 1);
+        verify(1, postRequestedFor(urlEqualTo(REVIEW_URL)));
+        assertEquals(0, notifier.getRetryCount());
+    }
+
+    /**
+     * Tests that the circuit opens and holds back the queue after failures in a row.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testCircuitOpens() throws Exception {
+        System.setProperty(PREFIX + "maxInFlight", "1");
+        System.setProperty(PREFIX + "maxRetries", "0");
+        System.setProperty(PREFIX + "failureThreshold", "2");
+        System.setProperty(PREFIX + "openTime", String.valueOf(TimeUnit.MINUTES.toMillis(1)));
+        stubFor(post(urlEqualTo(REVIEW_URL)).willReturn(aResponse().withStatus(HTTPUNAVAILABLE)));
+        notifier = new RestNotifier(server);
+        for (int i = 0; i < REVIEWS; i++) {
+            notifier.queue(event, createJob("Build " + i));
+        }
+        waitFor(0, 2);
+        assertEquals(RestNotifier.CircuitState.OPEN, notifier.getCircuitState());
+        assertEquals(1, notifier.getQueueDepth());
+        verify(2, postRequestedFor(urlEqualTo(REVIEW_URL)));
+    }
+
+    /**
+     * Tests that requests are not started faster than the rate limit.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testRateLimit() throws Exception {
+        System.setProperty(PREFIX + "requestsPerSecond", "5");
+        stubFor(post(urlEqualTo(REVIEW_URL)).willReturn(aResponse().withStatus(HTTPOK)));
+        notifier = new RestNotifier(server);
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < REVIEWS; i++) {
+            notifier.queue(event, createJob("Build " + i));
+        }
+        waitFor(REVIEWS, 0);
+        //CS IGNORE MagicNumber FOR NEXT 1 LINES. REASON: Two intervals of 200 ms.
+        assertTrue(System.currentTimeMillis() - start >= 400);
+    }
+
+    /**
+     * Tests that the reviews queued when the notifier is closed are still sent.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testCloseSendsQueuedReviews() throws Exception {
+        System.setProperty(PREFIX + "maxInFlight", "1");
+        System.setProperty(PREFIX + "requestsPerSecond", "5");
+        stubFor(post(urlEqualTo(REVIEW_URL)).willReturn(aResponse().withStatus(HTTPOK)));
+        notifier = new RestNotifier(server);
+        for (int i = 0; i < REVIEWS; i++) {
+            notifier.queue(event, createJob("Build " + i));
+        }
+        notifier.close();
+        waitFor(REVIEWS, 0);
+        verify(REVIEWS, postRequestedFor(urlEqualTo(REVIEW_URL)));
+    }
+
+    /**
+     * Tests that a review that can't be created is given up on without a request or a retry.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testDoesNotRetryUncreatableReview() throws Exception {
+        stubFor(post(urlEqualTo(REVIEW_URL)).willReturn(aResponse().withStatus(HTTPOK)));
+        notifier = new RestNotifier(server);
+        notifier.queue(event, new RestReviewJob() {
+            @Override
+            public ReviewInput createReview() {
+                throw new IllegalStateException("No review");
+            }
+        });
+        waitFor(0, 1);
+        verify(0, postRequestedFor(urlEqualTo(REVIEW_URL)));
+        assertEquals(0, notifier.getRetryCount());
+    }
+
+    /**
+     * Creates a job with a review voting Verified +1.
+     *
+     * @param message the message of the review.
+     * @return the job.
+     */
+    private RestReviewJob createJob(final String message) {
+        return new RestReviewJob() {
+            @Override
+            public ReviewInput createReview() {
+                return new ReviewInput(message, Collections.singletonList(new ReviewLabel("Verified", 1)));
+            }
+        };
+    }
+
+    /**
+     * Waits for the notifier to have sent and given up on the given number of reviews.
+     *
+     * @param sent   the number of sent reviews.
+     * @param failed the number of failed reviews.
+     * @throws InterruptedException if so.
+     */
+    private void waitFor(long sent, long failed) throws InterruptedException {
+        long until = System.currentTimeMillis() + TIMEOUT;
+        while ((notifier.getSentCount() < sent || notifier.getFailedCount() < failed)
+                && System.currentTimeMillis() < until) {
+            Thread.sleep(POLL);
+        }
+        assertEquals(sent, notifier.getSentCount());
+        assertEquals(failed, notifier.getFailedCount());
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2026 the Gerrit Trigger plugin authors.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.job.ssh;
+
+import com.jcraft.jsch.JSchException;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.config.IGerritHudsonTriggerConfig;
+import com.sonymobile.tools.gerrit.gerritevents.ssh.SshConnection;
+import com.sonymobile.tools.gerrit.gerritevents.ssh.SshException;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link SshSessionPool}.
+ */
+public class SshSessionPoolTest {
+
+    private static final String PREFIX = SshSessionPool.class.getName() + ".";
+    private static final String COMMAND = "gerrit review 1000,1 --message 'Build Started'";
+    private static final long POLL = 10;
+    private static final int PERCENT = 100;
+
+    private final List<SshConnection> connections = new LinkedList<SshConnection>();
+    private SshSessionPool pool;
+
+    /**
+     * Closes the pool and clears the properties.
+     */
+    @After
+    public void tearDown() {
+        if (pool != null) {
+            pool.close();
+        }
+        for (String property : new String[]{"maxSessions", "idleTimeout", "borrowTimeout"}) {
+            System.clearProperty(PREFIX + property);
+        }
+    }
+
+    /**
+     * Tests that a session is reused for the next command.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testReusesSession() throws Exception {
+        SshConnection connection = createConnection();
+        pool = createPool(connection);
+        pool.executeCommand(COMMAND);
+        pool.executeCommand(COMMAND);
+        assertEquals(1, pool.getCreatedCount());
+        assertEquals(1, pool.getReusedCount());
+        assertEquals(1, pool.getIdleCount());
+        assertEquals(0, pool.getActiveCount());
+        verify(connection, never()).disconnect();
+    }
+
+    /**
+     * Tests that a session that is no longer connected is replaced.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testReplacesDisconnectedSession() throws Exception {
+        SshConnection first = createConnection();
+        SshConnection second = createConnection();
+        pool = createPool(first, second);
+        pool.executeCommand(COMMAND);
+        when(first.isConnected()).thenReturn(false);
+        pool.executeCommand(COMMAND);
+        assertEquals(2, pool.getCreatedCount());
+        assertEquals(1, pool.getDiscardedCount());
+        verify(first).disconnect();
+        verify(second).executeCommand(COMMAND);
+    }
+
+    /**
+     * Tests that a command is sent on a new session when the reused session was down before it could be sent.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testRetriesOnNewSession() throws Exception {
+        SshConnection first = createConnection();
+        SshConnection second = createConnection();
+        pool = createPool(first, second);
+        pool.executeCommand(COMMAND);
+        when(first.executeCommand(anyString())).thenThrow(new SshException(new JSchException("session is down")));
+        assertTrue(pool.sendCommand(COMMAND));
+        verify(first).disconnect();
+        verify(second).executeCommand(COMMAND);
+        assertEquals(1, pool.getIdleCount());
+    }
+
+    /**
+     * Tests that a command that fails after it was sent on a reused session is not sent again.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testDoesNotRetryAfterSending() throws Exception {
+        SshConnection first = createConnection();
+        SshConnection second = createConnection();
+        pool = createPool(first, second);
+        pool.executeCommand(COMMAND);
+        when(first.executeCommand(anyString())).thenThrow(new SshException(new IOException("Pipe closed")));
+        assertFalse(pool.sendCommand(COMMAND));
+        verify(first).disconnect();
+        verify(second, never()).executeCommand(anyString());
+        assertEquals(1, pool.getCreatedCount());
+    }
+
+    /**
+     * Tests that idle sessions are disconnected.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testDisconnectsIdleSessions() throws Exception {
+        System.setProperty(PREFIX + "idleTimeout", "1");
+        SshConnection connection = createConnection();
+        pool = createPool(connection);
+        pool.executeCommand(COMMAND);
+        Thread.sleep(POLL);
+        pool.sweep();
+        assertEquals(0, pool.getIdleCount());
+        verify(connection).disconnect();
+    }
+
+    /**
+     * Tests that a command times out waiting when all sessions are busy.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testWaitsForSession() throws Exception {
+        System.setProperty(PREFIX + "maxSessions", "1");
+        System.setProperty(PREFIX + "borrowTimeout", String.valueOf(POLL));
+        final CountDownLatch release = new CountDownLatch(1);
+        SshConnection connection = createConnection();
+        when(connection.executeCommand(anyString())).thenAnswer(new Answer<String>() {
+            @Override
+            public String answer(InvocationOnMock invocation) throws Throwable {
+                release.await();
+                return "";
+            }
+        });
+        pool = createPool(connection);
+        Thread busy = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                pool.sendCommand(COMMAND);
+            }
+        });
+        busy.start();
+        while (pool.getActiveCount() == 0) {
+            Thread.sleep(POLL);
+        }
+        assertEquals(PERCENT, pool.getUtilization());
+        try {
+            pool.executeCommand(COMMAND);
+            fail("Should time out waiting for the session");
+        } catch (IOException e) {
+            assertEquals(1, pool.getWaitCount());
+        } finally {
+            release.countDown();
+            busy.join();
+        }
+        assertEquals(0, pool.getUtilization());
+    }
+
+    /**
+     * Creates a connected connection.
+     *
+     * @return the connection.
+     * @throws Exception if so.
+     */
+    private SshConnection createConnection() throws Exception {
+        SshConnection connection = mock(SshConnection.class);
+        when(connection.isConnected()).thenReturn(true);
+        when(connection.executeCommand(anyString())).thenReturn("");
+        return connection;
+    }
+
+    /**
+     * Creates a pool that opens the given connections in order.
+     *
+     * @param opened the connections.
+     * @return the pool.
+     */
+    private SshSessionPool createPool(SshConnection... opened) {
+        for (SshConnection connection : opened) {
+            connections.add(connection);
+        }
+        return new SshSessionPool("test", mock(IGerritHudsonTriggerConfig.class)) {
+            @Override
+            protected SshConnection connect() throws IOException {
+                return connections.remove(0);
+            }
+        };
+    }
+}
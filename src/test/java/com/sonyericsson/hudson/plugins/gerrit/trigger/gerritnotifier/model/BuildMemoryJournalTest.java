@@ -0,0 +1,183 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2026 the Gerrit Trigger plugin authors.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.model;
+
+import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.model.BuildMemory.MemoryImprint;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.mock.Setup;
+import com.sonymobile.tools.gerrit.gerritevents.dto.events.PatchsetCreated;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.Result;
+import jenkins.model.Jenkins;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.powermock.api.mockito.PowerMockito.doReturn;
+import static org.powermock.api.mockito.PowerMockito.mock;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+//CS IGNORE MagicNumber FOR NEXT 200 LINES. REASON: test-data.
+
+/**
+ * Tests for {@link BuildMemoryJournal}.
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({Jenkins.class, AbstractProject.class })
+@PowerMockIgnore({"javax.xml.*", "org.xml.*" })
+public class BuildMemoryJournalTest {
+
+    /**
+     * Where the journal is written.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private AbstractProject project;
+    private AbstractBuild build;
+
+    /**
+     * Creates the project and build mocks.
+     */
+    @Before
+    public void setUp() {
+        project = mock(AbstractProject.class);
+        doReturn("MockProject").when(project).getFullName();
+        build = mock(AbstractBuild.class);
+        doReturn("b1").when(build).getId();
+        when(build.getParent()).thenReturn(project);
+    }
+
+    /**
+     * Tests that a memory written to the journal is the same when replayed into a new memory.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testReplayJournal() throws Exception {
+        File directory = folder.newFolder();
+        PatchsetCreated event = Setup.createPatchsetCreated();
+        BuildMemory memory = new BuildMemory();
+        BuildMemoryJournal journal = new BuildMemoryJournal(directory, memory, 60000, 1000);
+        memory.setJournal(journal);
+        memory.triggered(event, project);
+        memory.started(event, build);
+        memory.setEntryCustomUrl(event, build, "http://example.com/");
+        PatchsetCreated other = Setup.createPatchsetCreated();
+        other.setEventCreatedOn("1418133773");
+        memory.triggered(other, project);
+        memory.forget(other);
+        journal.flush();
+        journal.close();
+
+        BuildMemory restored = new BuildMemory();
+        new BuildMemoryJournal(directory, restored, 60000, 1000).replay();
+        MemoryImprint imprint = restored.getMemoryImprint(event);
+        assertNotNull(imprint);
+        assertEquals(1, imprint.getEntries().length);
+        MemoryImprint.Entry entry = imprint.getEntries()[0];
+        assertTrue(entry.isProject("MockProject"));
+        assertEquals("http://example.com/", entry.getCustomUrl());
+        assertFalse(entry.isBuildCompleted());
+        assertEquals(1, restored.report().getSortedEntrySet().size());
+    }
+
+    /**
+     * Tests that a compacted journal restores the memory from the snapshot.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testReplayAfterCompaction() throws Exception {
+        File directory = folder.newFolder();
+        PatchsetCreated event = Setup.createPatchsetCreated();
+        BuildMemory memory = new BuildMemory();
+        BuildMemoryJournal journal = new BuildMemoryJournal(directory, memory, 60000, 1);
+        memory.setJournal(journal);
+        memory.triggered(event, project);
+        memory.started(event, build);
+        doReturn(Result.SUCCESS).when(build).getResult();
+        memory.completed(event, build);
+        journal.flush();
+        assertTrue(new File(directory, BuildMemoryJournal.SNAPSHOT_FILE).isFile());
+        assertEquals(0, journal.getPendingCount());
+        journal.close();
+
+        BuildMemory restored = new BuildMemory();
+        new BuildMemoryJournal(directory, restored, 60000, 1).replay();
+        MemoryImprint imprint = restored.getMemoryImprint(event);
+        assertNotNull(imprint);
+        assertTrue(imprint.isAllBuildsCompleted());
+        assertEquals(1, imprint.getResultCount(Result.SUCCESS));
+    }
+
+    /**
+     * Tests that the result of a completed build is restored from the journal.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testReplayCompletedResult() throws Exception {
+        File directory = folder.newFolder();
+        PatchsetCreated event = Setup.createPatchsetCreated();
+        doReturn(Result.FAILURE).when(build).getResult();
+        BuildMemory memory = new BuildMemory();
+        BuildMemoryJournal journal = new BuildMemoryJournal(directory, memory, 60000, 1000);
+        memory.setJournal(journal);
+        memory.triggered(event, project);
+        memory.started(event, build);
+        memory.completed(event, build);
+        journal.flush();
+        journal.close();
+
+        BuildMemory restored = new BuildMemory();
+        new BuildMemoryJournal(directory, restored, 60000, 1000).replay();
+        MemoryImprint imprint = restored.getMemoryImprint(event);
+        assertNotNull(imprint);
+        assertTrue(imprint.isAllBuildsCompleted());
+        assertEquals(1, imprint.getResultCount(Result.FAILURE));
+        assertEquals(0, imprint.getResultCount(Result.SUCCESS));
+    }
+
+    /**
+     * Tests that a torn last line is ignored.
+     */
+    @Test
+    public void testParseTornLine() {
+        assertNull(BuildMemoryJournal.parse("STARTED\t1\tTW9j"));
+        assertNull(BuildMemoryJournal.parse("NOT_AN_OPERATION\t1\t-\t-"));
+    }
+}
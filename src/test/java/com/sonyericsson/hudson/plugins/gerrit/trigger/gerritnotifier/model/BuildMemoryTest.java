@@ -24,6 +24,7 @@
  */
 package com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.model;
 
+import com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.GerritCause;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.GerritTriggerDescriptor;
 import com.sonymobile.tools.gerrit.gerritevents.dto.events.PatchsetCreated;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.model.BuildMemory.MemoryImprint;
@@ -32,7 +33,9 @@ import com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.data.SkipVot
 import com.sonyericsson.hudson.plugins.gerrit.trigger.mock.Setup;
 import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
+import hudson.model.Cause;
 import hudson.model.Job;
+import hudson.model.Queue;
 import hudson.model.Result;
 import hudson.triggers.Trigger;
 import hudson.triggers.TriggerDescriptor;
@@ -42,9 +45,11 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
+import org.powermock.reflect.Whitebox;
 
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -970,4 +975,113 @@ public class BuildMemoryTest {
         MemoryImprint memoryImprint = instance.getMemoryImprint(event);
         assertTrue(memoryImprint.wereAllBuildsSuccessful());
     }
+
+    /**
+     * Tests {@link BuildMemory#evict(int, long)} with too many events.
+     */
+    @Test
+    public void testEvictTooMany() {
+        PatchsetCreated event = Setup.createPatchsetCreated();
+        PatchsetCreated event2 = Setup.createPatchsetCreated();
+        event2.setEventCreatedOn("1418133773");
+
+        BuildMemory instance = new BuildMemory();
+        instance.triggered(event, project);
+        instance.started(event, build);
+        instance.triggered(event2, project);
+        List<MemoryImprint> evicted = instance.evict(1, Long.MAX_VALUE);
+        assertEquals(1, evicted.size());
+        assertEquals(1, instance.getEvictionCount());
+        assertEquals(1, instance.report().size());
+        assertEquals(1, instance.report().getEvictionCount());
+    }
+
+    /**
+     * Tests {@link BuildMemory#evict(int, long)} with too old events.
+     * The build that is done is completed and the project that never started is cancelled.
+     */
+    @Test
+    public void testEvictTooOld() {
+        PatchsetCreated event = Setup.createPatchsetCreated();
+        BuildMemory instance = new BuildMemory();
+        instance.triggered(event, project);
+        instance.started(event, build);
+        when(build.isBuilding()).thenReturn(false);
+        AbstractProject project1 = project;
+        setup();
+        instance.triggered(event, project);
+
+        List<MemoryImprint> evicted = instance.evict(10, -1);
+        assertEquals(1, evicted.size());
+        MemoryImprint imprint = evicted.get(0);
+        assertTrue(imprint.isAllBuildsCompleted());
+        assertEquals(1, imprint.getCancelledCount());
+        assertNull(instance.getMemoryImprint(event));
+        assertFalse(instance.isTriggered(event, project1));
+    }
+
+    /**
+     * Tests that {@link BuildMemory#evict(int, long)} doesn't evict events with queued or running builds
+     * just to meet the maximum number of events.
+     */
+    @Test
+    public void testEvictTooManyKeepsActive() {
+        PatchsetCreated running = Setup.createPatchsetCreated();
+        PatchsetCreated queued = Setup.createPatchsetCreated();
+        queued.setEventCreatedOn("1418133773");
+        PatchsetCreated idle = Setup.createPatchsetCreated();
+        idle.setEventCreatedOn("1418133774");
+
+        BuildMemory instance = new BuildMemory();
+        instance.triggered(running, project);
+        instance.started(running, build);
+        when(build.isBuilding()).thenReturn(true);
+        instance.triggered(queued, project);
+        queue(queued, project);
+        instance.triggered(idle, project);
+
+        List<MemoryImprint> evicted = instance.evict(1, Long.MAX_VALUE);
+        assertEquals(1, evicted.size());
+        assertEquals(idle, evicted.get(0).getEvent());
+        assertNotNull(instance.getMemoryImprint(running));
+        assertNotNull(instance.getMemoryImprint(queued));
+        assertFalse(instance.getMemoryImprint(queued).getEntries()[0].isCancelled());
+    }
+
+    /**
+     * Tests that {@link BuildMemory#evict(int, long)} doesn't evict too old events
+     * with builds that are still queued or running.
+     */
+    @Test
+    public void testEvictTooOldKeepsActive() {
+        PatchsetCreated running = Setup.createPatchsetCreated();
+        PatchsetCreated queued = Setup.createPatchsetCreated();
+        queued.setEventCreatedOn("1418133773");
+        BuildMemory instance = new BuildMemory();
+        instance.triggered(running, project);
+        instance.started(running, build);
+        when(build.isBuilding()).thenReturn(true);
+        instance.triggered(queued, project);
+        queue(queued, project);
+
+        List<MemoryImprint> evicted = instance.evict(10, -1);
+        assertTrue(evicted.isEmpty());
+        assertNotNull(instance.getMemoryImprint(running));
+        assertFalse(instance.getMemoryImprint(queued).getEntries()[0].isCancelled());
+    }
+
+    /**
+     * Puts an item for the project and event in the mocked Jenkins queue.
+     *
+     * @param event the event.
+     * @param job   the project.
+     */
+    private void queue(PatchsetCreated event, AbstractProject job) {
+        Queue.Item item = mock(Queue.Item.class);
+        Whitebox.setInternalState(item, "task", job);
+        when(item.getCauses()).thenReturn(Collections.<Cause>singletonList(new GerritCause(event, false)));
+        Queue queue = mock(Queue.class);
+        when(queue.getItems()).thenReturn(new Queue.Item[]{item});
+        when(jenkins.getQueue()).thenReturn(queue);
+    }
 }
@@ -28,6 +28,7 @@ import com.sonyericsson.hudson.plugins.gerrit.trigger.mock.Setup;
 import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
 import hudson.model.Job;
+import hudson.model.Result;
 import jenkins.model.Jenkins;
 import org.junit.Before;
 import org.junit.Test;
@@ -38,6 +39,7 @@ import org.powermock.modules.junit4.PowerMockRunner;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.same;
 import static org.powermock.api.mockito.PowerMockito.doReturn;
@@ -171,4 +173,44 @@ public class MemoryImprintTest {
         assertNull(imprint.getEntries()[1].getBuild());
         assertFalse(imprint.getEntries()[0].isBuildCompleted());
     }
+
+    /**
+     * Tests that the counters of the class {@link BuildMemory.MemoryImprint}
+     * follow the entries through set, reset and remove.
+     */
+    @Test
+    public void testCounters() {
+        AbstractProject project1 = project;
+        AbstractBuild build1 = build;
+        setup();
+        AbstractProject project2 = project;
+        AbstractBuild build2 = build;
+        when(build1.getResult()).thenReturn(Result.FAILURE);
+
+        BuildMemory.MemoryImprint imprint = new BuildMemory.MemoryImprint(Setup.createPatchsetCreated());
+        imprint.set(project1);
+        imprint.set(project2);
+        assertEquals(0, imprint.getStartedCount());
+        imprint.set(project1, build1);
+        imprint.set(project2, build2);
+        assertEquals(2, imprint.getStartedCount());
+        assertEquals(2, imprint.getBuildsStartedStats().getStartedBuilds());
+        assertTrue(imprint.isAllBuildsSet());
+
+        imprint.set(project1, build1, true);
+        assertEquals(1, imprint.getCompletedCount());
+        assertEquals(1, imprint.getResultCount(Result.FAILURE));
+        assertFalse(imprint.isAllBuildsCompleted());
+
+        imprint.reset(project1);
+        assertEquals(1, imprint.getStartedCount());
+        assertEquals(0, imprint.getCompletedCount());
+        assertEquals(0, imprint.getResultCount(Result.FAILURE));
+
+        imprint.removeProject(project1.getFullName());
+        imprint.set(project2, build2, true);
+        assertEquals(1, imprint.getEntries().length);
+        assertEquals(1, imprint.getCompletedCount());
+        assertTrue(imprint.isAllBuildsCompleted());
+    }
 }
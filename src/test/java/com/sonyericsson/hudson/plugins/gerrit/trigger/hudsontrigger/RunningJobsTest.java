@@ -0,0 +1,138 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2026 the Gerrit Trigger plugin authors.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger;
+
+import com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.data.BuildCancellationPolicy;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.mock.Setup;
+import com.sonymobile.tools.gerrit.gerritevents.dto.events.ChangeBasedEvent;
+import com.sonymobile.tools.gerrit.gerritevents.dto.events.PatchsetCreated;
+import hudson.model.Item;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.isA;
+import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Tests for {@link RunningJobs}.
+ */
+public class RunningJobsTest {
+
+    private RunningJobs runningJobs;
+
+    /**
+     * Creates the running jobs of a trigger that aborts builds of the same topic like the real one.
+     */
+    @Before
+    public void setUp() {
+        GerritTrigger trigger = mock(GerritTrigger.class);
+        doCallRealMethod().when(trigger).abortBecauseOfTopic(isA(ChangeBasedEvent.class),
+                isA(BuildCancellationPolicy.class), isA(ChangeBasedEvent.class));
+        runningJobs = new RunningJobs(trigger, mock(Item.class));
+    }
+
+    /**
+     * A patchset created event.
+     *
+     * @param change the change number.
+     * @param patchset the patchset number.
+     * @param topic the topic, or null.
+     * @return the event.
+     */
+    private static PatchsetCreated event(String change, int patchset, String topic) {
+        PatchsetCreated event = Setup.createPatchsetCreated();
+        event.getChange().setNumber(change);
+        event.getChange().setId("I" + change);
+        event.getChange().setTopic(topic);
+        event.getPatchSet().setNumber(String.valueOf(patchset));
+        return event;
+    }
+
+    /**
+     * Tests that a new patchset outdates the older patchsets of the same change only.
+     */
+    @Test
+    public void testNewPatchsetOutdatesOlder() {
+        BuildCancellationPolicy policy = new BuildCancellationPolicy(false, false, false);
+        PatchsetCreated first = event("1000", 1, null);
+        PatchsetCreated other = event("1001", 1, null);
+        PatchsetCreated second = event("1000", 2, null);
+
+        runningJobs.cancelTriggeredJob(first, null, policy);
+        runningJobs.cancelTriggeredJob(other, null, policy);
+        runningJobs.cancelTriggeredJob(second, null, policy);
+
+        assertFalse(runningJobs.remove(first));
+        assertTrue(runningJobs.remove(other));
+        assertTrue(runningJobs.remove(second));
+    }
+
+    /**
+     * Tests that an older patchset doesn't outdate a newer one, unless new patchsets are aborted too.
+     */
+    @Test
+    public void testOlderPatchsetDoesNotOutdateNewer() {
+        BuildCancellationPolicy policy = new BuildCancellationPolicy(false, false, false);
+        PatchsetCreated second = event("1000", 2, null);
+        PatchsetCreated first = event("1000", 1, null);
+
+        runningJobs.cancelTriggeredJob(second, null, policy);
+        runningJobs.cancelTriggeredJob(first, null, policy);
+        assertTrue(runningJobs.remove(second));
+        assertTrue(runningJobs.remove(first));
+
+        policy = new BuildCancellationPolicy(true, false, false);
+        runningJobs.cancelTriggeredJob(second, null, policy);
+        runningJobs.cancelTriggeredJob(first, null, policy);
+        assertFalse(runningJobs.remove(second));
+        assertTrue(runningJobs.remove(first));
+    }
+
+    /**
+     * Tests that a change outdates the changes of the same topic when the policy aborts the same topic.
+     */
+    @Test
+    public void testSameTopicOutdated() {
+        PatchsetCreated first = event("1000", 1, "topic");
+        PatchsetCreated second = event("1001", 1, "topic");
+        PatchsetCreated third = event("1002", 1, "other");
+
+        BuildCancellationPolicy policy = new BuildCancellationPolicy(false, false, false);
+        runningJobs.cancelTriggeredJob(first, null, policy);
+        runningJobs.cancelTriggeredJob(second, null, policy);
+        assertTrue(runningJobs.remove(first));
+        assertTrue(runningJobs.remove(second));
+
+        policy = new BuildCancellationPolicy(false, false, true);
+        runningJobs.cancelTriggeredJob(first, null, policy);
+        runningJobs.cancelTriggeredJob(third, null, policy);
+        runningJobs.cancelTriggeredJob(second, null, policy);
+        assertFalse(runningJobs.remove(first));
+        assertTrue(runningJobs.remove(third));
+        assertTrue(runningJobs.remove(second));
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2026 the Gerrit Trigger plugin authors.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger;
+
+import com.sonyericsson.hudson.plugins.gerrit.trigger.mock.Setup;
+import com.sonymobile.tools.gerrit.gerritevents.dto.events.GerritTriggeredEvent;
+import hudson.model.Cause;
+import hudson.model.Queue;
+import hudson.model.Run;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link TriggeredBuildRegistry}.
+ */
+public class TriggeredBuildRegistryTest {
+
+    private TriggeredBuildRegistry registry;
+    private GerritTriggeredEvent event;
+    private List<Cause> causes;
+
+    /**
+     * Creates a registry and the causes of an event.
+     */
+    @Before
+    public void setUp() {
+        registry = new TriggeredBuildRegistry();
+        event = Setup.createPatchsetCreated();
+        GerritCause cause = mock(GerritCause.class);
+        when(cause.getEvent()).thenReturn(event);
+        causes = Arrays.<Cause>asList(cause, cause);
+    }
+
+    /**
+     * Tests that a build is registered for its event from start to completion.
+     */
+    @Test
+    public void testRunningBuilds() {
+        Run build = mock(Run.class);
+        when(build.getCauses()).thenReturn(causes);
+
+        registry.started(build);
+        Map<Run, ?> running = registry.getRunningBuilds(event);
+        assertEquals(1, running.size());
+        assertTrue(running.containsKey(build));
+        assertTrue(registry.getRunningBuilds(Setup.createPatchsetCreated()).isEmpty());
+
+        registry.completed(build);
+        assertTrue(registry.getRunningBuilds(event).isEmpty());
+        assertEquals(0, registry.getEventCount());
+    }
+
+    /**
+     * Tests that a queue item is registered for its event until it leaves the queue.
+     */
+    @Test
+    public void testQueueItems() {
+        Queue.Item item = mock(Queue.Item.class);
+        when(item.getCauses()).thenReturn(causes);
+        Queue.Item other = mock(Queue.Item.class);
+        when(other.getCauses()).thenReturn(Collections.<Cause>emptyList());
+
+        registry.queued(item);
+        registry.queued(other);
+        assertEquals(1, registry.getEventCount());
+
+        registry.left(item);
+        assertEquals(0, registry.getEventCount());
+    }
+}
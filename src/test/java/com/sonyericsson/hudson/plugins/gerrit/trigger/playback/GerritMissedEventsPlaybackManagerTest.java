@@ -26,12 +26,14 @@ package com.sonyericsson.hudson.plugins.gerrit.trigger.playback;
 
 import com.github.tomakehurst.wiremock.http.Fault;
 import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import com.github.tomakehurst.wiremock.verification.LoggedRequest;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.GerritServer;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.PluginImpl;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.config.IGerritHudsonTriggerConfig;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.mock.Setup;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.utils.GerritPluginChecker;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.utils.MockPluginCheckerConfig;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.utils.StringUtil;
 import com.sonymobile.tools.gerrit.gerritevents.GerritHandler;
 import com.sonymobile.tools.gerrit.gerritevents.dto.events.GerritTriggeredEvent;
 import com.sonymobile.tools.gerrit.gerritevents.dto.events.PatchsetCreated;
@@ -44,6 +46,7 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PowerMockIgnore;
 import org.powermock.core.classloader.annotations.PrepareForTest;
@@ -54,19 +57,27 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.findAll;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlMatching;
 import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.anyObject;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.powermock.api.mockito.PowerMockito.mock;
 
@@ -92,6 +103,9 @@ public class GerritMissedEventsPlaybackManagerTest {
     private XmlFile xmlFile;
     private static final int SLEEPTIME = 500;
     private static final int HTTPOK = 200;
+    private static final int HTTPERROR = 500;
+    private static final int PLAYBACK_WAIT_ROUNDS = 100;
+    private static final int PLAYBACK_WAIT_ROUNDS_PER_SLEEP = 10;
 
     /**
      * Default constructor.
@@ -255,6 +269,59 @@ public class GerritMissedEventsPlaybackManagerTest {
 
     }
 
+    /**
+     * Given a Gerrit Server with Events-log plugin installed
+     * When we request the events from a time range
+     * And the response holds more events than fit in one batch
+     * Then the events are handed over in order in bounded batches.
+     */
+    @Test
+    public void testStreamEventsInBatches() {
+        GerritMissedEventsPlaybackManager missingEventsPlaybackManager =
+                setupManager();
+
+        int total = GerritMissedEventsPlaybackManager.BATCH_SIZE * 2 + 1;
+        StringBuilder body = new StringBuilder();
+        for (int i = 1; i <= total; i++) {
+            body.append("{\"type\":\"patchset-created\",\"change\":{\"project\":\"testProject\",")
+                    .append("\"branch\":\"develop\",\"id\":\"I").append(i).append("\",\"number\":\"")
+                    .append(i).append("\"},\"patchSet\":{\"number\":\"1\",\"revision\":\"r").append(i)
+                    .append("\",\"ref\":\"refs/changes/").append(i).append("/1\"}}\n")
+                    .append("not json\n");
+        }
+        stubFor(get(urlMatching(EVENTS_LOG_CHANGE_EVENTS_URL_REGEXP))
+                .willReturn(aResponse()
+                        .withStatus(HTTPOK)
+                        .withHeader("Content-Type", "text/plain")
+                        .withBody(body.toString())));
+
+        final List<Integer> batchSizes = new ArrayList<Integer>();
+        final List<String> numbers = new ArrayList<String>();
+        int count = 0;
+        try {
+            count = missingEventsPlaybackManager.getEventsFromDateRange(
+                    missingEventsPlaybackManager.getDateFromTimestamp(),
+                    new GerritMissedEventsPlaybackManager.EventBatchHandler() {
+                        @Override
+                        public void handle(List<GerritTriggeredEvent> batch) {
+                            batchSizes.add(batch.size());
+                            for (GerritTriggeredEvent evt : batch) {
+                                numbers.add(((PatchsetCreated)evt).getChange().getNumber());
+                            }
+                        }
+                    });
+        } catch (IOException e) {
+            fail(e.getMessage());
+        }
+
+        assertEquals(total, count);
+        assertEquals(3, batchSizes.size());
+        assertEquals(GerritMissedEventsPlaybackManager.BATCH_SIZE, batchSizes.get(0).intValue());
+        assertEquals(1, batchSizes.get(2).intValue());
+        assertEquals("1", numbers.get(0));
+        assertEquals(String.valueOf(total), numbers.get(total - 1));
+    }
+
     /**
      * Given a Gerrit Server with Events-log plugin installed
      * When we request the events from a time range
@@ -336,6 +403,212 @@ public class GerritMissedEventsPlaybackManagerTest {
 
     }
 
+    /**
+     * Given a last-alive timestamp far in the past
+     * When the connection is established
+     * Then the missed events are requested in bounded windows
+     * And the end of each window is checkpointed.
+     * @throws Exception if so.
+     */
+    @Test
+    public void testPlaybackInCheckpointedWindows() throws Exception {
+        stubFor(get(urlMatching(EVENTS_LOG_CHANGE_EVENTS_URL_REGEXP))
+                .willReturn(aResponse()
+                        .withStatus(HTTPOK)
+                        .withHeader("Content-Type", "text/plain")
+                        .withBody("")));
+        long lastAlive = ((EventTimeSlice)xmlFile.read()).getTimeSlice();
+        File checkpoint = new File(xmlFile.getFile().getParentFile(), xmlFile.getFile().getName() + ".bin");
+        checkpoint.deleteOnExit();
+        PowerMockito.when(GerritMissedEventsPlaybackManager.getCheckpointFile("defaultServer")).thenReturn(checkpoint);
+
+        GerritMissedEventsPlaybackManager missingEventsPlaybackManager
+                = new GerritMissedEventsPlaybackManager("defaultServer");
+        missingEventsPlaybackManager.connectionEstablished();
+        waitForPlayback(missingEventsPlaybackManager);
+
+        List<LoggedRequest> requests = findAll(getRequestedFor(urlMatching(EVENTS_LOG_CHANGE_EVENTS_URL_REGEXP)));
+        assertTrue("Should request more than one window", requests.size() > 1);
+        for (LoggedRequest request : requests) {
+            assertTrue(request.getUrl().contains("&t2="));
+        }
+        assertTrue(EventTimeSlice.read(checkpoint).getTimeSlice() > lastAlive);
+        assertFalse("The old xml file should be replaced by the checkpoint", xmlFile.exists());
+    }
+
+    /**
+     * Given a last-alive timestamp far in the past
+     * When the connection is established
+     * And the first window cannot be fetched
+     * Then the playback is retried later
+     * And stays in progress without advancing the last-alive timestamp.
+     * @throws Exception if so.
+     */
+    @Test
+    public void testPlaybackRetriesWithoutCheckpointWhenFetchFails() throws Exception {
+        stubFor(get(urlMatching(EVENTS_LOG_CHANGE_EVENTS_URL_REGEXP))
+                .willReturn(aResponse().withStatus(HTTPERROR)));
+        long lastAlive = ((EventTimeSlice)xmlFile.read()).getTimeSlice();
+        File checkpoint = new File(xmlFile.getFile().getParentFile(), xmlFile.getFile().getName() + ".bin");
+        checkpoint.deleteOnExit();
+        PowerMockito.when(GerritMissedEventsPlaybackManager.getCheckpointFile("defaultServer")).thenReturn(checkpoint);
+
+        GerritMissedEventsPlaybackManager missingEventsPlaybackManager
+                = new GerritMissedEventsPlaybackManager("defaultServer");
+        missingEventsPlaybackManager.connectionEstablished();
+        PlaybackProgress progress = missingEventsPlaybackManager.getPlaybackProgress();
+        assertNotNull(progress);
+        for (int i = 0; i < PLAYBACK_WAIT_ROUNDS && progress.getFailures() == 0; i++) {
+            Thread.sleep(SLEEPTIME / PLAYBACK_WAIT_ROUNDS_PER_SLEEP);
+        }
+        try {
+            assertEquals(1, progress.getFailures());
+            List<LoggedRequest> requests = findAll(getRequestedFor(urlMatching(EVENTS_LOG_CHANGE_EVENTS_URL_REGEXP)));
+            assertEquals("Should stop at the failing window", 1, requests.size());
+            assertFalse("Should wait for the retry", missingEventsPlaybackManager.isPlayBackComplete());
+            assertSame(progress, missingEventsPlaybackManager.getPlaybackProgress());
+            assertFalse("Should not checkpoint the failing window", checkpoint.exists());
+            assertEquals(lastAlive, missingEventsPlaybackManager.playbackTimestamp.getTimeSlice());
+        } finally {
+            missingEventsPlaybackManager.shutdown();
+        }
+    }
+
+    /**
+     * Given missed events with several patch sets of the same change
+     * When they are played back
+     * Then only the latest patch set of that change is triggered
+     * And the events of other changes are triggered in order.
+     * @throws Exception if so.
+     */
+    @Test
+    public void testPlaybackCoalescesSupersededPatchSets() throws Exception {
+        String body = patchsetCreatedJson("100", "1") + patchsetCreatedJson("200", "1")
+                + patchsetCreatedJson("100", "2") + patchsetCreatedJson("300", "1");
+        stubFor(get(urlMatching(EVENTS_LOG_CHANGE_EVENTS_URL_REGEXP))
+                .willReturn(aResponse()
+                        .withStatus(HTTPOK)
+                        .withHeader("Content-Type", "text/plain")
+                        .withBody(body)));
+
+        GerritMissedEventsPlaybackManager missingEventsPlaybackManager
+                = new GerritMissedEventsPlaybackManager("defaultServer");
+        missingEventsPlaybackManager.connectionEstablished();
+        waitForPlayback(missingEventsPlaybackManager);
+
+        GerritServer server = PluginImpl.getServer_("defaultServer");
+        ArgumentCaptor<GerritTriggeredEvent> captor = ArgumentCaptor.forClass(GerritTriggeredEvent.class);
+        verify(server, times(3)).triggerEvent(captor.capture());
+        List<String> triggered = new ArrayList<String>();
+        for (GerritTriggeredEvent evt : captor.getAllValues()) {
+            PatchsetCreated patchsetCreated = (PatchsetCreated)evt;
+            triggered.add(patchsetCreated.getChange().getNumber() + "/" + patchsetCreated.getPatchSet().getNumber());
+        }
+        assertEquals(Arrays.asList("200/1", "100/2", "300/1"), triggered);
+    }
+
+    /**
+     * Given a newer patch set of a change received live while playback is in progress
+     * When an older patch set of that change is played back
+     * Then it is skipped
+     * And the events of other changes are triggered.
+     * @throws Exception if so.
+     */
+    @Test
+    public void testPlaybackSkipsPatchSetsOlderThanReceived() throws Exception {
+        String body = patchsetCreatedJson("100", "1") + patchsetCreatedJson("200", "1");
+        stubFor(get(urlMatching(EVENTS_LOG_CHANGE_EVENTS_URL_REGEXP))
+                .willReturn(aResponse()
+                        .withStatus(HTTPOK)
+                        .withHeader("Content-Type", "text/plain")
+                        .withBody(body)));
+
+        GerritMissedEventsPlaybackManager missingEventsPlaybackManager
+                = new GerritMissedEventsPlaybackManager("defaultServer");
+        missingEventsPlaybackManager.newestPatchSets.put("100", 2);
+        missingEventsPlaybackManager.connectionEstablished();
+        waitForPlayback(missingEventsPlaybackManager);
+
+        GerritServer server = PluginImpl.getServer_("defaultServer");
+        ArgumentCaptor<GerritTriggeredEvent> captor = ArgumentCaptor.forClass(GerritTriggeredEvent.class);
+        verify(server, times(1)).triggerEvent(captor.capture());
+        assertEquals("200", ((PatchsetCreated)captor.getValue()).getChange().getNumber());
+    }
+
+    /**
+     * A patchset-created event as sent by the events-log plugin.
+     * @param change the change number.
+     * @param patchSet the patch set number.
+     * @return the json line.
+     */
+    private static String patchsetCreatedJson(String change, String patchSet) {
+        return "{\"type\":\"patchset-created\",\"change\":{\"project\":\"testProject\",\"branch\":\"develop\","
+                + "\"id\":\"I" + change + "\",\"number\":\"" + change + "\"},\"patchSet\":{\"number\":\""
+                + patchSet + "\",\"revision\":\"r" + change + patchSet + "\",\"ref\":\"refs/changes/" + change
+                + "/" + patchSet + "\"},\"eventCreatedOn\":1430244885}\n";
+    }
+
+    /**
+     * Waits for the playback started by {@link GerritMissedEventsPlaybackManager#connectionEstablished()}.
+     * @param manager the manager.
+     * @throws InterruptedException if so.
+     */
+    private static void waitForPlayback(GerritMissedEventsPlaybackManager manager) throws InterruptedException {
+        for (int i = 0; i < PLAYBACK_WAIT_ROUNDS && !manager.isPlayBackComplete(); i++) {
+            Thread.sleep(SLEEPTIME / PLAYBACK_WAIT_ROUNDS_PER_SLEEP);
+        }
+        assertTrue("Playback should complete", manager.isPlayBackComplete());
+    }
+
+    /**
+     * Given a time slice with events
+     * When it is checkpointed and read back
+     * Then the time slice and the identities of its events are restored.
+     * @throws IOException if so.
+     */
+    @Test
+    public void testCheckpointRoundTrip() throws IOException {
+        PatchsetCreated event = Setup.createPatchsetCreated("defaultServer", "someProject", "refs/heads/master");
+        EventTimeSlice slice = new EventTimeSlice(event.getEventCreatedOn().getTime());
+        slice.addEvent(event);
+        slice.addEvent(event);
+        File checkpoint = File.createTempFile("gerrit-server-timestamps", ".bin");
+        checkpoint.deleteOnExit();
+
+        slice.write(checkpoint);
+        EventTimeSlice restored = EventTimeSlice.read(checkpoint);
+
+        assertEquals(slice.getTimeSlice(), restored.getTimeSlice());
+        assertEquals(1, restored.getEventCount());
+        assertTrue(restored.containsEvent(StringUtil.getEventIdentity(event)));
+    }
+
+    /**
+     * Given a received event
+     * When the same event is read back from the events-log plugin as another instance
+     * Then it is found in both the received cache and the time slice.
+     */
+    @Test
+    public void testReceivedEventsAreRecognisedByIdentity() {
+        GerritMissedEventsPlaybackManager missingEventsPlaybackManager
+                = new GerritMissedEventsPlaybackManager("defaultServer");
+        missingEventsPlaybackManager.gerritEvent(Setup.createPatchsetCreated("defaultServer", "someProject",
+                "refs/heads/master"));
+        missingEventsPlaybackManager.connectionDown();
+
+        PatchsetCreated playedBack = Setup.createPatchsetCreated("defaultServer", "someProject",
+                "refs/heads/master");
+        String identity = StringUtil.getEventIdentity(playedBack);
+        assertTrue(missingEventsPlaybackManager.receivedEventCache.contains(identity));
+        assertTrue(missingEventsPlaybackManager.getServerTimestamp().containsEvent(identity));
+
+        PatchsetCreated other = Setup.createPatchsetCreated("defaultServer", "someProject",
+                "refs/heads/master");
+        other.getPatchSet().setNumber("2");
+        assertFalse(missingEventsPlaybackManager.getServerTimestamp()
+                .containsEvent(StringUtil.getEventIdentity(other)));
+    }
+
     /**
      * This tests that the initial `isSupported` state is false.
      */
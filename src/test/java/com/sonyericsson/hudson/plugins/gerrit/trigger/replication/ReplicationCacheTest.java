@@ -26,16 +26,21 @@ package com.sonyericsson.hudson.plugins.gerrit.trigger.replication;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.concurrent.TimeUnit;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import com.sonymobile.tools.gerrit.gerritevents.dto.events.RefReplicated;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.mock.Setup;
 
-//CS IGNORE MagicNumber FOR NEXT 100 LINES. REASON: testdata.
+//CS IGNORE MagicNumber FOR NEXT 200 LINES. REASON: testdata.
 
 /**
  * Tests {@link com.sonyericsson.hudson.plugins.gerrit.trigger.replication.ReplicationCache}.
@@ -43,6 +48,12 @@ import com.sonyericsson.hudson.plugins.gerrit.trigger.mock.Setup;
  */
 public class ReplicationCacheTest {
 
+    /**
+     * Folder for the store.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     /**
      * Test that it should return cached event.
      */
@@ -96,4 +107,115 @@ public class ReplicationCacheTest {
         assertFalse(replicationCache.isExpired(System.currentTimeMillis()));
         assertTrue(replicationCache.isExpired(System.currentTimeMillis() - 200));
     }
+
+    /**
+     * Test that the events written to the store are read back by a new cache.
+     * @throws IOException if so.
+     */
+    @Test
+    public void shouldRestoreSavedEvents() throws IOException {
+        File file = new File(folder.getRoot(), "store.txt");
+        ReplicationCache replicationCache = ReplicationCache.Factory.createCache();
+        replicationCache.put(Setup.createRefReplicatedEvent("someProject", "refs/changes/1/1/1", "someServer",
+            "someSlave", RefReplicated.SUCCEEDED_STATUS));
+        replicationCache.put(Setup.createRefReplicatedEvent("someProject", "refs/changes/2/2/1", "someServer",
+            "someSlave", null));
+        assertTrue(replicationCache.save(file, 10));
+        assertFalse("Nothing changed since the last save", replicationCache.save(file, 10));
+
+        ReplicationCache restored = ReplicationCache.Factory.createCache();
+        assertEquals(2, restored.load(file));
+        RefReplicated refReplicated =
+            restored.getIfPresent("someServer", "someProject", "refs/changes/1/1/1", "someSlave");
+        assertEquals("someServer", refReplicated.getProvider().getName());
+        assertEquals(RefReplicated.SUCCEEDED_STATUS, refReplicated.getStatus());
+        assertNull(restored.getIfPresent("someServer", "someProject", "refs/changes/2/2/1", "someSlave")
+            .getStatus());
+    }
+
+    /**
+     * Test that the store keeps the most recent events only, and that expired events are not read back.
+     * @throws IOException if so.
+     * @throws InterruptedException if so.
+     */
+    @Test
+    public void shouldBoundSavedEvents() throws IOException, InterruptedException {
+        File file = new File(folder.getRoot(), "store.txt");
+        ReplicationCache replicationCache = ReplicationCache.Factory.createCache(200, TimeUnit.MILLISECONDS);
+        replicationCache.put(Setup.createRefReplicatedEvent("someProject", "refs/changes/1/1/1", "someServer",
+            "someSlave", RefReplicated.SUCCEEDED_STATUS));
+        Thread.sleep(10);
+        replicationCache.put(Setup.createRefReplicatedEvent("someProject", "refs/changes/2/2/1", "someServer",
+            "someSlave", RefReplicated.SUCCEEDED_STATUS));
+        assertTrue(replicationCache.save(file, 1));
+
+        ReplicationCache restored = ReplicationCache.Factory.createCache();
+        assertEquals(1, restored.load(file));
+        assertNull(restored.getIfPresent("someServer", "someProject", "refs/changes/1/1/1", "someSlave"));
+
+        Thread.sleep(300);
+        assertEquals("Expired events should not be restored", 0, ReplicationCache.Factory.createCache().load(file));
+    }
+
+    /**
+     * Test that a missing store leaves the cache empty.
+     */
+    @Test
+    public void shouldIgnoreMissingStore() {
+        ReplicationCache replicationCache = ReplicationCache.Factory.createCache();
+        assertEquals(0, replicationCache.load(new File(folder.getRoot(), "missing.txt")));
+    }
+
+    /**
+     * Test that the cache does not grow beyond its maximum number of events, and counts its lookups.
+     */
+    @Test
+    public void shouldBoundNumberOfEvents() {
+        ReplicationCache replicationCache = new ReplicationCache(1, TimeUnit.HOURS, 10, 0);
+        replicationCache.initialize();
+        for (int i = 0; i < 100; i++) {
+            replicationCache.put(Setup.createRefReplicatedEvent("someProject", "refs/changes/1/" + i + "/1",
+                "someServer", "someSlave", RefReplicated.SUCCEEDED_STATUS));
+        }
+        replicationCache.cleanUp();
+        assertTrue(replicationCache.getSize() <= 10);
+        assertTrue(replicationCache.getEvictionCount() >= 90);
+
+        replicationCache.getIfPresent("someServer", "someProject", "refs/changes/1/1/1", "otherSlave");
+        assertEquals(1, replicationCache.getRequestCount());
+        assertEquals(0.0, replicationCache.getHitRate(), 0.0);
+    }
+
+    /**
+     * Test that the cache does not grow beyond its maximum estimated size.
+     */
+    @Test
+    public void shouldBoundWeightOfEvents() {
+        ReplicationCache replicationCache = new ReplicationCache(1, TimeUnit.HOURS, 0,
+            ReplicationCache.ENTRY_WEIGHT * 20);
+        replicationCache.initialize();
+        for (int i = 0; i < 100; i++) {
+            replicationCache.put(Setup.createRefReplicatedEvent("someProject", "refs/changes/1/" + i + "/1",
+                "someServer", "someSlave", RefReplicated.SUCCEEDED_STATUS));
+        }
+        replicationCache.cleanUp();
+        assertTrue(replicationCache.getSize() < 20);
+        assertTrue(replicationCache.getEstimatedFootprint() <= ReplicationCache.ENTRY_WEIGHT * 20);
+    }
+
+    /**
+     * Test that cached events share the repeated project and host names.
+     */
+    @Test
+    public void shouldShareRepeatedNames() {
+        ReplicationCache replicationCache = ReplicationCache.Factory.createCache();
+        RefReplicated first = Setup.createRefReplicatedEvent(new String("someProject"), "refs/changes/1/1/1",
+            "someServer", new String("someSlave"), RefReplicated.SUCCEEDED_STATUS);
+        RefReplicated second = Setup.createRefReplicatedEvent(new String("someProject"), "refs/changes/2/2/1",
+            "someServer", new String("someSlave"), RefReplicated.SUCCEEDED_STATUS);
+        replicationCache.put(first);
+        replicationCache.put(second);
+        assertSame(first.getProject(), second.getProject());
+        assertSame(first.getTargetNode(), second.getTargetNode());
+    }
 }
@@ -23,6 +23,7 @@
  */
 package com.sonyericsson.hudson.plugins.gerrit.trigger.replication;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
@@ -30,6 +31,7 @@ import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.same;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -545,6 +547,56 @@ public class ReplicationQueueTaskDispatcherTest {
         verify(queueMock, times(0)).maintain();
     }
 
+    /**
+     * Test that a slave replication timeout lets the queue check the item again without waiting for
+     * the next periodic maintenance.
+     */
+    @Test
+    public void shouldScheduleMaintenanceWhenSlaveReplicationTimeoutIsReached() {
+        when(Jenkins.getInstanceOrNull()).thenReturn(Jenkins.get());
+        PatchsetCreated patchsetCreated = Setup.createPatchsetCreated("someGerritServer", "someProject",
+                "refs/changes/1/1/1");
+        Item item = createItem(patchsetCreated, null);
+        List<GerritSlave> gerritSlaves = new ArrayList<GerritSlave>();
+        gerritSlaves.add(new GerritSlave("slave1", "host1", 0));
+        gerritSlaves.add(new GerritSlave("slave2", "host2", 1));
+        when(gerritTriggerMock.gerritSlavesToWaitFor("someGerritServer")).thenReturn(gerritSlaves);
+
+        assertNotNull("the item should be blocked", dispatcher.canRun(item));
+        verify(queueMock, timeout(TimeUnit.SECONDS.toMillis(5))).scheduleMaintenance();
+
+        assertNull("Item should not be blocked", dispatcher.canRun(item));
+        assertTrue(item.getAction(ReplicationFailedAction.class).getReason().contains("slave2"));
+        assertEquals(0, dispatcher.getWaitedForCount());
+    }
+
+    /**
+     * Test that an item that leaves the queue while blocked is forgotten, and its timeout no longer fires.
+     * @throws InterruptedException if test fails
+     */
+    @Test
+    public void shouldForgetItemThatLeftTheQueue() throws InterruptedException {
+        when(Jenkins.getInstanceOrNull()).thenReturn(Jenkins.get());
+        PatchsetCreated patchsetCreated = Setup.createPatchsetCreated("someGerritServer", "someProject",
+                "refs/changes/1/1/1");
+        Item item = createItem(patchsetCreated, null);
+        List<GerritSlave> gerritSlaves = new ArrayList<GerritSlave>();
+        gerritSlaves.add(new GerritSlave("slave1", "host1", 0));
+        gerritSlaves.add(new GerritSlave("slave2", "host2", 1));
+        when(gerritTriggerMock.gerritSlavesToWaitFor("someGerritServer")).thenReturn(gerritSlaves);
+
+        assertNotNull("the item should be blocked", dispatcher.canRun(item));
+        assertEquals(1, dispatcher.getBlockedItemCount());
+        assertEquals(2, dispatcher.getWaitedForCount());
+
+        dispatcher.left(item);
+        assertEquals(0, dispatcher.getBlockedItemCount());
+        assertEquals(0, dispatcher.getWaitedForCount());
+
+        Thread.sleep(TimeUnit.SECONDS.toMillis(2));
+        verify(queueMock, times(0)).scheduleMaintenance();
+    }
+
     /**
      * Test that it should block item until replication fails.
      */
@@ -600,6 +652,39 @@ public class ReplicationQueueTaskDispatcherTest {
         verify(queueMock, times(1)).maintain();
     }
 
+    /**
+     * Test that a replication event only reaches the items waiting for its ref and slave,
+     * and that items are no longer indexed once they do not wait for them.
+     */
+    @Test
+    public void shouldOnlyProcessItemsWaitingForReplicatedRef() {
+        Item item1 = createItem(Setup.createPatchsetCreated("someGerritServer", "someProject",
+                "refs/changes/1/1/1"), new String[] {"slaveA", "slaveB"});
+        assertNotNull("the item should be blocked", dispatcher.canRun(item1));
+        Item item2 = createItem(Setup.createPatchsetCreated("someGerritServer", "someProject",
+                "refs/changes/2/2/1"), new String[] {"slaveA"});
+        assertNotNull("the item should be blocked", dispatcher.canRun(item2));
+        assertEquals(3, dispatcher.getWaitedForCount());
+
+        dispatcher.gerritEvent(Setup.createRefReplicatedEvent("someProject", "refs/changes/2/2/1", "someGerritServer",
+                "slaveA", RefReplicated.SUCCEEDED_STATUS));
+        assertEquals(2, dispatcher.getWaitedForCount());
+        assertNull("Item should not be blocked", dispatcher.canRun(item2));
+        assertNotNull("the item should be blocked", dispatcher.canRun(item1));
+        verify(queueMock, times(1)).maintain();
+
+        dispatcher.gerritEvent(Setup.createRefReplicatedEvent("someProject", "refs/changes/1/1/1", "someGerritServer",
+                "slaveB", RefReplicated.FAILED_STATUS));
+        assertEquals(2, dispatcher.getWaitedForCount());
+        dispatcher.gerritEvent(Setup.createRefReplicatedEvent("someProject", "refs/changes/1/1/1", "someGerritServer",
+                "slaveB", RefReplicated.SUCCEEDED_STATUS));
+        dispatcher.gerritEvent(Setup.createRefReplicatedEvent("someProject", "refs/changes/1/1/1", "someGerritServer",
+                "slaveA", RefReplicated.SUCCEEDED_STATUS));
+        assertEquals(0, dispatcher.getWaitedForCount());
+        assertNull("Item should not be blocked", dispatcher.canRun(item1));
+        verify(queueMock, times(2)).maintain();
+    }
+
     /**
      * Test that it should not block item when replication is completed before the queue task dispatcher
      * is called to evaluate that queued item.
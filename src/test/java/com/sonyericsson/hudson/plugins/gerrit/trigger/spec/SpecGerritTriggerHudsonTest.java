@@ -31,6 +31,7 @@ import com.sonyericsson.hudson.plugins.gerrit.trigger.GerritServer;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.PluginImpl;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.config.Config;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.events.ManualPatchsetCreated;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.NotificationFactory;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.GerritCause;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.GerritTrigger;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.data.GerritProject;
@@ -177,6 +178,20 @@ public class SpecGerritTriggerHudsonTest {
     @LocalData
     public void testTriggeredSilentStartModeMixedBuild() throws Exception {
         gerritServer.getConfig().setNumberOfSendingWorkerThreads(3);
+        //One build started message per job, instead of one for all of them.
+        System.setProperty(NotificationFactory.BUILD_STARTED_WINDOW_PROPERTY, "0");
+        try {
+            triggerSilentStartModeMixedBuild();
+        } finally {
+            System.clearProperty(NotificationFactory.BUILD_STARTED_WINDOW_PROPERTY);
+        }
+    }
+
+    /**
+     * Body of {@link #testTriggeredSilentStartModeMixedBuild()}.
+     * @throws Exception if so.
+     */
+    private void triggerSilentStartModeMixedBuild() throws Exception {
 
         final int nrOfJobs = 3;
         FreeStyleProject project = DuplicatesUtil.createGerritTriggeredJob(j, "projectX");
@@ -0,0 +1,157 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2026 the Gerrit Trigger plugin authors.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.trigger.utils;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link GerritHttpClient}.
+ */
+public class GerritHttpClientTest {
+
+    private static final int HTTPOK = 200;
+    private static final int REQUESTS = 3;
+    private static final long WAIT = 5000;
+
+    /**
+     * The Gerrit server.
+     */
+    // CS IGNORE VisibilityModifier FOR NEXT 2 LINES. REASON: WireMockRule.
+    @Rule
+    public final WireMockRule wireMockRule = new WireMockRule(0);
+
+    private GerritHttpClient client;
+
+    /**
+     * Creates the client.
+     */
+    @Before
+    public void setUp() {
+        MockPluginCheckerConfig config = new MockPluginCheckerConfig();
+        config.setGerritFrontEndURL("http://localhost:" + wireMockRule.port());
+        config.setGerritHttpUserName("user");
+        config.setGerritHttpPassword("passwd");
+        client = new GerritHttpClient(config);
+    }
+
+    /**
+     * Closes the client.
+     */
+    @After
+    public void tearDown() {
+        client.close();
+    }
+
+    /**
+     * Tests that requests reuse the one pooled connection once their responses are read and closed.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testConnectionIsReused() throws Exception {
+        stubFor(get(urlEqualTo("/a/plugins/events-log/"))
+                .willReturn(aResponse().withStatus(HTTPOK).withBody("ok")));
+        String url = "http://localhost:" + wireMockRule.port() + "/a/plugins/events-log/";
+        for (int i = 0; i < REQUESTS; i++) {
+            CloseableHttpResponse response = client.get(url);
+            try {
+                assertEquals(HTTPOK, response.getStatusLine().getStatusCode());
+                assertEquals("ok", EntityUtils.toString(response.getEntity()));
+            } finally {
+                response.close();
+            }
+        }
+        verify(REQUESTS, getRequestedFor(urlEqualTo("/a/plugins/events-log/")));
+        assertEquals(0, client.getPoolStats().getLeased());
+        assertEquals(1, client.getPoolStats().getAvailable());
+    }
+
+    /**
+     * Tests that a replaced client is closed only after the request in progress has read its response.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testCloseWhenIdleWaitsForRequests() throws Exception {
+        stubFor(get(urlEqualTo("/a/config/server/version"))
+                .willReturn(aResponse().withStatus(HTTPOK).withBody("ok")));
+        CloseableHttpResponse response = client.get("http://localhost:" + wireMockRule.port()
+                + "/a/config/server/version");
+        client.closeWhenIdle();
+        assertFalse(client.isClosed());
+        try {
+            assertEquals("ok", EntityUtils.toString(response.getEntity()));
+        } finally {
+            response.close();
+        }
+        long end = System.currentTimeMillis() + WAIT;
+        while (!client.isClosed() && System.currentTimeMillis() < end) {
+            Thread.sleep(GerritHttpClient.CLOSE_CHECK_INTERVAL);
+        }
+        assertTrue(client.isClosed());
+    }
+
+    /**
+     * Tests that a replaced client is not closed while it is used before the request has leased a connection,
+     * and that it can't be used any more once it is closing.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testCloseWhenIdleWaitsForUsers() throws Exception {
+        client.acquire();
+        client.closeWhenIdle();
+        Thread.sleep(GerritHttpClient.CLOSE_CHECK_INTERVAL * 2);
+        assertFalse(client.isClosed());
+        try {
+            client.acquire();
+            fail("A closing client should not be handed out");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("closed"));
+        }
+        client.release();
+        long end = System.currentTimeMillis() + WAIT;
+        while (!client.isClosed() && System.currentTimeMillis() < end) {
+            Thread.sleep(GerritHttpClient.CLOSE_CHECK_INTERVAL);
+        }
+        assertTrue(client.isClosed());
+    }
+}